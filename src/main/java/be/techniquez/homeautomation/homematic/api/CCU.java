@@ -3,6 +3,7 @@ package be.techniquez.homeautomation.homematic.api;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Interface for a CCU.
@@ -32,6 +33,22 @@ public interface CCU {
 	 */
 	boolean isConnected();
 	
+	/**
+	 * Re-reads the state of all the devices from the CCU, using a single request.
+	 * 
+	 * @throws 	IOException		If an IO error occurs.
+	 */
+	void refreshStates() throws IOException;
+	
+	/**
+	 * Re-reads the device list of the CCU and applies the differences : devices that were added are created, devices
+	 * that were removed are retired and devices that were renamed get their new name. The other devices are kept, 
+	 * along with their listeners and state.
+	 * 
+	 * @throws 	IOException		If an IO error occurs.
+	 */
+	void refresh() throws IOException;
+	
 	/**
 	 * Returns all the dimmers known to the system.
 	 * 
@@ -63,4 +80,43 @@ public interface CCU {
 	 * @return		The switch.
 	 */
 	Switch getSwitch(final String name);
+	
+	/**
+	 * Creates a group of devices that can be driven together.
+	 * 
+	 * @param 		devices		The dimmers and switches in the group.
+	 * 
+	 * @return		The group.
+	 */
+	DeviceGroup createGroup(final Collection<? extends Device> devices);
+	
+	/**
+	 * Applies the given scene, using as few requests to the CCU as possible.
+	 * 
+	 * @param 		scene		The scene to apply.
+	 * 
+	 * @return		Indicates per device whether the CCU reported the change.
+	 * 
+	 * @throws 		IOException		If an IO error occurs.
+	 */
+	Map<Device, Boolean> applyScene(final Scene scene) throws IOException;
+	
+	/**
+	 * Adds a listener for a datapoint of the channels matching the address pattern. Events of datapoints nobody listens to
+	 * are dropped as soon as they are received.
+	 * 
+	 * @param 	addressPattern		The address, in which <code>*</code> matches any characters, as in <code>ABC0000001:*</code>.
+	 * @param 	datapoint			The name of the datapoint, <code>*</code> for all datapoints.
+	 * @param 	listener			The listener.
+	 */
+	void addDatapointListener(final String addressPattern, final String datapoint, final DatapointListener listener);
+	
+	/**
+	 * Removes a listener that was added for the given address pattern and datapoint.
+	 * 
+	 * @param 	addressPattern		The address pattern.
+	 * @param 	datapoint			The name of the datapoint, <code>*</code> for all datapoints.
+	 * @param 	listener			The listener to remove.
+	 */
+	void removeDatapointListener(final String addressPattern, final String datapoint, final DatapointListener listener);
 }
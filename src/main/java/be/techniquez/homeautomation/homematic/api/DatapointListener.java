@@ -0,0 +1,52 @@
+package be.techniquez.homeautomation.homematic.api;
+
+/**
+ * Listener for the changes of datapoints, for datapoints not covered by a device of the API.
+ * 
+ * @author alex
+ */
+@FunctionalInterface
+public interface DatapointListener {
+
+	/**
+	 * Called when a datapoint changes.
+	 * 
+	 * @param 	address			The address of the channel, as in <code>serial:channel</code>.
+	 * @param 	datapoint		The name of the datapoint, such as <code>STATE</code>.
+	 * @param 	value			The new value.
+	 */
+	void datapointChanged(final String address, final String datapoint, final String value);
+	
+	/**
+	 * Called when a boolean datapoint changes. Passes the value on as a string by default.
+	 * 
+	 * @param 	address			The address of the channel.
+	 * @param 	datapoint		The name of the datapoint.
+	 * @param 	value			The new value.
+	 */
+	default void datapointChanged(final String address, final String datapoint, final boolean value) {
+		this.datapointChanged(address, datapoint, String.valueOf(value));
+	}
+	
+	/**
+	 * Called when an integer datapoint changes. Passes the value on as a string by default.
+	 * 
+	 * @param 	address			The address of the channel.
+	 * @param 	datapoint		The name of the datapoint.
+	 * @param 	value			The new value.
+	 */
+	default void datapointChanged(final String address, final String datapoint, final int value) {
+		this.datapointChanged(address, datapoint, String.valueOf(value));
+	}
+	
+	/**
+	 * Called when a double datapoint changes. Passes the value on as a string by default.
+	 * 
+	 * @param 	address			The address of the channel.
+	 * @param 	datapoint		The name of the datapoint.
+	 * @param 	value			The new value.
+	 */
+	default void datapointChanged(final String address, final String datapoint, final double value) {
+		this.datapointChanged(address, datapoint, String.valueOf(value));
+	}
+}
@@ -0,0 +1,42 @@
+package be.techniquez.homeautomation.homematic.api;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A group of devices that are driven together, see {@link CCU#createGroup(Collection)}.
+ *
+ * @author alex
+ */
+public interface DeviceGroup {
+
+	/**
+	 * Returns the devices in the group.
+	 *
+	 * @return	The devices.
+	 */
+	Collection<Device> getDevices();
+
+	/**
+	 * Switches all devices in the group on or off. Dimmers are dimmed to 100 or 0 percent.
+	 *
+	 * @param 		on		<code>true</code> for on, <code>false</code> for off.
+	 *
+	 * @return		Indicates per device whether the CCU reported the change.
+	 *
+	 * @throws 		IOException		If an IO error occurs.
+	 */
+	Map<Device, Boolean> setOn(final boolean on) throws IOException;
+
+	/**
+	 * Dims all dimmers in the group to the given percentage. Switches are switched on for any percentage above 0.
+	 *
+	 * @param 		percentage		The percentage to dim to. Between 0 and 100.
+	 *
+	 * @return		Indicates per device whether the CCU reported the change.
+	 *
+	 * @throws 		IOException		If an IO error occurs.
+	 */
+	Map<Device, Boolean> setDimmerValue(final int percentage) throws IOException;
+}
@@ -1,5 +1,7 @@
 package be.techniquez.homeautomation.homematic.api;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Dimmer interface.
  * 
@@ -14,6 +16,15 @@ public interface Dimmer extends Device {
 	 */
 	void setDimmerValue(final int percentage);
 	
+	/**
+	 * Dims to the given percentage without blocking the caller.
+	 * 
+	 * @param 	percentage		The percentage to dim to. Between 0 and 100.
+	 * 
+	 * @return	Completes when the CCU has processed the command.
+	 */
+	CompletableFuture<Void> setDimmerValueAsync(final int percentage);
+	
 	/**
 	 * Returns the percentage dimmed.
 	 * 
@@ -0,0 +1,119 @@
+package be.techniquez.homeautomation.homematic.api;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A scene : a set of devices and the state they should be put in. Applying a scene sends all the
+ * state changes to the CCU together, see {@link CCU#applyScene(Scene)}.
+ *
+ * @author alex
+ */
+public final class Scene {
+
+	/** The dimmer values. */
+	private final Map<Dimmer, Integer> dimmerValues;
+
+	/** The switch states. */
+	private final Map<Switch, Boolean> switchStates;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	builder		The builder.
+	 */
+	private Scene(final Builder builder) {
+		this.dimmerValues = Collections.unmodifiableMap(new LinkedHashMap<>(builder.dimmerValues));
+		this.switchStates = Collections.unmodifiableMap(new LinkedHashMap<>(builder.switchStates));
+	}
+
+	/**
+	 * Builder for a {@link Scene}.
+	 *
+	 * @author alex
+	 */
+	public static final class Builder {
+
+		/** The dimmer values. */
+		private final Map<Dimmer, Integer> dimmerValues = new LinkedHashMap<>();
+
+		/** The switch states. */
+		private final Map<Switch, Boolean> switchStates = new LinkedHashMap<>();
+
+		/**
+		 * Create a new instance.
+		 */
+		private Builder() {
+		}
+
+		/**
+		 * Dims the given dimmer to the given percentage.
+		 *
+		 * @param 		dimmer			The dimmer.
+		 * @param 		percentage		The percentage to dim to. Between 0 and 100.
+		 *
+		 * @return		The builder.
+		 */
+		public final Builder dimmer(final Dimmer dimmer, final int percentage) {
+			if (percentage < 0 || percentage > 100) {
+				throw new IllegalArgumentException("Percentage should be between 0 and 100, you specified [" + percentage + "]");
+			}
+
+			this.dimmerValues.put(Objects.requireNonNull(dimmer), percentage);
+
+			return this;
+		}
+
+		/**
+		 * Switches the given switch on or off.
+		 *
+		 * @param 		switchDevice	The switch.
+		 * @param 		on				<code>true</code> for on, <code>false</code> for off.
+		 *
+		 * @return		The builder.
+		 */
+		public final Builder switchState(final Switch switchDevice, final boolean on) {
+			this.switchStates.put(Objects.requireNonNull(switchDevice), on);
+
+			return this;
+		}
+
+		/**
+		 * Builds the scene.
+		 *
+		 * @return	The scene.
+		 */
+		public final Scene build() {
+			return new Scene(this);
+		}
+	}
+
+	/**
+	 * Returns a new builder.
+	 *
+	 * @return	The builder.
+	 */
+	public static final Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Returns the dimmer values.
+	 *
+	 * @return	The percentage per dimmer.
+	 */
+	public final Map<Dimmer, Integer> getDimmerValues() {
+		return this.dimmerValues;
+	}
+
+	/**
+	 * Returns the switch states.
+	 *
+	 * @return	The state per switch, <code>true</code> for on, <code>false</code> for off.
+	 */
+	public final Map<Switch, Boolean> getSwitchStates() {
+		return this.switchStates;
+	}
+}
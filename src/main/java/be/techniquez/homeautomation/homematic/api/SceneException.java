@@ -0,0 +1,43 @@
+package be.techniquez.homeautomation.homematic.api;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thrown when a scene could only be applied partially, as when one of several CCUs failed. Carries the results of the
+ * devices the scene was applied to, the devices that could not be changed are reported as not changed.
+ *
+ * @author alex
+ */
+public final class SceneException extends IOException {
+
+	/** Serial version UID. */
+	private static final long serialVersionUID = 1L;
+
+	/** Indicates per device whether the change was reported. */
+	private final transient Map<Device, Boolean> results;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	message		The message.
+	 * @param 	cause		The first failure.
+	 * @param 	results		Indicates per device whether the change was reported.
+	 */
+	public SceneException(final String message, final Throwable cause, final Map<Device, Boolean> results) {
+		super(message, cause);
+
+		this.results = Collections.unmodifiableMap(new LinkedHashMap<>(results));
+	}
+
+	/**
+	 * Returns the results of the scene.
+	 *
+	 * @return	Indicates per device whether the change was reported.
+	 */
+	public final Map<Device, Boolean> getResults() {
+		return this.results;
+	}
+}
@@ -1,5 +1,7 @@
 package be.techniquez.homeautomation.homematic.api;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Represents an on/off switch.
  * 
@@ -21,6 +23,15 @@ public interface Switch extends Device {
 	 */
 	void setOn(final boolean on);
 	
+	/**
+	 * Sets the state to on or off without blocking the caller.
+	 * 
+	 * @param 	on		Set on or off.
+	 * 
+	 * @return	Completes when the CCU has processed the command.
+	 */
+	CompletableFuture<Void> setOnAsync(final boolean on);
+	
 	/**
 	 * Add a listener.
 	 * 
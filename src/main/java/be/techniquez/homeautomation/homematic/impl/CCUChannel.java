@@ -2,6 +2,8 @@ package be.techniquez.homeautomation.homematic.impl;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import be.techniquez.homeautomation.homematic.api.Device;
 import be.techniquez.homeautomation.homematic.xmlapi.state.State;
@@ -14,12 +16,57 @@ import be.techniquez.homeautomation.homematic.xmlapi.state.State;
 public interface CCUChannel {
 	
 	/**
-	 * Supplied by devices that want to receive events.
+	 * Supplied by devices that want to receive events. The value is passed with the type the CCU sent it with, so it
+	 * does not need to be parsed.
+	 * 
+	 * @author alex
+	 */
+	public interface CCUChannelValueHandler {
+		
+		/**
+		 * Called when an event with a boolean value was received.
+		 * 
+		 * @param 	address			The address.
+		 * @param 	attribute		The attribute.
+		 * @param 	value			The value.
+		 */
+		void onBoolean(final String address, final String attribute, final boolean value);
+		
+		/**
+		 * Called when an event with an integer value was received.
+		 * 
+		 * @param 	address			The address.
+		 * @param 	attribute		The attribute.
+		 * @param 	value			The value.
+		 */
+		void onInt(final String address, final String attribute, final int value);
+		
+		/**
+		 * Called when an event with a double value was received.
+		 * 
+		 * @param 	address			The address.
+		 * @param 	attribute		The attribute.
+		 * @param 	value			The value.
+		 */
+		void onDouble(final String address, final String attribute, final double value);
+		
+		/**
+		 * Called when an event with any other value was received.
+		 * 
+		 * @param 	address			The address.
+		 * @param 	attribute		The attribute.
+		 * @param 	value			The value.
+		 */
+		void onString(final String address, final String attribute, final String value);
+	}
+	
+	/**
+	 * Handler receiving all values as strings, adapted to the {@link CCUChannelValueHandler}.
 	 * 
 	 * @author alex
 	 */
 	@FunctionalInterface
-	public interface CCUChannelEventHandler {
+	public interface CCUChannelEventHandler extends CCUChannelValueHandler {
 		
 		/**
 		 * Called when an event was received.
@@ -29,6 +76,72 @@ public interface CCUChannel {
 		 * @param 	value			The value.
 		 */
 		void eventReceived(final String address, final String attribute, final String value);
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		default void onBoolean(final String address, final String attribute, final boolean value) {
+			this.eventReceived(address, attribute, String.valueOf(value));
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		default void onInt(final String address, final String attribute, final int value) {
+			this.eventReceived(address, attribute, String.valueOf(value));
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		default void onDouble(final String address, final String attribute, final double value) {
+			this.eventReceived(address, attribute, String.valueOf(value));
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		default void onString(final String address, final String attribute, final String value) {
+			this.eventReceived(address, attribute, value);
+		}
+	}
+	
+	/**
+	 * Supplied by the owner of the devices, told about the devices the interface process adds and removes, using the
+	 * <code>listDevices</code>, <code>newDevices</code> and <code>deleteDevices</code> callbacks.
+	 * 
+	 * @author alex
+	 */
+	public interface CCUDeviceHandler {
+		
+		/**
+		 * Returns the addresses of the devices and channels that are known, so the interface process only announces the others.
+		 * 
+		 * @param 	interfaceName	The name of the interface asking, <code>null</code> if it is the only one.
+		 * 
+		 * @return	The known addresses of the devices of the interface, as in <code>serial</code> and <code>serial:channel</code>.
+		 */
+		List<String> listDevices(final String interfaceName);
+		
+		/**
+		 * Called when the interface process announces devices or channels.
+		 * 
+		 * @param 	interfaceName	The name of the interface, <code>null</code> if it is the only one.
+		 * @param 	addresses		The addresses of the new devices and channels.
+		 */
+		void newDevices(final String interfaceName, final List<String> addresses);
+		
+		/**
+		 * Called when the interface process removed devices or channels.
+		 * 
+		 * @param 	interfaceName	The name of the interface, <code>null</code> if it is the only one.
+		 * @param 	addresses		The addresses of the removed devices and channels.
+		 */
+		void deleteDevices(final String interfaceName, final List<String> addresses);
 	}
 	
 	/**
@@ -49,6 +162,24 @@ public interface CCUChannel {
 	 */
 	State getState(final int channelId) throws IOException;
 	
+	/**
+	 * Returns the {@link State} of a channel without blocking the caller.
+	 * 
+	 * @param 		channelId		The ID of the channel.
+	 * 
+	 * @return		Completes with the {@link State} of the channel.
+	 */
+	CompletableFuture<State> getStateAsync(final int channelId);
+	
+	/**
+	 * Returns the values of all the datapoints known to the CCU, using a single request.
+	 * 
+	 * @return		The values of the datapoints, keyed by datapoint name.
+	 * 
+	 * @throws		IOException		In case of an IO error.
+	 */
+	Map<String, String> getAllStates() throws IOException;
+	
 	/**
 	 * Set the new value for the given channel.
 	 * 
@@ -59,6 +190,50 @@ public interface CCUChannel {
 	 */
 	void setState(final int channelId, final String newValue) throws IOException;
 	
+	/**
+	 * Set the new value for the given channel without blocking the caller.
+	 * 
+	 * @param 	channelId		The channel ID.
+	 * @param 	newValue		The new value.
+	 * 
+	 * @return	Completes when the CCU has processed the new value.
+	 */
+	CompletableFuture<Void> setStateAsync(final int channelId, final String newValue);
+	
+	/**
+	 * Sets the new values for the given channels, using as few requests as possible.
+	 * 
+	 * @param 		newValues		The new values, keyed by channel ID.
+	 * 
+	 * @return		Indicates per channel ID whether the CCU reported the change.
+	 * 
+	 * @throws		IOException		In case of an IO error.
+	 */
+	Map<Integer, Boolean> setStates(final Map<Integer, String> newValues) throws IOException;
+	
+	/**
+	 * Reads the value of a datapoint from the interface process, using <code>getValue</code>.
+	 * 
+	 * @param 		address			The address of the channel, as in <code>serial:channel</code>.
+	 * @param 		datapoint		The name of the datapoint, as in <code>LEVEL</code>.
+	 * 
+	 * @return		The value.
+	 * 
+	 * @throws		IOException		In case of an IO error.
+	 */
+	Object getValue(final String address, final String datapoint) throws IOException;
+	
+	/**
+	 * Sets the value of a datapoint on the interface process, using <code>setValue</code>.
+	 * 
+	 * @param 		address			The address of the channel, as in <code>serial:channel</code>.
+	 * @param 		datapoint		The name of the datapoint, as in <code>LEVEL</code>.
+	 * @param 		value			The value, typed as the datapoint expects it.
+	 * 
+	 * @throws		IOException		In case of an IO error.
+	 */
+	void setValue(final String address, final String datapoint, final Object value) throws IOException;
+	
 	/**
 	 * Returns the hostname.
 	 * 
@@ -81,14 +256,76 @@ public interface CCUChannel {
 	 * 
 	 * @param 	handler		The handler.
 	 */
-	void addEventHandler(final CCUChannelEventHandler handler);
+	void addEventHandler(final CCUChannelValueHandler handler);
+	
+	/**
+	 * Adds a handler that only receives the events of the given address.
+	 * 
+	 * @param 	address		The address, as in <code>serial:channel</code>.
+	 * @param 	handler		The handler.
+	 */
+	void addEventHandler(final String address, final CCUChannelValueHandler handler);
 	
 	/**
 	 * Removes a channel handler.
 	 * 
 	 * @param 	handler		The handler.
 	 */
-	void removeEventHandler(final CCUChannelEventHandler handler);
+	void removeEventHandler(final CCUChannelValueHandler handler);
+	
+	/**
+	 * Removes a handler that was added for the given address.
+	 * 
+	 * @param 	address		The address.
+	 * @param 	handler		The handler to remove.
+	 */
+	void removeEventHandler(final String address, final CCUChannelValueHandler handler);
+	
+	/**
+	 * Adds a handler that only receives the events of the given attribute of the addresses matching the pattern.
+	 * 
+	 * @param 	addressPattern		The address, in which <code>*</code> matches any characters.
+	 * @param 	attribute			The attribute, <code>null</code> for all attributes.
+	 * @param 	handler				The handler.
+	 */
+	void addEventHandler(final String addressPattern, final String attribute, final CCUChannelValueHandler handler);
+	
+	/**
+	 * Removes a handler that was added for the given address pattern and attribute.
+	 * 
+	 * @param 	addressPattern		The address pattern.
+	 * @param 	attribute			The attribute, <code>null</code> for all attributes.
+	 * @param 	handler				The handler to remove.
+	 */
+	void removeEventHandler(final String addressPattern, final String attribute, final CCUChannelValueHandler handler);
+	
+	/**
+	 * Passes the last known value of every datapoint to the event handlers, as they were before a restart, without
+	 * asking the CCU. Only done before the channel is connected.
+	 * 
+	 * @return	The number of datapoints restored, <code>0</code> if no values are kept or the channel is connected.
+	 */
+	int restoreStates();
+	
+	/**
+	 * Tells the eventing the states of the devices were set without events, as when they were loaded from the CCU, so
+	 * it no longer drops the events repeating the values it passed on before.
+	 */
+	void statesRefreshed();
+	
+	/**
+	 * Sets the handler called when events may have been lost, because the CCU had to be registered with again.
+	 * 
+	 * @param 	handler		Resynchronizes the states, <code>null</code> for none.
+	 */
+	void setResyncHandler(final Runnable handler);
+	
+	/**
+	 * Sets the handler told about the devices added and removed on the CCU.
+	 * 
+	 * @param 	handler		The device handler, <code>null</code> for none.
+	 */
+	void setDeviceHandler(final CCUDeviceHandler handler);
 	
 	/**
 	 * Indicates whether the channel is connected.
@@ -2,7 +2,8 @@ package be.techniquez.homeautomation.homematic.impl;
 
 import java.io.IOException;
 
-import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUChannelEventHandler;
+import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUChannelValueHandler;
+import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUDeviceHandler;
 
 /**
  * Handles the events coming from the CCU.
@@ -30,14 +31,76 @@ public interface CCUEventLoop {
 	 * 
 	 * @param 	handler		Handler.
 	 */
-	void addEventHandler(final CCUChannelEventHandler handler);
+	void addEventHandler(final CCUChannelValueHandler handler);
+	
+	/**
+	 * Adds a handler that only receives the events of the given address.
+	 * 
+	 * @param 	address		The address, as in <code>serial:channel</code>.
+	 * @param 	handler		The handler.
+	 */
+	void addEventHandler(final String address, final CCUChannelValueHandler handler);
 	
 	/**
 	 * Removes the event handler.
 	 * 
 	 * @param 	handler		The handler to remove.
 	 */
-	void removeEventHandler(final CCUChannelEventHandler handler);
+	void removeEventHandler(final CCUChannelValueHandler handler);
+	
+	/**
+	 * Removes a handler that was added for the given address.
+	 * 
+	 * @param 	address		The address.
+	 * @param 	handler		The handler to remove.
+	 */
+	void removeEventHandler(final String address, final CCUChannelValueHandler handler);
+	
+	/**
+	 * Adds a handler that only receives the events of the given attribute of the addresses matching the pattern.
+	 * 
+	 * @param 	addressPattern		The address, in which <code>*</code> matches any characters.
+	 * @param 	attribute			The attribute, <code>null</code> for all attributes.
+	 * @param 	handler				The handler.
+	 */
+	void addEventHandler(final String addressPattern, final String attribute, final CCUChannelValueHandler handler);
+	
+	/**
+	 * Removes a handler that was added for the given address pattern and attribute.
+	 * 
+	 * @param 	addressPattern		The address pattern.
+	 * @param 	attribute			The attribute, <code>null</code> for all attributes.
+	 * @param 	handler				The handler to remove.
+	 */
+	void removeEventHandler(final String addressPattern, final String attribute, final CCUChannelValueHandler handler);
+	
+	/**
+	 * Passes the last known value of every datapoint to the handlers, as they were before a restart. Only done before
+	 * the event loop is started, so the values replayed never race with, or overwrite, the events of the CCU.
+	 * 
+	 * @return	The number of datapoints restored, <code>0</code> if no values are kept or the event loop is started.
+	 */
+	int restoreStates();
+	
+	/**
+	 * Tells the event loop the states were set without events, as when they were loaded from the CCU, so it no longer
+	 * drops the events repeating the values it passed on before.
+	 */
+	void statesRefreshed();
+	
+	/**
+	 * Sets the handler called when events may have been lost, because the CCU had to be registered with again.
+	 * 
+	 * @param 	handler		Resynchronizes the states, <code>null</code> for none.
+	 */
+	void setResyncHandler(final Runnable handler);
+	
+	/**
+	 * Sets the handler told about the devices added and removed on the CCU.
+	 * 
+	 * @param 	handler		The device handler, <code>null</code> for none.
+	 */
+	void setDeviceHandler(final CCUDeviceHandler handler);
 	
 	/**
 	 * Indicates whether eventing is started.
@@ -0,0 +1,459 @@
+package be.techniquez.homeautomation.homematic.impl;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import be.techniquez.homeautomation.homematic.api.CCU;
+import be.techniquez.homeautomation.homematic.api.DatapointListener;
+import be.techniquez.homeautomation.homematic.api.Device;
+import be.techniquez.homeautomation.homematic.api.DeviceGroup;
+import be.techniquez.homeautomation.homematic.api.Dimmer;
+import be.techniquez.homeautomation.homematic.api.Scene;
+import be.techniquez.homeautomation.homematic.api.SceneException;
+import be.techniquez.homeautomation.homematic.api.Switch;
+import be.techniquez.homeautomation.homematic.impl.channel.CCUChannelImpl;
+import be.techniquez.homeautomation.homematic.impl.device.AbstractDevice;
+import be.techniquez.homeautomation.homematic.impl.event.CCUEventingImpl;
+import be.techniquez.homeautomation.homematic.impl.event.SharedCallbackServer;
+
+/**
+ * Federates several CCUs behind a single {@link CCU}. Their events are received by one {@link SharedCallbackServer},
+ * which routes them using the interface IDs the CCUs were registered with. The CCUs are connected in parallel, and their
+ * devices form one namespace : a device is looked up on every CCU in the order they were added, or on a single one when
+ * its name is qualified with the ID of the CCU, as in <code>site/Kitchen</code>.
+ *
+ * @author alex
+ */
+public final class CCUFederation implements CCU {
+
+	/** Logger. */
+	private static final Logger logger = Logger.getLogger(CCUFederation.class.getName());
+
+	/** The separator between the ID of a CCU and the name of a device. */
+	private static final char ID_SEPARATOR = '/';
+
+	/**
+	 * An action on a CCU.
+	 *
+	 * @author alex
+	 */
+	@FunctionalInterface
+	private interface CCUAction {
+
+		/**
+		 * Runs the action.
+		 *
+		 * @param 	ccu				The CCU.
+		 *
+		 * @throws 	IOException		If an IO error occurs.
+		 */
+		void run(final CCU ccu) throws IOException;
+	}
+
+	/** The callback server shared by the CCUs. */
+	private final SharedCallbackServer server;
+
+	/** The CCUs, keyed by ID, replaced as a whole when one is added. */
+	private volatile Map<String, CCU> ccus = Collections.emptyMap();
+
+	/**
+	 * Create a new instance, receiving the events on an XML-RPC server listening on all addresses.
+	 *
+	 * @param 	port		The port the events are received on.
+	 */
+	public CCUFederation(final int port) {
+		this(new SharedCallbackServer(port));
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	server		The callback server shared by the CCUs.
+	 */
+	public CCUFederation(final SharedCallbackServer server) {
+		this.server = Objects.requireNonNull(server);
+	}
+
+	/**
+	 * Adds a CCU, its events are received by the shared callback server.
+	 *
+	 * @param 		id				The ID of the CCU, unique within the federation.
+	 * @param 		hostname		The host name of the CCU.
+	 * @param 		interfaces		The interfaces to receive the events of, at least one.
+	 *
+	 * @return		The CCU.
+	 */
+	public final CCU addCCU(final String id, final String hostname, final CCUInterface... interfaces) {
+		final CCU ccu = new CCUImpl(new CCUChannelImpl(hostname, new CCUEventingImpl(hostname, id, Arrays.asList(interfaces), this.server), interfaces));
+
+		this.add(id, ccu);
+
+		return ccu;
+	}
+
+	/**
+	 * Adds a CCU.
+	 *
+	 * @param 	id		The ID of the CCU, unique within the federation.
+	 * @param 	ccu		The CCU.
+	 */
+	synchronized final void add(final String id, final CCU ccu) {
+		if (id == null || id.isEmpty() || id.indexOf(ID_SEPARATOR) >= 0) {
+			throw new IllegalArgumentException("Invalid CCU ID [" + id + "], it should not be empty nor contain [" + ID_SEPARATOR + "]");
+		}
+
+		if (this.ccus.containsKey(id)) {
+			throw new IllegalArgumentException("There is already a CCU with ID [" + id + "]");
+		}
+
+		if (this.isConnected()) {
+			throw new IllegalStateException("Cannot add CCU [" + id + "] while connected.");
+		}
+
+		final Map<String, CCU> added = new LinkedHashMap<>(this.ccus);
+		added.put(id, Objects.requireNonNull(ccu));
+
+		this.ccus = Collections.unmodifiableMap(added);
+	}
+
+	/**
+	 * Returns the CCU with the given ID.
+	 *
+	 * @param 		id		The ID.
+	 *
+	 * @return		The CCU, <code>null</code> if none.
+	 */
+	public final CCU getCCU(final String id) {
+		return this.ccus.get(id);
+	}
+
+	/**
+	 * Returns the IDs of the CCUs, in the order they were added.
+	 *
+	 * @return	The IDs.
+	 */
+	public final Collection<String> getCCUIds() {
+		return this.ccus.keySet();
+	}
+
+	/**
+	 * Returns the shared callback server.
+	 *
+	 * @return	The server.
+	 */
+	public final SharedCallbackServer getServer() {
+		return this.server;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The CCUs are connected in parallel. When some cannot be connected the others stay connected, and the error of
+	 * the first one is thrown once all were tried.
+	 */
+	@Override
+	public synchronized final void connect() throws IOException {
+		if (this.ccus.isEmpty()) {
+			throw new IllegalStateException("Add at least one CCU before connecting.");
+		}
+
+		this.server.start();
+		this.forEachCCU("connect", ccu -> {
+			if (!ccu.isConnected()) {
+				ccu.connect();
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized final void disconnect() throws IOException {
+		try {
+			this.forEachCCU("disconnect", ccu -> {
+				if (ccu.isConnected()) {
+					ccu.disconnect();
+				}
+			});
+		} finally {
+			this.server.stop();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Only <code>true</code> when all CCUs are connected.
+	 */
+	@Override
+	public final boolean isConnected() {
+		final Map<String, CCU> current = this.ccus;
+
+		return !current.isEmpty() && current.values().stream().allMatch(CCU::isConnected);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void refreshStates() throws IOException {
+		this.forEachCCU("refresh the states of", CCU::refreshStates);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void refresh() throws IOException {
+		this.forEachCCU("refresh the devices of", CCU::refresh);
+	}
+
+	/**
+	 * Runs the action on all CCUs in parallel, waiting for all of them.
+	 *
+	 * @param 	description		Describes the action, for the errors.
+	 * @param 	action			The action.
+	 *
+	 * @throws 	IOException		The first IO error, if any.
+	 */
+	private final void forEachCCU(final String description, final CCUAction action) throws IOException {
+		final Map<String, CCU> current = this.ccus;
+
+		if (current.isEmpty()) {
+			return;
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(current.size());
+
+		try {
+			final Map<String, CompletableFuture<Void>> results = new LinkedHashMap<>();
+
+			current.forEach((id, ccu) -> results.put(id, CompletableFuture.runAsync(() -> {
+				try {
+					action.run(ccu);
+				} catch (IOException e) {
+					throw new CompletionException(e);
+				}
+			}, executor)));
+
+			Throwable failure = null;
+
+			for (final Map.Entry<String, CompletableFuture<Void>> result : results.entrySet()) {
+				try {
+					result.getValue().join();
+				} catch (CompletionException e) {
+					if (logger.isLoggable(Level.WARNING)) {
+						logger.log(Level.WARNING, "CCU federation : could not " + description + " CCU [" + result.getKey() + "] : [" + e.getCause().getMessage() + "]", e.getCause());
+					}
+
+					if (failure == null) {
+						failure = e.getCause();
+					} else {
+						failure.addSuppressed(e.getCause());
+					}
+				}
+			}
+
+			if (failure instanceof IOException) {
+				throw (IOException)failure;
+			} else if (failure instanceof RuntimeException) {
+				throw (RuntimeException)failure;
+			} else if (failure != null) {
+				throw new IllegalStateException(failure);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final List<Dimmer> getDimmers() {
+		return Collections.unmodifiableList(this.ccus.values().stream().flatMap(ccu -> ccu.getDimmers().stream()).collect(Collectors.toList()));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final List<Switch> getSwitches() {
+		return Collections.unmodifiableList(this.ccus.values().stream().flatMap(ccu -> ccu.getSwitches().stream()).collect(Collectors.toList()));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The name can be qualified with the ID of the CCU, as in <code>site/Kitchen</code>.
+	 */
+	@Override
+	public final Dimmer getDimmer(final String name) {
+		final CCU owner = this.qualifier(name);
+
+		if (owner != null) {
+			return owner.getDimmer(name.substring(name.indexOf(ID_SEPARATOR) + 1));
+		}
+
+		for (final CCU ccu : this.ccus.values()) {
+			final Dimmer dimmer = ccu.getDimmer(name);
+
+			if (dimmer != null) {
+				return dimmer;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The name can be qualified with the ID of the CCU, as in <code>site/Kitchen</code>.
+	 */
+	@Override
+	public final Switch getSwitch(final String name) {
+		final CCU owner = this.qualifier(name);
+
+		if (owner != null) {
+			return owner.getSwitch(name.substring(name.indexOf(ID_SEPARATOR) + 1));
+		}
+
+		for (final CCU ccu : this.ccus.values()) {
+			final Switch switchDevice = ccu.getSwitch(name);
+
+			if (switchDevice != null) {
+				return switchDevice;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the CCU the given device name is qualified with.
+	 *
+	 * @param 		name		The name of the device.
+	 *
+	 * @return		The CCU, <code>null</code> if the name is not qualified with the ID of a CCU.
+	 */
+	private final CCU qualifier(final String name) {
+		final int separator = name != null ? name.indexOf(ID_SEPARATOR) : -1;
+
+		return separator > 0 ? this.ccus.get(name.substring(0, separator)) : null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final DeviceGroup createGroup(final Collection<? extends Device> devices) {
+		return new DeviceGroupImpl(this, devices);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The scene is split per CCU, each CCU gets the changes of its own devices. When some CCUs fail the others still
+	 * get their changes, and a {@link SceneException} carrying the results of all devices is thrown once all were tried.
+	 */
+	@Override
+	public final Map<Device, Boolean> applyScene(final Scene scene) throws IOException {
+		final Map<String, CCU> current = this.ccus;
+		final Map<String, Scene.Builder> scenes = new LinkedHashMap<>();
+
+		scene.getDimmerValues().forEach((dimmer, percentage) -> scenes.computeIfAbsent(owner(current, dimmer), id -> Scene.builder()).dimmer(dimmer, percentage));
+		scene.getSwitchStates().forEach((switchDevice, on) -> scenes.computeIfAbsent(owner(current, switchDevice), id -> Scene.builder()).switchState(switchDevice, on));
+
+		final Map<Device, Boolean> results = new LinkedHashMap<>();
+		Exception failure = null;
+
+		for (final Map.Entry<String, Scene.Builder> ccuScene : scenes.entrySet()) {
+			final Scene partialScene = ccuScene.getValue().build();
+
+			try {
+				results.putAll(current.get(ccuScene.getKey()).applyScene(partialScene));
+			} catch (IOException | RuntimeException e) {
+				if (logger.isLoggable(Level.WARNING)) {
+					logger.log(Level.WARNING, "CCU federation : could not apply the scene on CCU [" + ccuScene.getKey() + "] : [" + e.getMessage() + "]", e);
+				}
+
+				partialScene.getDimmerValues().keySet().forEach(dimmer -> results.put(dimmer, Boolean.FALSE));
+				partialScene.getSwitchStates().keySet().forEach(switchDevice -> results.put(switchDevice, Boolean.FALSE));
+
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+
+		if (failure != null) {
+			throw new SceneException("Could not apply the scene on all CCUs : [" + failure.getMessage() + "]", failure, results);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Returns the ID of the CCU the given device belongs to. The device is looked up by address in the index of each CCU,
+	 * and must be the very instance found there : the CCUs can have devices with the same address.
+	 *
+	 * @param 		ccus		The CCUs, by ID.
+	 * @param 		device		The device.
+	 *
+	 * @return		The ID of the CCU.
+	 */
+	private static final String owner(final Map<String, CCU> ccus, final Device device) {
+		final String address = device instanceof AbstractDevice ? ((AbstractDevice)device).getAddress() : null;
+
+		for (final Map.Entry<String, CCU> ccu : ccus.entrySet()) {
+			final boolean owned;
+
+			if (ccu.getValue() instanceof CCUImpl) {
+				owned = address != null && ((CCUImpl)ccu.getValue()).getDeviceByAddress(address) == device;
+			} else {
+				owned = ccu.getValue().getDimmers().contains(device) || ccu.getValue().getSwitches().contains(device);
+			}
+
+			if (owned) {
+				return ccu.getKey();
+			}
+		}
+
+		throw new IllegalArgumentException("Device [" + device + "] does not belong to a CCU of this federation.");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The listener is added to the CCUs added so far.
+	 */
+	@Override
+	public final void addDatapointListener(final String addressPattern, final String datapoint, final DatapointListener listener) {
+		this.ccus.values().forEach(ccu -> ccu.addDatapointListener(addressPattern, datapoint, listener));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void removeDatapointListener(final String addressPattern, final String datapoint, final DatapointListener listener) {
+		this.ccus.values().forEach(ccu -> ccu.removeDatapointListener(addressPattern, datapoint, listener));
+	}
+}
@@ -2,15 +2,37 @@ package be.techniquez.homeautomation.homematic.impl;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import be.techniquez.homeautomation.homematic.api.CCU;
+import be.techniquez.homeautomation.homematic.api.DatapointListener;
 import be.techniquez.homeautomation.homematic.api.Device;
+import be.techniquez.homeautomation.homematic.api.DeviceGroup;
 import be.techniquez.homeautomation.homematic.api.Dimmer;
+import be.techniquez.homeautomation.homematic.api.Scene;
 import be.techniquez.homeautomation.homematic.api.Switch;
+import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUChannelValueHandler;
+import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUDeviceHandler;
+import be.techniquez.homeautomation.homematic.impl.device.AbstractDevice;
+import be.techniquez.homeautomation.homematic.impl.device.DimmerImpl;
 
 /**
  * CCU implementation, uses XMLRPC.
@@ -21,19 +43,133 @@ public final class CCUImpl implements CCU {
 	
 	/** Logger instance. */
 	private static final Logger logger = Logger.getLogger(CCUImpl.class.getName());
+	
+	/** The maximum number of devices loading their state in parallel. */
+	private static final int STATE_LOADING_PARALLELISM = 4;
+	
+	/** The wildcard for all datapoints. */
+	private static final String ALL_DATAPOINTS = "*";
+	
+	/** The separator between the serial number and the channel number in an address. */
+	private static final char CHANNEL_SEPARATOR = ':';
+	
+	/** How long the thread applying the device changes is kept when idle, in seconds. */
+	private static final long DEVICE_UPDATES_KEEP_ALIVE = 60;
 
 	/** The channel. */
 	private CCUChannel channel;
 	
-	/** The dimmers. */
-	private final List<Dimmer> dimmers = new ArrayList<>();
+	/** The dimmers and switches, replaced as a whole when devices are added and removed. */
+	private volatile DeviceIndex devices = DeviceIndex.EMPTY;
 	
-	/** The switches. */
-	private final List<Switch> switches = new ArrayList<>();
+	/** Applies the devices added and removed on the CCU one change at a time, so the CCU gets its answer right away. */
+	private final ThreadPoolExecutor deviceUpdates;
+	
+	/** Told by the channel about the devices added and removed on the CCU. */
+	private final CCUDeviceHandler deviceHandler = new CCUDeviceHandler() {
+		@Override
+		public final List<String> listDevices(final String interfaceName) {
+			final Set<String> addresses = new LinkedHashSet<>();
+			
+			devices.getDevices().stream().filter(device -> isAttachedTo(device, interfaceName)).forEach(device -> {
+				addresses.add(device.getSerialNumber());
+				
+				if (device instanceof AbstractDevice) {
+					addresses.add(((AbstractDevice)device).getAddress());
+				}
+			});
+			
+			return new ArrayList<>(addresses);
+		}
+		
+		@Override
+		public final void newDevices(final String interfaceName, final List<String> addresses) {
+			final Set<String> serials = new LinkedHashSet<>();
+			
+			addresses.forEach(address -> serials.add(serial(address)));
+			
+			deviceUpdates.execute(() -> addDevices(serials));
+		}
+		
+		@Override
+		public final void deleteDevices(final String interfaceName, final List<String> addresses) {
+			final Set<String> removed = new HashSet<>(addresses);
+			
+			deviceUpdates.execute(() -> removeDevices(interfaceName, removed));
+		}
+	};
 	
 	/** Indicates whether the CCU is connected. */
 	private volatile boolean connected;
 	
+	/**
+	 * Passes the events of the channel on to a datapoint listener. Equal when the listeners are, so it can be removed again.
+	 * 
+	 * @author alex
+	 */
+	private static final class DatapointHandler implements CCUChannelValueHandler {
+		
+		/** The listener. */
+		private final DatapointListener listener;
+		
+		/**
+		 * Create a new instance.
+		 * 
+		 * @param 	listener		The listener.
+		 */
+		private DatapointHandler(final DatapointListener listener) {
+			this.listener = listener;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public final void onBoolean(final String address, final String attribute, final boolean value) {
+			this.listener.datapointChanged(address, attribute, value);
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public final void onInt(final String address, final String attribute, final int value) {
+			this.listener.datapointChanged(address, attribute, value);
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public final void onDouble(final String address, final String attribute, final double value) {
+			this.listener.datapointChanged(address, attribute, value);
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public final void onString(final String address, final String attribute, final String value) {
+			this.listener.datapointChanged(address, attribute, value);
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public final boolean equals(final Object other) {
+			return other instanceof DatapointHandler && ((DatapointHandler)other).listener.equals(this.listener);
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public final int hashCode() {
+			return this.listener.hashCode();
+		}
+	}
+	
 	/**
 	 * Create a new instance.
 	 * 
@@ -41,10 +177,144 @@ public final class CCUImpl implements CCU {
 	 */
 	public CCUImpl(final CCUChannel channel) {
 		this.channel = channel;
+		this.channel.setResyncHandler(this::resync);
+		this.channel.setDeviceHandler(this.deviceHandler);
+		
+		this.deviceUpdates = new ThreadPoolExecutor(1, 1, DEVICE_UPDATES_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+			final Thread thread = new Thread(runnable, "ccu-device-updates");
+			thread.setDaemon(true);
+			
+			return thread;
+		});
+		
+		this.deviceUpdates.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * Returns the serial number in the given address.
+	 * 
+	 * @param 		address		The address, as in <code>serial</code> or <code>serial:channel</code>.
+	 * 
+	 * @return		The serial number.
+	 */
+	private static final String serial(final String address) {
+		final int separator = address.indexOf(CHANNEL_SEPARATOR);
+		
+		return separator >= 0 ? address.substring(0, separator) : address;
+	}
+	
+	/**
+	 * Indicates whether the device is attached to the given interface.
+	 * 
+	 * @param 		device				The device.
+	 * @param 		interfaceName		The name of the interface, <code>null</code> for any interface.
+	 * 
+	 * @return		<code>true</code> if it is.
+	 */
+	private static final boolean isAttachedTo(final Device device, final String interfaceName) {
+		return interfaceName == null || (device instanceof AbstractDevice && interfaceName.equals(((AbstractDevice)device).getInterfaceName()));
+	}
+	
+	/**
+	 * Adds the devices of the given serial numbers that we do not know yet, and loads their state. The XML-API cannot
+	 * list a single device, so the device list is fetched, but only the new devices are kept : the others are disposed
+	 * of right away, the devices we know are left alone.
+	 * 
+	 * @param 	serials		The serial numbers announced by the CCU.
+	 */
+	private synchronized final void addDevices(final Set<String> serials) {
+		if (!this.isConnected()) {
+			return;
+		}
+		
+		serials.removeIf(this.devices::containsSerial);
+		
+		if (serials.isEmpty()) {
+			return;
+		}
+		
+		try {
+			final List<Device> added = new ArrayList<>();
+			
+			for (final Device device : this.channel.getDevices()) {
+				if (serials.contains(device.getSerialNumber()) && (device instanceof Dimmer || device instanceof Switch)) {
+					added.add(device);
+				} else if (device instanceof AbstractDevice) {
+					((AbstractDevice)device).dispose();
+				}
+			}
+			
+			this.devices = this.devices.with(added);
+			this.loadStates(added);
+			
+			if (logger.isLoggable(Level.INFO)) {
+				logger.log(Level.INFO, "CCU [" + this.channel.getBaseURL() + "] : added [" + added.size() + "] devices for serial numbers [" + serials + "]");
+			}
+		} catch (IOException | RuntimeException e) {
+			if (logger.isLoggable(Level.WARNING)) {
+				logger.log(Level.WARNING, "CCU [" + this.channel.getBaseURL() + "] : could not add the devices [" + serials + "] : [" + e.getMessage() + "]", e);
+			}
+		}
+	}
+	
+	/**
+	 * Removes the devices with the given serial numbers or addresses, and stops their events.
+	 * 
+	 * @param 	interfaceName	The name of the interface that removed them, <code>null</code> for any interface.
+	 * @param 	addresses		The addresses removed by the CCU, as in <code>serial</code> or <code>serial:channel</code>.
+	 */
+	private synchronized final void removeDevices(final String interfaceName, final Set<String> addresses) {
+		if (!this.isConnected()) {
+			return;
+		}
+		
+		final Set<Device> removed = new LinkedHashSet<>();
+		
+		for (final String address : addresses) {
+			final Device device = this.devices.getDeviceByAddress(address);
+			
+			if (device != null) {
+				removed.add(device);
+			} else {
+				removed.addAll(this.devices.getDevicesBySerial(address));
+			}
+		}
+		
+		removed.removeIf(device -> !isAttachedTo(device, interfaceName));
+		
+		if (!removed.isEmpty()) {
+			this.devices = this.devices.without(removed);
+			
+			removed.stream()
+				   .filter(device -> device instanceof AbstractDevice)
+				   .forEach(device -> ((AbstractDevice)device).dispose());
+			
+			if (logger.isLoggable(Level.INFO)) {
+				logger.log(Level.INFO, "CCU [" + this.channel.getBaseURL() + "] : removed [" + removed.size() + "] devices for addresses [" + addresses + "]");
+			}
+		}
+	}
+	
+	/**
+	 * Resynchronizes the states after events were lost, using a single request.
+	 */
+	private final void resync() {
+		try {
+			this.refreshStates();
+		} catch (IOException | RuntimeException e) {
+			if (logger.isLoggable(Level.WARNING)) {
+				logger.log(Level.WARNING, "CCU [" + this.channel.getBaseURL() + "] : could not resynchronize the states : [" + e.getMessage() + "]", e);
+			}
+		}
 	}
 	
 	/**
 	 * {@inheritDoc}
+	 * 
+	 * The journaled states are restored before the eventing starts, so they cannot overwrite the events received
+	 * since. The states are loaded from the CCU once it is started, so no change is missed in between. The devices
+	 * are only published once their states are loaded : when connecting fails, they are disposed of and the eventing
+	 * is stopped again, so the next attempt starts afresh.
 	 */
 	@Override
 	public synchronized final void connect() throws IOException {
@@ -53,27 +323,42 @@ public final class CCUImpl implements CCU {
 				logger.log(Level.INFO, "CCU [" + this.channel.getBaseURL() + "] : loading devices.");
 			}
 			
-			this.channel.connect();
-			
+			final long start = System.nanoTime();
 			final List<Device> devices = this.channel.getDevices();
+			final long devicesLoaded = System.nanoTime();
 			
 			if (logger.isLoggable(Level.INFO)) {
 				logger.log(Level.INFO, "Device list received, processing.");
 			}
 			
-			devices.stream()
-				   .forEach((device) -> {
-					   if (device instanceof Dimmer) {
-						   this.dimmers.add((Dimmer)device);
-					   } else if (device instanceof Switch) {
-						   this.switches.add((Switch)device);
-					   }
-				   });
+			final int restored;
+			final long eventingStarted;
+			
+			try {
+				restored = this.channel.restoreStates();
+				
+				this.channel.connect();
+				
+				eventingStarted = System.nanoTime();
+				
+				this.loadStates(devices);
+			} catch (IOException | RuntimeException e) {
+				this.abortConnect(devices, e);
+				
+				throw e;
+			}
 			
+			final long statesLoaded = System.nanoTime();
+			
+			this.devices = new DeviceIndex(devices);
 			this.connected = true;
 			
 			if (logger.isLoggable(Level.INFO)) {
-				logger.log(Level.INFO, "Found : [" + this.dimmers.size() + "] dimmers, [" + this.switches.size() + "] switches.");
+				logger.log(Level.INFO, "Found : [" + this.devices.getDimmers().size() + "] dimmers, [" + this.devices.getSwitches().size() + "] switches, restored [" + restored + "] datapoints.");
+				logger.log(Level.INFO, "CCU [" + this.channel.getBaseURL() + "] : connected in [" + millis(start, statesLoaded) + "] ms : " 
+									 + "device list [" + millis(start, devicesLoaded) + "] ms, "
+									 + "eventing [" + millis(devicesLoaded, eventingStarted) + "] ms, "
+									 + "states [" + millis(eventingStarted, statesLoaded) + "] ms.");
 			}
 		} else {
 			if (logger.isLoggable(Level.INFO)) {
@@ -82,15 +367,122 @@ public final class CCUImpl implements CCU {
 		}
 	}
 	
+	/**
+	 * Undoes a connect that failed : disposes of the devices that were created, and disconnects the channel. That also
+	 * happens when the eventing did not start, so whatever a half-done start left behind is released.
+	 * 
+	 * @param 	devices		The devices.
+	 * @param 	failure		Why connecting failed, receives the errors of stopping the eventing.
+	 */
+	private final void abortConnect(final List<Device> devices, final Exception failure) {
+		if (logger.isLoggable(Level.WARNING)) {
+			logger.log(Level.WARNING, "CCU [" + this.channel.getBaseURL() + "] : could not connect, disposing of [" + devices.size() + "] devices : [" + failure.getMessage() + "]");
+		}
+		
+		devices.stream()
+			   .filter(device -> device instanceof AbstractDevice)
+			   .forEach(device -> ((AbstractDevice)device).dispose());
+		
+		try {
+			this.channel.disconnect();
+		} catch (IOException | RuntimeException e) {
+			failure.addSuppressed(e);
+		}
+	}
+	
+	/**
+	 * Loads the initial state of the given devices. All states are fetched using a single request, the devices
+	 * that are not covered by it are loaded using one request per physical device, with at most 
+	 * {@link #STATE_LOADING_PARALLELISM} requests in parallel. When the single request fails, the devices whose state
+	 * was restored from the journal keep that state rather than being loaded one by one. The eventing is told about
+	 * the states once they are set, even when loading some of them failed.
+	 * 
+	 * The eventing is already delivering events at this point, so that no change is missed between loading a state and
+	 * receiving the events. A device drops a loaded value when it applied an event after the value was requested, the
+	 * event being newer, see {@link AbstractDevice#refreshState(Map, long)}.
+	 * 
+	 * @param 	devices		The devices.
+	 */
+	private final void loadStates(final List<Device> devices) {
+		try {
+			this.loadDeviceStates(devices);
+		} finally {
+			this.channel.statesRefreshed();
+		}
+	}
+	
+	/**
+	 * Loads the initial state of the given devices, see {@link #loadStates(List)}.
+	 * 
+	 * @param 	devices		The devices.
+	 */
+	private final void loadDeviceStates(final List<Device> devices) {
+		final List<AbstractDevice> toLoad = devices.stream()
+												   .filter(device -> device instanceof AbstractDevice)
+												   .map(device -> (AbstractDevice)device)
+												   .collect(Collectors.toList());
+		
+		if (!toLoad.isEmpty()) {
+			try {
+				final long requestedAt = System.nanoTime();
+				final Map<String, String> datapointValues = this.channel.getAllStates();
+				
+				toLoad.removeIf(device -> device.refreshState(datapointValues, requestedAt));
+			} catch (IOException | IllegalStateException e) {
+				if (logger.isLoggable(Level.WARNING)) {
+					logger.log(Level.WARNING, "Could not load all states at once, falling back to loading them per device : [" + e.getMessage() + "]", e);
+				}
+				
+				toLoad.removeIf(AbstractDevice::isStateKnown);
+			}
+		}
+		
+		if (!toLoad.isEmpty()) {
+			final Map<String, List<AbstractDevice>> toLoadPerSerial = toLoad.stream()
+																			.collect(Collectors.groupingBy(AbstractDevice::getSerialNumber, LinkedHashMap::new, Collectors.toList()));
+			
+			if (logger.isLoggable(Level.INFO)) {
+				logger.log(Level.INFO, "Loading the state of [" + toLoad.size() + "] devices separately, using [" + toLoadPerSerial.size() + "] requests.");
+			}
+			
+			final ExecutorService executor = Executors.newFixedThreadPool(Math.min(STATE_LOADING_PARALLELISM, toLoadPerSerial.size()));
+			
+			try {
+				CompletableFuture.allOf(toLoadPerSerial.values()
+													   .stream()
+													   .map(siblings -> CompletableFuture.runAsync(() -> AbstractDevice.loadStates(siblings), executor))
+													   .toArray(CompletableFuture[]::new))
+								 .join();
+			} catch (CompletionException e) {
+				if (logger.isLoggable(Level.WARNING)) {
+					logger.log(Level.WARNING, "Error loading the device states : [" + e.getCause().getMessage() + "]", e.getCause());
+				}
+				
+				throw new IllegalStateException("Error loading the device states : [" + e.getCause().getMessage() + "]", e.getCause());
+			} finally {
+				executor.shutdown();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of milliseconds between the given timestamps.
+	 * 
+	 * @param 		start		The start, in nanoseconds.
+	 * @param 		end			The end, in nanoseconds.
+	 * 
+	 * @return		The number of milliseconds.
+	 */
+	private static final long millis(final long start, final long end) {
+		return TimeUnit.NANOSECONDS.toMillis(end - start);
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public final Dimmer getDimmer(final String name) {
-		return this.dimmers.stream()
-						   .filter((dimmer) -> dimmer.getName() != null && dimmer.getName().equals(name))
-						   .findFirst()
-						   .orElse(null);
+		return this.devices.getDimmer(name);
 	}
 	
 	/**
@@ -98,7 +490,7 @@ public final class CCUImpl implements CCU {
 	 */
 	@Override
 	public final List<Dimmer> getDimmers() {
-		return Collections.unmodifiableList(this.dimmers);
+		return this.devices.getDimmers();
 	}
 
 	/**
@@ -106,7 +498,7 @@ public final class CCUImpl implements CCU {
 	 */
 	@Override
 	public final List<Switch> getSwitches() {
-		return Collections.unmodifiableList(this.switches);
+		return this.devices.getSwitches();
 	}
 
 	/**
@@ -114,10 +506,40 @@ public final class CCUImpl implements CCU {
 	 */
 	@Override
 	public final Switch getSwitch(String name) {
-		return this.switches.stream()
-				   .filter((switchDevice) -> switchDevice.getName() != null && switchDevice.getName().equals(name))
-				   .findFirst()
-				   .orElse(null);
+		return this.devices.getSwitch(name);
+	}
+	
+	/**
+	 * Returns the device with the given address.
+	 * 
+	 * @param 		address		The address, as in <code>serial:channel</code>.
+	 * 
+	 * @return		The device, <code>null</code> if none.
+	 */
+	public final Device getDeviceByAddress(final String address) {
+		return this.devices.getDeviceByAddress(address);
+	}
+	
+	/**
+	 * Returns the devices of the physical device with the given serial number, one per channel.
+	 * 
+	 * @param 		serialNumber		The serial number.
+	 * 
+	 * @return		The devices, empty if none.
+	 */
+	public final List<Device> getDevicesBySerial(final String serialNumber) {
+		return this.devices.getDevicesBySerial(serialNumber);
+	}
+	
+	/**
+	 * Returns the device with the given ISE ID.
+	 * 
+	 * @param 		iseId		The ISE ID.
+	 * 
+	 * @return		The device, <code>null</code> if none.
+	 */
+	public final Device getDeviceByIseId(final int iseId) {
+		return this.devices.getDeviceByIseId(iseId);
 	}
 
 	/**
@@ -133,8 +555,14 @@ public final class CCUImpl implements CCU {
 			this.channel.disconnect();
 			this.connected = false;
 			
-			this.dimmers.clear();
-			this.switches.clear();
+			final DeviceIndex disconnected = this.devices;
+			
+			this.devices = DeviceIndex.EMPTY;
+			
+			disconnected.getDevices()
+						.stream()
+						.filter(device -> device instanceof AbstractDevice)
+						.forEach(device -> ((AbstractDevice)device).dispose());
 			
 			if (logger.isLoggable(Level.INFO)) {
 				logger.log(Level.INFO, "CCU [" + this.channel.getBaseURL() + "] : disconnected.");
@@ -146,6 +574,181 @@ public final class CCUImpl implements CCU {
 		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized final void refreshStates() throws IOException {
+		if (this.isConnected()) {
+			final long requestedAt = System.nanoTime();
+			final Map<String, String> datapointValues = this.channel.getAllStates();
+			
+			final long refreshed = this.devices.getDevices()
+											   .stream()
+											   .filter(device -> device instanceof AbstractDevice)
+											   .filter(device -> ((AbstractDevice)device).refreshState(datapointValues, requestedAt))
+											   .count();
+			
+			this.channel.statesRefreshed();
+			
+			if (logger.isLoggable(Level.INFO)) {
+				logger.log(Level.INFO, "CCU [" + this.channel.getBaseURL() + "] : refreshed [" + refreshed + "] devices from [" + datapointValues.size() + "] datapoints.");
+			}
+		} else {
+			if (logger.isLoggable(Level.WARNING)) {
+				logger.log(Level.WARNING, "Tried to refresh the states while not connected.");
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The devices are matched on their address. A device is kept when it is still of the same type, on the same
+	 * interface and with the same ISE ID, otherwise it is retired and the new one takes its place. Only the states
+	 * of the added devices are loaded.
+	 */
+	@Override
+	public synchronized final void refresh() throws IOException {
+		if (!this.isConnected()) {
+			if (logger.isLoggable(Level.WARNING)) {
+				logger.log(Level.WARNING, "Tried to refresh the devices while not connected.");
+			}
+			
+			return;
+		}
+		
+		final Map<String, Device> retired = new HashMap<>();
+		
+		this.devices.getDevices().forEach(device -> retired.put(key(device), device));
+		
+		final List<Device> refreshed = new ArrayList<>();
+		final List<Device> added = new ArrayList<>();
+		int renamed = 0;
+		
+		for (final Device device : this.channel.getDevices()) {
+			final Device known = retired.get(key(device));
+			
+			if (known != null && isSameChannel(known, device)) {
+				retired.remove(key(device));
+				
+				if (!Objects.equals(known.getName(), device.getName())) {
+					((AbstractDevice)known).rename(device.getName());
+					renamed++;
+				}
+				
+				if (device instanceof AbstractDevice) {
+					((AbstractDevice)device).dispose();
+				}
+				
+				refreshed.add(known);
+			} else {
+				refreshed.add(device);
+				added.add(device);
+			}
+		}
+		
+		this.devices = new DeviceIndex(refreshed);
+		
+		retired.values()
+			   .stream()
+			   .filter(device -> device instanceof AbstractDevice)
+			   .forEach(device -> ((AbstractDevice)device).dispose());
+		
+		this.loadStates(added);
+		
+		if (logger.isLoggable(Level.INFO)) {
+			logger.log(Level.INFO, "CCU [" + this.channel.getBaseURL() + "] : refreshed the devices : added [" + added.size() + "], removed [" + retired.size() + "], renamed [" + renamed + "], kept [" + (refreshed.size() - added.size()) + "]");
+		}
+	}
+	
+	/**
+	 * Returns the key a device is matched on when refreshing, its address.
+	 * 
+	 * @param 		device		The device.
+	 * 
+	 * @return		The key, the serial number if the address is not known.
+	 */
+	private static final String key(final Device device) {
+		return device instanceof AbstractDevice ? ((AbstractDevice)device).getAddress() : device.getSerialNumber();
+	}
+	
+	/**
+	 * Indicates whether a device of the new device list is the same channel as a known device, so the known one can be kept.
+	 * Devices that were not created by this CCU are only the same when they have the same name, as they cannot be renamed.
+	 * 
+	 * @param 		known			The known device.
+	 * @param 		device			The device of the new device list.
+	 * 
+	 * @return		<code>true</code> if the known device can be kept.
+	 */
+	private static final boolean isSameChannel(final Device known, final Device device) {
+		if (known.getClass() != device.getClass()) {
+			return false;
+		}
+		
+		if (known instanceof AbstractDevice) {
+			return ((AbstractDevice)known).getIseId() == ((AbstractDevice)device).getIseId()
+				&& ((AbstractDevice)known).getInterfaceName().equals(((AbstractDevice)device).getInterfaceName());
+		}
+		
+		return Objects.equals(known.getName(), device.getName());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final DeviceGroup createGroup(final Collection<? extends Device> devices) {
+		return new DeviceGroupImpl(this, devices);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final Map<Device, Boolean> applyScene(final Scene scene) throws IOException {
+		final Map<Integer, Device> devicesById = new LinkedHashMap<>();
+		final Map<Integer, String> newValues = new LinkedHashMap<>();
+		
+		scene.getDimmerValues().forEach((dimmer, percentage) -> {
+			final int iseId = iseId(dimmer);
+			
+			devicesById.put(iseId, dimmer);
+			newValues.put(iseId, DimmerImpl.toValue(percentage));
+		});
+		
+		scene.getSwitchStates().forEach((switchDevice, on) -> {
+			final int iseId = iseId(switchDevice);
+			
+			devicesById.put(iseId, switchDevice);
+			newValues.put(iseId, String.valueOf(on));
+		});
+		
+		final Map<Device, Boolean> results = new LinkedHashMap<>();
+		
+		if (!newValues.isEmpty()) {
+			this.channel.setStates(newValues).forEach((iseId, changed) -> results.put(devicesById.get(iseId), changed));
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Returns the ISE ID of the given device.
+	 * 
+	 * @param 		device		The device.
+	 * 
+	 * @return		The ISE ID.
+	 */
+	private static final int iseId(final Device device) {
+		if (device instanceof AbstractDevice) {
+			return ((AbstractDevice)device).getIseId();
+		}
+		
+		throw new IllegalArgumentException("Device [" + device + "] was not created by this CCU.");
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -153,4 +756,31 @@ public final class CCUImpl implements CCU {
 	public final boolean isConnected() {
 		return this.connected;
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void addDatapointListener(final String addressPattern, final String datapoint, final DatapointListener listener) {
+		this.channel.addEventHandler(addressPattern, attribute(datapoint), new DatapointHandler(listener));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void removeDatapointListener(final String addressPattern, final String datapoint, final DatapointListener listener) {
+		this.channel.removeEventHandler(addressPattern, attribute(datapoint), new DatapointHandler(listener));
+	}
+	
+	/**
+	 * Returns the attribute the channel should filter on for the given datapoint.
+	 * 
+	 * @param 		datapoint		The name of the datapoint, <code>*</code> for all datapoints.
+	 * 
+	 * @return		The attribute, <code>null</code> for all datapoints.
+	 */
+	private static final String attribute(final String datapoint) {
+		return ALL_DATAPOINTS.equals(datapoint) ? null : datapoint;
+	}
 }
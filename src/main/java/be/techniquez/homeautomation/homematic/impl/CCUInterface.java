@@ -0,0 +1,84 @@
+package be.techniquez.homeautomation.homematic.impl;
+
+/**
+ * Enumerates the interface processes of the CCU, each serving its own family of devices on its own port.
+ *
+ * @author alex
+ */
+public enum CCUInterface {
+
+	/** The wired devices. */
+	BIDCOS_WIRED("BidCos-Wired", 2000, true),
+
+	/** The radio devices. */
+	BIDCOS_RF("BidCos-RF", 2001, true),
+
+	/** The HomeMatic IP devices, which only speaks XML-RPC. */
+	HMIP("HmIP-RF", 2010, false);
+
+	/** The name of the interface, as used in the datapoint names and the device list. */
+	private final String name;
+
+	/** The port of the interface process. */
+	private final int port;
+
+	/** Indicates whether the interface process speaks BIN-RPC. */
+	private final boolean binRpc;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	name		The name of the interface.
+	 * @param 	port		The port of the interface process.
+	 * @param 	binRpc		Indicates whether the interface process speaks BIN-RPC.
+	 */
+	private CCUInterface(final String name, final int port, final boolean binRpc) {
+		this.name = name;
+		this.port = port;
+		this.binRpc = binRpc;
+	}
+
+	/**
+	 * Returns the name of the interface, as used in the datapoint names and the device list.
+	 *
+	 * @return	The name.
+	 */
+	public final String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Returns the port of the interface process.
+	 *
+	 * @return	The port.
+	 */
+	public final int getPort() {
+		return this.port;
+	}
+
+	/**
+	 * Indicates whether the interface process speaks BIN-RPC.
+	 *
+	 * @return	<code>true</code> if it does, <code>false</code> if it only speaks XML-RPC.
+	 */
+	public final boolean supportsBinRpc() {
+		return this.binRpc;
+	}
+
+	/**
+	 * Returns the interface with the given name. Returns <code>null</code> if none found.
+	 *
+	 * @param 		name		The name of the interface.
+	 *
+	 * @return		The matching interface, <code>null</code> if none found.
+	 */
+	public static final CCUInterface forName(final String name) {
+		for (final CCUInterface ccuInterface : CCUInterface.values()) {
+			if (ccuInterface.name.equals(name)) {
+				return ccuInterface;
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,95 @@
+package be.techniquez.homeautomation.homematic.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import be.techniquez.homeautomation.homematic.api.CCU;
+import be.techniquez.homeautomation.homematic.api.Device;
+import be.techniquez.homeautomation.homematic.api.DeviceGroup;
+import be.techniquez.homeautomation.homematic.api.Dimmer;
+import be.techniquez.homeautomation.homematic.api.Scene;
+import be.techniquez.homeautomation.homematic.api.Switch;
+
+/**
+ * {@link DeviceGroup} implementation, turns every command into a {@link Scene}.
+ *
+ * @author alex
+ */
+final class DeviceGroupImpl implements DeviceGroup {
+
+	/** The CCU. */
+	private final CCU ccu;
+
+	/** The devices. */
+	private final List<Device> devices;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	ccu			The CCU.
+	 * @param 	devices		The devices in the group.
+	 */
+	DeviceGroupImpl(final CCU ccu, final Collection<? extends Device> devices) {
+		this.ccu = Objects.requireNonNull(ccu);
+		this.devices = Collections.unmodifiableList(new ArrayList<>(devices));
+
+		this.devices.forEach(device -> {
+			if (!(device instanceof Dimmer) && !(device instanceof Switch)) {
+				throw new IllegalArgumentException("Device [" + device + "] cannot be part of a group.");
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final Collection<Device> getDevices() {
+		return this.devices;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final Map<Device, Boolean> setOn(final boolean on) throws IOException {
+		return this.apply(on ? 100 : 0, on);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final Map<Device, Boolean> setDimmerValue(final int percentage) throws IOException {
+		return this.apply(percentage, percentage > 0);
+	}
+
+	/**
+	 * Applies the given values to the devices in the group.
+	 *
+	 * @param 		percentage		The percentage for the dimmers.
+	 * @param 		on				The state for the switches.
+	 *
+	 * @return		Indicates per device whether the CCU reported the change.
+	 *
+	 * @throws 		IOException		If an IO error occurs.
+	 */
+	private final Map<Device, Boolean> apply(final int percentage, final boolean on) throws IOException {
+		final Scene.Builder scene = Scene.builder();
+
+		for (final Device device : this.devices) {
+			if (device instanceof Dimmer) {
+				scene.dimmer((Dimmer)device, percentage);
+			} else {
+				scene.switchState((Switch)device, on);
+			}
+		}
+
+		return this.ccu.applyScene(scene.build());
+	}
+}
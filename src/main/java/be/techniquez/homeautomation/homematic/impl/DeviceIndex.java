@@ -0,0 +1,230 @@
+package be.techniquez.homeautomation.homematic.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import be.techniquez.homeautomation.homematic.api.Device;
+import be.techniquez.homeautomation.homematic.api.Dimmer;
+import be.techniquez.homeautomation.homematic.api.Switch;
+import be.techniquez.homeautomation.homematic.impl.device.AbstractDevice;
+
+/**
+ * The dimmers and switches of a CCU, indexed by name, serial number, address and ISE ID. An index is never changed
+ * once built : adding or removing devices builds a new one, which is published as a whole, so lookups need no lock
+ * and never see an index that is only partly built. When several devices have the same name, the first one is found.
+ *
+ * @author alex
+ */
+final class DeviceIndex {
+
+	/** The index without devices. */
+	static final DeviceIndex EMPTY = new DeviceIndex(Collections.emptyList());
+
+	/** The devices, in the order they were added. */
+	private final List<Device> devices;
+
+	/** The dimmers. */
+	private final List<Dimmer> dimmers;
+
+	/** The switches. */
+	private final List<Switch> switches;
+
+	/** The dimmers, keyed by name. */
+	private final Map<String, Dimmer> dimmersByName;
+
+	/** The switches, keyed by name. */
+	private final Map<String, Switch> switchesByName;
+
+	/** The devices, keyed by serial number, a physical device having a device per channel. */
+	private final Map<String, List<Device>> devicesBySerial;
+
+	/** The devices, keyed by address. */
+	private final Map<String, Device> devicesByAddress;
+
+	/** The devices, keyed by ISE ID. */
+	private final Map<Integer, Device> devicesByIseId;
+
+	/**
+	 * Create a new instance. Devices that are neither a dimmer nor a switch are left out.
+	 *
+	 * @param 	devices		The devices.
+	 */
+	DeviceIndex(final Collection<? extends Device> devices) {
+		final List<Device> all = new ArrayList<>(devices.size());
+		final List<Dimmer> allDimmers = new ArrayList<>();
+		final List<Switch> allSwitches = new ArrayList<>();
+		final Map<String, Dimmer> dimmerNames = new HashMap<>();
+		final Map<String, Switch> switchNames = new HashMap<>();
+		final Map<String, List<Device>> serials = new HashMap<>();
+		final Map<String, Device> addresses = new HashMap<>();
+		final Map<Integer, Device> iseIds = new HashMap<>();
+
+		for (final Device device : devices) {
+			if (device instanceof Dimmer) {
+				allDimmers.add((Dimmer)device);
+
+				if (device.getName() != null) {
+					dimmerNames.putIfAbsent(device.getName(), (Dimmer)device);
+				}
+			} else if (device instanceof Switch) {
+				allSwitches.add((Switch)device);
+
+				if (device.getName() != null) {
+					switchNames.putIfAbsent(device.getName(), (Switch)device);
+				}
+			} else {
+				continue;
+			}
+
+			all.add(device);
+
+			if (device.getSerialNumber() != null) {
+				serials.computeIfAbsent(device.getSerialNumber(), serial -> new ArrayList<>(1)).add(device);
+			}
+
+			if (device instanceof AbstractDevice) {
+				addresses.putIfAbsent(((AbstractDevice)device).getAddress(), device);
+				iseIds.putIfAbsent(((AbstractDevice)device).getIseId(), device);
+			}
+		}
+
+		serials.replaceAll((serial, siblings) -> Collections.unmodifiableList(siblings));
+
+		this.devices = Collections.unmodifiableList(all);
+		this.dimmers = Collections.unmodifiableList(allDimmers);
+		this.switches = Collections.unmodifiableList(allSwitches);
+		this.dimmersByName = dimmerNames;
+		this.switchesByName = switchNames;
+		this.devicesBySerial = serials;
+		this.devicesByAddress = addresses;
+		this.devicesByIseId = iseIds;
+	}
+
+	/**
+	 * Returns an index holding the devices of this one and the given ones.
+	 *
+	 * @param 		added		The devices to add.
+	 *
+	 * @return		The new index.
+	 */
+	final DeviceIndex with(final Collection<? extends Device> added) {
+		final List<Device> all = new ArrayList<>(this.devices);
+		all.addAll(added);
+
+		return new DeviceIndex(all);
+	}
+
+	/**
+	 * Returns an index holding the devices of this one, except the given ones.
+	 *
+	 * @param 		removed		The devices to remove.
+	 *
+	 * @return		The new index.
+	 */
+	final DeviceIndex without(final Set<? extends Device> removed) {
+		final List<Device> all = new ArrayList<>(this.devices);
+		all.removeAll(removed);
+
+		return new DeviceIndex(all);
+	}
+
+	/**
+	 * Returns the devices, in the order they were added.
+	 *
+	 * @return	The devices.
+	 */
+	final List<Device> getDevices() {
+		return this.devices;
+	}
+
+	/**
+	 * Returns the dimmers.
+	 *
+	 * @return	The dimmers.
+	 */
+	final List<Dimmer> getDimmers() {
+		return this.dimmers;
+	}
+
+	/**
+	 * Returns the switches.
+	 *
+	 * @return	The switches.
+	 */
+	final List<Switch> getSwitches() {
+		return this.switches;
+	}
+
+	/**
+	 * Returns the dimmer with the given name.
+	 *
+	 * @param 		name		The name.
+	 *
+	 * @return		The dimmer, <code>null</code> if none.
+	 */
+	final Dimmer getDimmer(final String name) {
+		return name != null ? this.dimmersByName.get(name) : null;
+	}
+
+	/**
+	 * Returns the switch with the given name.
+	 *
+	 * @param 		name		The name.
+	 *
+	 * @return		The switch, <code>null</code> if none.
+	 */
+	final Switch getSwitch(final String name) {
+		return name != null ? this.switchesByName.get(name) : null;
+	}
+
+	/**
+	 * Returns the devices of the physical device with the given serial number.
+	 *
+	 * @param 		serialNumber		The serial number.
+	 *
+	 * @return		The devices, empty if none.
+	 */
+	final List<Device> getDevicesBySerial(final String serialNumber) {
+		final List<Device> siblings = serialNumber != null ? this.devicesBySerial.get(serialNumber) : null;
+
+		return siblings != null ? siblings : Collections.emptyList();
+	}
+
+	/**
+	 * Returns the device with the given address.
+	 *
+	 * @param 		address		The address, as in <code>serial:channel</code>.
+	 *
+	 * @return		The device, <code>null</code> if none.
+	 */
+	final Device getDeviceByAddress(final String address) {
+		return address != null ? this.devicesByAddress.get(address) : null;
+	}
+
+	/**
+	 * Returns the device with the given ISE ID.
+	 *
+	 * @param 		iseId		The ISE ID.
+	 *
+	 * @return		The device, <code>null</code> if none.
+	 */
+	final Device getDeviceByIseId(final int iseId) {
+		return this.devicesByIseId.get(iseId);
+	}
+
+	/**
+	 * Indicates whether there is a device with the given serial number.
+	 *
+	 * @param 		serialNumber		The serial number.
+	 *
+	 * @return		<code>true</code> if there is.
+	 */
+	final boolean containsSerial(final String serialNumber) {
+		return serialNumber != null && this.devicesBySerial.containsKey(serialNumber);
+	}
+}
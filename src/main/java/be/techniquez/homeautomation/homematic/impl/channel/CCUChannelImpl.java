@@ -1,26 +1,42 @@
 package be.techniquez.homeautomation.homematic.impl.channel;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
-
 import be.techniquez.homeautomation.homematic.api.Device;
 import be.techniquez.homeautomation.homematic.impl.CCUChannel;
 import be.techniquez.homeautomation.homematic.impl.CCUEventLoop;
+import be.techniquez.homeautomation.homematic.impl.CCUInterface;
 import be.techniquez.homeautomation.homematic.impl.channel.XMLAPIURLBuilder.Endpoint;
 import be.techniquez.homeautomation.homematic.impl.device.DeviceType;
 import be.techniquez.homeautomation.homematic.impl.event.CCUEventingImpl;
+import be.techniquez.homeautomation.homematic.impl.rpc.RpcClient;
+import be.techniquez.homeautomation.homematic.impl.rpc.RpcProtocol;
 import be.techniquez.homeautomation.homematic.xmlapi.devicelist.DeviceList;
 import be.techniquez.homeautomation.homematic.xmlapi.state.Result;
 import be.techniquez.homeautomation.homematic.xmlapi.state.State;
+import be.techniquez.homeautomation.homematic.xmlapi.state.StateList;
 
 /**
  * CCU channel implementation.
@@ -41,6 +57,15 @@ public final class CCUChannelImpl implements CCUChannel {
 	/** The new value parameter. */
 	private static final String PARAMETER_NEW_VALUE = "new_value";
 	
+	/** The RPC method reading a datapoint. */
+	private static final String METHOD_GET_VALUE = "getValue";
+	
+	/** The RPC method setting a datapoint. */
+	private static final String METHOD_SET_VALUE = "setValue";
+	
+	/** The maximum number of state changes sent in a single request, keeps the URL within limits. */
+	private static final int MAX_STATE_CHANGES_PER_REQUEST = 50;
+	
 	/** The base URL. */
 	private static final String BASE = "/addons/xmlapi/";
 
@@ -49,12 +74,42 @@ public final class CCUChannelImpl implements CCUChannel {
 
 	/** The event port. */
 	private static final int DEFAULT_EVENT_PORT = 2000;
+	
+	/** The separator between the serial number and the channel number in an address. */
+	private static final char CHANNEL_SEPARATOR = ':';
 
 	/** The host name of the CCU. */
 	private final String urlBase;
 
 	/** The eventing. */
-	private CCUEventLoop eventing;
+	private final CCUEventLoop eventing;
+	
+	/** The client calling the interface process, or the first one when there are several. */
+	private final RpcClient rpcClient;
+	
+	/** The clients calling the interface processes, keyed by interface name, empty if there is only one. */
+	private final Map<String, RpcClient> rpcClients;
+	
+	/** The names of the interfaces the devices are attached to, keyed by serial number, learned from the device list. */
+	private final ConcurrentMap<String, String> deviceInterfaces = new ConcurrentHashMap<>();
+	
+	/** The parser used for the responses. */
+	private final ResponseParser parser;
+	
+	/** The transport used for the requests. */
+	private final HttpTransport transport;
+	
+	/** The executor running the asynchronous requests. */
+	private final Executor executor;
+	
+	/** Coalesces the state changes, <code>null</code> if disabled. */
+	private volatile CommandCoalescer coalescer;
+	
+	/** The number of state changes sent to the CCU through statechange.cgi. */
+	private final AtomicLong sentCommands = new AtomicLong();
+	
+	/** The number of values set through the interface processes. */
+	private final AtomicLong sentValues = new AtomicLong();
 
 	/**
 	 * Create a new instance.
@@ -62,15 +117,127 @@ public final class CCUChannelImpl implements CCUChannel {
 	 * @param 	hostname	The hostname.
 	 * @param 	port		The port to send requests on.
 	 * @param	eventPort	The eventing port.
+	 * @param	parserType	The type of parser to use for the responses.
+	 * @param	transport	The transport to use for the requests.
+	 * @param	executor	The executor running the asynchronous requests.
 	 */
-	public CCUChannelImpl(final String hostname, final int port, final int eventPort) {
+	public CCUChannelImpl(final String hostname, final int port, final int eventPort, final ParserType parserType, final HttpTransport transport, final Executor executor) {
+		this(hostname, port, new CCUEventingImpl(hostname, eventPort), RpcProtocol.XMLRPC.createClient(hostname, eventPort), parserType, transport, executor);
+	}
+	
+	/**
+	 * Create a new instance.
+	 * 
+	 * @param 	hostname	The hostname.
+	 * @param 	port		The port to send requests on.
+	 * @param	eventing	The event loop receiving the events of the CCU.
+	 * @param	rpcClient	The client calling the interface process.
+	 * @param	parserType	The type of parser to use for the responses.
+	 * @param	transport	The transport to use for the requests.
+	 * @param	executor	The executor running the asynchronous requests.
+	 */
+	public CCUChannelImpl(final String hostname, final int port, final CCUEventLoop eventing, final RpcClient rpcClient, final ParserType parserType, final HttpTransport transport, final Executor executor) {
+		this(hostname, port, eventing, rpcClient, Collections.emptyMap(), parserType, transport, executor);
+	}
+	
+	/**
+	 * Create a new instance talking to several interface processes on their default ports. Their events are received
+	 * by a single callback server, and the datapoints are read and set on the interface process of their device.
+	 * 
+	 * @param 	hostname		The hostname.
+	 * @param 	interfaces		The interfaces, at least one.
+	 */
+	public CCUChannelImpl(final String hostname, final CCUInterface... interfaces) {
+		this(hostname, new CCUEventingImpl(hostname, Arrays.asList(interfaces)), interfaces);
+	}
+	
+	/**
+	 * Create a new instance talking to several interface processes on their default ports, their events being received
+	 * by the given event loop, such as one using a callback server shared with other CCUs.
+	 * 
+	 * @param 	hostname		The hostname.
+	 * @param	eventing		The event loop receiving the events of the CCU.
+	 * @param 	interfaces		The interfaces, at least one.
+	 */
+	public CCUChannelImpl(final String hostname, final CCUEventLoop eventing, final CCUInterface... interfaces) {
+		this(hostname, DEFAULT_PORT, eventing, createClients(hostname, interfaces), ParserType.JAXB, new HttpTransport());
+	}
+	
+	/**
+	 * Create a new instance.
+	 * 
+	 * @param 	hostname	The hostname.
+	 * @param 	port		The port to send requests on.
+	 * @param	eventing	The event loop receiving the events of the CCU.
+	 * @param	rpcClients	The clients calling the interface processes, keyed by interface name.
+	 * @param	parserType	The type of parser to use for the responses.
+	 * @param	transport	The transport to use for the requests.
+	 */
+	private CCUChannelImpl(final String hostname, final int port, final CCUEventLoop eventing, final Map<String, RpcClient> rpcClients, final ParserType parserType, final HttpTransport transport) {
+		this(hostname, port, eventing, rpcClients.values().iterator().next(), rpcClients, parserType, transport, createExecutor(transport.getMaxConnections()));
+	}
+	
+	/**
+	 * Create a new instance.
+	 * 
+	 * @param 	hostname	The hostname.
+	 * @param 	port		The port to send requests on.
+	 * @param	eventing	The event loop receiving the events of the CCU.
+	 * @param	rpcClient	The client calling the interface process of the devices whose interface is not known.
+	 * @param	rpcClients	The clients calling the interface processes, keyed by interface name.
+	 * @param	parserType	The type of parser to use for the responses.
+	 * @param	transport	The transport to use for the requests.
+	 * @param	executor	The executor running the asynchronous requests.
+	 */
+	private CCUChannelImpl(final String hostname, final int port, final CCUEventLoop eventing, final RpcClient rpcClient, final Map<String, RpcClient> rpcClients, final ParserType parserType, final HttpTransport transport, final Executor executor) {
 		this.urlBase = new StringBuilder("http://").append(hostname)
 												   .append(":")
 												   .append(port)
 												   .append(BASE)
 												   .toString();
 		
-		this.eventing = new CCUEventingImpl(hostname, eventPort);
+		this.eventing = Objects.requireNonNull(eventing);
+		this.rpcClient = Objects.requireNonNull(rpcClient);
+		this.rpcClients = rpcClients;
+		this.parser = parserType.createParser();
+		this.transport = Objects.requireNonNull(transport);
+		this.executor = Objects.requireNonNull(executor);
+	}
+	
+	/**
+	 * Create a new instance.
+	 * 
+	 * @param 	hostname	The hostname.
+	 * @param 	port		The port to send requests on.
+	 * @param	eventPort	The eventing port.
+	 * @param	parserType	The type of parser to use for the responses.
+	 * @param	transport	The transport to use for the requests.
+	 */
+	public CCUChannelImpl(final String hostname, final int port, final int eventPort, final ParserType parserType, final HttpTransport transport) {
+		this(hostname, port, eventPort, parserType, transport, createExecutor(transport.getMaxConnections()));
+	}
+	
+	/**
+	 * Create a new instance.
+	 * 
+	 * @param 	hostname	The hostname.
+	 * @param 	port		The port to send requests on.
+	 * @param	eventPort	The eventing port.
+	 * @param	parserType	The type of parser to use for the responses.
+	 */
+	public CCUChannelImpl(final String hostname, final int port, final int eventPort, final ParserType parserType) {
+		this(hostname, port, eventPort, parserType, new HttpTransport());
+	}
+	
+	/**
+	 * Create a new instance.
+	 * 
+	 * @param 	hostname	The hostname.
+	 * @param 	port		The port to send requests on.
+	 * @param	eventPort	The eventing port.
+	 */
+	public CCUChannelImpl(final String hostname, final int port, final int eventPort) {
+		this(hostname, port, eventPort, ParserType.JAXB);
 	}
 
 	/**
@@ -92,11 +259,19 @@ public final class CCUChannelImpl implements CCUChannel {
 										.endpoint(Endpoint.DEVICELIST)
 										.build();
 
-		return doRequest(url, DeviceList.class).getDevice()
-											   .stream()
-											   .filter(xml -> DeviceType.forName(xml.getDeviceType()) != null)
-											   .flatMap(xml -> DeviceType.forName(xml.getDeviceType()).parse(xml, this).stream())
-											   .collect(Collectors.toList());
+		final DeviceList deviceList = doRequest(url, DeviceList.class);
+		
+		deviceList.getDevice().forEach(xml -> {
+			if (xml.getAddress() != null && xml.getInterface() != null) {
+				this.deviceInterfaces.put(xml.getAddress(), xml.getInterface());
+			}
+		});
+		
+		return deviceList.getDevice()
+						 .stream()
+						 .filter(xml -> DeviceType.forName(xml.getDeviceType()) != null)
+						 .flatMap(xml -> DeviceType.forName(xml.getDeviceType()).parse(xml, this).stream())
+						 .collect(Collectors.toList());
 	}
 
 	/**
@@ -124,37 +299,276 @@ public final class CCUChannelImpl implements CCUChannel {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public final void setState(int channelId, String newValue) throws IOException {
+	public final CompletableFuture<State> getStateAsync(final int channelId) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return this.getState(channelId);
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}, this.executor);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final Map<String, String> getAllStates() throws IOException {
+		final URL url = XMLAPIURLBuilder.withBaseURL(this.urlBase)
+										.endpoint(Endpoint.STATELIST)
+										.build();
+
+		final StateList stateList = doRequest(url, StateList.class);
+		final Map<String, String> values = new HashMap<>();
+		
+		stateList.getDevice().forEach(device -> device.getChannel().forEach(channel -> channel.getDatapoint().forEach(datapoint -> values.put(datapoint.getName(), datapoint.getValue()))));
+		
+		return values;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void setState(final int channelId, final String newValue) throws IOException {
+		final CommandCoalescer commandCoalescer = this.coalescer;
+		
+		if (commandCoalescer != null) {
+			try {
+				commandCoalescer.submit(channelId, newValue).join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException)e.getCause();
+				}
+				
+				throw e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : e;
+			}
+		} else {
+			this.sendState(channelId, newValue);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final CompletableFuture<Void> setStateAsync(final int channelId, final String newValue) {
+		final CommandCoalescer commandCoalescer = this.coalescer;
+		
+		return commandCoalescer != null ? commandCoalescer.submit(channelId, newValue) : this.sendStateAsync(channelId, newValue);
+	}
+	
+	/**
+	 * Sends the state change to the CCU.
+	 * 
+	 * @param 	channelId		The channel ID.
+	 * @param 	newValue		The new value.
+	 * 
+	 * @throws	IOException		In case of an IO error.
+	 */
+	private final void sendState(final int channelId, final String newValue) throws IOException {
 		final URL url = XMLAPIURLBuilder.withBaseURL(this.urlBase)
 										.endpoint(Endpoint.STATECHANGE)
 										.parameter(PARAMETER_ISE_ID, channelId)
 										.parameter(PARAMETER_NEW_VALUE, newValue)
 										.build();
 
+		this.sentCommands.incrementAndGet();
+		
 		final Result result = doRequest(url, Result.class);
 
-		if (result.getChanged() == null) {
+		if (result.getChanged().isEmpty()) {
 			if (logger.isLoggable(Level.WARNING)) {
-				logger.log(Level.WARNING, "State change failed : change element was null.");
+				logger.log(Level.WARNING, "State change failed : no change element returned.");
 			}
 		}
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final Map<Integer, Boolean> setStates(final Map<Integer, String> newValues) throws IOException {
+		final Map<Integer, Boolean> changed = new LinkedHashMap<>();
+		final List<Integer> channelIds = new ArrayList<>(newValues.keySet());
+		
+		for (int start = 0; start < channelIds.size(); start += MAX_STATE_CHANGES_PER_REQUEST) {
+			final List<Integer> batch = channelIds.subList(start, Math.min(start + MAX_STATE_CHANGES_PER_REQUEST, channelIds.size()));
+			
+			final URL url = XMLAPIURLBuilder.withBaseURL(this.urlBase)
+											.endpoint(Endpoint.STATECHANGE)
+											.parameter(PARAMETER_ISE_ID, batch.stream().map(String::valueOf).collect(Collectors.joining(",")))
+											.parameter(PARAMETER_NEW_VALUE, batch.stream().map(newValues::get).collect(Collectors.joining(",")))
+											.build();
+			
+			this.sentCommands.addAndGet(batch.size());
+			
+			final Result result = doRequest(url, Result.class);
+			
+			batch.forEach(channelId -> changed.put(channelId, Boolean.FALSE));
+			result.getChanged().forEach(change -> changed.replace(change.getId().intValue(), Boolean.TRUE));
+		}
+		
+		if (logger.isLoggable(Level.INFO)) {
+			logger.log(Level.INFO, "Changed the state of [" + changed.values().stream().filter(Boolean::booleanValue).count() + "] out of [" + changed.size() + "] channels.");
+		}
+		
+		return changed;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final Object getValue(final String address, final String datapoint) throws IOException {
+		return this.rpcClient(address).execute(METHOD_GET_VALUE, Arrays.asList(address, datapoint));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void setValue(final String address, final String datapoint, final Object value) throws IOException {
+		this.sentValues.incrementAndGet();
+		
+		this.rpcClient(address).execute(METHOD_SET_VALUE, Arrays.asList(address, datapoint, Objects.requireNonNull(value)));
+	}
+	
+	/**
+	 * Returns the client calling the interface process of the device with the given address.
+	 * 
+	 * @param 		address		The address of the channel, as in <code>serial:channel</code>.
+	 * 
+	 * @return		The client, the first one if the interface of the device is not known.
+	 */
+	private final RpcClient rpcClient(final String address) {
+		if (!this.rpcClients.isEmpty()) {
+			final int separator = address.indexOf(CHANNEL_SEPARATOR);
+			final String interfaceName = this.deviceInterfaces.get(separator >= 0 ? address.substring(0, separator) : address);
+			final RpcClient client = interfaceName != null ? this.rpcClients.get(interfaceName) : null;
+			
+			if (client != null) {
+				return client;
+			}
+		}
+		
+		return this.rpcClient;
+	}
+	
+	/**
+	 * Creates the clients calling the interface processes on their default ports.
+	 * 
+	 * @param 		hostname		The hostname.
+	 * @param 		interfaces		The interfaces.
+	 * 
+	 * @return		The clients, keyed by interface name.
+	 */
+	private static final Map<String, RpcClient> createClients(final String hostname, final CCUInterface... interfaces) {
+		if (interfaces.length == 0) {
+			throw new IllegalArgumentException("Specify at least one interface.");
+		}
+		
+		final Map<String, RpcClient> clients = new LinkedHashMap<>();
+		
+		for (final CCUInterface ccuInterface : interfaces) {
+			clients.put(ccuInterface.getName(), RpcProtocol.XMLRPC.createClient(hostname, ccuInterface.getPort()));
+		}
+		
+		return Collections.unmodifiableMap(clients);
+	}
+	
+	/**
+	 * Sends the state change to the CCU without blocking the caller.
+	 * 
+	 * @param 		channelId		The channel ID.
+	 * @param 		newValue		The new value.
+	 * 
+	 * @return		Completes when the CCU has processed the new value.
+	 */
+	private final CompletableFuture<Void> sendStateAsync(final int channelId, final String newValue) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				this.sendState(channelId, newValue);
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}, this.executor);
+	}
+	
+	/**
+	 * Enables coalescing of state changes : a state change is held back for the given window, and only the latest 
+	 * value for a channel is sent. State changes that are replaced complete immediately.
+	 * 
+	 * @param 	window		The window, <code>0</code> disables coalescing.
+	 * @param 	unit		The unit of the window.
+	 */
+	public final void setCoalescingWindow(final long window, final TimeUnit unit) {
+		this.coalescer = window > 0 ? new CommandCoalescer(unit.toMillis(window), this::sendStateAsync) : null;
+	}
+	
+	/**
+	 * Returns the number of state changes that were not sent because they were replaced by a later one.
+	 * 
+	 * @return	The number of coalesced state changes.
+	 */
+	public final long getCoalescedCommands() {
+		final CommandCoalescer commandCoalescer = this.coalescer;
+		
+		return commandCoalescer != null ? commandCoalescer.getCoalescedCommands() : 0;
+	}
+	
+	/**
+	 * Returns the number of state changes sent to the CCU through statechange.cgi, the ones that were not coalesced.
+	 * 
+	 * @return	The number of state changes sent.
+	 */
+	public final long getSentCommands() {
+		return this.sentCommands.get();
+	}
+	
+	/**
+	 * Returns the number of values set through the interface processes, using <code>setValue</code>. These are never
+	 * coalesced, so they are not counted as sent state changes.
+	 * 
+	 * @return	The number of values set.
+	 */
+	public final long getSentValues() {
+		return this.sentValues.get();
+	}
+
+	/**
+	 * Creates the default executor for the asynchronous requests. Its threads are daemons that time out when idle.
+	 * 
+	 * @param 		threads		The number of threads.
+	 * 
+	 * @return		The executor.
+	 */
+	private static final Executor createExecutor(final int threads) {
+		final AtomicInteger threadNumber = new AtomicInteger();
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+			final Thread thread = new Thread(runnable, "ccu-request-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			
+			return thread;
+		});
+		
+		executor.allowCoreThreadTimeOut(true);
+		
+		return executor;
+	}
 
 	/**
-	 * Parses the response as JAXB.
+	 * Executes the request and parses the response.
 	 * 
 	 * @param url			The URL.
 	 * @param responseType	The type of the response.
 	 * 
 	 * @return The parsed data.
 	 */
-	private static final <T> T doRequest(final URL url, final Class<T> responseType) {
-		try (final InputStream stream = url.openStream()) {
-			final JAXBContext jaxbContext = JAXBContext.newInstance(responseType.getPackage().getName());
-			final Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
-
-			return responseType.cast(unmarshaller.unmarshal(stream));
-		} catch (JAXBException | IOException e) {
+	private final <T> T doRequest(final URL url, final Class<T> responseType) {
+		try {
+			return this.transport.get(url, stream -> this.parser.parse(stream, responseType));
+		} catch (IOException e) {
 			if (logger.isLoggable(Level.WARNING)) {
 				logger.log(Level.WARNING, "Error while parsing : [" + e.getMessage() + "]", e);
 			}
@@ -177,13 +591,19 @@ public final class CCUChannelImpl implements CCUChannel {
 	@Override
 	public final void disconnect() throws IOException {
 		this.eventing.stop();
+		this.rpcClient.close();
+		
+		this.rpcClients.values()
+					   .stream()
+					   .filter(client -> client != this.rpcClient)
+					   .forEach(RpcClient::close);
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public final void addEventHandler(final CCUChannelEventHandler handler) {
+	public final void addEventHandler(final CCUChannelValueHandler handler) {
 		this.eventing.addEventHandler(handler);
 	}
 
@@ -191,10 +611,74 @@ public final class CCUChannelImpl implements CCUChannel {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public final void removeEventHandler(final CCUChannelEventHandler handler) {
+	public final void addEventHandler(final String address, final CCUChannelValueHandler handler) {
+		this.eventing.addEventHandler(address, handler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void removeEventHandler(final CCUChannelValueHandler handler) {
 		this.eventing.removeEventHandler(handler);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void removeEventHandler(final String address, final CCUChannelValueHandler handler) {
+		this.eventing.removeEventHandler(address, handler);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void addEventHandler(final String addressPattern, final String attribute, final CCUChannelValueHandler handler) {
+		this.eventing.addEventHandler(addressPattern, attribute, handler);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void removeEventHandler(final String addressPattern, final String attribute, final CCUChannelValueHandler handler) {
+		this.eventing.removeEventHandler(addressPattern, attribute, handler);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final int restoreStates() {
+		return this.eventing.restoreStates();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void statesRefreshed() {
+		this.eventing.statesRefreshed();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void setResyncHandler(final Runnable handler) {
+		this.eventing.setResyncHandler(handler);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void setDeviceHandler(final CCUDeviceHandler handler) {
+		this.eventing.setDeviceHandler(handler);
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -0,0 +1,133 @@
+package be.techniquez.homeautomation.homematic.impl.channel;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Coalesces state changes. A state change is held back for the duration of the window, if another state change
+ * for the same channel arrives in the meantime it replaces the pending one, which is completed immediately. Only
+ * the latest value is sent to the CCU when the window expires.
+ *
+ * @author alex
+ */
+final class CommandCoalescer {
+
+	/** The window, in milliseconds. */
+	private final long window;
+
+	/** Sends the state changes to the CCU. */
+	private final BiFunction<Integer, String, CompletableFuture<Void>> sender;
+
+	/** Schedules the sending of the pending state changes. */
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	/** The pending state changes, per channel. */
+	private final ConcurrentMap<Integer, PendingCommand> pending = new ConcurrentHashMap<>();
+
+	/** The number of state changes that were replaced by a later one. */
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * A pending state change.
+	 *
+	 * @author alex
+	 */
+	private static final class PendingCommand {
+
+		/** The new value. */
+		private final String value;
+
+		/** Completed when the command has been sent or replaced. */
+		private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+		/**
+		 * Create a new instance.
+		 *
+		 * @param 	value		The new value.
+		 */
+		private PendingCommand(final String value) {
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	window		The window, in milliseconds.
+	 * @param 	sender		Sends a state change to the CCU.
+	 */
+	CommandCoalescer(final long window, final BiFunction<Integer, String, CompletableFuture<Void>> sender) {
+		if (window <= 0) {
+			throw new IllegalArgumentException("The window should be positive, you specified [" + window + "]");
+		}
+
+		this.window = window;
+		this.sender = Objects.requireNonNull(sender);
+		this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+			final Thread thread = new Thread(runnable, "ccu-command-coalescer");
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		this.scheduler.setKeepAliveTime(this.window * 10, TimeUnit.MILLISECONDS);
+		this.scheduler.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Submits a state change.
+	 *
+	 * @param 		channelId		The channel ID.
+	 * @param 		newValue		The new value.
+	 *
+	 * @return		Completes when the value has been sent, or when it was replaced by a later value.
+	 */
+	final CompletableFuture<Void> submit(final int channelId, final String newValue) {
+		final PendingCommand command = new PendingCommand(newValue);
+		final PendingCommand replaced = this.pending.put(channelId, command);
+
+		if (replaced != null) {
+			this.coalesced.incrementAndGet();
+
+			replaced.future.complete(null);
+		} else {
+			this.scheduler.schedule(() -> this.flush(channelId), this.window, TimeUnit.MILLISECONDS);
+		}
+
+		return command.future;
+	}
+
+	/**
+	 * Sends the pending state change of the given channel.
+	 *
+	 * @param 	channelId		The channel ID.
+	 */
+	private final void flush(final int channelId) {
+		final PendingCommand command = this.pending.remove(channelId);
+
+		if (command != null) {
+			this.sender.apply(channelId, command.value).whenComplete((result, error) -> {
+				if (error != null) {
+					command.future.completeExceptionally(error);
+				} else {
+					command.future.complete(null);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns the number of state changes that were replaced by a later one.
+	 *
+	 * @return	The number of coalesced state changes.
+	 */
+	final long getCoalescedCommands() {
+		return this.coalesced.get();
+	}
+}
@@ -0,0 +1,288 @@
+package be.techniquez.homeautomation.homematic.impl.channel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * HTTP transport towards the XML API of a single CCU.
+ *
+ * The embedded web server of the CCU does not cope well with many sockets, so the number of concurrent
+ * requests is bounded. Responses are always read completely into a pooled buffer before they are handed
+ * to the caller, which lets the JDK return the connection to its keep-alive cache.
+ *
+ * @author alex
+ */
+public final class HttpTransport {
+
+	/** Logger instance. */
+	private static final Logger logger = Logger.getLogger(HttpTransport.class.getName());
+
+	/** The default maximum number of concurrent connections. */
+	public static final int DEFAULT_MAX_CONNECTIONS = 2;
+
+	/** The default connect timeout. */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+	/** The default read timeout. */
+	public static final int DEFAULT_READ_TIMEOUT = 30000;
+
+	/** Buffers growing beyond this size are not returned to the pool. */
+	private static final int MAX_POOLED_BUFFER_SIZE = 4 * 1024 * 1024;
+
+	/** The size of the buffer used to copy the response. */
+	private static final int COPY_BUFFER_SIZE = 8192;
+
+	/** The maximum number of connections. */
+	private final int maxConnections;
+
+	/** The connect timeout, in milliseconds. */
+	private final int connectTimeout;
+
+	/** The read timeout, in milliseconds. */
+	private final int readTimeout;
+
+	/** Bounds the number of connections. */
+	private final Semaphore connections;
+
+	/** The idle response buffers. */
+	private final Queue<ResponseBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Handles the response of a request.
+	 *
+	 * @author alex
+	 */
+	@FunctionalInterface
+	interface ResponseHandler<T> {
+
+		/**
+		 * Handles the response.
+		 *
+		 * @param 		stream		The response body.
+		 *
+		 * @return		The result.
+		 *
+		 * @throws 		IOException		If an IO error occurs.
+		 */
+		T handle(final InputStream stream) throws IOException;
+	}
+
+	/**
+	 * Response buffer, exposes its contents without copying.
+	 *
+	 * @author alex
+	 */
+	private static final class ResponseBuffer extends ByteArrayOutputStream {
+
+		/** The buffer used to copy the response. */
+		private final byte[] copyBuffer = new byte[COPY_BUFFER_SIZE];
+
+		/**
+		 * Create a new instance.
+		 */
+		ResponseBuffer() {
+			super(COPY_BUFFER_SIZE);
+		}
+
+		/**
+		 * Reads the given stream completely.
+		 *
+		 * @param 	stream		The stream.
+		 *
+		 * @throws 	IOException		If an IO error occurs.
+		 */
+		final void readFully(final InputStream stream) throws IOException {
+			int read;
+
+			while ((read = stream.read(this.copyBuffer)) != -1) {
+				this.write(this.copyBuffer, 0, read);
+			}
+		}
+
+		/**
+		 * Returns a stream over the contents of the buffer.
+		 *
+		 * @return	The stream.
+		 */
+		final InputStream toInputStream() {
+			return new ByteArrayInputStream(this.buf, 0, this.count);
+		}
+
+		/**
+		 * Returns the capacity of the buffer.
+		 *
+		 * @return	The capacity.
+		 */
+		final int capacity() {
+			return this.buf.length;
+		}
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	maxConnections		The maximum number of concurrent connections to the CCU.
+	 * @param 	connectTimeout		The connect timeout, in milliseconds.
+	 * @param 	readTimeout			The read timeout, in milliseconds.
+	 */
+	public HttpTransport(final int maxConnections, final int connectTimeout, final int readTimeout) {
+		if (maxConnections <= 0) {
+			throw new IllegalArgumentException("Need at least one connection, you specified [" + maxConnections + "]");
+		}
+
+		this.maxConnections = maxConnections;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.connections = new Semaphore(maxConnections, true);
+	}
+
+	/**
+	 * Create a new instance using the default settings.
+	 */
+	public HttpTransport() {
+		this(DEFAULT_MAX_CONNECTIONS, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+	}
+
+	/**
+	 * Executes a GET request.
+	 *
+	 * @param 		url			The URL.
+	 * @param 		handler		Handles the response body.
+	 *
+	 * @return		The result of the handler.
+	 *
+	 * @throws 		IOException		If an IO error occurs.
+	 */
+	final <T> T get(final URL url, final ResponseHandler<T> handler) throws IOException {
+		final ResponseBuffer buffer = this.acquireBuffer();
+
+		try {
+			this.acquireConnection();
+
+			try {
+				this.fetch(url, buffer);
+			} finally {
+				this.connections.release();
+			}
+
+			return handler.handle(buffer.toInputStream());
+		} finally {
+			this.releaseBuffer(buffer);
+		}
+	}
+
+	/**
+	 * Fetches the given URL into the buffer.
+	 *
+	 * @param 	url			The URL.
+	 * @param 	buffer		The buffer.
+	 *
+	 * @throws 	IOException		If an IO error occurs.
+	 */
+	private final void fetch(final URL url, final ResponseBuffer buffer) throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+		connection.setConnectTimeout(this.connectTimeout);
+		connection.setReadTimeout(this.readTimeout);
+		connection.setUseCaches(false);
+		connection.setRequestProperty("Connection", "keep-alive");
+
+		final int responseCode;
+
+		try {
+			responseCode = connection.getResponseCode();
+		} catch (IOException e) {
+			connection.disconnect();
+
+			throw e;
+		}
+
+		if (responseCode != HttpURLConnection.HTTP_OK) {
+			drain(connection.getErrorStream());
+
+			throw new IOException("Unexpected HTTP response [" + responseCode + "] for [" + url + "]");
+		}
+
+		try (final InputStream stream = connection.getInputStream()) {
+			buffer.readFully(stream);
+		}
+	}
+
+	/**
+	 * Acquires a connection permit.
+	 *
+	 * @throws 	IOException		If interrupted while waiting.
+	 */
+	private final void acquireConnection() throws IOException {
+		try {
+			this.connections.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException("Interrupted while waiting for a connection.");
+		}
+	}
+
+	/**
+	 * Returns a buffer from the pool, creates one if none are available.
+	 *
+	 * @return	The buffer.
+	 */
+	private final ResponseBuffer acquireBuffer() {
+		final ResponseBuffer buffer = this.buffers.poll();
+
+		return buffer != null ? buffer : new ResponseBuffer();
+	}
+
+	/**
+	 * Returns the buffer to the pool.
+	 *
+	 * @param 	buffer		The buffer.
+	 */
+	private final void releaseBuffer(final ResponseBuffer buffer) {
+		if (buffer.capacity() <= MAX_POOLED_BUFFER_SIZE) {
+			buffer.reset();
+
+			this.buffers.offer(buffer);
+		}
+	}
+
+	/**
+	 * Reads and closes the given stream so the connection can be reused.
+	 *
+	 * @param 	stream		The stream, can be <code>null</code>.
+	 */
+	private static final void drain(final InputStream stream) {
+		if (stream != null) {
+			try (final InputStream toDrain = stream) {
+				final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+
+				while (toDrain.read(buffer) != -1) {
+					// Discard.
+				}
+			} catch (IOException e) {
+				if (logger.isLoggable(Level.FINE)) {
+					logger.log(Level.FINE, "Error while draining the error stream : [" + e.getMessage() + "]", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the maximum number of concurrent connections.
+	 *
+	 * @return	The maximum number of concurrent connections.
+	 */
+	public final int getMaxConnections() {
+		return this.maxConnections;
+	}
+}
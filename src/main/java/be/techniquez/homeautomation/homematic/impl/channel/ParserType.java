@@ -0,0 +1,34 @@
+package be.techniquez.homeautomation.homematic.impl.channel;
+
+import be.techniquez.homeautomation.homematic.impl.device.DeviceType;
+
+/**
+ * The ways the responses of the XML API can be parsed.
+ *
+ * @author alex
+ */
+public enum ParserType {
+
+	/** Unmarshals the complete response using JAXB. */
+	JAXB {
+		@Override
+		final ResponseParser createParser() {
+			return new UnmarshallerPool();
+		}
+	},
+
+	/** Streams the response using StAX, skipping the devices we do not support. */
+	STAX {
+		@Override
+		final ResponseParser createParser() {
+			return new StAXResponseParser(deviceType -> DeviceType.forName(deviceType) != null);
+		}
+	};
+
+	/**
+	 * Creates a parser of this type.
+	 *
+	 * @return	The parser.
+	 */
+	abstract ResponseParser createParser();
+}
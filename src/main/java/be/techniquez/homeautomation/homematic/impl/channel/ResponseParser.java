@@ -0,0 +1,24 @@
+package be.techniquez.homeautomation.homematic.impl.channel;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parses the responses of the XML API into the generated <code>xmlapi</code> types.
+ *
+ * @author alex
+ */
+interface ResponseParser {
+
+	/**
+	 * Parses the given stream.
+	 *
+	 * @param 		stream			The stream containing the response.
+	 * @param 		responseType	The type of the response.
+	 *
+	 * @return		The parsed response.
+	 *
+	 * @throws 		IOException		If the response cannot be read or parsed.
+	 */
+	<T> T parse(final InputStream stream, final Class<T> responseType) throws IOException;
+}
@@ -0,0 +1,326 @@
+package be.techniquez.homeautomation.homematic.impl.channel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import be.techniquez.homeautomation.homematic.xmlapi.devicelist.DeviceList;
+import be.techniquez.homeautomation.homematic.xmlapi.state.Changed;
+import be.techniquez.homeautomation.homematic.xmlapi.state.Datapoint;
+import be.techniquez.homeautomation.homematic.xmlapi.state.Result;
+import be.techniquez.homeautomation.homematic.xmlapi.state.State;
+import be.techniquez.homeautomation.homematic.xmlapi.state.StateList;
+
+/**
+ * {@link ResponseParser} that pulls the response through a StAX {@link XMLStreamReader}. Contrary to JAXB it
+ * does not build the complete document : devices of which the type is rejected by the filter are skipped as they
+ * are read, so their channels are never materialized.
+ *
+ * @author alex
+ */
+final class StAXResponseParser implements ResponseParser {
+
+	/** The device element. */
+	private static final String ELEMENT_DEVICE = "device";
+
+	/** The channel element. */
+	private static final String ELEMENT_CHANNEL = "channel";
+
+	/** The datapoint element. */
+	private static final String ELEMENT_DATAPOINT = "datapoint";
+
+	/** The changed element. */
+	private static final String ELEMENT_CHANGED = "changed";
+
+	/** The input factory, thread safe once configured. */
+	private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+	/** Filter on the device types that need to be parsed from the device list. */
+	private final Predicate<String> deviceTypeFilter;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	deviceTypeFilter		Returns <code>true</code> for the device types that need to be parsed.
+	 */
+	StAXResponseParser(final Predicate<String> deviceTypeFilter) {
+		this.deviceTypeFilter = Objects.requireNonNull(deviceTypeFilter);
+	}
+
+	/**
+	 * Creates the input factory.
+	 *
+	 * @return	The input factory.
+	 */
+	private static final XMLInputFactory createInputFactory() {
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+
+		return factory;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final <T> T parse(final InputStream stream, final Class<T> responseType) throws IOException {
+		try {
+			final XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(stream);
+
+			try {
+				if (responseType == DeviceList.class) {
+					return responseType.cast(this.parseDeviceList(reader));
+				} else if (responseType == State.class) {
+					return responseType.cast(parseState(reader));
+				} else if (responseType == StateList.class) {
+					return responseType.cast(parseStateList(reader));
+				} else if (responseType == Result.class) {
+					return responseType.cast(parseResult(reader));
+				}
+
+				throw new IllegalArgumentException("Unsupported response type [" + responseType.getName() + "]");
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Error while parsing : [" + e.getMessage() + "]", e);
+		}
+	}
+
+	/**
+	 * Parses a device list.
+	 *
+	 * @param 		reader		The reader.
+	 *
+	 * @return		The device list, only containing the devices accepted by the filter.
+	 *
+	 * @throws 		XMLStreamException		If a parse error occurs.
+	 */
+	private final DeviceList parseDeviceList(final XMLStreamReader reader) throws XMLStreamException {
+		final DeviceList deviceList = new DeviceList();
+
+		be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device device = null;
+
+		while (reader.hasNext()) {
+			if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+				final String element = reader.getLocalName();
+
+				if (ELEMENT_DEVICE.equals(element)) {
+					final String deviceType = attribute(reader, "device_type");
+
+					if (this.deviceTypeFilter.test(deviceType)) {
+						device = new be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device();
+						device.setName(attribute(reader, "name"));
+						device.setAddress(attribute(reader, "address"));
+						device.setIseId(integerAttribute(reader, "ise_id"));
+						device.setInterface(attribute(reader, "interface"));
+						device.setDeviceType(deviceType);
+						device.setReadyConfig(booleanAttribute(reader, "ready_config"));
+
+						deviceList.getDevice().add(device);
+					} else {
+						device = null;
+						skipElement(reader);
+					}
+				} else if (ELEMENT_CHANNEL.equals(element) && device != null) {
+					final be.techniquez.homeautomation.homematic.xmlapi.devicelist.Channel channel = new be.techniquez.homeautomation.homematic.xmlapi.devicelist.Channel();
+					channel.setName(attribute(reader, "name"));
+					channel.setAddress(attribute(reader, "address"));
+					channel.setIseId(integerAttribute(reader, "ise_id"));
+					channel.setType(integerAttribute(reader, "type"));
+					channel.setDirection(attribute(reader, "direction"));
+					channel.setParentDevice(integerAttribute(reader, "parent_device"));
+					channel.setIndex(integerAttribute(reader, "index"));
+					channel.setGroupPartner(attribute(reader, "group_partner"));
+					channel.setAesAvailable(booleanAttribute(reader, "aes_available"));
+					channel.setTransmissionMode(attribute(reader, "transmission_mode"));
+					channel.setVisible(booleanAttribute(reader, "visible"));
+					channel.setReadyConfig(booleanAttribute(reader, "ready_config"));
+					channel.setOperate(booleanAttribute(reader, "operate"));
+
+					device.getChannel().add(channel);
+				}
+			}
+		}
+
+		return deviceList;
+	}
+
+	/**
+	 * Parses a state.
+	 *
+	 * @param 		reader		The reader.
+	 *
+	 * @return		The state.
+	 *
+	 * @throws 		XMLStreamException		If a parse error occurs.
+	 */
+	private static final State parseState(final XMLStreamReader reader) throws XMLStreamException {
+		final State state = new State();
+
+		parseStateDevices(reader, state::setDevice);
+
+		return state;
+	}
+
+	/**
+	 * Parses a state list.
+	 *
+	 * @param 		reader		The reader.
+	 *
+	 * @return		The state list.
+	 *
+	 * @throws 		XMLStreamException		If a parse error occurs.
+	 */
+	private static final StateList parseStateList(final XMLStreamReader reader) throws XMLStreamException {
+		final StateList stateList = new StateList();
+
+		parseStateDevices(reader, stateList.getDevice()::add);
+
+		return stateList;
+	}
+
+	/**
+	 * Parses the devices in a state or state list response.
+	 *
+	 * @param 	reader		The reader.
+	 * @param 	devices		Receives the devices, before their channels are added.
+	 *
+	 * @throws 	XMLStreamException		If a parse error occurs.
+	 */
+	private static final void parseStateDevices(final XMLStreamReader reader, final Consumer<be.techniquez.homeautomation.homematic.xmlapi.state.Device> devices) throws XMLStreamException {
+		be.techniquez.homeautomation.homematic.xmlapi.state.Device device = null;
+		be.techniquez.homeautomation.homematic.xmlapi.state.Channel channel = null;
+
+		while (reader.hasNext()) {
+			if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+				final String element = reader.getLocalName();
+
+				if (ELEMENT_DEVICE.equals(element)) {
+					device = new be.techniquez.homeautomation.homematic.xmlapi.state.Device();
+					device.setName(attribute(reader, "name"));
+					device.setIseId(integerAttribute(reader, "ise_id"));
+					device.setUnreach(booleanAttribute(reader, "unreach"));
+					device.setStickyUnreach(booleanAttribute(reader, "sticky_unreach"));
+					device.setConfigPending(booleanAttribute(reader, "config_pending"));
+
+					channel = null;
+					devices.accept(device);
+				} else if (ELEMENT_CHANNEL.equals(element) && device != null) {
+					channel = new be.techniquez.homeautomation.homematic.xmlapi.state.Channel();
+					channel.setName(attribute(reader, "name"));
+					channel.setIseId(integerAttribute(reader, "ise_id"));
+
+					device.getChannel().add(channel);
+				} else if (ELEMENT_DATAPOINT.equals(element) && channel != null) {
+					final Datapoint datapoint = new Datapoint();
+					datapoint.setName(attribute(reader, "name"));
+					datapoint.setType(attribute(reader, "type"));
+					datapoint.setIseId(integerAttribute(reader, "ise_id"));
+					datapoint.setValue(attribute(reader, "value"));
+					datapoint.setValuetype(integerAttribute(reader, "valuetype"));
+					datapoint.setValueunit(attribute(reader, "valueunit"));
+					datapoint.setTimestamp(integerAttribute(reader, "timestamp"));
+
+					channel.getDatapoint().add(datapoint);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses the result of a state change.
+	 *
+	 * @param 		reader		The reader.
+	 *
+	 * @return		The result.
+	 *
+	 * @throws 		XMLStreamException		If a parse error occurs.
+	 */
+	private static final Result parseResult(final XMLStreamReader reader) throws XMLStreamException {
+		final Result result = new Result();
+
+		while (reader.hasNext()) {
+			if (reader.next() == XMLStreamConstants.START_ELEMENT && ELEMENT_CHANGED.equals(reader.getLocalName())) {
+				final Changed changed = new Changed();
+				changed.setId(integerAttribute(reader, "id"));
+				changed.setNewValue(attribute(reader, "new_value"));
+
+				result.getChanged().add(changed);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Skips the element the reader is positioned on, including all of its children.
+	 *
+	 * @param 	reader		The reader.
+	 *
+	 * @throws 	XMLStreamException		If a parse error occurs.
+	 */
+	private static final void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+
+		while (depth > 0 && reader.hasNext()) {
+			final int event = reader.next();
+
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Returns the value of an attribute.
+	 *
+	 * @param 		reader		The reader.
+	 * @param 		name		The name of the attribute.
+	 *
+	 * @return		The value, <code>null</code> if not present.
+	 */
+	private static final String attribute(final XMLStreamReader reader, final String name) {
+		return reader.getAttributeValue(null, name);
+	}
+
+	/**
+	 * Returns the value of an integer attribute.
+	 *
+	 * @param 		reader		The reader.
+	 * @param 		name		The name of the attribute.
+	 *
+	 * @return		The value, <code>null</code> if not present or empty.
+	 */
+	private static final BigInteger integerAttribute(final XMLStreamReader reader, final String name) {
+		final String value = attribute(reader, name);
+
+		return value == null || value.isEmpty() ? null : new BigInteger(value.trim());
+	}
+
+	/**
+	 * Returns the value of a boolean attribute.
+	 *
+	 * @param 		reader		The reader.
+	 * @param 		name		The name of the attribute.
+	 *
+	 * @return		The value, <code>false</code> if not present.
+	 */
+	private static final boolean booleanAttribute(final XMLStreamReader reader, final String name) {
+		final String value = attribute(reader, name);
+
+		return "true".equals(value) || "1".equals(value);
+	}
+}
@@ -0,0 +1,89 @@
+package be.techniquez.homeautomation.homematic.impl.channel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+
+/**
+ * Thread safe pool of {@link Unmarshaller}s. The {@link JAXBContext}s are built once per package and shared
+ * by the whole JVM, the {@link Unmarshaller}s (which are not thread safe) are handed out to one caller at a time.
+ *
+ * @author alex
+ */
+final class UnmarshallerPool implements ResponseParser {
+
+	/** The contexts, per package. Creating these is expensive, so they are shared. */
+	private static final ConcurrentMap<String, JAXBContext> CONTEXTS = new ConcurrentHashMap<>();
+
+	/** The idle unmarshallers, per package. */
+	private final ConcurrentMap<String, Queue<Unmarshaller>> idle = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the context for the given package, creating it if necessary.
+	 *
+	 * @param 		packageName		The name of the package.
+	 *
+	 * @return		The context.
+	 *
+	 * @throws 		JAXBException	If the context cannot be created.
+	 */
+	static final JAXBContext getContext(final String packageName) throws JAXBException {
+		final JAXBContext context = CONTEXTS.get(packageName);
+
+		if (context != null) {
+			return context;
+		}
+
+		final JAXBContext newContext = JAXBContext.newInstance(packageName);
+		final JAXBContext existingContext = CONTEXTS.putIfAbsent(packageName, newContext);
+
+		return existingContext != null ? existingContext : newContext;
+	}
+
+	/**
+	 * Unmarshals the given stream to the given type, using a pooled {@link Unmarshaller}.
+	 *
+	 * @param 		stream			The stream to read.
+	 * @param 		responseType	The expected type.
+	 *
+	 * @return		The unmarshalled object.
+	 *
+	 * @throws 		JAXBException	If the stream cannot be unmarshalled.
+	 */
+	final <T> T unmarshal(final InputStream stream, final Class<T> responseType) throws JAXBException {
+		final String packageName = Objects.requireNonNull(responseType).getPackage().getName();
+		final Queue<Unmarshaller> unmarshallers = this.idle.computeIfAbsent(packageName, name -> new ConcurrentLinkedQueue<>());
+
+		Unmarshaller unmarshaller = unmarshallers.poll();
+
+		if (unmarshaller == null) {
+			unmarshaller = getContext(packageName).createUnmarshaller();
+		}
+
+		try {
+			return responseType.cast(unmarshaller.unmarshal(stream));
+		} finally {
+			unmarshallers.offer(unmarshaller);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final <T> T parse(final InputStream stream, final Class<T> responseType) throws IOException {
+		try {
+			return this.unmarshal(stream, responseType);
+		} catch (JAXBException e) {
+			throw new IOException("Error while unmarshalling : [" + e.getMessage() + "]", e);
+		}
+	}
+}
@@ -45,7 +45,8 @@ final class XMLAPIURLBuilder {
 	enum Endpoint {
 		DEVICELIST("devicelist.cgi"),
 		STATECHANGE("statechange.cgi"),
-		GET_STATE("state.cgi");
+		GET_STATE("state.cgi"),
+		STATELIST("statelist.cgi");
 		
 		/** The CGI url. */
 		private final String cgi;
@@ -1,15 +1,18 @@
 package be.techniquez.homeautomation.homematic.impl.device;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.function.Function;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import be.techniquez.homeautomation.homematic.api.Device;
 import be.techniquez.homeautomation.homematic.impl.CCUChannel;
-import be.techniquez.homeautomation.homematic.xmlapi.state.Channel;
-import be.techniquez.homeautomation.homematic.xmlapi.state.Datapoint;
+import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUChannelValueHandler;
+import be.techniquez.homeautomation.homematic.impl.CCUInterface;
 import be.techniquez.homeautomation.homematic.xmlapi.state.State;
 
 /**
@@ -22,14 +25,14 @@ public abstract class AbstractDevice implements Device {
 	/** Logger instance. */
 	private static final Logger logger = Logger.getLogger(AbstractDevice.class.getName());
 	
-	/** Can keep this static for now, don't have anything else. */
-	private static final String DEVICE_TYPE = "BidCos-Wired";
+	/** The interface of the devices that do not specify one. */
+	private static final String DEFAULT_INTERFACE = CCUInterface.BIDCOS_WIRED.getName();
 	
 	/** The CCU channel. */
 	private final CCUChannel ccuChannel;
 
-	/** The device name. */
-	private final String name;
+	/** The device name, changes when the device is renamed on the CCU. */
+	private volatile String name;
 	
 	/** The serial number. */
 	private final String serialNumber;
@@ -40,6 +43,9 @@ public abstract class AbstractDevice implements Device {
 	/** The address. */
 	private final String address;
 	
+	/** The name of the interface the device is attached to, as in <code>BidCos-RF</code>. */
+	private final String interfaceName;
+	
 	/** The data point id. */
 	private final String datapointName;
 	
@@ -49,6 +55,53 @@ public abstract class AbstractDevice implements Device {
 	/** The type of channel. */
 	private final DatapointType channelType;
 	
+	/** Indicates whether the state of the device was received, from an event or a request. */
+	private volatile boolean stateKnown;
+	
+	/** Serializes the events and the refreshed states, so the listeners see the changes one at a time and in order. */
+	private final Object stateLock = new Object();
+	
+	/** Indicates an event was applied, guarded by the state lock. */
+	private boolean eventApplied;
+	
+	/** When the last event was applied, as in {@link System#nanoTime()}, guarded by the state lock. */
+	private long eventAppliedAt;
+	
+	/** Receives the events of this device. */
+	private final CCUChannelValueHandler eventHandler = new CCUChannelValueHandler() {
+		@Override
+		public final void onBoolean(final String address, final String attribute, final boolean value) {
+			synchronized (stateLock) {
+				eventApplied();
+				attributeChanged(attribute, value);
+			}
+		}
+		
+		@Override
+		public final void onInt(final String address, final String attribute, final int value) {
+			synchronized (stateLock) {
+				eventApplied();
+				attributeChanged(attribute, value);
+			}
+		}
+		
+		@Override
+		public final void onDouble(final String address, final String attribute, final double value) {
+			synchronized (stateLock) {
+				eventApplied();
+				attributeChanged(attribute, value);
+			}
+		}
+		
+		@Override
+		public final void onString(final String address, final String attribute, final String value) {
+			synchronized (stateLock) {
+				eventApplied();
+				attributeChanged(attribute, value);
+			}
+		}
+	};
+	
 	/**
 	 * Create a new instance.
 	 * 
@@ -60,14 +113,30 @@ public abstract class AbstractDevice implements Device {
 	 * @param	channelType		The type of the channel.
 	 */
 	protected AbstractDevice(final CCUChannel channel, final DatapointType channelType, final int channelNumber, final int iseId, final String name, final String serialNumber) {
+		this(channel, DEFAULT_INTERFACE, channelType, channelNumber, iseId, name, serialNumber);
+	}
+	
+	/**
+	 * Create a new instance.
+	 * 
+	 * @param	ccuChannel		The channel.
+	 * @param	interfaceName	The name of the interface the device is attached to, <code>null</code> for <code>BidCos-Wired</code>.
+	 * @param	iseId			The ISE (internal) ID.
+	 * @param 	name			The name of the device.
+	 * @param	serialNumber	The serial number of the device.
+	 * @param	channelNumber	The channel number.
+	 * @param	channelType		The type of the channel.
+	 */
+	protected AbstractDevice(final CCUChannel channel, final String interfaceName, final DatapointType channelType, final int channelNumber, final int iseId, final String name, final String serialNumber) {
 		this.ccuChannel = Objects.requireNonNull(channel);
+		this.interfaceName = interfaceName != null ? interfaceName : DEFAULT_INTERFACE;
 		this.name = Objects.requireNonNull(name);
 		this.serialNumber = Objects.requireNonNull(serialNumber);
 		this.channelNumber = channelNumber;
 		this.iseId = iseId;
 		this.channelType = Objects.requireNonNull(channelType);
 		
-		this.datapointName = new StringBuilder().append(DEVICE_TYPE)
+		this.datapointName = new StringBuilder().append(this.interfaceName)
 												.append(".")
 												.append(this.serialNumber)
 												.append(":")
@@ -78,11 +147,7 @@ public abstract class AbstractDevice implements Device {
 		
 		this.address = new StringBuilder(this.serialNumber).append(":").append(this.channelNumber).toString();
 		
-		this.ccuChannel.addEventHandler((address, attribute, value) -> {
-			if (address.equals(this.address)) {
-				this.attributeChanged(attribute, value);
-			}
-		});
+		this.ccuChannel.addEventHandler(this.address, this.channelType.getTypeName(), this.eventHandler);
 	}
 
 	/**
@@ -93,6 +158,15 @@ public abstract class AbstractDevice implements Device {
 		return this.name;
 	}
 	
+	/**
+	 * Changes the name of the device, used when it was renamed on the CCU.
+	 * 
+	 * @param 	name		The new name.
+	 */
+	public final void rename(final String name) {
+		this.name = Objects.requireNonNull(name);
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -101,43 +175,79 @@ public abstract class AbstractDevice implements Device {
 	}
 	
 	/**
-	 * Returns the state.
+	 * Returns the address of the channel, as in <code>serial:channel</code>.
+	 * 
+	 * @return	The address.
+	 */
+	public final String getAddress() {
+		return this.address;
+	}
+	
+	/**
+	 * Returns the name of the interface the device is attached to.
+	 * 
+	 * @return	The interface name, as in <code>BidCos-RF</code>.
+	 */
+	public final String getInterfaceName() {
+		return this.interfaceName;
+	}
+	
+	/**
+	 * Stops receiving events for this device, called when the device is no longer used.
+	 */
+	public final void dispose() {
+		this.ccuChannel.removeEventHandler(this.address, this.channelType.getTypeName(), this.eventHandler);
+	}
+	
+	/**
+	 * Returns the ISE ID of the channel.
 	 * 
-	 * @param	converter			The conversion function.
+	 * @return	The ISE ID.
+	 */
+	public final int getIseId() {
+		return this.iseId;
+	}
+	
+	/**
+	 * Loads the state of the given devices from the CCU. The devices must be channels of the same physical device : 
+	 * the CCU returns the state of all channels of a device in a single response, so it is only fetched once.
 	 * 
-	 * @return	The state.
+	 * @param 	siblings		The devices, all having the same serial number.
 	 * 
-	 * @throws	IOException			If an IO error occurs.
+	 * @throws	IllegalStateException	If the state cannot be loaded.
 	 */
-	protected final <T> T getState(final Function<String, T> converter) {
+	public static final void loadStates(final List<? extends AbstractDevice> siblings) {
+		if (siblings.isEmpty()) {
+			return;
+		}
+		
+		final AbstractDevice first = siblings.get(0);
+		
 		if (logger.isLoggable(Level.INFO)) {
-			logger.log(Level.INFO, "Getting state for device : [" + this.serialNumber + "], channel [" + this.channelNumber + "], datapoint [" + this.channelType + "]");
+			logger.log(Level.INFO, "Getting state for device : [" + first.serialNumber + "], [" + siblings.size() + "] channels.");
 		}
 		
 		try {
-			final State state = this.ccuChannel.getState(this.iseId);
+			final long requestedAt = System.nanoTime();
+			final State state = first.ccuChannel.getState(first.iseId);
 			
-			if (logger.isLoggable(Level.INFO)) {
-				logger.log(Level.INFO, "State received, processing, using datapoint name [" + this.datapointName + "]");
+			if (state == null || state.getDevice() == null) {
+				throw new IllegalStateException("No state returned for device [" + first.serialNumber + "] !");
 			}
 			
-			if (state != null) {
-				final Channel channel = state.getDevice().getChannel()
-														 .stream()
-														 .filter(someChannel -> someChannel.getIseId().intValue() == this.iseId)
-														 .findFirst()
-														 .orElseThrow(() -> new IllegalStateException("Cannot find channel [" + this.iseId + "] in the state XML."));
-				
-				final Datapoint datapoint = channel.getDatapoint()
-												   .stream()
-												   .filter(dataPoint -> dataPoint.getName().equals(this.datapointName))
-												   .findFirst()
-												   .orElseThrow(() -> new IllegalStateException("Cannot find channel [" + this.iseId + "] in the state XML."));
+			final Map<String, String> datapointValues = new HashMap<>();
+			
+			state.getDevice().getChannel().forEach(channel -> channel.getDatapoint().forEach(datapoint -> datapointValues.put(datapoint.getName(), datapoint.getValue())));
+			
+			for (final AbstractDevice device : siblings) {
+				if (!device.serialNumber.equals(first.serialNumber)) {
+					throw new IllegalArgumentException("Device [" + device.serialNumber + "] is not a channel of [" + first.serialNumber + "]");
+				}
 				
-				return converter.apply(datapoint.getValue());
+				if (!device.refreshState(datapointValues, requestedAt)) {
+					throw new IllegalStateException("Cannot find datapoint [" + device.datapointName + "] in the state XML.");
+				}
 			}
-			
-			throw new IllegalStateException("No state returned for channel [" + this.iseId + "] !");
 		} catch (IOException e) {
 			if (logger.isLoggable(Level.WARNING)) {
 				logger.log(Level.WARNING, "IO error caught when getting state : [" + e.getMessage() + "]", e);
@@ -147,6 +257,55 @@ public abstract class AbstractDevice implements Device {
 		}
 	}
 	
+	/**
+	 * Indicates whether the state of the device is known, because it was loaded, received in an event or restored.
+	 * 
+	 * @return		<code>true</code> if the state is known.
+	 */
+	public final boolean isStateKnown() {
+		return this.stateKnown;
+	}
+	
+	/**
+	 * Updates the state of the device using the given datapoint values. The values are older than any event applied
+	 * after they were requested, so they are dropped when there is one : events are delivered in order, the last one
+	 * holds the current state. The values are applied under the same lock as the events.
+	 * 
+	 * @param 		datapointValues		The values of the datapoints, keyed by datapoint name.
+	 * @param 		requestedAt			When the values were requested, as in {@link System#nanoTime()}.
+	 * 
+	 * @return		<code>true</code> if the values contained the datapoint of this device, <code>false</code> otherwise.
+	 */
+	public final boolean refreshState(final Map<String, String> datapointValues, final long requestedAt) {
+		final String value = datapointValues.get(this.datapointName);
+		
+		if (value != null && !value.isEmpty()) {
+			synchronized (this.stateLock) {
+				if (this.eventApplied && this.eventAppliedAt - requestedAt >= 0) {
+					if (logger.isLoggable(Level.FINE)) {
+						logger.log(Level.FINE, "Device [" + this.address + "] : an event was received since the state was requested, ignoring [" + value + "]");
+					}
+				} else {
+					this.stateKnown = true;
+					this.attributeChanged(this.channelType.getTypeName(), value);
+				}
+			}
+			
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Records that an event is applied, called with the state lock held.
+	 */
+	private final void eventApplied() {
+		this.stateKnown = true;
+		this.eventApplied = true;
+		this.eventAppliedAt = System.nanoTime();
+	}
+	
 	/**
 	 * Sets the state.
 	 * 
@@ -168,6 +327,21 @@ public abstract class AbstractDevice implements Device {
 		}
 	}
 	
+	/**
+	 * Sets the state without blocking the caller.
+	 * 
+	 * @param 		state		The state to set.
+	 * 
+	 * @return		Completes when the state has been set.
+	 */
+	protected final CompletableFuture<Void> setStateAsync(final String state) {
+		if (logger.isLoggable(Level.INFO)) {
+			logger.log(Level.INFO, "Setting state asynchronously for device : [" + this.serialNumber + "], channel [" + this.channelNumber + "], datapoint [" + this.channelType + "] to [" + state + "]");
+		}
+		
+		return this.ccuChannel.setStateAsync(this.iseId, state);
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -188,4 +362,34 @@ public abstract class AbstractDevice implements Device {
 	 * @param 	value		The value of the attribute.
 	 */
 	protected abstract void attributeChanged(final String name, final String value);
+	
+	/**
+	 * Called when the value of a boolean attribute has changed. Passes the value on as a string unless overridden.
+	 * 
+	 * @param 	name		The name of the attribute.
+	 * @param 	value		The value of the attribute.
+	 */
+	protected void attributeChanged(final String name, final boolean value) {
+		this.attributeChanged(name, String.valueOf(value));
+	}
+	
+	/**
+	 * Called when the value of an integer attribute has changed. Passes the value on as a string unless overridden.
+	 * 
+	 * @param 	name		The name of the attribute.
+	 * @param 	value		The value of the attribute.
+	 */
+	protected void attributeChanged(final String name, final int value) {
+		this.attributeChanged(name, String.valueOf(value));
+	}
+	
+	/**
+	 * Called when the value of a double attribute has changed. Passes the value on as a string unless overridden.
+	 * 
+	 * @param 	name		The name of the attribute.
+	 * @param 	value		The value of the attribute.
+	 */
+	protected void attributeChanged(final String name, final double value) {
+		this.attributeChanged(name, String.valueOf(value));
+	}
 }
@@ -13,11 +13,19 @@ import be.techniquez.homeautomation.homematic.impl.CCUChannel;
  * @author alex
  */
 public enum DeviceType {
-	DIMMER("HMW-LC-Dim1L-DR", (xml, channel) -> Arrays.asList(new Device[] { DimmerImpl.create(xml, channel) })),
-	SWITCH("HMW-IO-12-Sw7-DR", (xml, channel) -> SwitchImpl.create(channel, xml));
+	DIMMER((xml, channel) -> Arrays.asList(new Device[] { DimmerImpl.create(xml, channel) }), "HMW-LC-Dim1L-DR"),
+	SWITCH((xml, channel) -> SwitchImpl.create(channel, xml), "HMW-IO-12-Sw7-DR"),
+	RF_DIMMER((xml, channel) -> Arrays.asList(new Device[] { DimmerImpl.create(xml, channel) }),
+			  "HM-LC-Dim1T-Pl", "HM-LC-Dim1T-Pl-2", "HM-LC-Dim1T-Pl-3", "HM-LC-Dim1T-FM", "HM-LC-Dim1T-CV", "HM-LC-Dim1TPBU-FM",
+			  "HM-LC-Dim1L-Pl", "HM-LC-Dim1L-Pl-2", "HM-LC-Dim1L-Pl-3", "HM-LC-Dim1L-CV", "HM-LC-Dim1PWM-CV"),
+	RF_SWITCH((xml, channel) -> SwitchImpl.createSingle(channel, xml),
+			  "HM-LC-Sw1-Pl", "HM-LC-Sw1-Pl-2", "HM-LC-Sw1-Pl-DN-R1", "HM-LC-Sw1-FM", "HM-LC-Sw1-SM", "HM-LC-Sw1-DR",
+			  "HM-LC-Sw1PBU-FM", "HM-ES-PMSw1-Pl"),
+	HMIP_DIMMER((xml, channel) -> Arrays.asList(new Device[] { DimmerImpl.create(xml, channel) }), "HmIP-BDT", "HmIP-FDT", "HmIP-PDT"),
+	HMIP_SWITCH((xml, channel) -> SwitchImpl.createSingle(channel, xml), "HmIP-PS", "HmIP-PSM", "HmIP-BSM", "HmIP-FSM", "HmIP-FSM16");
 	
-	/** The typeName. */
-	private final String typeName;
+	/** The type names. */
+	private final List<String> typeNames;
 	
 	/** The type class. */
 	private final DeviceFactory factory;
@@ -25,11 +33,11 @@ public enum DeviceType {
 	/**
 	 * Create a new instance.
 	 * 
-	 * @param 	typeName		The type name.
 	 * @param	factory			The factory.
+	 * @param 	typeNames		The names of the device types the factory creates devices for.
 	 */
-	private DeviceType(final String typeName, final DeviceFactory factory) {
-		this.typeName = typeName;
+	private DeviceType(final DeviceFactory factory, final String... typeNames) {
+		this.typeNames = Arrays.asList(typeNames);
 		this.factory = factory;
 	}
 	
@@ -42,7 +50,7 @@ public enum DeviceType {
 	 */
 	public static final DeviceType forName(final String typeName) {
 		for (final DeviceType type : DeviceType.values()) {
-			if (type.typeName.equals(typeName)) {
+			if (type.typeNames.contains(typeName)) {
 				return type;
 			}
 		}
@@ -59,7 +67,7 @@ public enum DeviceType {
 	 * @return		The parsed device, <code>null</code> if not supported.
 	 */
 	public final List<Device> parse(final be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device xmlDevice, final CCUChannel channel) {
-		if (xmlDevice.getDeviceType().equals(this.typeName)) {
+		if (this.typeNames.contains(xmlDevice.getDeviceType())) {
 			return this.factory.createDevices(xmlDevice, channel);
 		}
 		
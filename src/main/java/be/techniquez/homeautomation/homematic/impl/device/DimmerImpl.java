@@ -1,11 +1,13 @@
 package be.techniquez.homeautomation.homematic.impl.device;
 
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import be.techniquez.homeautomation.homematic.api.Dimmer;
 import be.techniquez.homeautomation.homematic.api.DimmerListener;
 import be.techniquez.homeautomation.homematic.impl.CCUChannel;
+import be.techniquez.homeautomation.homematic.xmlapi.devicelist.Channel;
 import be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device;
 
 /**
@@ -17,12 +19,15 @@ public final class DimmerImpl extends AbstractDevice implements Dimmer {
 	
 	/** Indicates the channel is a receiver. */
 	private static final String DIRECTION_RECEIVER = "RECEIVER";
+	
+	/** The number of the output channel of the wired dimmer, used when the device list does not give one. */
+	private static final int WIRED_OUTPUT_CHANNEL = 3;
 
 	/** The state. */
 	private volatile int state;
 	
 	/** The listeners. */
-	private final Set<DimmerListener> listeners = new HashSet<>();
+	private final Set<DimmerListener> listeners = new CopyOnWriteArraySet<>();
 	
 	/**
 	 * Create a new instance.
@@ -31,13 +36,26 @@ public final class DimmerImpl extends AbstractDevice implements Dimmer {
 	 * @param	channel	The CCU channel.
 	 */
 	public DimmerImpl(final CCUChannel channel, final String name, final String serialNumber, final int outputChannelId) {
-		super(channel, DatapointType.LEVEL, 3, outputChannelId, name, serialNumber);
-		
-		this.state = this.getStateFromCCU();
+		super(channel, DatapointType.LEVEL, WIRED_OUTPUT_CHANNEL, outputChannelId, name, serialNumber);
+	}
+	
+	/**
+	 * Create a new instance.
+	 * 
+	 * @param 	channel				The CCU channel.
+	 * @param 	interfaceName		The name of the interface the dimmer is attached to.
+	 * @param 	channelNumber		The number of the output channel.
+	 * @param 	name				The name.
+	 * @param 	serialNumber		The serial number.
+	 * @param 	outputChannelId		The ISE ID of the output channel.
+	 */
+	public DimmerImpl(final CCUChannel channel, final String interfaceName, final int channelNumber, final String name, final String serialNumber, final int outputChannelId) {
+		super(channel, interfaceName, DatapointType.LEVEL, channelNumber, outputChannelId, name, serialNumber);
 	}
 
 	/**
-	 * Creates a new dimmer based on the given device definition.
+	 * Creates a new dimmer based on the given device definition. The dimmer uses the first receiving channel : the
+	 * output of the wired dimmer, the first of the channels of an RF dimmer, or the first virtual actuator channel of an HmIP dimmer.
 	 * 
 	 * @param 		xmlDevice		The XML definition.
 	 * @param		ccuChannel		The channel.
@@ -47,13 +65,13 @@ public final class DimmerImpl extends AbstractDevice implements Dimmer {
 	public static final Dimmer create(final Device xmlDevice, final CCUChannel ccuChannel) {
 		final String deviceName = xmlDevice.getName();
 		final String serial = xmlDevice.getAddress();
-		final int outputChannelId = xmlDevice.getChannel().stream()
-														  .filter(channel -> channel.getDirection().equals(DIRECTION_RECEIVER))
-														  .findFirst()
-														  .get()
-														  .getIseId().intValue();
+		final Channel outputChannel = xmlDevice.getChannel().stream()
+														    .filter(channel -> channel.getDirection().equals(DIRECTION_RECEIVER))
+														    .findFirst()
+														    .get();
+		final int channelNumber = outputChannel.getIndex() != null ? outputChannel.getIndex().intValue() : WIRED_OUTPUT_CHANNEL;
 		
-		return new DimmerImpl(ccuChannel, deviceName, serial, outputChannelId);
+		return new DimmerImpl(ccuChannel, xmlDevice.getInterface(), channelNumber, deviceName, serial, outputChannel.getIseId().intValue());
 	}
 	
 	/**
@@ -61,13 +79,32 @@ public final class DimmerImpl extends AbstractDevice implements Dimmer {
 	 */
 	@Override
 	public final void setDimmerValue(final int percentage) {
+		this.setState(toValue(percentage));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final CompletableFuture<Void> setDimmerValueAsync(final int percentage) {
+		return this.setStateAsync(toValue(percentage));
+	}
+	
+	/**
+	 * Converts the given percentage to the value the CCU expects.
+	 * 
+	 * @param 		percentage		The percentage, between 0 and 100.
+	 * 
+	 * @return		The value.
+	 */
+	public static final String toValue(final int percentage) {
 		if (percentage < 0 || percentage > 100) {
 			throw new IllegalArgumentException("Percentage should be between 0 and 100, you specified [" + percentage + "]");
 		}
 		
 		final double percentageFraction = ((double)percentage) / 100;
 		
-		this.setState(String.valueOf(percentageFraction));
+		return String.valueOf(percentageFraction);
 	}
 
 	/**
@@ -79,30 +116,22 @@ public final class DimmerImpl extends AbstractDevice implements Dimmer {
 	}
 	
 	/**
-	 * Returns the state from the CCU.
-	 * 
-	 * @return	The state returned from the CCU.
-	 */
-	private final int getStateFromCCU() {
-		return convert(this.getState(Double::parseDouble));
-	}
-	
-	/**
-	 * Converts the given value to a percentage.
+	 * Converts the given value to a percentage. The value is rounded, not truncated : BIN-RPC carries doubles with a 30 bit
+	 * mantissa, so most levels arrive slightly below their decimal value, as in <code>0.29999999981</code> for 30%.
 	 * 
 	 * @param 		value		The value.
 	 * 
 	 * @return		The percentage.
 	 */
 	private static final int convert(final double value) {
-		final int percentage = (int)(value * 100.0);
+		final long percentage = Math.round(value * 100.0);
 		
 		if (percentage < 0) {
 			return 0;
 		} else if (percentage > 100) {
 			return 100;
 		} else {
-			return percentage;
+			return (int)percentage;
 		}
 	}
 
@@ -112,12 +141,31 @@ public final class DimmerImpl extends AbstractDevice implements Dimmer {
 	@Override
 	protected final void attributeChanged(final String name, final String value) {
 		if (name.equals(DatapointType.LEVEL.getTypeName())) {
-			this.state = convert(Double.parseDouble(value));
-			
-			this.listeners.stream()
-						  .forEach(listener -> listener.dimmed(this.state));
+			this.levelChanged(Double.parseDouble(value));
 		}
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected final void attributeChanged(final String name, final double value) {
+		if (name.equals(DatapointType.LEVEL.getTypeName())) {
+			this.levelChanged(value);
+		}
+	}
+	
+	/**
+	 * Called when the level has changed.
+	 * 
+	 * @param 	level		The level, between 0 and 1.
+	 */
+	private final void levelChanged(final double level) {
+		this.state = convert(level);
+		
+		this.listeners.stream()
+					  .forEach(listener -> listener.dimmed(this.state));
+	}
 
 	/**
 	 * {@inheritDoc}
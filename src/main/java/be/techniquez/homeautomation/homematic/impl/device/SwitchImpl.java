@@ -1,9 +1,10 @@
 package be.techniquez.homeautomation.homematic.impl.device;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import be.techniquez.homeautomation.homematic.api.Device;
 import be.techniquez.homeautomation.homematic.api.Switch;
@@ -18,25 +19,27 @@ import be.techniquez.homeautomation.homematic.xmlapi.devicelist.Channel;
  */
 public final class SwitchImpl extends AbstractDevice implements Switch {
 	
+	/** Indicates the channel is a receiver. */
+	private static final String DIRECTION_RECEIVER = "RECEIVER";
+	
 	/** The state. */
 	private volatile boolean state;
 	
 	/** The listeners. */
-	private final Set<SwitchListener> listeners = new HashSet<>();
+	private final Set<SwitchListener> listeners = new CopyOnWriteArraySet<>();
 
 	/**
 	 * Create a new instance.
 	 * 
 	 * @param 	channel				The CCU channel.
+	 * @param 	interfaceName		The name of the interface the switch is attached to.
 	 * @param 	channelNumber		The channel number.
 	 * @param 	iseId				The ISE ID.
 	 * @param 	name				The name.
 	 * @param 	serialNumber		The serial number.
 	 */
-	private SwitchImpl(final CCUChannel channel, final int channelNumber, final int iseId, final String name, final String serialNumber) {
-		super(channel, DatapointType.STATE, channelNumber, iseId, name, serialNumber);
-		
-		this.state = this.getState(Boolean::parseBoolean);
+	private SwitchImpl(final CCUChannel channel, final String interfaceName, final int channelNumber, final int iseId, final String name, final String serialNumber) {
+		super(channel, interfaceName, DatapointType.STATE, channelNumber, iseId, name, serialNumber);
 	}
 	
 	/**
@@ -53,12 +56,32 @@ public final class SwitchImpl extends AbstractDevice implements Switch {
 			final Channel currentChannel = xmlDevice.getChannel().get(i);
 			
 			if (currentChannel.getName().startsWith("O_")) {
-				devices.add(new SwitchImpl(channel, i + 1, currentChannel.getIseId().intValue(), currentChannel.getName(), xmlDevice.getAddress()));
+				devices.add(new SwitchImpl(channel, xmlDevice.getInterface(), i + 1, currentChannel.getIseId().intValue(), currentChannel.getName(), xmlDevice.getAddress()));
 			}
 		}
 		
 		return devices;
 	}
+	
+	/**
+	 * Creates the switch of a device with a single actuator, as the RF and HmIP switches. The switch uses the first receiving
+	 * channel, which is the first virtual actuator channel on HmIP, and is named after the device.
+	 * 
+	 * @param 		channel			The CCU channel.
+	 * @param 		xmlDevice		The XML device.
+	 * 
+	 * @return		The switch, an empty list if the device has no receiving channel.
+	 */
+	public static final List<Device> createSingle(final CCUChannel channel, final be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device xmlDevice) {
+		final List<Device> devices = new ArrayList<>();
+		
+		xmlDevice.getChannel().stream()
+							  .filter(currentChannel -> DIRECTION_RECEIVER.equals(currentChannel.getDirection()) && currentChannel.getIndex() != null)
+							  .findFirst()
+							  .ifPresent(currentChannel -> devices.add(new SwitchImpl(channel, xmlDevice.getInterface(), currentChannel.getIndex().intValue(), currentChannel.getIseId().intValue(), xmlDevice.getName(), xmlDevice.getAddress())));
+		
+		return devices;
+	}
 
 	/**
 	 * {@inheritDoc}
@@ -76,19 +99,46 @@ public final class SwitchImpl extends AbstractDevice implements Switch {
 		this.setState(String.valueOf(on));
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final CompletableFuture<Void> setOnAsync(final boolean on) {
+		return this.setStateAsync(String.valueOf(on));
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	protected final void attributeChanged(final String name, final String value) {
 		if (name.equals(DatapointType.STATE.getTypeName())) {
-			this.state = Boolean.parseBoolean(value);
-			
-			this.listeners.stream()
-						  .forEach(listener -> listener.stateChanged(this.state));
+			this.stateChanged(Boolean.parseBoolean(value));
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected final void attributeChanged(final String name, final boolean value) {
+		if (name.equals(DatapointType.STATE.getTypeName())) {
+			this.stateChanged(value);
 		}
 	}
 	
+	/**
+	 * Called when the state has changed.
+	 * 
+	 * @param 	on		The new state.
+	 */
+	private final void stateChanged(final boolean on) {
+		this.state = on;
+		
+		this.listeners.stream()
+					  .forEach(listener -> listener.stateChanged(this.state));
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
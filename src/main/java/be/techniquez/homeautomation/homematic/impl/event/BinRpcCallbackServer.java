@@ -0,0 +1,89 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Collections;
+
+import be.techniquez.homeautomation.homematic.impl.rpc.BinRpcCodec;
+import be.techniquez.homeautomation.homematic.impl.rpc.BinRpcServer;
+
+/**
+ * {@link CallbackServer} receiving the callbacks over BIN-RPC.
+ *
+ * @author alex
+ */
+final class BinRpcCallbackServer implements CallbackServer {
+
+	/** The response to an event. */
+	private static final byte[] EVENT_RESPONSE = BinRpcCodec.encodeResponse("");
+
+	/** The server. */
+	private final BinRpcServer server;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	port		The port to listen on.
+	 */
+	BinRpcCallbackServer(final int port) {
+		this(null, port);
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	bindAddress		The address to listen on, <code>null</code> for all addresses.
+	 * @param 	port			The port to listen on.
+	 */
+	BinRpcCallbackServer(final InetAddress bindAddress, final int port) {
+		this.server = new BinRpcServer(bindAddress, port);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void start(final CallbackHandler handler, final EventSink sink) throws IOException {
+		this.server.start(handler::call, frame -> this.handleFrame(frame, sink));
+	}
+
+	/**
+	 * Decodes events and multicalls straight into the sink.
+	 *
+	 * @param 		frame			The frame.
+	 * @param 		sink			The sink.
+	 *
+	 * @return		The response, <code>null</code> if the frame is not an event or multicall.
+	 *
+	 * @throws 		IOException		If the frame is invalid.
+	 */
+	private final byte[] handleFrame(final BinRpcCodec.Frame frame, final EventSink sink) throws IOException {
+		if (frame.getType() != BinRpcCodec.FRAME_REQUEST) {
+			return null;
+		}
+
+		final BinRpcEventDecoder decoder = new BinRpcEventDecoder(sink);
+
+		if (!decoder.decode(frame.getBody())) {
+			return null;
+		}
+
+		return decoder.isMulticall() ? BinRpcCodec.encodeResponse(Collections.nCopies(decoder.getCalls(), Collections.singletonList(""))) : EVENT_RESPONSE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void stop() {
+		this.server.stop();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final int getPort() {
+		return this.server.getPort();
+	}
+}
@@ -0,0 +1,477 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import static be.techniquez.homeautomation.homematic.impl.rpc.BinRpcCodec.MANTISSA_BITS;
+import static be.techniquez.homeautomation.homematic.impl.rpc.BinRpcCodec.TYPE_ARRAY;
+import static be.techniquez.homeautomation.homematic.impl.rpc.BinRpcCodec.TYPE_BASE64;
+import static be.techniquez.homeautomation.homematic.impl.rpc.BinRpcCodec.TYPE_BOOLEAN;
+import static be.techniquez.homeautomation.homematic.impl.rpc.BinRpcCodec.TYPE_DOUBLE;
+import static be.techniquez.homeautomation.homematic.impl.rpc.BinRpcCodec.TYPE_INTEGER;
+import static be.techniquez.homeautomation.homematic.impl.rpc.BinRpcCodec.TYPE_STRING;
+import static be.techniquez.homeautomation.homematic.impl.rpc.BinRpcCodec.TYPE_STRUCT;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes <code>event</code> and <code>system.multicall</code> BIN-RPC requests straight into pooled
+ * {@link CCUEvent}s, without building the intermediate lists and maps. Other requests, and multicalls containing
+ * other calls, are left to the generic decoder.
+ *
+ * @author alex
+ */
+final class BinRpcEventDecoder {
+
+	/** The event method. */
+	private static final byte[] METHOD_EVENT = "event".getBytes(StandardCharsets.ISO_8859_1);
+
+	/** The multicall method. */
+	private static final byte[] METHOD_MULTICALL = "system.multicall".getBytes(StandardCharsets.ISO_8859_1);
+
+	/** The method name member of a multicall. */
+	private static final byte[] MEMBER_METHOD_NAME = "methodName".getBytes(StandardCharsets.ISO_8859_1);
+
+	/** The parameters member of a multicall. */
+	private static final byte[] MEMBER_PARAMS = "params".getBytes(StandardCharsets.ISO_8859_1);
+
+	/** The number of parameters of an event. */
+	private static final int EVENT_PARAMETERS = 4;
+
+	/** The sink receiving the events. */
+	private final EventSink sink;
+
+	/** The bytes of the request. */
+	private byte[] data;
+
+	/** The current position. */
+	private int position;
+
+	/** The end of the request. */
+	private int limit;
+
+	/** Indicates whether the last request decoded was a multicall. */
+	private boolean multicall;
+
+	/** The number of calls in the last multicall. */
+	private int calls;
+
+	/** The events of the multicall being decoded, passed on once it is known to only contain events. */
+	private final List<CCUEvent> pending = new ArrayList<>();
+
+	/** Indicates whether the multicall being decoded contains calls other than events. */
+	private boolean otherCalls;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	sink		The sink receiving the events.
+	 */
+	BinRpcEventDecoder(final EventSink sink) {
+		this.sink = sink;
+	}
+
+	/**
+	 * Decodes the body of a request frame.
+	 *
+	 * @param 		body			The body, backed by an array.
+	 *
+	 * @return		<code>true</code> if the request was an event or a multicall of events, <code>false</code> if it
+	 * 				should be decoded by the generic decoder.
+	 *
+	 * @throws 		IOException		If the request is invalid.
+	 */
+	final boolean decode(final ByteBuffer body) throws IOException {
+		this.data = body.array();
+		this.position = body.arrayOffset() + body.position();
+		this.limit = body.arrayOffset() + body.limit();
+		this.multicall = false;
+		this.calls = 0;
+
+		final int methodLength = this.readLength();
+		final int methodStart = this.skip(methodLength);
+		final int parameters = this.readInt();
+
+		if (this.equals(methodStart, methodLength, METHOD_EVENT) && parameters == EVENT_PARAMETERS) {
+			final CCUEvent event = this.sink.acquireEvent();
+
+			try {
+				this.readEvent(event, parameters);
+			} catch (IOException | RuntimeException e) {
+				event.release();
+
+				throw e;
+			}
+
+			this.passOn(event);
+			this.calls = 1;
+
+			return true;
+		} else if (this.equals(methodStart, methodLength, METHOD_MULTICALL) && parameters == 1 && this.readInt() == TYPE_ARRAY) {
+			this.multicall = true;
+			this.otherCalls = false;
+
+			try {
+				final int count = this.readInt();
+
+				for (int i = 0; i < count; i++) {
+					this.readCall();
+					this.calls++;
+				}
+			} catch (IOException | RuntimeException e) {
+				this.releasePending();
+
+				throw e;
+			}
+
+			if (this.otherCalls) {
+				this.releasePending();
+				this.multicall = false;
+				this.calls = 0;
+
+				return false;
+			}
+
+			for (int i = 0; i < this.pending.size(); i++) {
+				this.sink.eventReceived(this.pending.get(i));
+			}
+
+			this.pending.clear();
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Indicates whether the last request decoded was a multicall.
+	 *
+	 * @return	<code>true</code> for a multicall, <code>false</code> for a single event.
+	 */
+	final boolean isMulticall() {
+		return this.multicall;
+	}
+
+	/**
+	 * Returns the number of calls in the last request decoded.
+	 *
+	 * @return	The number of calls.
+	 */
+	final int getCalls() {
+		return this.calls;
+	}
+
+	/**
+	 * Releases the events of the multicall being decoded.
+	 */
+	private final void releasePending() {
+		for (int i = 0; i < this.pending.size(); i++) {
+			this.pending.get(i).release();
+		}
+
+		this.pending.clear();
+	}
+
+	/**
+	 * Reads a call of a multicall, queueing it if it is an event. Other calls are skipped, and noted.
+	 *
+	 * @throws 	IOException		If the call is invalid.
+	 */
+	private final void readCall() throws IOException {
+		if (this.readInt() != TYPE_STRUCT) {
+			throw new IOException("Expected a struct in the multicall.");
+		}
+
+		final int members = this.readInt();
+
+		boolean event = false;
+		int paramsPosition = -1;
+
+		for (int i = 0; i < members; i++) {
+			final int nameLength = this.readLength();
+			final int nameStart = this.skip(nameLength);
+
+			if (this.equals(nameStart, nameLength, MEMBER_METHOD_NAME) && this.peekInt() == TYPE_STRING) {
+				this.readInt();
+
+				final int methodLength = this.readLength();
+				event = this.equals(this.skip(methodLength), methodLength, METHOD_EVENT);
+				this.otherCalls |= !event;
+			} else if (this.equals(nameStart, nameLength, MEMBER_PARAMS)) {
+				paramsPosition = this.position;
+				this.skipValue();
+			} else {
+				this.skipValue();
+			}
+		}
+
+		if (event && paramsPosition >= 0) {
+			final int end = this.position;
+			this.position = paramsPosition;
+
+			if (this.readInt() == TYPE_ARRAY) {
+				final int parameters = this.readInt();
+
+				if (parameters == EVENT_PARAMETERS) {
+					final CCUEvent pooled = this.sink.acquireEvent();
+
+					try {
+						this.readEvent(pooled, parameters);
+					} catch (IOException | RuntimeException e) {
+						pooled.release();
+
+						throw e;
+					}
+
+					if (pooled.getType() != null) {
+						this.pending.add(pooled);
+					} else {
+						pooled.release();
+					}
+				}
+			}
+
+			this.position = end;
+		}
+	}
+
+	/**
+	 * Passes the event on to the sink, or releases it if its value was skipped.
+	 *
+	 * @param 	event		The event.
+	 */
+	private final void passOn(final CCUEvent event) {
+		if (event.getType() != null) {
+			this.sink.eventReceived(event);
+		} else {
+			event.release();
+		}
+	}
+
+	/**
+	 * Reads the parameters of an event : the interface ID, the address, the attribute and the value. The value
+	 * is skipped if the sink is not interested in the event, leaving the event without a value.
+	 *
+	 * @param 	event			The event to fill in.
+	 * @param 	parameters		The number of parameters.
+	 *
+	 * @throws 	IOException		If the parameters are invalid.
+	 */
+	private final void readEvent(final CCUEvent event, final int parameters) throws IOException {
+		if (this.peekInt() == TYPE_STRING) {
+			this.expectType(TYPE_STRING);
+
+			final int interfaceIdLength = this.readLength();
+			event.setInterfaceId(this.data, this.skip(interfaceIdLength), interfaceIdLength);
+		} else {
+			this.skipValue();
+		}
+
+		this.expectType(TYPE_STRING);
+		final int addressLength = this.readLength();
+		event.setAddress(this.data, this.skip(addressLength), addressLength);
+
+		this.expectType(TYPE_STRING);
+		final int attributeLength = this.readLength();
+		event.setAttribute(this.data, this.skip(attributeLength), attributeLength);
+
+		if (!this.sink.isInterested(event)) {
+			for (int i = EVENT_PARAMETERS - 1; i < parameters; i++) {
+				this.skipValue();
+			}
+
+			return;
+		}
+
+		final int type = this.readInt();
+
+		switch (type) {
+			case TYPE_INTEGER:
+				event.setInteger(this.readInt());
+				break;
+
+			case TYPE_BOOLEAN:
+				event.setBoolean(this.data[this.skip(1)] != 0);
+				break;
+
+			case TYPE_DOUBLE:
+				final int mantissa = this.readInt();
+				final int exponent = this.readInt();
+
+				event.setDouble(Math.scalb((double)mantissa, exponent - MANTISSA_BITS));
+				break;
+
+			case TYPE_STRING:
+				final int length = this.readLength();
+
+				event.setString(new String(this.data, this.skip(length), length, StandardCharsets.ISO_8859_1));
+				break;
+
+			default:
+				this.position -= 4;
+				this.skipValue();
+
+				event.setString("");
+				break;
+		}
+
+		for (int i = EVENT_PARAMETERS; i < parameters; i++) {
+			this.skipValue();
+		}
+	}
+
+	/**
+	 * Skips a value.
+	 *
+	 * @throws 	IOException		If the value is invalid.
+	 */
+	private final void skipValue() throws IOException {
+		final int type = this.readInt();
+
+		switch (type) {
+			case TYPE_INTEGER:
+				this.skip(4);
+				break;
+
+			case TYPE_BOOLEAN:
+				this.skip(1);
+				break;
+
+			case TYPE_DOUBLE:
+				this.skip(8);
+				break;
+
+			case TYPE_STRING:
+			case TYPE_BASE64:
+				this.skip(this.readLength());
+				break;
+
+			case TYPE_ARRAY:
+				final int elements = this.readLength();
+
+				for (int i = 0; i < elements; i++) {
+					this.skipValue();
+				}
+
+				break;
+
+			case TYPE_STRUCT:
+				final int members = this.readLength();
+
+				for (int i = 0; i < members; i++) {
+					this.skip(this.readLength());
+					this.skipValue();
+				}
+
+				break;
+
+			default:
+				throw new IOException("Unsupported BIN-RPC type [" + type + "]");
+		}
+	}
+
+	/**
+	 * Reads a type and checks it.
+	 *
+	 * @param 	expected		The expected type.
+	 *
+	 * @throws 	IOException		If the type is not the expected one.
+	 */
+	private final void expectType(final int expected) throws IOException {
+		final int type = this.readInt();
+
+		if (type != expected) {
+			throw new IOException("Expected BIN-RPC type [" + expected + "], got [" + type + "]");
+		}
+	}
+
+	/**
+	 * Reads a big endian integer.
+	 *
+	 * @return	The integer.
+	 *
+	 * @throws 	IOException		If the request ends before the integer.
+	 */
+	private final int readInt() throws IOException {
+		final int start = this.skip(4);
+
+		return ((this.data[start] & 0xFF) << 24) | ((this.data[start + 1] & 0xFF) << 16) | ((this.data[start + 2] & 0xFF) << 8) | (this.data[start + 3] & 0xFF);
+	}
+
+	/**
+	 * Returns the next integer without moving on.
+	 *
+	 * @return	The integer.
+	 *
+	 * @throws 	IOException		If the request ends before the integer.
+	 */
+	private final int peekInt() throws IOException {
+		final int value = this.readInt();
+		this.position -= 4;
+
+		return value;
+	}
+
+	/**
+	 * Reads a length, which cannot exceed what is left of the request.
+	 *
+	 * @return	The length.
+	 *
+	 * @throws 	IOException		If the length is invalid.
+	 */
+	private final int readLength() throws IOException {
+		final int length = this.readInt();
+
+		if (length < 0 || length > this.limit - this.position) {
+			throw new IOException("Invalid BIN-RPC length [" + length + "]");
+		}
+
+		return length;
+	}
+
+	/**
+	 * Skips the given number of bytes.
+	 *
+	 * @param 		length			The number of bytes.
+	 *
+	 * @return		The position of the skipped bytes.
+	 *
+	 * @throws 		IOException		If the request ends before.
+	 */
+	private final int skip(final int length) throws IOException {
+		final int start = this.position;
+
+		if (length > this.limit - start) {
+			throw new IOException("Truncated BIN-RPC request.");
+		}
+
+		this.position += length;
+
+		return start;
+	}
+
+	/**
+	 * Compares bytes of the request with the given bytes.
+	 *
+	 * @param 		start		The start in the request.
+	 * @param 		length		The length in the request.
+	 * @param 		expected	The expected bytes.
+	 *
+	 * @return		<code>true</code> if they are equal.
+	 */
+	private final boolean equals(final int start, final int length, final byte[] expected) {
+		if (length != expected.length) {
+			return false;
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (this.data[start + i] != expected[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
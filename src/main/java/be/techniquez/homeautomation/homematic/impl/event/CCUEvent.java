@@ -0,0 +1,356 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+/**
+ * An event received from the CCU. Events are pooled : they are taken from an {@link EventPool} by the decoders,
+ * filled in, handed to the handlers on their dispatch lane and returned to the pool afterwards. The value is kept
+ * as a primitive, it is only turned into a {@link String} for handlers that want one.
+ *
+ * @author alex
+ */
+final class CCUEvent implements Runnable {
+
+	/**
+	 * The type of value of an event.
+	 *
+	 * @author alex
+	 */
+	enum ValueType {
+
+		/** A boolean value. */
+		BOOLEAN,
+
+		/** An integer value. */
+		INTEGER,
+
+		/** A double value. */
+		DOUBLE,
+
+		/** A string value. */
+		STRING
+	}
+
+	/** The pool the event belongs to. */
+	private final EventPool pool;
+
+	/** The handlers the event is dispatched to, those of its pool unless it was routed elsewhere. */
+	private EventHandlerRegistry handlers;
+
+	/** The ID of the interface process that sent the event, <code>null</code> if not known. */
+	private String interfaceId;
+
+	/** The address. */
+	private String address;
+
+	/** The attribute. */
+	private String attribute;
+
+	/** The type of the value. */
+	private ValueType type;
+
+	/** The value, if it is a boolean. */
+	private boolean booleanValue;
+
+	/** The value, if it is an integer. */
+	private int intValue;
+
+	/** The value, if it is a double. */
+	private double doubleValue;
+
+	/** The value, if it is a string. */
+	private String stringValue;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	pool		The pool the event belongs to.
+	 */
+	CCUEvent(final EventPool pool) {
+		this.pool = pool;
+		this.handlers = pool.getHandlers();
+	}
+
+	/**
+	 * Hands the event to the handlers and returns it to the pool.
+	 */
+	@Override
+	public final void run() {
+		try {
+			this.handlers.dispatch(this);
+		} finally {
+			this.release();
+		}
+	}
+
+	/**
+	 * Returns the event to its pool. The event must not be used afterwards.
+	 */
+	final void release() {
+		this.pool.release(this);
+	}
+
+	/**
+	 * Clears the event.
+	 */
+	final void clear() {
+		this.handlers = this.pool.getHandlers();
+		this.interfaceId = null;
+		this.address = null;
+		this.attribute = null;
+		this.type = null;
+		this.stringValue = null;
+	}
+
+	/**
+	 * Dispatches the event to the given handlers rather than to those of its pool, used when the event was decoded
+	 * by a callback server shared by several CCUs.
+	 *
+	 * @param 	handlers		The handlers.
+	 */
+	final void setHandlers(final EventHandlerRegistry handlers) {
+		this.handlers = handlers;
+	}
+
+	/**
+	 * Returns the ID of the interface process that sent the event.
+	 *
+	 * @return	The interface ID, <code>null</code> if not known.
+	 */
+	final String getInterfaceId() {
+		return this.interfaceId;
+	}
+
+	/**
+	 * Sets the interface ID.
+	 *
+	 * @param 	interfaceId		The interface ID.
+	 */
+	final void setInterfaceId(final String interfaceId) {
+		this.interfaceId = interfaceId;
+	}
+
+	/**
+	 * Sets the interface ID, interning it.
+	 *
+	 * @param 	bytes		The bytes containing the interface ID, ISO-8859-1 encoded.
+	 * @param 	offset		The offset of the interface ID.
+	 * @param 	length		The length of the interface ID.
+	 */
+	final void setInterfaceId(final byte[] bytes, final int offset, final int length) {
+		this.interfaceId = this.pool.getStrings().intern(bytes, offset, length);
+	}
+
+	/**
+	 * Sets the interface ID, interning it.
+	 *
+	 * @param 	chars		The characters containing the interface ID.
+	 * @param 	start		The start of the interface ID.
+	 * @param 	length		The length of the interface ID.
+	 */
+	final void setInterfaceId(final char[] chars, final int start, final int length) {
+		this.interfaceId = this.pool.getStrings().intern(chars, start, length);
+	}
+
+	/**
+	 * Returns the address.
+	 *
+	 * @return	The address.
+	 */
+	final String getAddress() {
+		return this.address;
+	}
+
+	/**
+	 * Sets the address.
+	 *
+	 * @param 	address		The address.
+	 */
+	final void setAddress(final String address) {
+		this.address = address;
+	}
+
+	/**
+	 * Sets the address, interning it.
+	 *
+	 * @param 	bytes		The bytes containing the address, ISO-8859-1 encoded.
+	 * @param 	offset		The offset of the address.
+	 * @param 	length		The length of the address.
+	 */
+	final void setAddress(final byte[] bytes, final int offset, final int length) {
+		this.address = this.pool.getStrings().intern(bytes, offset, length);
+	}
+
+	/**
+	 * Sets the address, interning it.
+	 *
+	 * @param 	chars		The characters containing the address.
+	 * @param 	start		The start of the address.
+	 * @param 	length		The length of the address.
+	 */
+	final void setAddress(final char[] chars, final int start, final int length) {
+		this.address = this.pool.getStrings().intern(chars, start, length);
+	}
+
+	/**
+	 * Returns the attribute.
+	 *
+	 * @return	The attribute.
+	 */
+	final String getAttribute() {
+		return this.attribute;
+	}
+
+	/**
+	 * Sets the attribute.
+	 *
+	 * @param 	attribute		The attribute.
+	 */
+	final void setAttribute(final String attribute) {
+		this.attribute = attribute;
+	}
+
+	/**
+	 * Sets the attribute, interning it.
+	 *
+	 * @param 	bytes		The bytes containing the attribute, ISO-8859-1 encoded.
+	 * @param 	offset		The offset of the attribute.
+	 * @param 	length		The length of the attribute.
+	 */
+	final void setAttribute(final byte[] bytes, final int offset, final int length) {
+		this.attribute = this.pool.getStrings().intern(bytes, offset, length);
+	}
+
+	/**
+	 * Sets the attribute, interning it.
+	 *
+	 * @param 	chars		The characters containing the attribute.
+	 * @param 	start		The start of the attribute.
+	 * @param 	length		The length of the attribute.
+	 */
+	final void setAttribute(final char[] chars, final int start, final int length) {
+		this.attribute = this.pool.getStrings().intern(chars, start, length);
+	}
+
+	/**
+	 * Returns the type of the value.
+	 *
+	 * @return	The type of the value.
+	 */
+	final ValueType getType() {
+		return this.type;
+	}
+
+	/**
+	 * Sets a boolean value.
+	 *
+	 * @param 	value		The value.
+	 */
+	final void setBoolean(final boolean value) {
+		this.type = ValueType.BOOLEAN;
+		this.booleanValue = value;
+		this.stringValue = null;
+	}
+
+	/**
+	 * Sets an integer value.
+	 *
+	 * @param 	value		The value.
+	 */
+	final void setInteger(final int value) {
+		this.type = ValueType.INTEGER;
+		this.intValue = value;
+		this.stringValue = null;
+	}
+
+	/**
+	 * Sets a double value.
+	 *
+	 * @param 	value		The value.
+	 */
+	final void setDouble(final double value) {
+		this.type = ValueType.DOUBLE;
+		this.doubleValue = value;
+		this.stringValue = null;
+	}
+
+	/**
+	 * Sets a string value.
+	 *
+	 * @param 	value		The value.
+	 */
+	final void setString(final String value) {
+		this.type = ValueType.STRING;
+		this.stringValue = value;
+	}
+
+	/**
+	 * Sets the value from a decoded object, as the generic decoders produce them.
+	 *
+	 * @param 	value		The value.
+	 */
+	final void setValue(final Object value) {
+		if (value instanceof Boolean) {
+			this.setBoolean((Boolean)value);
+		} else if (value instanceof Integer) {
+			this.setInteger((Integer)value);
+		} else if (value instanceof Double) {
+			this.setDouble((Double)value);
+		} else {
+			this.setString(String.valueOf(value));
+		}
+	}
+
+	/**
+	 * Returns the value if it is a boolean.
+	 *
+	 * @return	The value.
+	 */
+	final boolean getBoolean() {
+		return this.booleanValue;
+	}
+
+	/**
+	 * Returns the value if it is an integer.
+	 *
+	 * @return	The value.
+	 */
+	final int getInteger() {
+		return this.intValue;
+	}
+
+	/**
+	 * Returns the value if it is a double.
+	 *
+	 * @return	The value.
+	 */
+	final double getDouble() {
+		return this.doubleValue;
+	}
+
+	/**
+	 * Returns the value as a string, formatted as {@link String#valueOf(Object)} would format the boxed value.
+	 *
+	 * @return	The value.
+	 */
+	final String getValueAsString() {
+		if (this.stringValue == null && this.type != null) {
+			switch (this.type) {
+				case BOOLEAN:
+					this.stringValue = String.valueOf(this.booleanValue);
+					break;
+
+				case INTEGER:
+					this.stringValue = String.valueOf(this.intValue);
+					break;
+
+				case DOUBLE:
+					this.stringValue = String.valueOf(this.doubleValue);
+					break;
+
+				default:
+					break;
+			}
+		}
+
+		return this.stringValue;
+	}
+}
@@ -1,26 +1,41 @@
 package be.techniquez.homeautomation.homematic.impl.event;
 
 import java.io.IOException;
-import java.util.HashSet;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.xmlrpc.WebServer;
-import org.apache.xmlrpc.XmlRpcClient;
-import org.apache.xmlrpc.XmlRpcClientRequest;
-import org.apache.xmlrpc.XmlRpcException;
-import org.apache.xmlrpc.XmlRpcHandler;
-import org.apache.xmlrpc.XmlRpcRequest;
-
-import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUChannelEventHandler;
+import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUChannelValueHandler;
+import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUDeviceHandler;
 import be.techniquez.homeautomation.homematic.impl.CCUEventLoop;
+import be.techniquez.homeautomation.homematic.impl.CCUInterface;
+import be.techniquez.homeautomation.homematic.impl.rpc.RpcClient;
+import be.techniquez.homeautomation.homematic.impl.rpc.RpcFaultException;
 
 /**
- * Eventing implementation.
+ * Eventing implementation. A single callback server receives the events of one or more interface processes of the
+ * CCU, which are registered with in parallel, each using its own interface ID so the callbacks can be told apart.
+ * The callback server is either owned by the eventing, or a {@link SharedCallbackServer} receiving the events of
+ * several CCUs.
  * 
  * @author alex
  */
@@ -35,31 +50,199 @@ public final class CCUEventingImpl implements CCUEventLoop {
 	/** The multicall method. */
 	private static final String METHOD_MULTICALL = "system.multicall";
 	
+	/** The method registering the callback server. */
+	private static final String METHOD_INIT = "init";
+	
 	/** The event method. */
 	private static final String METHOD_EVENT = "event";
 	
+	/** The method listing the devices we know. */
+	private static final String METHOD_LIST_DEVICES = "listDevices";
+	
+	/** The method announcing new devices. */
+	private static final String METHOD_NEW_DEVICES = "newDevices";
+	
+	/** The method announcing removed devices. */
+	private static final String METHOD_DELETE_DEVICES = "deleteDevices";
+	
+	/** The address member of a device description. */
+	private static final String DESCRIPTION_ADDRESS = "ADDRESS";
+	
+	/** The version member of a device description. */
+	private static final String DESCRIPTION_VERSION = "VERSION";
+	
+	/** The method asking the CCU to answer with a <code>PONG</code> event. */
+	private static final String METHOD_PING = "ping";
+	
+	/** The ID we register with, and ping with. */
+	private static final String INTERFACE_ID = "HomeMaticDriver";
+	
+	/** The address of the events sent by the interface processes themselves. */
+	private static final String ADDRESS_CENTRAL = "CENTRAL";
+	
+	/** The attribute of the answer to a ping, its value is the interface ID. */
+	private static final String ATTRIBUTE_PONG = "PONG";
+	
+	/**
+	 * The registration of the callback server with an interface process of the CCU.
+	 * 
+	 * @author alex
+	 */
+	private static final class Registration {
+		
+		/** The name of the interface, <code>null</code> if not known. */
+		private final String interfaceName;
+		
+		/** The port of the interface process. */
+		private final int port;
+		
+		/** The ID the interface process passes back in its callbacks. */
+		private final String interfaceId;
+		
+		/** The client calling the interface process, <code>null</code> while stopped. */
+		private volatile RpcClient client;
+		
+		/** When the last callback of this interface process was received, as returned by {@link System#nanoTime()}. */
+		private volatile long lastCallback = System.nanoTime();
+		
+		/** Registers the callback again when the interface process lost it, <code>null</code> if disabled. */
+		private EventWatchdog watchdog;
+		
+		/**
+		 * Create a new instance.
+		 * 
+		 * @param 	interfaceName		The name of the interface, <code>null</code> if not known.
+		 * @param 	port				The port of the interface process.
+		 * @param 	interfaceId			The ID the interface process passes back in its callbacks.
+		 */
+		private Registration(final String interfaceName, final int port, final String interfaceId) {
+			this.interfaceName = interfaceName;
+			this.port = port;
+			this.interfaceId = interfaceId;
+		}
+	}
+	
+	/**
+	 * An action on a registration.
+	 * 
+	 * @author alex
+	 */
+	@FunctionalInterface
+	private interface RegistrationAction {
+		
+		/**
+		 * Runs the action.
+		 * 
+		 * @param 	registration		The registration.
+		 * 
+		 * @throws 	IOException			If an IO error occurs.
+		 */
+		void run(final Registration registration) throws IOException;
+	}
+	
 	/**
 	 * The URL of the server.
 	 */
 	private final String url;
 	
-	/** The server URL. */
-	private final String serverURL;
+	/** The host name of the CCU. */
+	private final String hostname;
+	
+	/** The server URL, known once started when the server is shared. */
+	private volatile String serverURL;
+	
+	/** The registrations with the interface processes. */
+	private final List<Registration> registrations;
 	
-	/** The event client socket. */
-	private XmlRpcClient eventClient;
+	/** The registrations, keyed by interface ID. */
+	private final Map<String, Registration> registrationsById;
+	
+	/** Indicates whether there is more than one registration, so the callbacks have to be routed. */
+	private final boolean multipleInterfaces;
+	
+	/** The type of callback server. */
+	private final CallbackServerType serverType;
 	
 	/** The event server. */
-	private WebServer eventServer;
+	private CallbackServer eventServer;
 	
-	/** The event handler. */
-	private XmlRpcHandler eventHandler;
+	/** The callback server shared with other CCUs, <code>null</code> if the eventing has its own. */
+	private final SharedCallbackServer sharedServer;
 	
 	/** The event handlers. */
-	private final Set<CCUChannelEventHandler> eventHandlers = new HashSet<>();
+	private final EventHandlerRegistry eventHandlers = new EventHandlerRegistry();
+	
+	/** The pooled events. */
+	private final EventPool eventPool = new EventPool(this.eventHandlers);
+	
+	/** Receives the events decoded by the event server. */
+	private final EventSink eventSink = new EventSink() {
+		@Override
+		public final CCUEvent acquireEvent() {
+			lastCallback = System.nanoTime();
+			
+			return eventPool.acquire();
+		}
+		
+		@Override
+		public final boolean isInterested(final CCUEvent event) {
+			if (multipleInterfaces || sharedServer != null) {
+				callbackReceived(event.getInterfaceId());
+			}
+			
+			return (multipleInterfaces && isPong(event.getAddress(), event.getAttribute())) || eventHandlers.isInterested(event.getAddress(), event.getAttribute());
+		}
+		
+		@Override
+		public final void eventReceived(final CCUEvent event) {
+			if (logger.isLoggable(Level.FINE)) {
+				logger.log(Level.FINE, "CCU eventing : event received for [" + event.getAddress() + "] : attribute [" + event.getAttribute() + "] - value [" + event.getValueAsString() + "]");
+			}
+			
+			if (multipleInterfaces && isPong(event.getAddress(), event.getAttribute())) {
+				pongReceived(event);
+			} else {
+				dispatch(event);
+			}
+		}
+	};
+	
+	/** The number of dispatch lanes. */
+	private final int dispatchLanes;
+	
+	/** The number of events a dispatch lane can queue. */
+	private volatile int laneCapacity = StripedEventDispatcher.DEFAULT_LANE_CAPACITY;
+	
+	/** What to do when a dispatch lane is full, never waiting by default so a slow handler cannot hold up the callback server. */
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.COALESCE;
+	
+	/** Keeps the events across restarts, <code>null</code> if disabled. */
+	private volatile EventJournal journal;
+	
+	/** Hands the events to the handlers, off the server thread. */
+	private volatile StripedEventDispatcher dispatcher;
 	
 	/** Indicates whether we have started. */
 	private volatile boolean started;
+	
+	/** When the last callback was received, as returned by {@link System#nanoTime()}. */
+	private volatile long lastCallback = System.nanoTime();
+	
+	/** How long without callbacks before pinging the CCU, in milliseconds, <code>0</code> if the watchdog is disabled. */
+	private volatile long pingInterval;
+	
+	/** How long without callbacks before registering again, in milliseconds. */
+	private volatile long callbackTimeout;
+	
+	/** Called when the states should be resynchronized, <code>null</code> if none. */
+	private volatile Runnable resyncHandler;
+	
+	/** Told about the devices added and removed on the CCU, <code>null</code> if none. */
+	private volatile CCUDeviceHandler deviceHandler;
+	
+	/** The versions of the device descriptions announced by the CCU, returned by <code>listDevices</code>. */
+	private final ConcurrentMap<String, Integer> deviceVersions = new ConcurrentHashMap<>();
+	
 
 	/**
 	 * Create a new instance.
@@ -68,16 +251,164 @@ public final class CCUEventingImpl implements CCUEventLoop {
 	 * @param 	port			The port.
 	 */
 	public CCUEventingImpl(final String hostname, final int port) {
+		this(hostname, port, StripedEventDispatcher.DEFAULT_LANES);
+	}
+	
+	/**
+	 * Create a new instance.
+	 * 
+	 * @param 	hostname		The host name.
+	 * @param 	port			The port.
+	 * @param	dispatchLanes	The number of threads the events are dispatched on. Events for the same address always use the same thread.
+	 */
+	public CCUEventingImpl(final String hostname, final int port, final int dispatchLanes) {
+		this(hostname, port, dispatchLanes, CallbackServerType.XMLRPC);
+	}
+	
+	/**
+	 * Create a new instance.
+	 * 
+	 * @param 	hostname		The host name.
+	 * @param 	port			The port.
+	 * @param	dispatchLanes	The number of threads the events are dispatched on. Events for the same address always use the same thread.
+	 * @param	serverType		The type of server receiving the callbacks.
+	 */
+	public CCUEventingImpl(final String hostname, final int port, final int dispatchLanes, final CallbackServerType serverType) {
+		this(hostname, dispatchLanes, serverType, Collections.singletonList(new Registration(null, port, INTERFACE_ID)), null);
+	}
+	
+	/**
+	 * Create a new instance receiving the events of several interface processes, on their default ports, using an XML-RPC
+	 * callback server.
+	 * 
+	 * @param 	hostname		The host name.
+	 * @param 	interfaces		The interfaces.
+	 */
+	public CCUEventingImpl(final String hostname, final Collection<CCUInterface> interfaces) {
+		this(hostname, interfaces, StripedEventDispatcher.DEFAULT_LANES, CallbackServerType.XMLRPC);
+	}
+	
+	/**
+	 * Create a new instance receiving the events of several interface processes, on their default ports.
+	 * 
+	 * @param 	hostname		The host name.
+	 * @param 	interfaces		The interfaces.
+	 * @param	dispatchLanes	The number of threads the events are dispatched on. Events for the same address always use the same thread.
+	 * @param	serverType		The type of server receiving the callbacks, the interfaces must speak its protocol.
+	 */
+	public CCUEventingImpl(final String hostname, final Collection<CCUInterface> interfaces, final int dispatchLanes, final CallbackServerType serverType) {
+		this(hostname, defaultPorts(interfaces), dispatchLanes, serverType);
+	}
+	
+	/**
+	 * Create a new instance receiving the events of several interface processes.
+	 * 
+	 * @param 	hostname		The host name.
+	 * @param 	ports			The ports of the interface processes, keyed by interface.
+	 * @param	dispatchLanes	The number of threads the events are dispatched on. Events for the same address always use the same thread.
+	 * @param	serverType		The type of server receiving the callbacks, the interfaces must speak its protocol.
+	 */
+	public CCUEventingImpl(final String hostname, final Map<CCUInterface, Integer> ports, final int dispatchLanes, final CallbackServerType serverType) {
+		this(hostname, dispatchLanes, serverType, registrations(INTERFACE_ID, ports, serverType), null);
+	}
+	
+	/**
+	 * Create a new instance receiving the events of several interface processes, on their default ports, through a
+	 * callback server shared with other CCUs.
+	 * 
+	 * @param 	hostname		The host name.
+	 * @param 	id				The ID of the CCU, unique among those sharing the server, it is part of the interface IDs.
+	 * @param 	interfaces		The interfaces.
+	 * @param 	server			The shared callback server.
+	 */
+	public CCUEventingImpl(final String hostname, final String id, final Collection<CCUInterface> interfaces, final SharedCallbackServer server) {
+		this(hostname, id, defaultPorts(interfaces), StripedEventDispatcher.DEFAULT_LANES, server);
+	}
+	
+	/**
+	 * Create a new instance receiving the events of several interface processes through a callback server shared with
+	 * other CCUs.
+	 * 
+	 * @param 	hostname		The host name.
+	 * @param 	id				The ID of the CCU, unique among those sharing the server, it is part of the interface IDs.
+	 * @param 	ports			The ports of the interface processes, keyed by interface.
+	 * @param	dispatchLanes	The number of threads the events are dispatched on. Events for the same address always use the same thread.
+	 * @param 	server			The shared callback server.
+	 */
+	public CCUEventingImpl(final String hostname, final String id, final Map<CCUInterface, Integer> ports, final int dispatchLanes, final SharedCallbackServer server) {
+		this(hostname, dispatchLanes, server.getType(), registrations(INTERFACE_ID + "-" + Objects.requireNonNull(id), ports, server.getType()), server);
+	}
+	
+	/**
+	 * Create a new instance.
+	 * 
+	 * @param 	hostname		The host name.
+	 * @param	dispatchLanes	The number of threads the events are dispatched on.
+	 * @param	serverType		The type of server receiving the callbacks.
+	 * @param 	registrations	The registrations with the interface processes.
+	 * @param 	sharedServer	The callback server shared with other CCUs, <code>null</code> to use an own one.
+	 */
+	private CCUEventingImpl(final String hostname, final int dispatchLanes, final CallbackServerType serverType, final List<Registration> registrations, final SharedCallbackServer sharedServer) {
+		if (dispatchLanes <= 0) {
+			throw new IllegalArgumentException("Number of dispatch lanes should be positive, you specified [" + dispatchLanes + "]");
+		}
+		
+		this.dispatchLanes = dispatchLanes;
+		this.serverType = Objects.requireNonNull(serverType);
+		this.hostname = hostname;
+		this.registrations = registrations;
+		this.registrationsById = registrations.stream().collect(Collectors.toMap(registration -> registration.interfaceId, registration -> registration));
+		this.multipleInterfaces = registrations.size() > 1;
 		this.url = new StringBuilder("http://").append(hostname)
 											   .append(":")
-											   .append(port)
+											   .append(registrations.stream().map(registration -> String.valueOf(registration.port)).collect(Collectors.joining(",")))
 											   .append("/")
 											   .toString();
 		
-		this.serverURL = new StringBuilder("http://").append(hostname)
-				 									 .append(":")
-				 									 .append(EVENT_PORT)
-				 									 .toString();
+		this.sharedServer = sharedServer;
+		this.serverURL = sharedServer == null ? serverType.getProtocol().getCallbackURL(hostname, EVENT_PORT) : null;
+	}
+	
+	/**
+	 * Returns the default ports of the given interfaces.
+	 * 
+	 * @param 		interfaces		The interfaces.
+	 * 
+	 * @return		The ports, keyed by interface.
+	 */
+	private static final Map<CCUInterface, Integer> defaultPorts(final Collection<CCUInterface> interfaces) {
+		final Map<CCUInterface, Integer> ports = new LinkedHashMap<>();
+		
+		interfaces.forEach(ccuInterface -> ports.put(ccuInterface, ccuInterface.getPort()));
+		
+		return ports;
+	}
+	
+	/**
+	 * Creates the registrations with the given interfaces, checking they speak the protocol of the server.
+	 * 
+	 * @param 		prefix			The prefix of the interface IDs.
+	 * @param 		ports			The ports of the interface processes, keyed by interface.
+	 * @param 		serverType		The type of server receiving the callbacks.
+	 * 
+	 * @return		The registrations.
+	 */
+	private static final List<Registration> registrations(final String prefix, final Map<CCUInterface, Integer> ports, final CallbackServerType serverType) {
+		if (ports.isEmpty()) {
+			throw new IllegalArgumentException("Specify at least one interface.");
+		}
+		
+		final List<Registration> registrations = new ArrayList<>();
+		
+		ports.forEach((ccuInterface, port) -> {
+			if (serverType == CallbackServerType.BINRPC && !ccuInterface.supportsBinRpc()) {
+				throw new IllegalArgumentException("Interface [" + ccuInterface.getName() + "] does not speak BIN-RPC, use an XML-RPC callback server.");
+			}
+			
+			registrations.add(new Registration(ccuInterface.getName(), port, prefix + "-" + ccuInterface.getName()));
+		});
+		
+		return Collections.unmodifiableList(registrations);
 	}
 	
 	/**
@@ -90,12 +421,40 @@ public final class CCUEventingImpl implements CCUEventLoop {
 				logger.log(Level.INFO, "CCU eventing : URL [" + this.url + "] : starting.");
 			}
 			
-			if (this.eventServer == null) {
-				this.initXmlRpcServer();
+			if (this.dispatcher == null) {
+				this.dispatcher = new StripedEventDispatcher(this.dispatchLanes, this.laneCapacity, this.overflowPolicy);
 			}
 			
-			if (this.eventClient == null) {
-				this.initXmlRpcClient();
+			try {
+				if (this.sharedServer != null) {
+					this.sharedServer.attach(this);
+					this.serverURL = this.sharedServer.getCallbackURL();
+				} else if (this.eventServer == null) {
+					this.initRpcServer();
+				}
+				
+				this.forEachRegistration(registration -> {
+					if (registration.client == null) {
+						this.initRpcClient(registration);
+					}
+				});
+				
+				if (this.pingInterval > 0) {
+					this.lastCallback = System.nanoTime();
+					
+					for (final Registration registration : this.registrations) {
+						registration.lastCallback = this.lastCallback;
+						registration.watchdog = new EventWatchdog(this.watchdogTarget(registration), this.pingInterval, this.callbackTimeout);
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				if (logger.isLoggable(Level.WARNING)) {
+					logger.log(Level.WARNING, "CCU eventing : URL [" + this.url + "] : start failed, releasing what was set up : [" + e.getMessage() + "]", e);
+				}
+				
+				this.release(e);
+				
+				throw e;
 			}
 			
 			this.started = true;
@@ -111,27 +470,151 @@ public final class CCUEventingImpl implements CCUEventLoop {
 	}
 	
 	/**
-	 * Initializes the XML RPC client (to call init). Must happen after {@link #initXmlRpcServer()}.
+	 * Runs the action on every registration. When there are several, they run in parallel, and the action fails if it
+	 * failed for any of them, with the first failure, the others being suppressed by it. A start is all or nothing :
+	 * when an interface process could not be registered with, the ones that were are unregistered from again, see
+	 * {@link #release(Throwable)}, and the next start retries them all.
+	 * 
+	 * @param 	action			The action.
+	 * 
+	 * @throws 	IOException		If an IO error occurs.
+	 */
+	private final void forEachRegistration(final RegistrationAction action) throws IOException {
+		if (!this.multipleInterfaces) {
+			action.run(this.registrations.get(0));
+			
+			return;
+		}
+		
+		final ExecutorService executor = Executors.newFixedThreadPool(this.registrations.size());
+		
+		try {
+			final List<CompletableFuture<Void>> results = this.registrations.stream()
+																		  .map(registration -> CompletableFuture.runAsync(() -> {
+																			  try {
+																				  action.run(registration);
+																			  } catch (IOException e) {
+																				  throw new CompletionException(e);
+																			  }
+																		  }, executor))
+																		  .collect(Collectors.toList());
+			
+			Throwable failure = null;
+			
+			for (int i = 0; i < results.size(); i++) {
+				try {
+					results.get(i).join();
+				} catch (CompletionException e) {
+					if (logger.isLoggable(Level.WARNING)) {
+						logger.log(Level.WARNING, "CCU eventing : interface [" + this.registrations.get(i).interfaceName + "] : [" + e.getCause().getMessage() + "]", e.getCause());
+					}
+					
+					if (failure == null) {
+						failure = e.getCause();
+					} else {
+						failure.addSuppressed(e.getCause());
+					}
+				}
+			}
+			
+			if (failure != null) {
+				if (failure instanceof IOException) {
+					throw (IOException)failure;
+				}
+				
+				throw failure instanceof RuntimeException ? (RuntimeException)failure : new IllegalStateException(failure);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Returns what the watchdog of the given registration watches.
+	 * 
+	 * @param 		registration		The registration.
+	 * 
+	 * @return		The target.
+	 */
+	private final EventWatchdog.Target watchdogTarget(final Registration registration) {
+		return new EventWatchdog.Target() {
+			@Override
+			public final long getLastCallback() {
+				return multipleInterfaces ? registration.lastCallback : lastCallback;
+			}
+			
+			@Override
+			public final void ping() throws IOException {
+				final RpcClient client = registration.client;
+				
+				if (client != null) {
+					client.execute(METHOD_PING, Arrays.asList(registration.interfaceId));
+				}
+			}
+			
+			@Override
+			public final void reinit() throws IOException {
+				init(registration);
+			}
+			
+			@Override
+			public final void resync() {
+				final Runnable handler = resyncHandler;
+				
+				if (handler != null) {
+					handler.run();
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Initializes the RPC client (to call init). Must happen after {@link #initRpcServer()}.
+	 * 
+	 * @param 	registration		The registration.
+	 */
+	private final void initRpcClient(final Registration registration) throws IOException {
+		registration.client = this.serverType.getProtocol().createClient(this.hostname, registration.port);
+		
+		try {
+			this.init(registration);
+		} catch (IOException | RuntimeException e) {
+			registration.client.close();
+			registration.client = null;
+			
+			throw e;
+		}
+	}
+	
+	/**
+	 * Registers the callback server with an interface process.
+	 * 
+	 * @param 	registration		The registration.
+	 * 
+	 * @throws 	IOException		If an IO error occurs.
 	 */
-	private final void initXmlRpcClient() throws IOException {
-		this.eventClient = new XmlRpcClient(this.url);
+	private final void init(final Registration registration) throws IOException {
+		final RpcClient client = registration.client;
+		
+		if (client == null) {
+			return;
+		}
 		
-		final Vector<String> parameters = new Vector<>();
-		parameters.add(this.serverURL);
-		parameters.add("HomeMaticDriver");
+		final List<String> parameters = Arrays.asList(this.serverURL, registration.interfaceId);
 		
 		if (logger.isLoggable(Level.INFO)) {
-			logger.log(Level.INFO, "CCU Eventing RPC client : calling init, using parameters [ " + this.serverURL + "], [HomeMaticDriver]");
+			logger.log(Level.INFO, "CCU Eventing RPC client : calling init on port [" + registration.port + "], using parameters [ " + this.serverURL + "], [" + registration.interfaceId + "]");
 		}
 		
 		try {
-			final XmlRpcClientRequest initRequest = new XmlRpcRequest("init", parameters);
-			final Object response = this.eventClient.execute(initRequest);
+			final Object response = client.execute(METHOD_INIT, parameters);
 			
 			if (logger.isLoggable(Level.INFO)) {
 				logger.log(Level.INFO, "CCU Eventing RPC client : init called, response [" + response + "]");
 			}
-		} catch (XmlRpcException e) {
+			
+			this.statesRefreshed();
+		} catch (RpcFaultException e) {
 			if (logger.isLoggable(Level.WARNING)) {
 				logger.log(Level.WARNING, "Error initializing callbacks : [" + e.getMessage() + "]", e);
 			}
@@ -141,130 +624,364 @@ public final class CCUEventingImpl implements CCUEventLoop {
 	}
 
 	/**
-	 * Initializes the XML RPC server. Must be done before {@link #initXmlRpcClient()}.
+	 * Initializes the RPC server. Must be done before {@link #initRpcClient()}.
 	 */
-	private final void initXmlRpcServer() {
-		this.eventServer = new WebServer(EVENT_PORT);
-		this.eventHandler = this::dispatchEvent;
-		
-		if (logger.isLoggable(Level.INFO)) {
-			logger.log(Level.INFO, "CCU Eventing RPC server : starting.");
-		}
-		
-		this.eventServer.addHandler("$default", this.eventHandler);
-		this.eventServer.start();
-		
-		if (logger.isLoggable(Level.INFO)) {
-			logger.log(Level.INFO, "CCU Eventing RPC server : started.");
-		}
+	private final void initRpcServer() throws IOException {
+		this.eventServer = this.serverType.createServer(EVENT_PORT);
+		this.eventServer.start(this::dispatchEvent, this.eventSink);
+	}
+	
+	/**
+	 * Returns the interface IDs the interface processes are registered with.
+	 * 
+	 * @return	The interface IDs.
+	 */
+	final Set<String> getInterfaceIds() {
+		return this.registrationsById.keySet();
+	}
+	
+	/**
+	 * Returns the sink receiving the decoded events, used by a {@link SharedCallbackServer} to pass on the events it routes here.
+	 * 
+	 * @return	The sink.
+	 */
+	final EventSink getEventSink() {
+		return this.eventSink;
 	}
 	
 	/**
-	 * Dispatch the event or multicall.
+	 * Dispatch the call.
 	 * 
 	 * @param 	method			The method.
 	 * @param 	parameters		The parameters.
 	 * 
-	 * @return	<code>null</code>.
+	 * @return	The value returned to the CCU.
 	 */
-	private final Object dispatchEvent(final String method, final Vector<?> parameters) {
+	final Object dispatchEvent(final String method, final List<?> parameters) {
+		this.lastCallback = System.nanoTime();
+		
+		final Registration registration = this.registration(parameters);
+		
+		if (registration != null) {
+			registration.lastCallback = this.lastCallback;
+		}
+		
 		if (method != null) {
-			if (method.equals(METHOD_EVENT)) {
-				this.handleEvent(parameters);
-			} else if (method.equals(METHOD_MULTICALL)) {
-				this.handleMulticall(parameters);
+			switch (method) {
+				case METHOD_EVENT:
+					this.handleEvent(parameters);
+					break;
+					
+				case METHOD_MULTICALL:
+					return this.handleMulticall(parameters);
+					
+				case METHOD_LIST_DEVICES:
+					return this.handleListDevices(registration);
+					
+				case METHOD_NEW_DEVICES:
+					this.handleNewDevices(registration, parameters);
+					break;
+					
+				case METHOD_DELETE_DEVICES:
+					this.handleDeleteDevices(registration, parameters);
+					break;
+					
+				default:
+					break;
 			}
 		}
 		
-		return null;
+		return "";
 	}
 	
 	/**
-	 * Handles an incoming multicall.
+	 * Returns the registration a callback comes from, using the interface ID in its first parameter.
 	 * 
-	 * @param 	parameters		The parameters of the multicall.
+	 * @param 		parameters		The parameters of the callback.
+	 * 
+	 * @return		The registration, <code>null</code> if unknown.
 	 */
-	private final void handleMulticall(final Vector<?> parameters) {
-		for (final Object methodCalls : parameters) {
-			final Vector<?> calls = (Vector<?>)methodCalls;
-			
-			for (final Object call : calls) {
-				@SuppressWarnings("unchecked")
-				final Hashtable<String, ?> callParams = (Hashtable<String, ?>)call;
-				
-				final String methodName = (String)callParams.get("methodName");
-				final Vector<?> params = (Vector<?>)callParams.get("params");
-				
-				try {
-					this.eventHandler.execute(methodName, params);
-				} catch (Exception e) {
-					if (logger.isLoggable(Level.WARNING)) {
-						logger.log(Level.WARNING, "Error processing event : [" + e.getMessage() + "]", e);
-					}
-				}
-			}
+	private final Registration registration(final List<?> parameters) {
+		if (!this.multipleInterfaces) {
+			return this.registrations.get(0);
 		}
+		
+		return parameters != null && !parameters.isEmpty() && parameters.get(0) instanceof String ? this.registrationsById.get(parameters.get(0)) : null;
 	}
 	
 	/**
-	 * Handles an event.
+	 * Notes a callback decoded by the server, on the registration it comes from.
 	 * 
-	 * @param 	parameters		The event parameters.
+	 * @param 	interfaceId		The interface ID of the callback, <code>null</code> if not known.
 	 */
-	private final void handleEvent(final Vector<?> parameters) {
-		if (parameters.size() == 4) {
-			final String address = (String)parameters.get(1);
-			final String attribute = (String)parameters.get(2);
-			final String value = String.valueOf(parameters.get(3));
-			
-			if (logger.isLoggable(Level.INFO)) {
-				logger.log(Level.INFO, "CCU eventing : event received for [" + address + "] : attribute [" + attribute + "] - value [" + value + "]");
-			}
-			
-			this.eventHandlers.forEach(handler -> handler.eventReceived(address, attribute, value));
+	private final void callbackReceived(final String interfaceId) {
+		this.lastCallback = System.nanoTime();
+		
+		final Registration registration = interfaceId != null ? this.registrationsById.get(interfaceId) : null;
+		
+		if (registration != null) {
+			registration.lastCallback = this.lastCallback;
 		}
 	}
 	
 	/**
-	 * {@inheritDoc}
+	 * Indicates whether the event is the answer to a ping.
+	 * 
+	 * @param 		address			The address.
+	 * @param 		attribute		The attribute.
+	 * 
+	 * @return		<code>true</code> for a <code>PONG</code>.
 	 */
-	@Override
-	public final synchronized void stop() throws IOException {
-		if (this.isStarted()) {
-			if (logger.isLoggable(Level.INFO)) {
-				logger.log(Level.INFO, "CCU eventing : URL [" + this.url + "] : stopping.");
-			}
-			
-			final Vector<String> parameters = new Vector<>();
-			parameters.add(this.serverURL);
-			parameters.add("");
+	private static final boolean isPong(final String address, final String attribute) {
+		return ATTRIBUTE_PONG.equals(attribute) && ADDRESS_CENTRAL.equals(address);
+	}
+	
+	/**
+	 * Notes the callback on the registration the answer to a ping comes from, and passes it on if it has handlers.
+	 * 
+	 * @param 	event		The <code>PONG</code> event, its value is the interface ID.
+	 */
+	private final void pongReceived(final CCUEvent event) {
+		final Registration registration = this.registrationsById.get(event.getValueAsString());
+		
+		if (registration != null) {
+			registration.lastCallback = System.nanoTime();
+		}
+		
+		if (this.eventHandlers.isInterested(event.getAddress(), event.getAttribute())) {
+			this.dispatch(event);
+		} else {
+			event.release();
+		}
+	}
+	
+	/**
+	 * Handles an incoming multicall.
+	 * 
+	 * @param 	parameters		The parameters of the multicall.
+	 * 
+	 * @return	The results of the calls, each wrapped in an array.
+	 */
+	private final Vector<Object> handleMulticall(final List<?> parameters) {
+		final Vector<Object> results = new Vector<>();
+		
+		for (final Object methodCalls : parameters) {
+			final List<?> calls = (List<?>)methodCalls;
 			
-			if (this.eventClient != null) {
+			for (final Object call : calls) {
+				final Map<?, ?> callParams = (Map<?, ?>)call;
+				
+				final String methodName = (String)callParams.get("methodName");
+				final List<?> params = (List<?>)callParams.get("params");
+				
 				try {
-					final XmlRpcClientRequest initRequest = new XmlRpcRequest("init", parameters);
-					final Object response = this.eventClient.execute(initRequest);
+					final Vector<Object> result = new Vector<>(1);
+					result.add(this.dispatchEvent(methodName, params));
 					
-					if (logger.isLoggable(Level.INFO)) {
-						logger.log(Level.INFO, "CCU Eventing RPC client : init (disconnect) called, response [" + response + "]");
-					}
-				} catch (XmlRpcException e) {
+					results.add(result);
+				} catch (RuntimeException e) {
 					if (logger.isLoggable(Level.WARNING)) {
-						logger.log(Level.WARNING, "Error disconnecting callbacks : [" + e.getMessage() + "]", e);
+						logger.log(Level.WARNING, "Error processing event : [" + e.getMessage() + "]", e);
 					}
 					
-					throw new IllegalStateException("Error disconnecting callbacks : [" + e.getMessage() + "]", e);
+					results.add(this.fault(e));
 				}
 			}
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Handles <code>listDevices</code>, returning the descriptions of the devices we know so the CCU only announces
+	 * the others. They only hold the address, and the version when the CCU announced one.
+	 * 
+	 * @param 	registration	The registration of the calling interface process, <code>null</code> if unknown.
+	 * 
+	 * @return	The device descriptions.
+	 */
+	private final Vector<Object> handleListDevices(final Registration registration) {
+		final Vector<Object> descriptions = new Vector<>();
+		final CCUDeviceHandler handler = this.deviceHandler;
+		
+		if (handler != null && registration != null) {
+			for (final String address : handler.listDevices(registration.interfaceName)) {
+				final Hashtable<String, Object> description = new Hashtable<>();
+				description.put(DESCRIPTION_ADDRESS, address);
+				
+				final Integer version = this.deviceVersions.get(address);
+				
+				if (version != null) {
+					description.put(DESCRIPTION_VERSION, version);
+				}
+				
+				descriptions.add(description);
+			}
+		}
+		
+		return descriptions;
+	}
+	
+	/**
+	 * Handles <code>newDevices</code>, which passes the interface ID and the descriptions of the new devices and channels.
+	 * 
+	 * @param 	registration	The registration of the calling interface process, <code>null</code> if unknown.
+	 * @param 	parameters		The parameters.
+	 */
+	private final void handleNewDevices(final Registration registration, final List<?> parameters) {
+		if (registration == null || parameters == null || parameters.size() < 2 || !(parameters.get(1) instanceof List)) {
+			return;
+		}
+		
+		final List<String> addresses = new ArrayList<>();
+		
+		for (final Object description : (List<?>)parameters.get(1)) {
+			if (description instanceof Map) {
+				final Object address = ((Map<?, ?>)description).get(DESCRIPTION_ADDRESS);
+				final Object version = ((Map<?, ?>)description).get(DESCRIPTION_VERSION);
+				
+				if (address != null) {
+					addresses.add(address.toString());
+					
+					if (version instanceof Integer) {
+						this.deviceVersions.put(address.toString(), (Integer)version);
+					}
+				}
+			}
+		}
+		
+		if (logger.isLoggable(Level.INFO)) {
+			logger.log(Level.INFO, "CCU eventing : URL [" + this.url + "] : new devices [" + addresses + "]");
+		}
+		
+		final CCUDeviceHandler handler = this.deviceHandler;
+		
+		if (handler != null && !addresses.isEmpty()) {
+			handler.newDevices(registration.interfaceName, addresses);
+		}
+	}
+	
+	/**
+	 * Handles <code>deleteDevices</code>, which passes the interface ID and the addresses of the removed devices and channels.
+	 * 
+	 * @param 	registration	The registration of the calling interface process, <code>null</code> if unknown.
+	 * @param 	parameters		The parameters.
+	 */
+	private final void handleDeleteDevices(final Registration registration, final List<?> parameters) {
+		if (registration == null || parameters == null || parameters.size() < 2 || !(parameters.get(1) instanceof List)) {
+			return;
+		}
+		
+		final List<String> addresses = new ArrayList<>();
+		
+		for (final Object address : (List<?>)parameters.get(1)) {
+			if (address != null) {
+				addresses.add(address.toString());
+				this.deviceVersions.remove(address.toString());
+			}
+		}
+		
+		if (logger.isLoggable(Level.INFO)) {
+			logger.log(Level.INFO, "CCU eventing : URL [" + this.url + "] : deleted devices [" + addresses + "]");
+		}
+		
+		final CCUDeviceHandler handler = this.deviceHandler;
+		
+		if (handler != null && !addresses.isEmpty()) {
+			handler.deleteDevices(registration.interfaceName, addresses);
+		}
+	}
+	
+	/**
+	 * Returns the multicall fault for the given error.
+	 * 
+	 * @param 	e		The error.
+	 * 
+	 * @return	The fault.
+	 */
+	private final Hashtable<String, Object> fault(final Exception e) {
+		final Hashtable<String, Object> fault = new Hashtable<>();
+		fault.put("faultCode", -1);
+		fault.put("faultString", String.valueOf(e.getMessage()));
+		
+		return fault;
+	}
+	
+	/**
+	 * Handles an event. The handlers are called on the dispatcher so the CCU gets its answer right away. Events
+	 * no handler is interested in are dropped before their value is looked at.
+	 * 
+	 * @param 	parameters		The event parameters.
+	 */
+	private final void handleEvent(final List<?> parameters) {
+		if (parameters.size() == 4) {
+			final String address = (String)parameters.get(1);
+			final String attribute = (String)parameters.get(2);
 			
-			if (this.eventServer != null) {
-				this.eventServer.shutdown();
+			if (!this.eventHandlers.isInterested(address, attribute)) {
+				return;
 			}
 			
-			this.eventClient = null;
-			this.eventServer = null;
-			this.eventHandler = null;
+			final CCUEvent event = this.eventPool.acquire();
+			event.setAddress(address);
+			event.setAttribute(attribute);
+			event.setValue(parameters.get(3));
 			
-			this.started = false;
+			if (logger.isLoggable(Level.FINE)) {
+				logger.log(Level.FINE, "CCU eventing : event received for [" + address + "] : attribute [" + attribute + "] - value [" + event.getValueAsString() + "]");
+			}
+			
+			this.dispatch(event);
+		}
+	}
+	
+	/**
+	 * Journals the event if enabled, and queues it on the dispatcher. The event goes back to the pool once handled,
+	 * which is the pool of the shared server when it was routed here.
+	 * 
+	 * @param 	event		The event.
+	 */
+	private final void dispatch(final CCUEvent event) {
+		event.setHandlers(this.eventHandlers);
+		
+		final EventJournal currentJournal = this.journal;
+		
+		if (currentJournal != null) {
+			currentJournal.append(event);
+		}
+		
+		final StripedEventDispatcher currentDispatcher = this.dispatcher;
+		
+		if (currentDispatcher != null) {
+			currentDispatcher.dispatch(event.getAddress(), event);
+		} else {
+			event.release();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final synchronized void stop() throws IOException {
+		if (this.isStarted()) {
+			if (logger.isLoggable(Level.INFO)) {
+				logger.log(Level.INFO, "CCU eventing : URL [" + this.url + "] : stopping.");
+			}
+			
+			this.shutdownWatchdogs();
+			
+			try {
+				this.forEachRegistration(this::deinit);
+			} finally {
+				this.started = false;
+				
+				this.release(null);
+			}
+			
+			if (this.journal != null) {
+				this.journal.flush();
+			}
 			
 			if (logger.isLoggable(Level.INFO)) {
 				logger.log(Level.INFO, "CCU eventing : URL [" + this.url + "] : stopped.");
@@ -272,10 +989,314 @@ public final class CCUEventingImpl implements CCUEventLoop {
 		} else {
 			if (logger.isLoggable(Level.WARNING)) {
 				logger.log(Level.WARNING, "Tried to stop me when already stopped.");
-			}			
+			}
+			
+			this.release(null);
+		}
+	}
+
+	/**
+	 * Shuts down the watchdogs, so they do not register the callback server again while it stops.
+	 */
+	private final void shutdownWatchdogs() {
+		for (final Registration registration : this.registrations) {
+			if (registration.watchdog != null) {
+				registration.watchdog.shutdown();
+				registration.watchdog = null;
+			}
+		}
+	}
+	
+	/**
+	 * Releases the callback server, the RPC clients and the dispatcher, so the next {@link #start()} sets them up again.
+	 * After a failed start, the interface processes still registered with are unregistered from first, and the
+	 * failures doing so are added to the one that made the start fail.
+	 * 
+	 * @param 	failure		The failure that made the start fail, <code>null</code> when stopping.
+	 */
+	private final void release(final Throwable failure) {
+		this.shutdownWatchdogs();
+		
+		if (failure != null) {
+			for (final Registration registration : this.registrations) {
+				try {
+					this.deinit(registration);
+				} catch (IOException | RuntimeException e) {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		
+		if (this.sharedServer != null) {
+			this.sharedServer.detach(this);
+		} else if (this.eventServer != null) {
+			this.eventServer.stop();
+		}
+		
+		if (this.dispatcher != null) {
+			this.dispatcher.shutdown();
+		}
+		
+		for (final Registration registration : this.registrations) {
+			if (registration.client != null) {
+				registration.client.close();
+			}
+			
+			registration.client = null;
+		}
+		
+		this.eventServer = null;
+		this.dispatcher = null;
+	}
+	
+	/**
+	 * Unregisters the callback server from an interface process.
+	 * 
+	 * @param 	registration		The registration.
+	 * 
+	 * @throws 	IOException		If an IO error occurs.
+	 */
+	private final void deinit(final Registration registration) throws IOException {
+		final RpcClient client = registration.client;
+		
+		if (client != null) {
+			try {
+				final Object response = client.execute(METHOD_INIT, Arrays.asList(this.serverURL, ""));
+				
+				if (logger.isLoggable(Level.INFO)) {
+					logger.log(Level.INFO, "CCU Eventing RPC client : init (disconnect) called on port [" + registration.port + "], response [" + response + "]");
+				}
+			} catch (RpcFaultException e) {
+				if (logger.isLoggable(Level.WARNING)) {
+					logger.log(Level.WARNING, "Error disconnecting callbacks : [" + e.getMessage() + "]", e);
+				}
+				
+				throw new IllegalStateException("Error disconnecting callbacks : [" + e.getMessage() + "]", e);
+			}
 		}
 	}
 
+	/**
+ 	 * Configures the queues between the callback server and the handlers. Takes effect the next time eventing is started.
+	 * By default, a full lane coalesces the events of a datapoint : {@link OverflowPolicy#BLOCK} would stall the single
+	 * thread of the NIO callback server, and every other CCU connection with it.
+	 * 
+	 * @param 	capacity		The number of events every dispatch lane can queue.
+	 * @param 	policy			What to do when a lane is full.
+	 */
+	public final void setEventQueue(final int capacity, final OverflowPolicy policy) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Event queue capacity should be positive, you specified [" + capacity + "]");
+		}
+		
+		this.laneCapacity = capacity;
+		this.overflowPolicy = Objects.requireNonNull(policy);
+	}
+	
+	/**
+	 * Returns the number of events dropped since eventing was started, because the handlers could not keep up.
+	 * 
+	 * @return	The number of dropped events.
+	 */
+	public final long getDroppedEvents() {
+		final StripedEventDispatcher currentDispatcher = this.dispatcher;
+		
+		return currentDispatcher != null ? currentDispatcher.getDroppedEvents() : 0;
+	}
+	
+	/**
+	 * Returns the number of events replaced by a later value of their datapoint since eventing was started, because the handlers could not keep up.
+	 * 
+	 * @return	The number of coalesced events.
+	 */
+	public final long getCoalescedEvents() {
+		final StripedEventDispatcher currentDispatcher = this.dispatcher;
+		
+		return currentDispatcher != null ? currentDispatcher.getCoalescedEvents() : 0;
+	}
+	
+	/**
+	 * Returns the highest number of events that were waiting on a dispatch lane since eventing was started.
+	 * 
+	 * @return	The high water mark.
+	 */
+	public final int getEventQueueHighWaterMark() {
+		final StripedEventDispatcher currentDispatcher = this.dispatcher;
+		
+		return currentDispatcher != null ? currentDispatcher.getHighWaterMark() : 0;
+	}
+	
+	/**
+	 * Enables dropping events that do not change the value of their datapoint, before they reach the handlers.
+	 * 
+	 * @param 	enabled					<code>true</code> to drop unchanged values, <code>false</code> to pass on all events.
+	 * @param 	minimumLevelDelta		The minimum change of a <code>LEVEL</code> that is passed on, <code>0</code> to pass on all changes.
+	 */
+	public final void setChangeFilter(final boolean enabled, final double minimumLevelDelta) {
+		this.eventHandlers.setChangeFilter(enabled ? new ChangeFilter(minimumLevelDelta) : null);
+	}
+	
+	/**
+	 * Returns the number of events that were dropped because they did not change the value of their datapoint.
+	 * 
+	 * @return	The number of dropped events.
+	 */
+	public final long getSuppressedEvents() {
+		final ChangeFilter filter = this.eventHandlers.getChangeFilter();
+		
+		return filter != null ? filter.getSuppressedEvents() : 0;
+	}
+	
+	/**
+	 * Enables the watchdog, registering the callback again when the CCU stopped sending events. Takes effect the next time
+	 * eventing is started.
+	 * 
+	 * @param 	pingInterval		How long without callbacks before pinging the CCU, <code>0</code> to disable the watchdog.
+	 * @param 	timeout				How long without callbacks before registering again, longer than the ping interval.
+	 * @param 	unit				The unit of the durations.
+	 */
+	public final void setWatchdog(final long pingInterval, final long timeout, final TimeUnit unit) {
+		if (pingInterval > 0 && timeout <= pingInterval) {
+			throw new IllegalArgumentException("The timeout should be longer than the ping interval, you specified [" + pingInterval + "], [" + timeout + "]");
+		}
+		
+		this.pingInterval = pingInterval > 0 ? Math.max(1, unit.toMillis(pingInterval)) : 0;
+		this.callbackTimeout = pingInterval > 0 ? Math.max(this.pingInterval + 1, unit.toMillis(timeout)) : 0;
+	}
+	
+	/**
+	 * Returns the number of times the watchdogs registered the callback again.
+	 * 
+	 * @return	The number of registrations.
+	 */
+	public final synchronized long getReinits() {
+		long reinits = 0;
+		
+		for (final Registration registration : this.registrations) {
+			reinits += registration.watchdog != null ? registration.watchdog.getReinits() : 0;
+		}
+		
+		return reinits;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void setResyncHandler(final Runnable handler) {
+		this.resyncHandler = handler;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void setDeviceHandler(final CCUDeviceHandler handler) {
+		this.deviceHandler = handler;
+	}
+	
+	/**
+	 * Keeps the events in a journal of the default size, see {@link #setJournal(Path, int)}.
+	 * 
+	 * @param 	file			The journal file, <code>null</code> to stop journaling.
+	 * 
+	 * @throws 	IOException		If the journal cannot be opened, or the previous one cannot be closed.
+	 */
+	public final void setJournal(final Path file) throws IOException {
+		this.setJournal(file, EventJournal.DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Keeps the events in a journal, so the last value of every datapoint can be restored after a restart using
+	 * {@link #restoreStates()}. Only the events of datapoints that have a handler are kept. The journal is compacted on a
+	 * background thread, and uses up to three segment files : the given one, and the same name with <code>.1</code> and <code>.2</code>.
+	 * 
+	 * @param 	file			The journal file, <code>null</code> to stop journaling.
+	 * @param 	capacity		The size of a journal segment, in bytes.
+	 * 
+	 * @throws 	IOException		If the journal cannot be opened, or the previous one cannot be closed.
+	 */
+	public final synchronized void setJournal(final Path file, final int capacity) throws IOException {
+		final EventJournal previous = this.journal;
+		
+		this.journal = file != null ? new EventJournal(file, capacity) : null;
+		
+		if (previous != null) {
+			previous.close();
+		}
+	}
+	
+	/**
+	 * Returns the number of events written to the journal.
+	 * 
+	 * @return	The number of journaled events.
+	 */
+	public final long getJournaledEvents() {
+		final EventJournal currentJournal = this.journal;
+		
+		return currentJournal != null ? currentJournal.getAppendedEvents() : 0;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The values are replayed on the caller thread : as the eventing is not started, no dispatch lane handles the same
+	 * addresses at the same time.
+	 */
+	@Override
+	public final synchronized int restoreStates() {
+		final EventJournal currentJournal = this.journal;
+		
+		if (currentJournal == null) {
+			return 0;
+		}
+		
+		if (this.isStarted()) {
+			if (logger.isLoggable(Level.WARNING)) {
+				logger.log(Level.WARNING, "CCU eventing : URL [" + this.url + "] : not restoring the states, as events are already received.");
+			}
+			
+			return 0;
+		}
+		
+		final long start = System.nanoTime();
+		int restored = 0;
+		
+		for (final Map.Entry<String, Map<String, Object>> address : currentJournal.readLastValues().entrySet()) {
+			for (final Map.Entry<String, Object> attribute : address.getValue().entrySet()) {
+				final CCUEvent event = this.eventPool.acquire();
+				event.setAddress(address.getKey());
+				event.setAttribute(attribute.getKey());
+				event.setValue(attribute.getValue());
+				event.run();
+				
+				restored++;
+			}
+		}
+		
+		this.statesRefreshed();
+		
+		if (logger.isLoggable(Level.INFO)) {
+			logger.log(Level.INFO, "CCU eventing : URL [" + this.url + "] : restored [" + restored + "] datapoints from the journal in [" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "] ms.");
+		}
+		
+		return restored;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Clears the change filter.
+	 */
+	@Override
+	public final void statesRefreshed() {
+		final ChangeFilter filter = this.eventHandlers.getChangeFilter();
+		
+		if (filter != null) {
+			filter.clear();
+		}
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -288,15 +1309,47 @@ public final class CCUEventingImpl implements CCUEventLoop {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public final void addEventHandler(final CCUChannelEventHandler handler) {
-		this.eventHandlers.add(Objects.requireNonNull(handler));
+	public final void addEventHandler(final CCUChannelValueHandler handler) {
+		this.eventHandlers.add(handler);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void addEventHandler(final String address, final CCUChannelValueHandler handler) {
+		this.eventHandlers.add(address, handler);
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public final void removeEventHandler(final CCUChannelEventHandler handler) {
-		this.eventHandlers.remove(Objects.requireNonNull(handler));
+	public final void removeEventHandler(final CCUChannelValueHandler handler) {
+		this.eventHandlers.remove(handler);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void removeEventHandler(final String address, final CCUChannelValueHandler handler) {
+		this.eventHandlers.remove(address, handler);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void addEventHandler(final String addressPattern, final String attribute, final CCUChannelValueHandler handler) {
+		this.eventHandlers.add(addressPattern, attribute, handler);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void removeEventHandler(final String addressPattern, final String attribute, final CCUChannelValueHandler handler) {
+		this.eventHandlers.remove(addressPattern, attribute, handler);
 	}
 }
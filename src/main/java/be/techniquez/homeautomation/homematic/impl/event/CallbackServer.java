@@ -0,0 +1,56 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The server receiving the XML-RPC callbacks of the CCU.
+ *
+ * @author alex
+ */
+interface CallbackServer {
+
+	/**
+	 * Handles the calls received by a {@link CallbackServer}.
+	 *
+	 * @author alex
+	 */
+	@FunctionalInterface
+	interface CallbackHandler {
+
+		/**
+		 * Called when a method call was received.
+		 *
+		 * @param 		method			The name of the method.
+		 * @param 		parameters		The parameters.
+		 *
+		 * @return		The value to return to the caller.
+		 *
+		 * @throws 		Exception		If the call fails, reported to the caller as a fault.
+		 */
+		Object call(final String method, final List<?> parameters) throws Exception;
+	}
+
+	/**
+	 * Starts the server. Servers that can decode events themselves pass them to the sink, other calls go to the
+	 * handler.
+	 *
+	 * @param 		handler			The handler of the calls.
+	 * @param 		sink			The sink receiving the decoded events.
+	 *
+	 * @throws 		IOException		If the server cannot be started.
+	 */
+	void start(final CallbackHandler handler, final EventSink sink) throws IOException;
+
+	/**
+	 * Stops the server.
+	 */
+	void stop();
+
+	/**
+	 * Returns the port the server is listening on.
+	 *
+	 * @return	The port.
+	 */
+	int getPort();
+}
@@ -0,0 +1,79 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import java.net.InetAddress;
+
+import be.techniquez.homeautomation.homematic.impl.rpc.RpcProtocol;
+
+/**
+ * The available implementations of the server receiving the callbacks of the CCU.
+ *
+ * @author alex
+ */
+public enum CallbackServerType {
+
+	/** The Apache XML-RPC web server, using a thread per connection. */
+	XMLRPC(RpcProtocol.XMLRPC) {
+		@Override
+		final CallbackServer createServer(final InetAddress bindAddress, final int port) {
+			return new XmlRpcCallbackServer(bindAddress, port);
+		}
+	},
+
+	/** A non blocking XML-RPC server, handling all connections on a single thread. */
+	NIO(RpcProtocol.XMLRPC) {
+		@Override
+		final CallbackServer createServer(final InetAddress bindAddress, final int port) {
+			return new NioCallbackServer(bindAddress, port);
+		}
+	},
+
+	/** A BIN-RPC server, the CCU is registered with over BIN-RPC as well. */
+	BINRPC(RpcProtocol.BINRPC) {
+		@Override
+		final CallbackServer createServer(final InetAddress bindAddress, final int port) {
+			return new BinRpcCallbackServer(bindAddress, port);
+		}
+	};
+
+	/** The protocol spoken by the server. */
+	private final RpcProtocol protocol;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	protocol		The protocol spoken by the server.
+	 */
+	private CallbackServerType(final RpcProtocol protocol) {
+		this.protocol = protocol;
+	}
+
+	/**
+	 * Creates a server of this type, listening on all addresses.
+	 *
+	 * @param 		port		The port to listen on.
+	 *
+	 * @return		The server.
+	 */
+	final CallbackServer createServer(final int port) {
+		return this.createServer(null, port);
+	}
+
+	/**
+	 * Creates a server of this type.
+	 *
+	 * @param 		bindAddress		The address to listen on, <code>null</code> for all addresses.
+	 * @param 		port			The port to listen on.
+	 *
+	 * @return		The server.
+	 */
+	abstract CallbackServer createServer(final InetAddress bindAddress, final int port);
+
+	/**
+	 * Returns the protocol spoken by the server, which is also used to call <code>init</code> on the CCU.
+	 *
+	 * @return	The protocol.
+	 */
+	final RpcProtocol getProtocol() {
+		return this.protocol;
+	}
+}
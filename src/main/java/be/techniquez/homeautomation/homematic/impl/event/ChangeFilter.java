@@ -0,0 +1,240 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drops events that do not change the value of their datapoint, as the CCU re-sends values after an
+ * <code>init</code> and while ramping. The last value is kept per address and attribute. Changes of a
+ * <code>LEVEL</code> smaller than the minimum delta are dropped as well while the channel is ramping, unless the level
+ * reaches one of its bounds. The last level dropped that way is passed on when <code>WORKING</code> goes back to
+ * <code>false</code>, so the end of a ramp is never lost.
+ *
+ * The last values only follow the events : when the states are set in another way, the filter has to be
+ * {@link #clear() cleared}, or it would drop the next event going back to the value it passed on last.
+ *
+ * Events for the same address are always filtered on the same dispatch lane, so the last values of an address are
+ * only used by one thread at a time.
+ *
+ * @author alex
+ */
+final class ChangeFilter {
+
+	/** The name of the level attribute. */
+	static final String ATTRIBUTE_LEVEL = "LEVEL";
+
+	/** The name of the attribute telling whether a channel is ramping. */
+	private static final String ATTRIBUTE_WORKING = "WORKING";
+
+	/** The lowest level. */
+	private static final double MIN_LEVEL = 0.0d;
+
+	/** The highest level. */
+	private static final double MAX_LEVEL = 1.0d;
+
+	/** The minimum change of a level that is passed on. */
+	private final double minimumLevelDelta;
+
+	/** The last values, per address and attribute. */
+	private final ConcurrentMap<String, ConcurrentMap<String, LastValue>> lastValues = new ConcurrentHashMap<>();
+
+	/** The number of events that were dropped. */
+	private final AtomicLong suppressed = new AtomicLong();
+
+	/**
+	 * The last value passed on for a datapoint.
+	 *
+	 * @author alex
+	 */
+	private static final class LastValue {
+
+		/** The type of the value, <code>null</code> if none was passed on yet. */
+		private CCUEvent.ValueType type;
+
+		/** The value, if it is a boolean. */
+		private boolean booleanValue;
+
+		/** The value, if it is an integer. */
+		private int intValue;
+
+		/** The value, if it is a double. */
+		private double doubleValue;
+
+		/** The value, if it is a string. */
+		private String stringValue;
+
+		/** Indicates whether a level was dropped because it did not change enough. */
+		private boolean pending;
+
+		/** The last level dropped because it did not change enough. */
+		private double pendingLevel;
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	minimumLevelDelta		The minimum change of a level that is passed on, <code>0</code> to pass on all changes.
+	 */
+	ChangeFilter(final double minimumLevelDelta) {
+		if (minimumLevelDelta < 0 || Double.isNaN(minimumLevelDelta)) {
+			throw new IllegalArgumentException("Minimum level delta should not be negative, you specified [" + minimumLevelDelta + "]");
+		}
+
+		this.minimumLevelDelta = minimumLevelDelta;
+	}
+
+	/**
+	 * Indicates whether the event should be passed on to the handlers, remembering its value if so.
+	 *
+	 * @param 		event		The event.
+	 *
+	 * @return		<code>true</code> if the event changes the value of its datapoint, <code>false</code> if it should be dropped.
+	 */
+	final boolean accept(final CCUEvent event) {
+		final ConcurrentMap<String, LastValue> attributes = this.lastValues.computeIfAbsent(event.getAddress(), address -> new ConcurrentHashMap<>());
+		final LastValue last = attributes.computeIfAbsent(event.getAttribute(), attribute -> new LastValue());
+
+		if (last.type == event.getType() && !this.changed(last, event, attributes)) {
+			if (event.getType() == CCUEvent.ValueType.DOUBLE && ATTRIBUTE_LEVEL.equals(event.getAttribute())) {
+				last.pending = Double.compare(last.doubleValue, event.getDouble()) != 0;
+				last.pendingLevel = event.getDouble();
+			}
+
+			this.suppressed.incrementAndGet();
+
+			return false;
+		}
+
+		last.type = event.getType();
+		last.pending = false;
+
+		switch (event.getType()) {
+			case BOOLEAN:
+				last.booleanValue = event.getBoolean();
+				break;
+
+			case INTEGER:
+				last.intValue = event.getInteger();
+				break;
+
+			case DOUBLE:
+				last.doubleValue = event.getDouble();
+				break;
+
+			default:
+				last.stringValue = event.getValueAsString();
+				break;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Indicates whether the value of the event differs enough from the last value, which has the same type.
+	 *
+	 * @param 		last			The last value.
+	 * @param 		event			The event.
+	 * @param 		attributes		The last values of the address of the event.
+	 *
+	 * @return		<code>true</code> if the value changed.
+	 */
+	private final boolean changed(final LastValue last, final CCUEvent event, final Map<String, LastValue> attributes) {
+		switch (event.getType()) {
+			case BOOLEAN:
+				return last.booleanValue != event.getBoolean();
+
+			case INTEGER:
+				return last.intValue != event.getInteger();
+
+			case DOUBLE:
+				final double value = event.getDouble();
+
+				if (ATTRIBUTE_LEVEL.equals(event.getAttribute()) && value != MIN_LEVEL && value != MAX_LEVEL && isRamping(attributes)) {
+					return Math.abs(value - last.doubleValue) >= Math.max(this.minimumLevelDelta, Double.MIN_VALUE);
+				}
+
+				return Double.compare(last.doubleValue, value) != 0;
+
+			default:
+				return !Objects.equals(last.stringValue, event.getValueAsString());
+		}
+	}
+
+	/**
+	 * Indicates whether a channel is ramping, which is assumed until it reports <code>WORKING</code> as <code>false</code>.
+	 *
+	 * @param 		attributes		The last values of the channel.
+	 *
+	 * @return		<code>true</code> if the channel is, or may be ramping.
+	 */
+	private static final boolean isRamping(final Map<String, LastValue> attributes) {
+		final LastValue working = attributes.get(ATTRIBUTE_WORKING);
+
+		return working == null || working.type != CCUEvent.ValueType.BOOLEAN || working.booleanValue;
+	}
+
+	/**
+	 * Returns the level dropped during the ramp the given event ends, and passes it on. An event ends a ramp when it
+	 * reports <code>WORKING</code> as <code>false</code>.
+	 *
+	 * @param 		event		The event, which was accepted.
+	 *
+	 * @return		The last level dropped during the ramp, <code>NaN</code> if none.
+	 */
+	final double takeTrailingLevel(final CCUEvent event) {
+		if (event.getType() != CCUEvent.ValueType.BOOLEAN || event.getBoolean() || !ATTRIBUTE_WORKING.equals(event.getAttribute())) {
+			return Double.NaN;
+		}
+
+		final Map<String, LastValue> attributes = this.lastValues.get(event.getAddress());
+		final LastValue level = attributes != null ? attributes.get(ATTRIBUTE_LEVEL) : null;
+
+		if (level == null || !level.pending) {
+			return Double.NaN;
+		}
+
+		level.pending = false;
+		level.doubleValue = level.pendingLevel;
+
+		return level.pendingLevel;
+	}
+
+	/**
+	 * Indicates whether the filter needs the events of the given datapoint, even when no handler wants them : the
+	 * <code>WORKING</code> events of the channels it keeps a level for tell it when their ramps end.
+	 *
+	 * @param 		address			The address.
+	 * @param 		attribute		The attribute.
+	 *
+	 * @return		<code>true</code> if the filter needs the events.
+	 */
+	final boolean isInterested(final String address, final String attribute) {
+		if (this.minimumLevelDelta == 0 || !ATTRIBUTE_WORKING.equals(attribute)) {
+			return false;
+		}
+
+		final Map<String, LastValue> attributes = this.lastValues.get(address);
+
+		return attributes != null && attributes.containsKey(ATTRIBUTE_LEVEL);
+	}
+
+	/**
+	 * Forgets the last values, so the next event of every datapoint is passed on. Used when the states were set
+	 * without events, as when they were refreshed from the CCU or restored from the journal.
+	 */
+	final void clear() {
+		this.lastValues.clear();
+	}
+
+	/**
+	 * Returns the number of events that were dropped because they did not change their datapoint.
+	 *
+	 * @return	The number of dropped events.
+	 */
+	final long getSuppressedEvents() {
+		return this.suppressed.get();
+	}
+}
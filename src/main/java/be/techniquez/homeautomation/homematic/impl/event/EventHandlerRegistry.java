@@ -0,0 +1,427 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.regex.Pattern;
+
+import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUChannelValueHandler;
+
+/**
+ * Keeps the event handlers, indexed by the address they are interested in, so an event only reaches the
+ * handlers of its own address. Handlers registered without an address receive all events.
+ *
+ * Handlers can also be limited to one attribute, and be registered for an address pattern in which <code>*</code>
+ * matches any characters. The handlers matching the patterns are looked up once per address and attribute.
+ * {@link #isInterested(String, String)} tells whether an event would reach any handler at all, so the decoders can
+ * skip the value of events nobody wants.
+ *
+ * @author alex
+ */
+final class EventHandlerRegistry {
+
+	/** Matches any characters in an address pattern. */
+	private static final String WILDCARD = "*";
+
+	/** The handlers interested in all events. */
+	private final Set<CCUChannelValueHandler> globalHandlers = new CopyOnWriteArraySet<>();
+
+	/** The handlers, per address. */
+	private final ConcurrentMap<String, Set<Subscription>> addressHandlers = new ConcurrentHashMap<>();
+
+	/** The handlers registered for an address pattern. */
+	private final Set<PatternSubscription> patternHandlers = new CopyOnWriteArraySet<>();
+
+	/** The handlers of the patterns matching an address and attribute, per address and attribute. */
+	private volatile ConcurrentMap<String, ConcurrentMap<String, List<CCUChannelValueHandler>>> patternMatches = new ConcurrentHashMap<>();
+
+	/** Drops the events that do not change their datapoint, <code>null</code> if disabled. */
+	private volatile ChangeFilter changeFilter;
+
+	/**
+	 * A handler registered for an address.
+	 *
+	 * @author alex
+	 */
+	private static class Subscription {
+
+		/** The attribute, <code>null</code> for all attributes. */
+		final String attribute;
+
+		/** The handler. */
+		final CCUChannelValueHandler handler;
+
+		/**
+		 * Create a new instance.
+		 *
+		 * @param 	attribute		The attribute, <code>null</code> for all attributes.
+		 * @param 	handler			The handler.
+		 */
+		private Subscription(final String attribute, final CCUChannelValueHandler handler) {
+			this.attribute = attribute;
+			this.handler = Objects.requireNonNull(handler);
+		}
+
+		/**
+		 * Indicates whether the subscription covers the given attribute.
+		 *
+		 * @param 		attribute		The attribute.
+		 *
+		 * @return		<code>true</code> if it does.
+		 */
+		final boolean matches(final String attribute) {
+			return this.attribute == null || this.attribute.equals(attribute);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean equals(final Object other) {
+			if (other == null || other.getClass() != this.getClass()) {
+				return false;
+			}
+
+			final Subscription subscription = (Subscription)other;
+
+			return Objects.equals(this.attribute, subscription.attribute) && this.handler.equals(subscription.handler);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.attribute, this.handler);
+		}
+	}
+
+	/**
+	 * A handler registered for an address pattern.
+	 *
+	 * @author alex
+	 */
+	private static final class PatternSubscription extends Subscription {
+
+		/** The address pattern. */
+		private final String addressPattern;
+
+		/** The address pattern, compiled. */
+		private final Pattern pattern;
+
+		/**
+		 * Create a new instance.
+		 *
+		 * @param 	addressPattern		The address pattern.
+		 * @param 	attribute			The attribute, <code>null</code> for all attributes.
+		 * @param 	handler				The handler.
+		 */
+		private PatternSubscription(final String addressPattern, final String attribute, final CCUChannelValueHandler handler) {
+			super(attribute, handler);
+
+			this.addressPattern = addressPattern;
+			this.pattern = compile(addressPattern);
+		}
+
+		/**
+		 * Indicates whether the subscription covers the given address and attribute.
+		 *
+		 * @param 		address			The address.
+		 * @param 		attribute		The attribute.
+		 *
+		 * @return		<code>true</code> if it does.
+		 */
+		final boolean matches(final String address, final String attribute) {
+			return this.matches(attribute) && this.pattern.matcher(address).matches();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public final boolean equals(final Object other) {
+			return super.equals(other) && this.addressPattern.equals(((PatternSubscription)other).addressPattern);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public final int hashCode() {
+			return 31 * super.hashCode() + this.addressPattern.hashCode();
+		}
+	}
+
+	/**
+	 * Adds a handler for all events.
+	 *
+	 * @param 	handler		The handler.
+	 */
+	final void add(final CCUChannelValueHandler handler) {
+		this.globalHandlers.add(Objects.requireNonNull(handler));
+	}
+
+	/**
+	 * Removes a handler for all events.
+	 *
+	 * @param 	handler		The handler.
+	 */
+	final void remove(final CCUChannelValueHandler handler) {
+		this.globalHandlers.remove(Objects.requireNonNull(handler));
+	}
+
+	/**
+	 * Adds a handler for the events of the given address.
+	 *
+	 * @param 	address		The address.
+	 * @param 	handler		The handler.
+	 */
+	final void add(final String address, final CCUChannelValueHandler handler) {
+		this.add(address, null, handler);
+	}
+
+	/**
+	 * Removes a handler for the events of the given address.
+	 *
+	 * @param 	address		The address.
+	 * @param 	handler		The handler.
+	 */
+	final void remove(final String address, final CCUChannelValueHandler handler) {
+		this.remove(address, null, handler);
+	}
+
+	/**
+	 * Adds a handler for the events of the given attribute of the addresses matching the given pattern.
+	 *
+	 * @param 	addressPattern		The address, <code>*</code> matching any characters.
+	 * @param 	attribute			The attribute, <code>null</code> for all attributes.
+	 * @param 	handler				The handler.
+	 */
+	final void add(final String addressPattern, final String attribute, final CCUChannelValueHandler handler) {
+		Objects.requireNonNull(handler);
+
+		if (addressPattern.contains(WILDCARD)) {
+			this.patternHandlers.add(new PatternSubscription(addressPattern, attribute, handler));
+			this.patternMatches = new ConcurrentHashMap<>();
+		} else {
+			final Subscription subscription = new Subscription(attribute, handler);
+
+			this.addressHandlers.compute(addressPattern, (key, handlers) -> {
+				final Set<Subscription> newHandlers = handlers != null ? handlers : new CopyOnWriteArraySet<>();
+				newHandlers.add(subscription);
+
+				return newHandlers;
+			});
+		}
+	}
+
+	/**
+	 * Removes a handler that was added for the given address pattern and attribute.
+	 *
+	 * @param 	addressPattern		The address pattern.
+	 * @param 	attribute			The attribute, <code>null</code> for all attributes.
+	 * @param 	handler				The handler.
+	 */
+	final void remove(final String addressPattern, final String attribute, final CCUChannelValueHandler handler) {
+		Objects.requireNonNull(handler);
+
+		if (addressPattern.contains(WILDCARD)) {
+			if (this.patternHandlers.remove(new PatternSubscription(addressPattern, attribute, handler))) {
+				this.patternMatches = new ConcurrentHashMap<>();
+			}
+		} else {
+			final Subscription subscription = new Subscription(attribute, handler);
+
+			this.addressHandlers.computeIfPresent(addressPattern, (key, handlers) -> {
+				handlers.remove(subscription);
+
+				return handlers.isEmpty() ? null : handlers;
+			});
+		}
+	}
+
+	/**
+	 * Indicates whether an event for the given address and attribute would reach any handler.
+	 *
+	 * @param 		address			The address.
+	 * @param 		attribute		The attribute.
+	 *
+	 * @return		<code>true</code> if there is a handler for the event.
+	 */
+	final boolean isInterested(final String address, final String attribute) {
+		if (!this.globalHandlers.isEmpty()) {
+			return true;
+		}
+
+		for (final Subscription subscription : this.addressHandlers.getOrDefault(address, Collections.emptySet())) {
+			if (subscription.matches(attribute)) {
+				return true;
+			}
+		}
+
+		if (!this.patternHandlers.isEmpty() && !this.getPatternMatches(address, attribute).isEmpty()) {
+			return true;
+		}
+
+		final ChangeFilter filter = this.changeFilter;
+
+		return filter != null && filter.isInterested(address, attribute);
+	}
+
+	/**
+	 * Dispatches an event to the handlers of its address, of the matching patterns and to the global handlers,
+	 * passing the value with its own type. Events dropped by the change filter do not reach any handler. When the
+	 * event ends a ramp, the last level the filter dropped during it is passed on afterwards.
+	 *
+	 * @param 	event		The event.
+	 */
+	final void dispatch(final CCUEvent event) {
+		final ChangeFilter filter = this.changeFilter;
+
+		if (filter == null) {
+			this.deliver(event);
+		} else if (filter.accept(event)) {
+			this.deliver(event);
+
+			final double trailingLevel = filter.takeTrailingLevel(event);
+
+			if (!Double.isNaN(trailingLevel)) {
+				event.setAttribute(ChangeFilter.ATTRIBUTE_LEVEL);
+				event.setDouble(trailingLevel);
+
+				this.deliver(event);
+			}
+		}
+	}
+
+	/**
+	 * Passes the event to the handlers of its address, of the matching patterns and to the global handlers.
+	 *
+	 * @param 	event		The event.
+	 */
+	private final void deliver(final CCUEvent event) {
+		for (final Subscription subscription : this.addressHandlers.getOrDefault(event.getAddress(), Collections.emptySet())) {
+			if (subscription.matches(event.getAttribute())) {
+				dispatch(event, subscription.handler);
+			}
+		}
+
+		if (!this.patternHandlers.isEmpty()) {
+			for (final CCUChannelValueHandler handler : this.getPatternMatches(event.getAddress(), event.getAttribute())) {
+				dispatch(event, handler);
+			}
+		}
+
+		for (final CCUChannelValueHandler handler : this.globalHandlers) {
+			dispatch(event, handler);
+		}
+	}
+
+	/**
+	 * Returns the handlers of the patterns matching the given address and attribute, looking them up only once.
+	 *
+	 * @param 		address			The address.
+	 * @param 		attribute		The attribute.
+	 *
+	 * @return		The handlers.
+	 */
+	private final List<CCUChannelValueHandler> getPatternMatches(final String address, final String attribute) {
+		return this.patternMatches.computeIfAbsent(address, key -> new ConcurrentHashMap<>()).computeIfAbsent(attribute, key -> {
+			final List<CCUChannelValueHandler> handlers = new ArrayList<>();
+
+			for (final PatternSubscription subscription : this.patternHandlers) {
+				if (subscription.matches(address, attribute)) {
+					handlers.add(subscription.handler);
+				}
+			}
+
+			return handlers.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(handlers);
+		});
+	}
+
+	/**
+	 * Passes the event to the given handler.
+	 *
+	 * @param 	event		The event.
+	 * @param 	handler		The handler.
+	 */
+	private static final void dispatch(final CCUEvent event, final CCUChannelValueHandler handler) {
+		switch (event.getType()) {
+			case BOOLEAN:
+				handler.onBoolean(event.getAddress(), event.getAttribute(), event.getBoolean());
+				break;
+
+			case INTEGER:
+				handler.onInt(event.getAddress(), event.getAttribute(), event.getInteger());
+				break;
+
+			case DOUBLE:
+				handler.onDouble(event.getAddress(), event.getAttribute(), event.getDouble());
+				break;
+
+			default:
+				handler.onString(event.getAddress(), event.getAttribute(), event.getValueAsString());
+				break;
+		}
+	}
+
+	/**
+	 * Compiles an address pattern, in which <code>*</code> matches any characters.
+	 *
+	 * @param 		addressPattern		The address pattern.
+	 *
+	 * @return		The compiled pattern.
+	 */
+	private static final Pattern compile(final String addressPattern) {
+		final StringBuilder regex = new StringBuilder();
+		int start = 0;
+		int wildcard;
+
+		while ((wildcard = addressPattern.indexOf(WILDCARD, start)) >= 0) {
+			if (wildcard > start) {
+				regex.append(Pattern.quote(addressPattern.substring(start, wildcard)));
+			}
+
+			regex.append(".*");
+			start = wildcard + 1;
+		}
+
+		if (start < addressPattern.length()) {
+			regex.append(Pattern.quote(addressPattern.substring(start)));
+		}
+
+		return Pattern.compile(regex.toString());
+	}
+
+	/**
+	 * Sets the change filter.
+	 *
+	 * @param 	changeFilter		The change filter, <code>null</code> to pass on all events.
+	 */
+	final void setChangeFilter(final ChangeFilter changeFilter) {
+		this.changeFilter = changeFilter;
+	}
+
+	/**
+	 * Returns the change filter.
+	 *
+	 * @return	The change filter, <code>null</code> if disabled.
+	 */
+	final ChangeFilter getChangeFilter() {
+		return this.changeFilter;
+	}
+
+	/**
+	 * Returns the number of handlers.
+	 *
+	 * @return	The number of handlers.
+	 */
+	final int size() {
+		return this.globalHandlers.size() + this.patternHandlers.size() + this.addressHandlers.values().stream().mapToInt(Set::size).sum();
+	}
+}
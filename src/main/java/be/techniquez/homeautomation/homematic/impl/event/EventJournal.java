@@ -0,0 +1,957 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of the events, kept in memory-mapped segment files, so the last value of every datapoint
+ * can be restored after a restart without asking the CCU.
+ *
+ * Every record is written straight into the mapping, without allocating : a length, the type of the value, the address,
+ * the attribute and the value itself. The length slot after the record is cleared, and the length is written last : a record
+ * that was only partly written when the process died reads as the end of the journal, and so do the bytes it left behind
+ * once a shorter record is written over it. Addresses and attributes are ASCII, as the CCU uses them.
+ *
+ * The journal uses up to three segment files : the journal file itself, and two siblings with the suffixes <code>.1</code>
+ * and <code>.2</code>. Every segment has a generation in its header, the values are read from the segments in the order of
+ * their generation. Events are appended to the newest segment. When it is full, appending switches to a spare segment that
+ * was prepared beforehand, and a background thread compacts the full segments to the last value of every datapoint : the
+ * values are written to a new segment file, which is forced to disk and then moved over the newest of them, so a process
+ * dying while compacting still leaves the complete journal behind. Appending never waits for the disk : when the spare
+ * segment fills up before the compaction is done, the events are not journaled until it is. Writing the pages back to
+ * disk is left to the operating system, {@link #flush()} forces it.
+ *
+ * @author alex
+ */
+final class EventJournal {
+
+	/** Logger instance. */
+	private static final Logger logger = Logger.getLogger(EventJournal.class.getName());
+
+	/** The default size of a segment, in bytes. */
+	static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+
+	/** Marks a journal segment, "HMJ2". */
+	private static final int MAGIC = 0x484D4A32;
+
+	/** Where the generation of a segment is kept. */
+	private static final int GENERATION_OFFSET = 4;
+
+	/** The size of the header : the magic number and the generation. */
+	private static final int HEADER_SIZE = 8;
+
+	/** The size of the length of a record. */
+	private static final int LENGTH_SIZE = 2;
+
+	/** The longest record. */
+	private static final int MAX_RECORD_LENGTH = 0xFFFF;
+
+	/** The longest address or attribute. */
+	private static final int MAX_NAME_LENGTH = 0xFF;
+
+	/** The types of value, by the ordinal stored in the records. */
+	private static final CCUEvent.ValueType[] TYPES = CCUEvent.ValueType.values();
+
+	/** Added to the name of the journal file to get the names of the segment files. */
+	private static final String[] SEGMENT_SUFFIXES = { "", ".1", ".2" };
+
+	/** Added to the name of the journal file to get the name of the segment the full segments are compacted into. */
+	private static final String COMPACTED_SUFFIX = ".compacted";
+
+	/** The number of names the journal interns while reading. */
+	private static final int INTERNED_NAMES = 16384;
+
+	/** How long the compaction thread is kept when idle, in seconds. */
+	private static final long COMPACTOR_KEEP_ALIVE = 60;
+
+	/** How long closing waits for the compaction in progress, in seconds. */
+	private static final long CLOSE_TIMEOUT = 30;
+
+	/**
+	 * A segment file, and its mapping.
+	 *
+	 * @author alex
+	 */
+	private static final class Segment {
+
+		/** The file, replaced when the segment is the result of a compaction. */
+		private Path path;
+
+		/** The channel of the file. */
+		private final FileChannel channel;
+
+		/** The mapping. */
+		private final MappedByteBuffer buffer;
+
+		/** Where the next record goes. */
+		private int position = HEADER_SIZE;
+
+		/**
+		 * Create a new instance.
+		 *
+		 * @param 	path		The file.
+		 * @param 	channel		The channel of the file.
+		 * @param 	buffer		The mapping.
+		 */
+		private Segment(final Path path, final FileChannel channel, final MappedByteBuffer buffer) {
+			this.path = path;
+			this.channel = channel;
+			this.buffer = buffer;
+		}
+
+		/**
+		 * Indicates whether the segment holds journal records, as opposed to a spare segment or another file.
+		 *
+		 * @return	<code>true</code> if it does.
+		 */
+		private final boolean isInUse() {
+			return this.buffer.getInt(0) == MAGIC && this.getGeneration() > 0;
+		}
+
+		/**
+		 * Returns the generation.
+		 *
+		 * @return	The generation, 0 for a spare segment.
+		 */
+		private final int getGeneration() {
+			return this.buffer.getInt(GENERATION_OFFSET);
+		}
+
+		/**
+		 * Sets the generation.
+		 *
+		 * @param 	generation		The generation.
+		 */
+		private final void setGeneration(final int generation) {
+			this.buffer.putInt(GENERATION_OFFSET, generation);
+		}
+	}
+
+	/** The journal file. */
+	private final Path file;
+
+	/** The size of new segments, in bytes. */
+	private final int capacity;
+
+	/** Compacts the full segments. */
+	private final ThreadPoolExecutor compactor;
+
+	/** Interns the names while reading, so a name is only decoded once. */
+	private final InternTable names = new InternTable(INTERNED_NAMES);
+
+	/** Receives the bytes of a name while reading. */
+	private final byte[] nameBytes = new byte[MAX_NAME_LENGTH];
+
+	/** The segment the events are appended to. */
+	private Segment active;
+
+	/** The full segments, oldest first. */
+	private final List<Segment> sealed = new ArrayList<>();
+
+	/** The segment appending switches to when the active one is full, <code>null</code> while it is being prepared. */
+	private Segment spare;
+
+	/** Indicates a compaction is in progress. */
+	private boolean compacting;
+
+	/** The number of events appended. */
+	private long appended;
+
+	/** The number of events that were not journaled because there was no room. */
+	private long dropped;
+
+	/** The number of times the segments were compacted. */
+	private long compactions;
+
+	/**
+	 * Opens the journal in the given file, creating it if needed.
+	 *
+	 * @param 	file			The file.
+	 * @param 	capacity		The size of a segment, in bytes. An existing segment that is larger keeps its size.
+	 *
+	 * @throws 	IOException		If the segments cannot be mapped.
+	 */
+	EventJournal(final Path file, final int capacity) throws IOException {
+		if (capacity <= HEADER_SIZE + LENGTH_SIZE) {
+			throw new IllegalArgumentException("Journal capacity is too small, you specified [" + capacity + "]");
+		}
+
+		this.file = file;
+		this.capacity = capacity;
+
+		final List<Segment> segments = new ArrayList<>();
+
+		try {
+			for (final String suffix : SEGMENT_SUFFIXES) {
+				final Path path = file.resolveSibling(file.getFileName() + suffix);
+
+				if (Files.exists(path)) {
+					final Segment segment = this.openSegment(path);
+
+					if (segment.isInUse()) {
+						segments.add(segment);
+					} else {
+						if (segment.buffer.getInt(0) != 0 && segment.buffer.getInt(0) != MAGIC && logger.isLoggable(Level.WARNING)) {
+							logger.log(Level.WARNING, "Journal [" + path + "] : not a journal, starting a new one.");
+						}
+
+						segment.channel.close();
+					}
+				}
+			}
+
+			segments.sort((first, second) -> Integer.compare(first.getGeneration(), second.getGeneration()));
+
+			if (segments.isEmpty()) {
+				this.active = this.createSegment(this.freePath());
+				this.active.setGeneration(1);
+			} else {
+				this.active = segments.remove(segments.size() - 1);
+				this.active.position = this.scan(this.active, this.names, this.nameBytes, null);
+				this.sealed.addAll(segments);
+			}
+
+			final Path free = this.freePath();
+
+			if (free != null) {
+				this.spare = this.createSegment(free);
+			}
+		} catch (IOException | RuntimeException e) {
+			segments.forEach(this::closeQuietly);
+			this.sealed.forEach(this::closeQuietly);
+
+			if (this.active != null) {
+				this.closeQuietly(this.active);
+			}
+
+			throw e;
+		}
+
+		this.compactor = new ThreadPoolExecutor(1, 1, COMPACTOR_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+			final Thread thread = new Thread(runnable, "ccu-journal-compactor");
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		this.compactor.allowCoreThreadTimeOut(true);
+
+		if (!this.sealed.isEmpty()) {
+			synchronized (this) {
+				this.compact();
+			}
+		}
+	}
+
+	/**
+	 * Appends the event to the journal. Never waits for the disk, nor for a compaction.
+	 *
+	 * @param 	event		The event.
+	 */
+	final synchronized void append(final CCUEvent event) {
+		final CCUEvent.ValueType type = event.getType();
+		final String stringValue = type == CCUEvent.ValueType.STRING ? event.getValueAsString() : null;
+
+		if (recordLength(event.getAddress(), event.getAttribute(), type, stringValue) > MAX_RECORD_LENGTH) {
+			if (logger.isLoggable(Level.FINE)) {
+				logger.log(Level.FINE, "Journal [" + this.file + "] : event of [" + event.getAddress() + "] : [" + event.getAttribute() + "] is too long, not journaled.");
+			}
+
+			return;
+		}
+
+		if (!write(this.active, event.getAddress(), event.getAttribute(), type, event.getBoolean(), event.getInteger(), event.getDouble(), stringValue)) {
+			if (!this.switchSegment() || !write(this.active, event.getAddress(), event.getAttribute(), type, event.getBoolean(), event.getInteger(), event.getDouble(), stringValue)) {
+				if (logger.isLoggable(Level.FINE)) {
+					logger.log(Level.FINE, "Journal [" + this.file + "] : no room for the event of [" + event.getAddress() + "] : [" + event.getAttribute() + "] until the compaction is done.");
+				}
+
+				this.dropped++;
+
+				return;
+			}
+		}
+
+		this.appended++;
+	}
+
+	/**
+	 * Returns the last value of every datapoint in the journal.
+	 *
+	 * @return	The values, per address and attribute, as {@link Boolean}, {@link Integer}, {@link Double} or {@link String}.
+	 */
+	final synchronized Map<String, Map<String, Object>> readLastValues() {
+		final Map<String, Map<String, Object>> values = new LinkedHashMap<>();
+
+		for (final Segment segment : this.sealed) {
+			this.readLastValues(segment, this.names, this.nameBytes, values);
+		}
+
+		this.readLastValues(this.active, this.names, this.nameBytes, values);
+
+		return values;
+	}
+
+	/**
+	 * Forces the journal to disk.
+	 */
+	final synchronized void flush() {
+		for (final Segment segment : this.sealed) {
+			segment.buffer.force();
+		}
+
+		this.active.buffer.force();
+	}
+
+	/**
+	 * Waits for the compaction in progress, if any, then flushes and closes the journal.
+	 *
+	 * @throws 	IOException		If an IO error occurs.
+	 */
+	final void close() throws IOException {
+		this.compactor.shutdown();
+
+		try {
+			if (!this.compactor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS) && logger.isLoggable(Level.WARNING)) {
+				logger.log(Level.WARNING, "Journal [" + this.file + "] : compaction still running after [" + CLOSE_TIMEOUT + "] seconds, closing anyway.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		synchronized (this) {
+			try {
+				this.flush();
+			} finally {
+				this.sealed.forEach(this::closeQuietly);
+
+				if (this.spare != null) {
+					this.closeQuietly(this.spare);
+				}
+
+				this.active.channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Waits until the compaction in progress, if any, is done.
+	 *
+	 * @throws 	InterruptedException		If interrupted while waiting.
+	 */
+	final synchronized void awaitCompaction() throws InterruptedException {
+		while (this.compacting) {
+			this.wait();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes in use in the segment the events are appended to.
+	 *
+	 * @return	The number of bytes in use.
+	 */
+	final synchronized int getSize() {
+		return this.active.position;
+	}
+
+	/**
+	 * Returns the number of events appended since the journal was opened.
+	 *
+	 * @return	The number of events appended.
+	 */
+	final synchronized long getAppendedEvents() {
+		return this.appended;
+	}
+
+	/**
+	 * Returns the number of events that were not journaled because the segments were full while compacting.
+	 *
+	 * @return	The number of dropped events.
+	 */
+	final synchronized long getDroppedEvents() {
+		return this.dropped;
+	}
+
+	/**
+	 * Returns the number of times the segments were compacted.
+	 *
+	 * @return	The number of compactions.
+	 */
+	final synchronized long getCompactions() {
+		return this.compactions;
+	}
+
+	/**
+	 * Switches appending to the spare segment, and starts compacting the full ones. Only swaps the segments, the files
+	 * are left to the compaction.
+	 *
+	 * @return	<code>true</code> if appending switched, <code>false</code> if there is no spare segment yet.
+	 */
+	private final boolean switchSegment() {
+		if (this.spare == null) {
+			if (!this.compacting) {
+				// The last compaction failed, try again.
+				this.compact();
+			}
+
+			return false;
+		}
+
+		this.spare.setGeneration(this.active.getGeneration() + 1);
+		this.sealed.add(this.active);
+		this.active = this.spare;
+		this.spare = null;
+
+		this.compact();
+
+		return true;
+	}
+
+	/**
+	 * Starts compacting the full segments on the background thread.
+	 */
+	private final void compact() {
+		this.compacting = true;
+
+		try {
+			this.compactor.execute(this::compactSealed);
+		} catch (RejectedExecutionException e) {
+			this.compacting = false;
+		}
+	}
+
+	/**
+	 * Compacts the full segments into one, and prepares the next spare segment. Runs on the background thread, the lock
+	 * is only held to swap the segments.
+	 */
+	private final void compactSealed() {
+		final List<Segment> segments;
+
+		synchronized (this) {
+			segments = new ArrayList<>(this.sealed);
+		}
+
+		final Segment compacted = segments.isEmpty() ? null : this.compact(segments);
+
+		if (compacted != null) {
+			synchronized (this) {
+				this.sealed.removeAll(segments);
+				this.sealed.add(0, compacted);
+				this.compactions++;
+			}
+
+			for (final Segment segment : segments) {
+				this.closeQuietly(segment);
+
+				if (!segment.path.equals(compacted.path)) {
+					try {
+						Files.deleteIfExists(segment.path);
+					} catch (IOException e) {
+						if (logger.isLoggable(Level.WARNING)) {
+							logger.log(Level.WARNING, "Journal [" + this.file + "] : could not delete the compacted segment [" + segment.path + "] : [" + e.getMessage() + "]", e);
+						}
+					}
+				}
+			}
+		}
+
+		final Path free;
+
+		synchronized (this) {
+			free = this.spare == null ? this.freePath() : null;
+		}
+
+		Segment prepared = null;
+
+		if (free != null) {
+			try {
+				prepared = this.createSegment(free);
+			} catch (IOException | RuntimeException e) {
+				if (logger.isLoggable(Level.WARNING)) {
+					logger.log(Level.WARNING, "Journal [" + this.file + "] : could not prepare a segment : [" + e.getMessage() + "]", e);
+				}
+			}
+		}
+
+		synchronized (this) {
+			if (prepared != null) {
+				this.spare = prepared;
+			}
+
+			this.compacting = false;
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * Writes the last value of every datapoint in the given segments to a new segment file, which is forced to disk and then
+	 * moved over the newest of them, taking its generation. When that fails, the segments are left as they are.
+	 *
+	 * @param 		segments		The segments, oldest first.
+	 *
+	 * @return		The compacted segment, <code>null</code> if the compaction failed.
+	 */
+	private final Segment compact(final List<Segment> segments) {
+		final InternTable compactionNames = new InternTable(INTERNED_NAMES);
+		final byte[] compactionNameBytes = new byte[MAX_NAME_LENGTH];
+		final Map<String, Map<String, Object>> values = new LinkedHashMap<>();
+
+		for (final Segment segment : segments) {
+			this.readLastValues(segment, compactionNames, compactionNameBytes, values);
+		}
+
+		final Segment newest = segments.get(segments.size() - 1);
+		final Path target = newest.path;
+		Segment compacted = null;
+
+		try {
+			compacted = this.createSegment(this.file.resolveSibling(this.file.getFileName() + COMPACTED_SUFFIX), newest.buffer.capacity());
+			compacted.setGeneration(newest.getGeneration());
+
+			final Segment destination = compacted;
+
+			values.forEach((address, attributes) -> attributes.forEach((attribute, value) -> {
+				final boolean written;
+
+				if (value instanceof Boolean) {
+					written = write(destination, address, attribute, CCUEvent.ValueType.BOOLEAN, (Boolean)value, 0, 0, null);
+				} else if (value instanceof Integer) {
+					written = write(destination, address, attribute, CCUEvent.ValueType.INTEGER, false, (Integer)value, 0, null);
+				} else if (value instanceof Double) {
+					written = write(destination, address, attribute, CCUEvent.ValueType.DOUBLE, false, 0, (Double)value, null);
+				} else {
+					written = write(destination, address, attribute, CCUEvent.ValueType.STRING, false, 0, 0, (String)value);
+				}
+
+				if (!written && logger.isLoggable(Level.WARNING)) {
+					logger.log(Level.WARNING, "Journal [" + this.file + "] : no room for the value of [" + address + "] : [" + attribute + "] after compaction.");
+				}
+			}));
+
+			compacted.buffer.force();
+
+			Files.move(compacted.path, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException | RuntimeException e) {
+			if (logger.isLoggable(Level.WARNING)) {
+				logger.log(Level.WARNING, "Journal [" + this.file + "] : could not compact : [" + e.getMessage() + "]", e);
+			}
+
+			if (compacted != null) {
+				this.closeQuietly(compacted);
+
+				try {
+					Files.deleteIfExists(compacted.path);
+				} catch (IOException deleteException) {
+					e.addSuppressed(deleteException);
+				}
+			}
+
+			return null;
+		}
+
+		compacted.path = target;
+
+		if (logger.isLoggable(Level.INFO)) {
+			logger.log(Level.INFO, "Journal [" + this.file + "] : compacted [" + segments.size() + "] segments to [" + compacted.position + "] bytes.");
+		}
+
+		return compacted;
+	}
+
+	/**
+	 * Returns a segment file that is not in use.
+	 *
+	 * @return	The file, <code>null</code> if all are in use.
+	 */
+	private final Path freePath() {
+		for (final String suffix : SEGMENT_SUFFIXES) {
+			final Path path = this.file.resolveSibling(this.file.getFileName() + suffix);
+
+			if (!isPath(this.active, path) && !isPath(this.spare, path) && this.sealed.stream().noneMatch(segment -> isPath(segment, path))) {
+				return path;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Indicates whether the segment uses the given file.
+	 *
+	 * @param 		segment		The segment, may be <code>null</code>.
+	 * @param 		path		The file.
+	 *
+	 * @return		<code>true</code> if it does.
+	 */
+	private static final boolean isPath(final Segment segment, final Path path) {
+		return segment != null && segment.path.equals(path);
+	}
+
+	/**
+	 * Maps an existing segment file.
+	 *
+	 * @param 		path			The file.
+	 *
+	 * @return		The segment.
+	 *
+	 * @throws 		IOException		If the file cannot be mapped.
+	 */
+	private final Segment openSegment(final Path path) throws IOException {
+		final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		try {
+			return new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(this.capacity, channel.size())));
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates an empty spare segment file of the journal capacity, replacing the file if it exists.
+	 *
+	 * @param 		path			The file.
+	 *
+	 * @return		The segment.
+	 *
+	 * @throws 		IOException		If the file cannot be created.
+	 */
+	private final Segment createSegment(final Path path) throws IOException {
+		return this.createSegment(path, this.capacity);
+	}
+
+	/**
+	 * Creates an empty spare segment file, replacing the file if it exists. A new file reads as zeroes, so nothing has to be
+	 * cleared.
+	 *
+	 * @param 		path			The file.
+	 * @param 		size			The size of the segment.
+	 *
+	 * @return		The segment.
+	 *
+	 * @throws 		IOException		If the file cannot be created.
+	 */
+	private final Segment createSegment(final Path path, final int size) throws IOException {
+		Files.deleteIfExists(path);
+
+		final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		try {
+			final Segment segment = new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+			segment.buffer.putInt(0, MAGIC);
+
+			return segment;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes a record, if it fits.
+	 *
+	 * @param 		segment				The segment.
+	 * @param 		address				The address.
+	 * @param 		attribute			The attribute.
+	 * @param 		type				The type of the value.
+	 * @param 		booleanValue		The value, if it is a boolean.
+	 * @param 		intValue			The value, if it is an integer.
+	 * @param 		doubleValue			The value, if it is a double.
+	 * @param 		stringValue			The value, if it is a string.
+	 *
+	 * @return		<code>true</code> if the record was written, <code>false</code> if the segment is full.
+	 */
+	private static final boolean write(final Segment segment, final String address, final String attribute, final CCUEvent.ValueType type, final boolean booleanValue, final int intValue, final double doubleValue, final String stringValue) {
+		final MappedByteBuffer buffer = segment.buffer;
+		final int length = recordLength(address, attribute, type, stringValue);
+
+		if (segment.position + LENGTH_SIZE + length > buffer.capacity()) {
+			return false;
+		}
+
+		int offset = segment.position + LENGTH_SIZE;
+
+		buffer.put(offset++, (byte)type.ordinal());
+		offset = putName(buffer, offset, address);
+		offset = putName(buffer, offset, attribute);
+
+		switch (type) {
+			case BOOLEAN:
+				buffer.put(offset, booleanValue ? (byte)1 : (byte)0);
+				break;
+
+			case INTEGER:
+				buffer.putInt(offset, intValue);
+				break;
+
+			case DOUBLE:
+				buffer.putDouble(offset, doubleValue);
+				break;
+
+			default:
+				buffer.putShort(offset, (short)stringValue.length());
+				offset += 2;
+
+				for (int i = 0; i < stringValue.length(); i++, offset += 2) {
+					buffer.putChar(offset, stringValue.charAt(i));
+				}
+
+				break;
+		}
+
+		final int next = segment.position + LENGTH_SIZE + length;
+
+		if (next + LENGTH_SIZE <= buffer.capacity()) {
+			buffer.putShort(next, (short)0);
+		}
+
+		buffer.putShort(segment.position, (short)length);
+		segment.position = next;
+
+		return true;
+	}
+
+	/**
+	 * Writes an address or attribute.
+	 *
+	 * @param 		buffer		The mapping.
+	 * @param 		offset		Where to write it.
+	 * @param 		name		The address or attribute.
+	 *
+	 * @return		The offset after the name.
+	 */
+	private static final int putName(final MappedByteBuffer buffer, final int offset, final String name) {
+		buffer.put(offset, (byte)name.length());
+
+		for (int i = 0; i < name.length(); i++) {
+			buffer.put(offset + 1 + i, (byte)name.charAt(i));
+		}
+
+		return offset + 1 + name.length();
+	}
+
+	/**
+	 * Returns the length of a record, without its own length.
+	 *
+	 * @param 		address			The address.
+	 * @param 		attribute		The attribute.
+	 * @param 		type			The type of the value.
+	 * @param 		stringValue		The value, if it is a string.
+	 *
+	 * @return		The length, larger than {@link #MAX_RECORD_LENGTH} if the record cannot be journaled.
+	 */
+	private static final int recordLength(final String address, final String attribute, final CCUEvent.ValueType type, final String stringValue) {
+		if (address.length() > MAX_NAME_LENGTH || attribute.length() > MAX_NAME_LENGTH) {
+			return Integer.MAX_VALUE;
+		}
+
+		final int length = 1 + 1 + address.length() + 1 + attribute.length();
+
+		switch (type) {
+			case BOOLEAN:
+				return length + 1;
+
+			case INTEGER:
+				return length + 4;
+
+			case DOUBLE:
+				return length + 8;
+
+			default:
+				return length + 2 + 2 * stringValue.length();
+		}
+	}
+
+	/**
+	 * Adds the last value of every datapoint in the segment to the given values, replacing the older ones.
+	 *
+	 * @param 	segment			The segment.
+	 * @param 	names			Interns the names.
+	 * @param 	nameBytes		Receives the bytes of a name.
+	 * @param 	values			The values, per address and attribute.
+	 */
+	private final void readLastValues(final Segment segment, final InternTable names, final byte[] nameBytes, final Map<String, Map<String, Object>> values) {
+		final Map<String, Map<String, int[]>> lastRecords = new LinkedHashMap<>();
+
+		this.scan(segment, names, nameBytes, lastRecords);
+
+		lastRecords.forEach((address, attributes) -> {
+			final Map<String, Object> addressValues = values.computeIfAbsent(address, key -> new LinkedHashMap<>());
+
+			attributes.forEach((attribute, last) -> addressValues.put(attribute, getValue(segment.buffer, last[0], TYPES[last[1]])));
+		});
+	}
+
+	/**
+	 * Reads the records of a segment, up to the first one that is incomplete or damaged. Only the names are decoded, values
+	 * are decoded once the last record of every datapoint is known.
+	 *
+	 * @param 		segment			The segment.
+	 * @param 		names			Interns the names.
+	 * @param 		nameBytes		Receives the bytes of a name.
+	 * @param 		lastRecords		Receives the offset and type of the last value of every datapoint, <code>null</code> to only find the end.
+	 *
+	 * @return		The end of the last valid record.
+	 */
+	private final int scan(final Segment segment, final InternTable names, final byte[] nameBytes, final Map<String, Map<String, int[]>> lastRecords) {
+		final ByteBuffer records = segment.buffer.duplicate();
+		int offset = HEADER_SIZE;
+
+		while (offset + LENGTH_SIZE <= records.capacity()) {
+			final int length = records.getShort(offset) & MAX_RECORD_LENGTH;
+
+			if (length == 0 || offset + LENGTH_SIZE + length > records.capacity()) {
+				break;
+			}
+
+			try {
+				records.limit(offset + LENGTH_SIZE + length).position(offset + LENGTH_SIZE);
+
+				final int type = records.get();
+				final String address = getName(records, names, nameBytes);
+				final String attribute = getName(records, names, nameBytes);
+				final int valueOffset = records.position();
+
+				skipValue(records, TYPES[type]);
+
+				if (records.hasRemaining()) {
+					throw new IllegalArgumentException("Record longer than its value.");
+				}
+
+				if (lastRecords != null) {
+					final Map<String, int[]> attributes = lastRecords.computeIfAbsent(address, key -> new LinkedHashMap<>());
+					final int[] last = attributes.get(attribute);
+
+					if (last != null) {
+						last[0] = valueOffset;
+						last[1] = type;
+					} else {
+						attributes.put(attribute, new int[] { valueOffset, type });
+					}
+				}
+			} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+				if (logger.isLoggable(Level.WARNING)) {
+					logger.log(Level.WARNING, "Journal [" + segment.path + "] : damaged record at [" + offset + "], ignoring the rest.");
+				}
+
+				break;
+			} finally {
+				records.limit(records.capacity());
+			}
+
+			offset += LENGTH_SIZE + length;
+		}
+
+		return offset;
+	}
+
+	/**
+	 * Reads an address or attribute.
+	 *
+	 * @param 		records			The records, positioned on the name.
+	 * @param 		names			Interns the names.
+	 * @param 		nameBytes		Receives the bytes of the name.
+	 *
+	 * @return		The name.
+	 */
+	private static final String getName(final ByteBuffer records, final InternTable names, final byte[] nameBytes) {
+		final int length = records.get() & MAX_NAME_LENGTH;
+
+		records.get(nameBytes, 0, length);
+
+		return names.intern(nameBytes, 0, length);
+	}
+
+	/**
+	 * Skips a value.
+	 *
+	 * @param 	records		The records, positioned on the value.
+	 * @param 	type		The type of the value.
+	 */
+	private static final void skipValue(final ByteBuffer records, final CCUEvent.ValueType type) {
+		switch (type) {
+			case BOOLEAN:
+				records.position(records.position() + 1);
+				break;
+
+			case INTEGER:
+				records.position(records.position() + 4);
+				break;
+
+			case DOUBLE:
+				records.position(records.position() + 8);
+				break;
+
+			default:
+				final int length = records.getShort() & MAX_RECORD_LENGTH;
+
+				records.position(records.position() + 2 * length);
+				break;
+		}
+	}
+
+	/**
+	 * Reads a value.
+	 *
+	 * @param 		buffer		The mapping.
+	 * @param 		offset		The offset of the value.
+	 * @param 		type		The type of the value.
+	 *
+	 * @return		The value.
+	 */
+	private static final Object getValue(final MappedByteBuffer buffer, final int offset, final CCUEvent.ValueType type) {
+		switch (type) {
+			case BOOLEAN:
+				return buffer.get(offset) != 0;
+
+			case INTEGER:
+				return buffer.getInt(offset);
+
+			case DOUBLE:
+				return buffer.getDouble(offset);
+
+			default:
+				final char[] chars = new char[buffer.getShort(offset) & MAX_RECORD_LENGTH];
+
+				for (int i = 0; i < chars.length; i++) {
+					chars[i] = buffer.getChar(offset + 2 + 2 * i);
+				}
+
+				return new String(chars);
+		}
+	}
+
+	/**
+	 * Closes the channel of a segment, logging the error if it cannot be closed.
+	 *
+	 * @param 	segment		The segment.
+	 */
+	private final void closeQuietly(final Segment segment) {
+		try {
+			segment.channel.close();
+		} catch (IOException e) {
+			if (logger.isLoggable(Level.WARNING)) {
+				logger.log(Level.WARNING, "Journal [" + segment.path + "] : could not close the segment : [" + e.getMessage() + "]", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Pool of {@link CCUEvent}s, so decoding and dispatching an event does not allocate one. The pool is bounded :
+ * when it is empty a new event is created, when it is full a released event is left to the garbage collector.
+ *
+ * The pool also holds the table the addresses and attributes of the events are interned in.
+ *
+ * @author alex
+ */
+final class EventPool {
+
+	/** The default number of pooled events. */
+	static final int DEFAULT_CAPACITY = 1024;
+
+	/** The default size of the intern table. */
+	static final int DEFAULT_STRINGS = 4096;
+
+	/** The free events. */
+	private final ArrayBlockingQueue<CCUEvent> free;
+
+	/** The handlers the events are dispatched to. */
+	private final EventHandlerRegistry handlers;
+
+	/** The interned addresses and attributes. */
+	private final InternTable strings;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	handlers		The handlers the events are dispatched to.
+	 */
+	EventPool(final EventHandlerRegistry handlers) {
+		this(DEFAULT_CAPACITY, DEFAULT_STRINGS, handlers);
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	capacity		The maximum number of pooled events.
+	 * @param 	strings			The size of the intern table.
+	 * @param 	handlers		The handlers the events are dispatched to.
+	 */
+	EventPool(final int capacity, final int strings, final EventHandlerRegistry handlers) {
+		this.free = new ArrayBlockingQueue<>(capacity);
+		this.strings = new InternTable(strings);
+		this.handlers = Objects.requireNonNull(handlers);
+	}
+
+	/**
+	 * Takes an event from the pool.
+	 *
+	 * @return	The event.
+	 */
+	final CCUEvent acquire() {
+		final CCUEvent event = this.free.poll();
+
+		return event != null ? event : new CCUEvent(this);
+	}
+
+	/**
+	 * Returns an event to the pool.
+	 *
+	 * @param 	event		The event.
+	 */
+	final void release(final CCUEvent event) {
+		event.clear();
+
+		this.free.offer(event);
+	}
+
+	/**
+	 * Returns the number of free events in the pool.
+	 *
+	 * @return	The number of free events.
+	 */
+	final int getFreeEvents() {
+		return this.free.size();
+	}
+
+	/**
+	 * Returns the handlers the events are dispatched to.
+	 *
+	 * @return	The handlers.
+	 */
+	final EventHandlerRegistry getHandlers() {
+		return this.handlers;
+	}
+
+	/**
+	 * Returns the table the addresses and attributes are interned in.
+	 *
+	 * @return	The intern table.
+	 */
+	final InternTable getStrings() {
+		return this.strings;
+	}
+}
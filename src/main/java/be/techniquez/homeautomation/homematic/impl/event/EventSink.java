@@ -0,0 +1,34 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+/**
+ * Receives the events decoded by a {@link CallbackServer}, which takes the events it fills in from the sink.
+ *
+ * @author alex
+ */
+interface EventSink {
+
+	/**
+	 * Returns an event to decode into. Events that end up not being passed to {@link #eventReceived(CCUEvent)}
+	 * must be released.
+	 *
+	 * @return	The event.
+	 */
+	CCUEvent acquireEvent();
+
+	/**
+	 * Indicates whether the event is wanted, once its interface ID, address and attribute are decoded. The decoders
+	 * skip the value of events that are not, and release them.
+	 *
+	 * @param 		event			The event, without its value.
+	 *
+	 * @return		<code>true</code> if the event should be decoded and passed on.
+	 */
+	boolean isInterested(final CCUEvent event);
+
+	/**
+	 * Called when an event was decoded. The sink takes ownership of the event.
+	 *
+	 * @param 	event		The event.
+	 */
+	void eventReceived(final CCUEvent event);
+}
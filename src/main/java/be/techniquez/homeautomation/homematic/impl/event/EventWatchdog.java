@@ -0,0 +1,191 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Detects that the CCU stopped sending events, as happens when it reboots or restarts an interface process : the
+ * registration done by <code>init</code> is lost without notice. The CCU is pinged when no callback was received for a
+ * while, it answers with a <code>PONG</code> event. When nothing was received for longer than the timeout, the callback is
+ * registered again, retrying with an exponential backoff, and the states are resynchronized once it succeeds.
+ *
+ * @author alex
+ */
+final class EventWatchdog {
+
+	/** Logger instance. */
+	private static final Logger logger = Logger.getLogger(EventWatchdog.class.getName());
+
+	/** The longest wait between two attempts to register again, as a number of timeouts. */
+	private static final int MAX_BACKOFF_TIMEOUTS = 8;
+
+	/**
+	 * What the watchdog watches.
+	 *
+	 * @author alex
+	 */
+	interface Target {
+
+		/**
+		 * Returns when the last callback was received.
+		 *
+		 * @return	The time of the last callback, as returned by {@link System#nanoTime()}.
+		 */
+		long getLastCallback();
+
+		/**
+		 * Pings the CCU, which answers with a <code>PONG</code> event.
+		 *
+		 * @throws 	IOException		If an IO error occurs.
+		 */
+		void ping() throws IOException;
+
+		/**
+		 * Registers the callback with the CCU again.
+		 *
+		 * @throws 	IOException		If an IO error occurs.
+		 */
+		void reinit() throws IOException;
+
+		/**
+		 * Resynchronizes the states, the events of the lapse were lost.
+		 */
+		void resync();
+	}
+
+	/** The target. */
+	private final Target target;
+
+	/** How long without callbacks before pinging, in nanoseconds. */
+	private final long pingInterval;
+
+	/** How long without callbacks before registering again, in nanoseconds. */
+	private final long timeout;
+
+	/** Runs the checks. */
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	/** The current wait between two attempts to register again, in nanoseconds. */
+	private long backoff;
+
+	/** When the next attempt to register again can be made, as returned by {@link System#nanoTime()}. */
+	private long nextAttempt;
+
+	/** When the callback was last registered, counts as a callback as the CCU answered. */
+	private long lastReinit;
+
+	/** The number of times the callback was registered again. */
+	private final AtomicLong reinits = new AtomicLong();
+
+	/**
+	 * Create a new instance, and starts checking.
+	 *
+	 * @param 	target				The target.
+	 * @param 	pingInterval		How long without callbacks before pinging, in milliseconds.
+	 * @param 	timeout				How long without callbacks before registering again, in milliseconds.
+	 */
+	EventWatchdog(final Target target, final long pingInterval, final long timeout) {
+		if (pingInterval <= 0 || timeout <= pingInterval) {
+			throw new IllegalArgumentException("The ping interval should be positive and shorter than the timeout, you specified [" + pingInterval + "], [" + timeout + "]");
+		}
+
+		this.target = Objects.requireNonNull(target);
+		this.pingInterval = TimeUnit.MILLISECONDS.toNanos(pingInterval);
+		this.timeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+		this.backoff = this.pingInterval;
+		this.lastReinit = System.nanoTime();
+		this.nextAttempt = this.lastReinit;
+		this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+			final Thread thread = new Thread(runnable, "ccu-event-watchdog");
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		final long period = Math.max(1, pingInterval / 2);
+
+		this.scheduler.scheduleWithFixedDelay(this::check, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops checking.
+	 */
+	final void shutdown() {
+		this.scheduler.shutdownNow();
+	}
+
+	/**
+	 * Returns the number of times the callback was registered again.
+	 *
+	 * @return	The number of registrations.
+	 */
+	final long getReinits() {
+		return this.reinits.get();
+	}
+
+	/**
+	 * Checks the time since the last callback, pinging or registering again if needed.
+	 */
+	private final void check() {
+		final long now = System.nanoTime();
+		final long lastCallback = this.target.getLastCallback();
+		final long idle = now - (lastCallback - this.lastReinit > 0 ? lastCallback : this.lastReinit);
+
+		try {
+			if (idle >= this.timeout) {
+				if (now - this.nextAttempt >= 0) {
+					this.reinit(now, idle);
+				}
+			} else if (idle >= this.pingInterval) {
+				this.target.ping();
+			}
+		} catch (IOException | RuntimeException e) {
+			if (logger.isLoggable(Level.WARNING)) {
+				logger.log(Level.WARNING, "CCU event watchdog : ping failed : [" + e.getMessage() + "]", e);
+			}
+		}
+	}
+
+	/**
+	 * Registers the callback again, and resynchronizes the states if that worked.
+	 *
+	 * @param 	now			The current time, in nanoseconds.
+	 * @param 	idle		The time since the last callback, in nanoseconds.
+	 */
+	private final void reinit(final long now, final long idle) {
+		if (logger.isLoggable(Level.WARNING)) {
+			logger.log(Level.WARNING, "CCU event watchdog : no callbacks for [" + TimeUnit.NANOSECONDS.toMillis(idle) + "] ms, registering again.");
+		}
+
+		try {
+			this.target.reinit();
+		} catch (IOException | RuntimeException e) {
+			this.nextAttempt = now + this.backoff;
+			this.backoff = Math.min(this.backoff * 2, this.timeout * MAX_BACKOFF_TIMEOUTS);
+
+			if (logger.isLoggable(Level.WARNING)) {
+				logger.log(Level.WARNING, "CCU event watchdog : registering failed, retrying in [" + TimeUnit.NANOSECONDS.toMillis(this.nextAttempt - now) + "] ms : [" + e.getMessage() + "]", e);
+			}
+
+			return;
+		}
+
+		this.backoff = this.pingInterval;
+		this.lastReinit = System.nanoTime();
+		this.nextAttempt = this.lastReinit;
+		this.reinits.incrementAndGet();
+
+		try {
+			this.target.resync();
+		} catch (RuntimeException e) {
+			if (logger.isLoggable(Level.WARNING)) {
+				logger.log(Level.WARNING, "CCU event watchdog : resynchronizing failed : [" + e.getMessage() + "]", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+/**
+ * Bounded table of interned strings, looked up by their encoded form so a string that was seen before is returned
+ * without being decoded again. The table is direct mapped : a new string replaces the one in its slot, which keeps
+ * the memory bounded however many different strings are seen.
+ *
+ * Slots are read and written without synchronization, which is safe as strings are immutable : a reader sees
+ * either a complete string or an older one, and checks it before using it.
+ *
+ * @author alex
+ */
+final class InternTable {
+
+	/** The slots. */
+	private final String[] slots;
+
+	/** The mask for the slot index. */
+	private final int mask;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	size		The number of slots, rounded up to a power of two.
+	 */
+	InternTable(final int size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("Size should be positive, you specified [" + size + "]");
+		}
+
+		final int slots = Integer.highestOneBit(size - 1) << 1;
+
+		this.slots = new String[Math.max(slots, 1)];
+		this.mask = this.slots.length - 1;
+	}
+
+	/**
+	 * Returns the string for the given ISO-8859-1 encoded bytes.
+	 *
+	 * @param 		bytes		The bytes.
+	 * @param 		offset		The offset of the string.
+	 * @param 		length		The length of the string.
+	 *
+	 * @return		The string.
+	 */
+	final String intern(final byte[] bytes, final int offset, final int length) {
+		int hash = 0;
+
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + (bytes[i] & 0xFF);
+		}
+
+		final int slot = spread(hash) & this.mask;
+		final String existing = this.slots[slot];
+
+		if (existing != null && existing.length() == length && existing.hashCode() == hash) {
+			boolean equal = true;
+
+			for (int i = 0; i < length && equal; i++) {
+				equal = existing.charAt(i) == (char)(bytes[offset + i] & 0xFF);
+			}
+
+			if (equal) {
+				return existing;
+			}
+		}
+
+		final char[] chars = new char[length];
+
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char)(bytes[offset + i] & 0xFF);
+		}
+
+		final String string = new String(chars);
+		this.slots[slot] = string;
+
+		return string;
+	}
+
+	/**
+	 * Returns the string for the given characters.
+	 *
+	 * @param 		chars		The characters.
+	 * @param 		start		The start of the string.
+	 * @param 		length		The length of the string.
+	 *
+	 * @return		The string.
+	 */
+	final String intern(final char[] chars, final int start, final int length) {
+		int hash = 0;
+
+		for (int i = start; i < start + length; i++) {
+			hash = 31 * hash + chars[i];
+		}
+
+		final int slot = spread(hash) & this.mask;
+		final String existing = this.slots[slot];
+
+		if (existing != null && existing.length() == length && existing.hashCode() == hash) {
+			boolean equal = true;
+
+			for (int i = 0; i < length && equal; i++) {
+				equal = existing.charAt(i) == chars[start + i];
+			}
+
+			if (equal) {
+				return existing;
+			}
+		}
+
+		final String string = new String(chars, start, length);
+		this.slots[slot] = string;
+
+		return string;
+	}
+
+	/**
+	 * Spreads the hash, so strings that only differ in their last characters end up in different slots.
+	 *
+	 * @param 		hash		The hash.
+	 *
+	 * @return		The spread hash.
+	 */
+	private static final int spread(final int hash) {
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,569 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import be.techniquez.homeautomation.homematic.impl.event.XmlRpcCodec.MethodCall;
+
+/**
+ * {@link CallbackServer} using non blocking IO. All connections are served by a single thread : requests are
+ * read into a {@link ByteBuffer} per connection, decoded straight from that buffer once complete and answered
+ * on the same connection, which is kept open unless the client asks otherwise.
+ *
+ * Only what the CCU uses is supported : <code>POST</code> requests with a <code>Content-Length</code>.
+ *
+ * @author alex
+ */
+final class NioCallbackServer implements CallbackServer {
+
+	/** Logger. */
+	private static final Logger logger = Logger.getLogger(NioCallbackServer.class.getName());
+
+	/** The initial size of the buffer of a connection. */
+	private static final int INITIAL_BUFFER_SIZE = 8192;
+
+	/** The maximum size of the request headers. */
+	private static final int MAX_HEADER_SIZE = 16 * 1024;
+
+	/** The maximum size of a request. */
+	private static final int MAX_REQUEST_SIZE = 16 * 1024 * 1024;
+
+	/** The fault code used when a call fails. */
+	private static final int FAULT_CODE = -1;
+
+	/** The response to an event. */
+	private static final byte[] EVENT_RESPONSE = XmlRpcCodec.encodeResponse("");
+
+	/** The end of the headers. */
+	private static final byte[] HEADER_END = { '\r', '\n', '\r', '\n' };
+
+	/** The address to listen on, <code>null</code> for all addresses. */
+	private final InetAddress bindAddress;
+
+	/** The port. */
+	private final int port;
+
+	/** The selector. */
+	private Selector selector;
+
+	/** The server channel. */
+	private ServerSocketChannel serverChannel;
+
+	/** The selector thread. */
+	private Thread selectorThread;
+
+	/** The handler of the calls. */
+	private volatile CallbackHandler handler;
+
+	/** Decodes the events, only used by the selector thread. */
+	private volatile XmlRpcEventDecoder eventDecoder;
+
+	/** Indicates whether we are running. */
+	private volatile boolean running;
+
+	/**
+	 * The state of a connection.
+	 *
+	 * @author alex
+	 */
+	private static final class Connection {
+
+		/** The received bytes that have not been handled yet. */
+		private ByteBuffer input = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+		/** The response being written, <code>null</code> if none. */
+		private ByteBuffer output;
+
+		/** Indicates the connection should be closed once the response has been written. */
+		private boolean closeAfterResponse;
+	}
+
+	/**
+	 * A parsed request head.
+	 *
+	 * @author alex
+	 */
+	private static final class RequestHead {
+
+		/** The length of the head, including the empty line. */
+		private final int length;
+
+		/** The content length, -1 if not specified. */
+		private final int contentLength;
+
+		/** Indicates whether the connection should be kept open. */
+		private final boolean keepAlive;
+
+		/**
+		 * Create a new instance.
+		 *
+		 * @param 	length				The length of the head.
+		 * @param 	contentLength		The content length.
+		 * @param 	keepAlive			Keep the connection open.
+		 */
+		private RequestHead(final int length, final int contentLength, final boolean keepAlive) {
+			this.length = length;
+			this.contentLength = contentLength;
+			this.keepAlive = keepAlive;
+		}
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	port		The port to listen on, 0 to use any free port.
+	 */
+	NioCallbackServer(final int port) {
+		this(null, port);
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	bindAddress		The address to listen on, <code>null</code> for all addresses.
+	 * @param 	port			The port to listen on, 0 to use any free port.
+	 */
+	NioCallbackServer(final InetAddress bindAddress, final int port) {
+		this.bindAddress = bindAddress;
+		this.port = port;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final synchronized void start(final CallbackHandler handler, final EventSink sink) throws IOException {
+		if (this.running) {
+			throw new IllegalStateException("Callback server is already running.");
+		}
+
+		this.handler = Objects.requireNonNull(handler);
+		this.eventDecoder = new XmlRpcEventDecoder(Objects.requireNonNull(sink));
+		this.selector = Selector.open();
+
+		try {
+			this.serverChannel = ServerSocketChannel.open();
+			this.serverChannel.bind(new InetSocketAddress(this.bindAddress, this.port));
+			this.serverChannel.configureBlocking(false);
+			this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			this.closeQuietly();
+
+			throw e;
+		}
+
+		this.running = true;
+
+		this.selectorThread = new Thread(this::run, "ccu-callback-server");
+		this.selectorThread.setDaemon(true);
+		this.selectorThread.start();
+
+		if (logger.isLoggable(Level.INFO)) {
+			logger.log(Level.INFO, "CCU Eventing NIO server : listening on port [" + this.getPort() + "]");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final synchronized void stop() {
+		if (this.running) {
+			this.running = false;
+			this.selector.wakeup();
+
+			try {
+				this.selectorThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			this.closeQuietly();
+			this.selectorThread = null;
+
+			if (logger.isLoggable(Level.INFO)) {
+				logger.log(Level.INFO, "CCU Eventing NIO server : stopped.");
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final int getPort() {
+		final ServerSocketChannel channel = this.serverChannel;
+
+		return channel != null && channel.isOpen() ? channel.socket().getLocalPort() : this.port;
+	}
+
+	/**
+	 * Closes the selector, the server channel and all connections.
+	 */
+	private final void closeQuietly() {
+		if (this.selector != null) {
+			try {
+				for (final SelectionKey key : this.selector.keys()) {
+					key.channel().close();
+				}
+
+				this.selector.close();
+			} catch (IOException | ClosedSelectorException e) {
+				if (logger.isLoggable(Level.FINE)) {
+					logger.log(Level.FINE, "Error closing the selector : [" + e.getMessage() + "]", e);
+				}
+			}
+		}
+
+		if (this.serverChannel != null) {
+			try {
+				this.serverChannel.close();
+			} catch (IOException e) {
+				if (logger.isLoggable(Level.FINE)) {
+					logger.log(Level.FINE, "Error closing the server channel : [" + e.getMessage() + "]", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The selector loop.
+	 */
+	private final void run() {
+		while (this.running) {
+			try {
+				this.selector.select();
+
+				final Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+
+				while (keys.hasNext()) {
+					final SelectionKey key = keys.next();
+					keys.remove();
+
+					try {
+						if (!key.isValid()) {
+							continue;
+						}
+
+						if (key.isAcceptable()) {
+							this.accept();
+						} else {
+							if (key.isReadable()) {
+								this.read(key);
+							}
+
+							if (key.isValid() && key.isWritable()) {
+								this.write(key);
+							}
+						}
+					} catch (IOException e) {
+						if (logger.isLoggable(Level.FINE)) {
+							logger.log(Level.FINE, "Closing callback connection : [" + e.getMessage() + "]", e);
+						}
+
+						close(key);
+					}
+				}
+			} catch (IOException e) {
+				if (logger.isLoggable(Level.WARNING)) {
+					logger.log(Level.WARNING, "Error in the callback server : [" + e.getMessage() + "]", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Accepts the pending connections.
+	 *
+	 * @throws 	IOException		If an IO error occurs.
+	 */
+	private final void accept() throws IOException {
+		SocketChannel channel;
+
+		while ((channel = this.serverChannel.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			channel.register(this.selector, SelectionKey.OP_READ, new Connection());
+		}
+	}
+
+	/**
+	 * Reads from the connection and handles the requests that are complete.
+	 *
+	 * @param 	key				The key of the connection.
+	 *
+	 * @throws 	IOException		If an IO error occurs.
+	 */
+	private final void read(final SelectionKey key) throws IOException {
+		final Connection connection = (Connection)key.attachment();
+
+		if (!connection.input.hasRemaining()) {
+			connection.input = grow(connection.input, connection.input.capacity() * 2);
+		}
+
+		if (((SocketChannel)key.channel()).read(connection.input) < 0) {
+			close(key);
+		} else {
+			this.handleRequest(key, connection);
+		}
+	}
+
+	/**
+	 * Writes the pending response, and handles the next request once done.
+	 *
+	 * @param 	key				The key of the connection.
+	 *
+	 * @throws 	IOException		If an IO error occurs.
+	 */
+	private final void write(final SelectionKey key) throws IOException {
+		final Connection connection = (Connection)key.attachment();
+
+		((SocketChannel)key.channel()).write(connection.output);
+
+		if (!connection.output.hasRemaining()) {
+			connection.output = null;
+
+			if (connection.closeAfterResponse) {
+				close(key);
+			} else {
+				key.interestOps(SelectionKey.OP_READ);
+
+				this.handleRequest(key, connection);
+			}
+		}
+	}
+
+	/**
+	 * Handles the request in the input buffer if it is complete. Requests are answered one at a time : a pipelined
+	 * request is handled once the response to the previous one has been written.
+	 *
+	 * @param 	key				The key of the connection.
+	 * @param 	connection		The connection.
+	 *
+	 * @throws 	IOException		If an IO error occurs.
+	 */
+	private final void handleRequest(final SelectionKey key, final Connection connection) throws IOException {
+		if (connection.output != null) {
+			return;
+		}
+
+		final ByteBuffer input = connection.input;
+		final int headerEnd = indexOf(input.array(), input.position(), HEADER_END);
+
+		if (headerEnd < 0) {
+			if (input.position() >= MAX_HEADER_SIZE) {
+				this.respond(key, connection, "431 Request Header Fields Too Large", null, false);
+			}
+
+			return;
+		}
+
+		final RequestHead head = parseHead(input.array(), headerEnd + HEADER_END.length);
+
+		if (head.contentLength < 0) {
+			this.respond(key, connection, "411 Length Required", null, false);
+		} else if (head.contentLength > MAX_REQUEST_SIZE - head.length) {
+			this.respond(key, connection, "413 Payload Too Large", null, false);
+		} else {
+			final int requestLength = head.length + head.contentLength;
+
+			if (input.position() < requestLength) {
+				if (input.capacity() < requestLength) {
+					connection.input = grow(input, requestLength);
+				}
+
+				return;
+			}
+
+			final byte[] response = this.invoke(input.array(), head.length, head.contentLength);
+
+			input.flip();
+			input.position(requestLength);
+			input.compact();
+
+			this.respond(key, connection, "200 OK", response, head.keepAlive);
+		}
+	}
+
+	/**
+	 * Decodes the call in the given bytes. Events and multicalls are decoded straight into the event sink, other
+	 * calls are passed on to the handler.
+	 *
+	 * @param 		bytes		The bytes.
+	 * @param 		offset		The offset of the call.
+	 * @param 		length		The length of the call.
+	 *
+	 * @return		The encoded response.
+	 */
+	private final byte[] invoke(final byte[] bytes, final int offset, final int length) {
+		try {
+			final XmlRpcEventDecoder decoder = this.eventDecoder;
+
+			if (decoder.decode(bytes, offset, length)) {
+				return decoder.isMulticall() ? XmlRpcCodec.encodeResponse(Collections.nCopies(decoder.getCalls(), Collections.singletonList(""))) : EVENT_RESPONSE;
+			}
+
+			final MethodCall call = XmlRpcCodec.decodeCall(new ByteArrayInputStream(bytes, offset, length));
+
+			return XmlRpcCodec.encodeResponse(this.handler.call(call.getMethodName(), call.getParameters()));
+		} catch (Exception e) {
+			if (logger.isLoggable(Level.WARNING)) {
+				logger.log(Level.WARNING, "Error handling callback : [" + e.getMessage() + "]", e);
+			}
+
+			return XmlRpcCodec.encodeFault(FAULT_CODE, e.getMessage());
+		}
+	}
+
+	/**
+	 * Queues a response on the connection.
+	 *
+	 * @param 	key				The key of the connection.
+	 * @param 	connection		The connection.
+	 * @param 	status			The HTTP status.
+	 * @param 	body			The body, <code>null</code> if none.
+	 * @param 	keepAlive		Keep the connection open after the response.
+	 *
+	 * @throws 	IOException		If an IO error occurs.
+	 */
+	private final void respond(final SelectionKey key, final Connection connection, final String status, final byte[] body, final boolean keepAlive) throws IOException {
+		final int contentLength = body != null ? body.length : 0;
+		final byte[] head = new StringBuilder("HTTP/1.1 ").append(status)
+														  .append("\r\nServer: homematic\r\nContent-Type: text/xml\r\nContent-Length: ")
+														  .append(contentLength)
+														  .append("\r\nConnection: ")
+														  .append(keepAlive ? "keep-alive" : "close")
+														  .append("\r\n\r\n")
+														  .toString()
+														  .getBytes(StandardCharsets.US_ASCII);
+
+		final ByteBuffer output = ByteBuffer.allocate(head.length + contentLength);
+		output.put(head);
+
+		if (body != null) {
+			output.put(body);
+		}
+
+		output.flip();
+
+		connection.output = output;
+		connection.closeAfterResponse = !keepAlive;
+
+		key.interestOps(SelectionKey.OP_WRITE);
+
+		this.write(key);
+	}
+
+	/**
+	 * Parses the request head.
+	 *
+	 * @param 		bytes		The bytes.
+	 * @param 		length		The length of the head.
+	 *
+	 * @return		The parsed head.
+	 */
+	private static final RequestHead parseHead(final byte[] bytes, final int length) {
+		final String[] lines = new String(bytes, 0, length, StandardCharsets.ISO_8859_1).split("\r\n");
+
+		boolean keepAlive = !lines[0].endsWith("HTTP/1.0");
+		int contentLength = -1;
+
+		for (int i = 1; i < lines.length; i++) {
+			final int separator = lines[i].indexOf(':');
+
+			if (separator > 0) {
+				final String name = lines[i].substring(0, separator).trim().toLowerCase(Locale.ROOT);
+				final String value = lines[i].substring(separator + 1).trim();
+
+				if (name.equals("content-length")) {
+					try {
+						contentLength = Integer.parseInt(value);
+					} catch (NumberFormatException e) {
+						contentLength = -1;
+					}
+				} else if (name.equals("connection")) {
+					if (value.equalsIgnoreCase("close")) {
+						keepAlive = false;
+					} else if (value.equalsIgnoreCase("keep-alive")) {
+						keepAlive = true;
+					}
+				}
+			}
+		}
+
+		return new RequestHead(length, contentLength, keepAlive);
+	}
+
+	/**
+	 * Returns the index of the given pattern in the first bytes of the array.
+	 *
+	 * @param 		bytes		The bytes.
+	 * @param 		limit		The number of bytes to look at.
+	 * @param 		pattern		The pattern.
+	 *
+	 * @return		The index, -1 if not found.
+	 */
+	private static final int indexOf(final byte[] bytes, final int limit, final byte[] pattern) {
+		for (int i = 0; i <= limit - pattern.length; i++) {
+			int matched = 0;
+
+			while (matched < pattern.length && bytes[i + matched] == pattern[matched]) {
+				matched++;
+			}
+
+			if (matched == pattern.length) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns a larger copy of the given buffer.
+	 *
+	 * @param 		buffer			The buffer.
+	 * @param 		capacity		The new capacity.
+	 *
+	 * @return		The new buffer.
+	 */
+	private static final ByteBuffer grow(final ByteBuffer buffer, final int capacity) {
+		final ByteBuffer grown = ByteBuffer.allocate(Math.min(Math.max(capacity, buffer.capacity()), MAX_REQUEST_SIZE));
+		buffer.flip();
+		grown.put(buffer);
+
+		return grown;
+	}
+
+	/**
+	 * Closes the connection of the given key.
+	 *
+	 * @param 	key		The key.
+	 */
+	private static final void close(final SelectionKey key) {
+		key.cancel();
+
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			if (logger.isLoggable(Level.FINE)) {
+				logger.log(Level.FINE, "Error closing callback connection : [" + e.getMessage() + "]", e);
+			}
+		}
+	}
+}
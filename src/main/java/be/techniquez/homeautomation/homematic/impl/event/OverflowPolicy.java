@@ -0,0 +1,21 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+/**
+ * What happens to an event when the queue of its dispatch lane is full.
+ *
+ * @author alex
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * The callback server waits until the handlers have made room. No events are lost, but a slow handler holds up
+	 * the server, which stops serving every connection when it is the NIO server.
+	 */
+	BLOCK,
+
+	/** The oldest queued event of the same address is dropped, or the oldest event of the lane if there is none. */
+	DROP_OLDEST,
+
+	/** A queued event for the same datapoint is replaced by the new one, falling back to {@link #DROP_OLDEST}. The default. */
+	COALESCE
+}
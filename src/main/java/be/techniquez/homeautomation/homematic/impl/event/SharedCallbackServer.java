@@ -0,0 +1,286 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A callback server shared by the eventing of several CCUs, so a single process receives the events of all of them on
+ * one port. Every {@link CCUEventingImpl} using it registers with its own interface IDs, the calls and events are
+ * routed to it using the interface ID they carry.
+ *
+ * @author alex
+ */
+public final class SharedCallbackServer {
+
+	/** Logger. */
+	private static final Logger logger = Logger.getLogger(SharedCallbackServer.class.getName());
+
+	/** The multicall method. */
+	private static final String METHOD_MULTICALL = "system.multicall";
+
+	/** The method listing the devices we know. */
+	private static final String METHOD_LIST_DEVICES = "listDevices";
+
+	/** The parameters member of a multicall call. */
+	private static final String MEMBER_PARAMS = "params";
+
+	/** The address to listen on, <code>null</code> for all addresses. */
+	private final String bindAddress;
+
+	/** The port to listen on, 0 to use any free port. */
+	private final int port;
+
+	/** The host the CCUs reach the server on, <code>null</code> to use the bind address or the local host. */
+	private final String callbackHost;
+
+	/** The type of server. */
+	private final CallbackServerType type;
+
+	/** The eventing the calls are routed to, keyed by interface ID. */
+	private final ConcurrentMap<String, CCUEventingImpl> routes = new ConcurrentHashMap<>();
+
+	/** The pooled events, they are dispatched to the handlers of the eventing they are routed to. */
+	private final EventPool eventPool = new EventPool(new EventHandlerRegistry());
+
+	/** Routes the events decoded by the server. */
+	private final EventSink eventSink = new EventSink() {
+		@Override
+		public final CCUEvent acquireEvent() {
+			return eventPool.acquire();
+		}
+
+		@Override
+		public final boolean isInterested(final CCUEvent event) {
+			final CCUEventingImpl eventing = route(event.getInterfaceId());
+
+			return eventing != null && eventing.getEventSink().isInterested(event);
+		}
+
+		@Override
+		public final void eventReceived(final CCUEvent event) {
+			final CCUEventingImpl eventing = route(event.getInterfaceId());
+
+			if (eventing != null) {
+				eventing.getEventSink().eventReceived(event);
+			} else {
+				event.release();
+			}
+		}
+	};
+
+	/** The server, <code>null</code> while stopped. */
+	private CallbackServer server;
+
+	/** The URL the CCUs call back on, <code>null</code> while stopped. */
+	private volatile String callbackURL;
+
+	/**
+	 * Create a new XML-RPC server listening on all addresses.
+	 *
+	 * @param 	port		The port to listen on, 0 to use any free port.
+	 */
+	public SharedCallbackServer(final int port) {
+		this(null, port, null, CallbackServerType.XMLRPC);
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	bindAddress		The address to listen on, <code>null</code> for all addresses.
+	 * @param 	port			The port to listen on, 0 to use any free port.
+	 * @param 	callbackHost	The host the CCUs reach the server on, <code>null</code> to use the bind address or the local host.
+	 * @param 	type			The type of server, the interfaces of all CCUs must speak its protocol.
+	 */
+	public SharedCallbackServer(final String bindAddress, final int port, final String callbackHost, final CallbackServerType type) {
+		if (port < 0) {
+			throw new IllegalArgumentException("Port should not be negative, you specified [" + port + "]");
+		}
+
+		this.bindAddress = bindAddress;
+		this.port = port;
+		this.callbackHost = callbackHost;
+		this.type = Objects.requireNonNull(type);
+	}
+
+	/**
+	 * Starts the server, if not started yet.
+	 *
+	 * @throws 	IOException		If the server cannot be started.
+	 */
+	public final synchronized void start() throws IOException {
+		if (this.server == null) {
+			final InetAddress address = this.bindAddress != null ? InetAddress.getByName(this.bindAddress) : null;
+			final CallbackServer callbackServer = this.type.createServer(address, this.port);
+
+			callbackServer.start(this::call, this.eventSink);
+
+			final String host = this.callbackHost != null ? this.callbackHost
+														  : address != null && !address.isAnyLocalAddress() ? address.getHostAddress() : InetAddress.getLocalHost().getHostAddress();
+
+			this.server = callbackServer;
+			this.callbackURL = this.type.getProtocol().getCallbackURL(host, callbackServer.getPort());
+
+			if (logger.isLoggable(Level.INFO)) {
+				logger.log(Level.INFO, "Shared callback server : started, URL [" + this.callbackURL + "]");
+			}
+		}
+	}
+
+	/**
+	 * Stops the server. The eventing still attached no longer receives callbacks.
+	 */
+	public final synchronized void stop() {
+		if (this.server != null) {
+			this.server.stop();
+			this.server = null;
+			this.callbackURL = null;
+
+			if (logger.isLoggable(Level.INFO)) {
+				logger.log(Level.INFO, "Shared callback server : stopped.");
+			}
+		}
+	}
+
+	/**
+	 * Indicates whether the server is started.
+	 *
+	 * @return	<code>true</code> if it is.
+	 */
+	public final synchronized boolean isStarted() {
+		return this.server != null;
+	}
+
+	/**
+	 * Returns the port the server listens on.
+	 *
+	 * @return	The port, the one it was created with while stopped.
+	 */
+	public final synchronized int getPort() {
+		return this.server != null ? this.server.getPort() : this.port;
+	}
+
+	/**
+	 * Returns the URL the CCUs call back on.
+	 *
+	 * @return	The URL, <code>null</code> while stopped.
+	 */
+	public final String getCallbackURL() {
+		return this.callbackURL;
+	}
+
+	/**
+	 * Returns the type of server.
+	 *
+	 * @return	The type.
+	 */
+	final CallbackServerType getType() {
+		return this.type;
+	}
+
+	/**
+	 * Routes the calls carrying the interface IDs of the given eventing to it, starting the server if needed.
+	 *
+	 * @param 		eventing			The eventing.
+	 *
+	 * @throws 		IOException			If the server cannot be started.
+	 */
+	final synchronized void attach(final CCUEventingImpl eventing) throws IOException {
+		final List<String> added = new ArrayList<>();
+
+		for (final String interfaceId : eventing.getInterfaceIds()) {
+			final CCUEventingImpl previous = this.routes.putIfAbsent(interfaceId, eventing);
+
+			if (previous != null && previous != eventing) {
+				added.forEach(this.routes::remove);
+
+				throw new IllegalArgumentException("Interface ID [" + interfaceId + "] is already used by another CCU.");
+			}
+
+			added.add(interfaceId);
+		}
+
+		this.start();
+	}
+
+	/**
+	 * Stops routing calls to the given eventing.
+	 *
+	 * @param 	eventing		The eventing.
+	 */
+	final synchronized void detach(final CCUEventingImpl eventing) {
+		this.routes.values().removeIf(eventing::equals);
+	}
+
+	/**
+	 * Returns the eventing the given interface ID belongs to.
+	 *
+	 * @param 		interfaceId		The interface ID.
+	 *
+	 * @return		The eventing, <code>null</code> if unknown.
+	 */
+	private final CCUEventingImpl route(final String interfaceId) {
+		return interfaceId != null ? this.routes.get(interfaceId) : null;
+	}
+
+	/**
+	 * Routes a call the server did not decode itself, using the interface ID in its first parameter, or in the first
+	 * parameter of its first call for a multicall.
+	 *
+	 * @param 		method			The method.
+	 * @param 		parameters		The parameters.
+	 *
+	 * @return		The value returned to the CCU.
+	 */
+	private final Object call(final String method, final List<?> parameters) {
+		final CCUEventingImpl eventing = this.route(interfaceId(METHOD_MULTICALL.equals(method) ? firstCallParameters(parameters) : parameters));
+
+		if (eventing != null) {
+			return eventing.dispatchEvent(method, parameters);
+		}
+
+		if (logger.isLoggable(Level.FINE)) {
+			logger.log(Level.FINE, "Shared callback server : no CCU for call [" + method + "], parameters [" + parameters + "]");
+		}
+
+		return METHOD_LIST_DEVICES.equals(method) ? new Vector<>() : "";
+	}
+
+	/**
+	 * Returns the interface ID passed as the first parameter of a call.
+	 *
+	 * @param 		parameters		The parameters of the call.
+	 *
+	 * @return		The interface ID, <code>null</code> if none.
+	 */
+	private static final String interfaceId(final List<?> parameters) {
+		return parameters != null && !parameters.isEmpty() && parameters.get(0) instanceof String ? (String)parameters.get(0) : null;
+	}
+
+	/**
+	 * Returns the parameters of the first call of a multicall.
+	 *
+	 * @param 		parameters		The parameters of the multicall.
+	 *
+	 * @return		The parameters of the first call, <code>null</code> if none.
+	 */
+	private static final List<?> firstCallParameters(final List<?> parameters) {
+		if (parameters != null && !parameters.isEmpty() && parameters.get(0) instanceof List) {
+			final List<?> calls = (List<?>)parameters.get(0);
+
+			if (!calls.isEmpty() && calls.get(0) instanceof Map && ((Map<?, ?>)calls.get(0)).get(MEMBER_PARAMS) instanceof List) {
+				return (List<?>)((Map<?, ?>)calls.get(0)).get(MEMBER_PARAMS);
+			}
+		}
+
+		return null;
+	}
+}
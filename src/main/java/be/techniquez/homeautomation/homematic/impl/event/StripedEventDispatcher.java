@@ -0,0 +1,447 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs event handling off the XML-RPC server thread. Every address is mapped onto one of a fixed number of
+ * lanes, each lane being a single thread : events for the same address are handled in the order they were
+ * received, events for different addresses can be handled in parallel.
+ *
+ * Every lane queues its tasks in a fixed size ring, so queueing a task does not allocate. What happens when a lane
+ * is full depends on the {@link OverflowPolicy} : the caller waits for room, or queued events are dropped so a slow
+ * handler cannot hold up the callback server. The queued event to drop is chosen and removed under the lock of the
+ * lane : events are pooled, so an event the lane has taken may already carry another datapoint, and must never be
+ * looked at once it left the queue.
+ *
+ * @author alex
+ */
+final class StripedEventDispatcher {
+
+	/** Logger. */
+	private static final Logger logger = Logger.getLogger(StripedEventDispatcher.class.getName());
+
+	/** The default number of lanes. */
+	static final int DEFAULT_LANES = 4;
+
+	/** The default number of tasks a lane can queue. */
+	static final int DEFAULT_LANE_CAPACITY = 16384;
+
+	/** How long an idle lane waits before checking whether it was shut down, in milliseconds. */
+	private static final long IDLE_POLL = 500;
+
+	/** The lanes. */
+	private final Lane[] lanes;
+
+	/** What to do when a lane is full. */
+	private final OverflowPolicy overflowPolicy;
+
+	/** The number of events dropped because their lane was full. */
+	private final AtomicLong droppedEvents = new AtomicLong();
+
+	/** The number of events replaced by a later event for the same datapoint because their lane was full. */
+	private final AtomicLong coalescedEvents = new AtomicLong();
+
+	/**
+	 * A lane : a thread running the tasks in its queue, in order.
+	 *
+	 * @author alex
+	 */
+	private static final class Lane extends Thread {
+
+		/** The queued tasks, a ring starting at {@link #head}. */
+		private final Runnable[] tasks;
+
+		/** Guards the queue. */
+		private final ReentrantLock lock = new ReentrantLock();
+
+		/** Signalled when a task was queued. */
+		private final Condition notEmpty = this.lock.newCondition();
+
+		/** Signalled when a task was taken or removed. */
+		private final Condition notFull = this.lock.newCondition();
+
+		/** The index of the oldest task. */
+		private int head;
+
+		/** The number of queued tasks. */
+		private int count;
+
+		/** The highest number of tasks queued, only changed while holding the lock. */
+		private volatile int highWaterMark;
+
+		/** Indicates whether the lane was shut down. */
+		private volatile boolean shutdown;
+
+		/**
+		 * Create a new instance.
+		 *
+		 * @param 	name			The name of the thread.
+		 * @param 	capacity		The number of tasks the lane can queue.
+		 */
+		private Lane(final String name, final int capacity) {
+			super(name);
+
+			this.tasks = new Runnable[capacity];
+			this.setDaemon(true);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public final void run() {
+			while (!this.shutdown || !this.isEmpty()) {
+				try {
+					final Runnable task = this.poll(IDLE_POLL);
+
+					if (task != null) {
+						task.run();
+					}
+				} catch (InterruptedException e) {
+					return;
+				} catch (RuntimeException e) {
+					if (logger.isLoggable(Level.WARNING)) {
+						logger.log(Level.WARNING, "Error handling event : [" + e.getMessage() + "]", e);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Queues a task, waiting for room if the lane is full.
+		 *
+		 * @param 		task		The task.
+		 *
+		 * @throws 		InterruptedException		If interrupted while waiting.
+		 */
+		private final void put(final Runnable task) throws InterruptedException {
+			this.lock.lockInterruptibly();
+
+			try {
+				while (this.count == this.tasks.length) {
+					this.notFull.await();
+				}
+
+				this.enqueue(task);
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		/**
+		 * Queues a task, removing a queued event first if the lane is full. The event removed is the oldest one of the
+		 * given address and attribute if the attribute is given, else the oldest one of the address, else the oldest
+		 * task of the lane.
+		 *
+		 * @param 		task			The task.
+		 * @param 		address			The address of the task.
+		 * @param 		attribute		The attribute of the task, <code>null</code> to not replace events of the same datapoint.
+		 *
+		 * @return		The task removed, <code>null</code> if there was room.
+		 */
+		private final Runnable offer(final Runnable task, final String address, final String attribute) {
+			this.lock.lock();
+
+			try {
+				Runnable removed = null;
+
+				if (this.count == this.tasks.length) {
+					int index = attribute != null ? this.find(address, attribute) : -1;
+
+					if (index < 0) {
+						index = this.find(address, null);
+					}
+
+					removed = this.remove(index >= 0 ? index : 0);
+				}
+
+				this.enqueue(task);
+
+				return removed;
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		/**
+		 * Takes the oldest task, waiting for one for at most the given time.
+		 *
+		 * @param 		timeout		How long to wait, in milliseconds.
+		 *
+		 * @return		The task, <code>null</code> if none was queued in time.
+		 *
+		 * @throws 		InterruptedException		If interrupted while waiting.
+		 */
+		private final Runnable poll(final long timeout) throws InterruptedException {
+			long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+
+			this.lock.lockInterruptibly();
+
+			try {
+				while (this.count == 0) {
+					if (nanos <= 0) {
+						return null;
+					}
+
+					nanos = this.notEmpty.awaitNanos(nanos);
+				}
+
+				return this.remove(0);
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		/**
+		 * Indicates whether no task is queued.
+		 *
+		 * @return	<code>true</code> if none is.
+		 */
+		private final boolean isEmpty() {
+			this.lock.lock();
+
+			try {
+				return this.count == 0;
+			} finally {
+				this.lock.unlock();
+			}
+		}
+
+		/**
+		 * Finds the oldest queued event of the given address and attribute. Must hold the lock.
+		 *
+		 * @param 		address			The address.
+		 * @param 		attribute		The attribute, <code>null</code> for any attribute.
+		 *
+		 * @return		The position of the event in the queue, <code>-1</code> if there is none.
+		 */
+		private final int find(final String address, final String attribute) {
+			for (int i = 0; i < this.count; i++) {
+				final Runnable queued = this.tasks[(this.head + i) % this.tasks.length];
+
+				if (queued instanceof CCUEvent) {
+					final CCUEvent event = (CCUEvent)queued;
+
+					if (address.equals(event.getAddress()) && (attribute == null || attribute.equals(event.getAttribute()))) {
+						return i;
+					}
+				}
+			}
+
+			return -1;
+		}
+
+		/**
+		 * Adds a task at the end of the queue, which has room. Must hold the lock.
+		 *
+		 * @param 	task		The task.
+		 */
+		private final void enqueue(final Runnable task) {
+			this.tasks[(this.head + this.count) % this.tasks.length] = task;
+			this.count++;
+			this.notEmpty.signal();
+
+			if (this.count > this.highWaterMark) {
+				this.highWaterMark = this.count;
+			}
+		}
+
+		/**
+		 * Removes the task at the given position in the queue, keeping the order of the others. Must hold the lock.
+		 *
+		 * @param 		position		The position, <code>0</code> being the oldest task.
+		 *
+		 * @return		The task.
+		 */
+		private final Runnable remove(final int position) {
+			final int index = (this.head + position) % this.tasks.length;
+			final Runnable task = this.tasks[index];
+
+			for (int i = position; i > 0; i--) {
+				final int to = (this.head + i) % this.tasks.length;
+
+				this.tasks[to] = this.tasks[(to + this.tasks.length - 1) % this.tasks.length];
+			}
+
+			this.tasks[this.head] = null;
+			this.head = (this.head + 1) % this.tasks.length;
+			this.count--;
+			this.notFull.signal();
+
+			return task;
+		}
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	numberOfLanes		The number of lanes.
+	 */
+	StripedEventDispatcher(final int numberOfLanes) {
+		this(numberOfLanes, DEFAULT_LANE_CAPACITY);
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	numberOfLanes		The number of lanes.
+	 * @param 	laneCapacity		The number of tasks a lane can queue.
+	 */
+	StripedEventDispatcher(final int numberOfLanes, final int laneCapacity) {
+		this(numberOfLanes, laneCapacity, OverflowPolicy.BLOCK);
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	numberOfLanes		The number of lanes.
+	 * @param 	laneCapacity		The number of tasks a lane can queue.
+	 * @param 	overflowPolicy		What to do when a lane is full.
+	 */
+	StripedEventDispatcher(final int numberOfLanes, final int laneCapacity, final OverflowPolicy overflowPolicy) {
+		if (numberOfLanes <= 0) {
+			throw new IllegalArgumentException("Number of lanes should be positive, you specified [" + numberOfLanes + "]");
+		}
+
+		if (laneCapacity <= 0) {
+			throw new IllegalArgumentException("Lane capacity should be positive, you specified [" + laneCapacity + "]");
+		}
+
+		this.overflowPolicy = Objects.requireNonNull(overflowPolicy);
+		this.lanes = new Lane[numberOfLanes];
+
+		for (int i = 0; i < numberOfLanes; i++) {
+			this.lanes[i] = new Lane("ccu-event-" + (i + 1), laneCapacity);
+			this.lanes[i].start();
+		}
+	}
+
+	/**
+	 * Queues the given task on the lane of the given address. When the lane is full, the overflow policy decides
+	 * whether the caller waits or a queued event is dropped. Dropped events are returned to their pool.
+	 *
+	 * @param 	address		The address.
+	 * @param 	task		The task.
+	 */
+	final void dispatch(final String address, final Runnable task) {
+		final Lane lane = this.lanes[(address.hashCode() & Integer.MAX_VALUE) % this.lanes.length];
+
+		if (lane.shutdown) {
+			throw new IllegalStateException("Dispatcher was shut down.");
+		}
+
+		if (this.overflowPolicy == OverflowPolicy.BLOCK) {
+			try {
+				lane.put(task);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+
+				if (logger.isLoggable(Level.WARNING)) {
+					logger.log(Level.WARNING, "Interrupted while queueing the event for [" + address + "], dropping it.");
+				}
+
+				release(task);
+
+				return;
+			}
+		} else {
+			final String attribute = this.overflowPolicy == OverflowPolicy.COALESCE && task instanceof CCUEvent ? ((CCUEvent)task).getAttribute() : null;
+			final Runnable removed = lane.offer(task, address, attribute);
+
+			if (removed != null) {
+				this.removed(lane, removed, address, attribute);
+			}
+		}
+	}
+
+	/**
+	 * Counts and releases a queued task that was removed to make room on a full lane. The task has left the queue
+	 * without being run, so it still holds its own datapoint.
+	 *
+	 * @param 	lane			The lane.
+	 * @param 	removed			The task removed.
+	 * @param 	address			The address of the new task.
+	 * @param 	attribute		The attribute of the new task if it replaces queued events of its datapoint, <code>null</code> otherwise.
+	 */
+	private final void removed(final Lane lane, final Runnable removed, final String address, final String attribute) {
+		if (attribute != null && removed instanceof CCUEvent && address.equals(((CCUEvent)removed).getAddress()) && attribute.equals(((CCUEvent)removed).getAttribute())) {
+			this.coalescedEvents.incrementAndGet();
+		} else {
+			this.droppedEvents.incrementAndGet();
+
+			if (logger.isLoggable(Level.FINE)) {
+				logger.log(Level.FINE, "Lane [" + lane.getName() + "] is full, dropped an event for [" + address + "]");
+			}
+		}
+
+		release(removed);
+	}
+
+	/**
+	 * Returns a task that will not be run to its pool, if it is a pooled event.
+	 *
+	 * @param 	task		The task.
+	 */
+	private static final void release(final Runnable task) {
+		if (task instanceof CCUEvent) {
+			((CCUEvent)task).release();
+		}
+	}
+
+	/**
+	 * Returns the number of events dropped because their lane was full.
+	 *
+	 * @return	The number of dropped events.
+	 */
+	final long getDroppedEvents() {
+		return this.droppedEvents.get();
+	}
+
+	/**
+	 * Returns the number of events replaced by a later event for the same datapoint because their lane was full.
+	 *
+	 * @return	The number of coalesced events.
+	 */
+	final long getCoalescedEvents() {
+		return this.coalescedEvents.get();
+	}
+
+	/**
+	 * Returns the highest number of tasks that were queued on a lane.
+	 *
+	 * @return	The high water mark.
+	 */
+	final int getHighWaterMark() {
+		int highWaterMark = 0;
+
+		for (final Lane lane : this.lanes) {
+			highWaterMark = Math.max(highWaterMark, lane.highWaterMark);
+		}
+
+		return highWaterMark;
+	}
+
+	/**
+	 * Returns the number of lanes.
+	 *
+	 * @return	The number of lanes.
+	 */
+	final int getNumberOfLanes() {
+		return this.lanes.length;
+	}
+
+	/**
+	 * Stops the lanes, events that were already queued are still handled.
+	 */
+	final void shutdown() {
+		for (final Lane lane : this.lanes) {
+			lane.shutdown = true;
+		}
+	}
+}
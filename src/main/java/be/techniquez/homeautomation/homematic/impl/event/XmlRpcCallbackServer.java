@@ -0,0 +1,94 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import java.net.InetAddress;
+import java.util.Objects;
+import java.util.Vector;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.xmlrpc.WebServer;
+import org.apache.xmlrpc.XmlRpcHandler;
+
+/**
+ * {@link CallbackServer} using the Apache XML-RPC {@link WebServer}.
+ *
+ * @author alex
+ */
+final class XmlRpcCallbackServer implements CallbackServer {
+
+	/** Logger. */
+	private static final Logger logger = Logger.getLogger(XmlRpcCallbackServer.class.getName());
+
+	/** The handler name receiving all calls. */
+	private static final String DEFAULT_HANDLER = "$default";
+
+	/** The address to listen on, <code>null</code> for all addresses. */
+	private final InetAddress bindAddress;
+
+	/** The port. */
+	private final int port;
+
+	/** The web server. */
+	private WebServer webServer;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	port		The port to listen on.
+	 */
+	XmlRpcCallbackServer(final int port) {
+		this(null, port);
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	bindAddress		The address to listen on, <code>null</code> for all addresses.
+	 * @param 	port			The port to listen on.
+	 */
+	XmlRpcCallbackServer(final InetAddress bindAddress, final int port) {
+		this.bindAddress = bindAddress;
+		this.port = port;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The events are decoded by the web server and passed to the handler, the sink is not used.
+	 */
+	@Override
+	public final synchronized void start(final CallbackHandler handler, final EventSink sink) {
+		Objects.requireNonNull(handler);
+
+		if (logger.isLoggable(Level.INFO)) {
+			logger.log(Level.INFO, "CCU Eventing RPC server : starting.");
+		}
+
+		this.webServer = new WebServer(this.port, this.bindAddress);
+		this.webServer.addHandler(DEFAULT_HANDLER, (XmlRpcHandler)(method, parameters) -> handler.call(method, (Vector<?>)parameters));
+		this.webServer.start();
+
+		if (logger.isLoggable(Level.INFO)) {
+			logger.log(Level.INFO, "CCU Eventing RPC server : started.");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final synchronized void stop() {
+		if (this.webServer != null) {
+			this.webServer.shutdown();
+			this.webServer = null;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final int getPort() {
+		return this.port;
+	}
+}
@@ -0,0 +1,405 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Decodes XML-RPC method calls and encodes the responses, for the {@link NioCallbackServer}.
+ *
+ * Values are decoded to {@link String}, {@link Integer}, {@link Long}, {@link Double}, {@link Boolean},
+ * <code>byte[]</code>, {@link List} and {@link Map}. Dates are kept as their {@link String} representation.
+ *
+ * @author alex
+ */
+final class XmlRpcCodec {
+
+	/** The input factory, thread safe once configured. */
+	private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+	/** Element names. */
+	private static final String ELEMENT_METHOD_NAME = "methodName";
+	private static final String ELEMENT_VALUE = "value";
+	private static final String ELEMENT_ARRAY = "array";
+	private static final String ELEMENT_STRUCT = "struct";
+	private static final String ELEMENT_MEMBER = "member";
+	private static final String ELEMENT_NAME = "name";
+
+	/**
+	 * A decoded method call.
+	 *
+	 * @author alex
+	 */
+	static final class MethodCall {
+
+		/** The method name. */
+		private final String methodName;
+
+		/** The parameters. */
+		private final List<Object> parameters;
+
+		/**
+		 * Create a new instance.
+		 *
+		 * @param 	methodName		The method name.
+		 * @param 	parameters		The parameters.
+		 */
+		private MethodCall(final String methodName, final List<Object> parameters) {
+			this.methodName = methodName;
+			this.parameters = Collections.unmodifiableList(parameters);
+		}
+
+		/**
+		 * Returns the method name.
+		 *
+		 * @return	The method name.
+		 */
+		final String getMethodName() {
+			return this.methodName;
+		}
+
+		/**
+		 * Returns the parameters.
+		 *
+		 * @return	The parameters.
+		 */
+		final List<Object> getParameters() {
+			return this.parameters;
+		}
+	}
+
+	/**
+	 * Private constructor.
+	 */
+	private XmlRpcCodec() {
+	}
+
+	/**
+	 * Creates the input factory.
+	 *
+	 * @return	The input factory.
+	 */
+	private static final XMLInputFactory createInputFactory() {
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+		return factory;
+	}
+
+	/**
+	 * Decodes a method call.
+	 *
+	 * @param 		stream					The stream containing the call.
+	 *
+	 * @return		The method call.
+	 *
+	 * @throws 		XMLStreamException		If the call cannot be decoded.
+	 */
+	static final MethodCall decodeCall(final InputStream stream) throws XMLStreamException {
+		final XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(stream);
+
+		try {
+			String methodName = null;
+			final List<Object> parameters = new ArrayList<>();
+
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					if (ELEMENT_METHOD_NAME.equals(reader.getLocalName())) {
+						methodName = reader.getElementText().trim();
+					} else if (ELEMENT_VALUE.equals(reader.getLocalName())) {
+						parameters.add(readValue(reader));
+					}
+				}
+			}
+
+			if (methodName == null) {
+				throw new XMLStreamException("Method call without a method name.");
+			}
+
+			return new MethodCall(methodName, parameters);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reads a value, the reader is positioned on the start of the value element and is left on its end.
+	 *
+	 * @param 		reader					The reader.
+	 *
+	 * @return		The value.
+	 *
+	 * @throws 		XMLStreamException		If the value cannot be read.
+	 */
+	private static final Object readValue(final XMLStreamReader reader) throws XMLStreamException {
+		final StringBuilder text = new StringBuilder();
+		Object value = null;
+		boolean typed = false;
+
+		while (reader.hasNext()) {
+			switch (reader.next()) {
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+					text.append(reader.getText());
+					break;
+
+				case XMLStreamConstants.START_ELEMENT:
+					value = readTypedValue(reader);
+					typed = true;
+					break;
+
+				case XMLStreamConstants.END_ELEMENT:
+					return typed ? value : text.toString();
+
+				default:
+					break;
+			}
+		}
+
+		throw new XMLStreamException("Unexpected end of the value.");
+	}
+
+	/**
+	 * Reads a typed value, the reader is positioned on the start of the type element and is left on its end.
+	 *
+	 * @param 		reader					The reader.
+	 *
+	 * @return		The value.
+	 *
+	 * @throws 		XMLStreamException		If the value cannot be read.
+	 */
+	private static final Object readTypedValue(final XMLStreamReader reader) throws XMLStreamException {
+		final String type = reader.getLocalName();
+
+		try {
+			switch (type) {
+				case "i4":
+				case "int":
+					return Integer.valueOf(reader.getElementText().trim());
+
+				case "i8":
+					return Long.valueOf(reader.getElementText().trim());
+
+				case "double":
+					return Double.valueOf(reader.getElementText().trim());
+
+				case "boolean":
+					final String bool = reader.getElementText().trim();
+
+					return "1".equals(bool) || "true".equalsIgnoreCase(bool);
+
+				case "string":
+				case "dateTime.iso8601":
+					return reader.getElementText();
+
+				case "base64":
+					return Base64.getMimeDecoder().decode(reader.getElementText().trim());
+
+				case "nil":
+					reader.getElementText();
+
+					return null;
+
+				case ELEMENT_ARRAY:
+					return readArray(reader);
+
+				case ELEMENT_STRUCT:
+					return readStruct(reader);
+
+				default:
+					throw new XMLStreamException("Unsupported type [" + type + "]", reader.getLocation());
+			}
+		} catch (IllegalArgumentException e) {
+			throw new XMLStreamException("Invalid value for type [" + type + "] : [" + e.getMessage() + "]", reader.getLocation(), e);
+		}
+	}
+
+	/**
+	 * Reads an array, the reader is positioned on the start of the array element and is left on its end.
+	 *
+	 * @param 		reader					The reader.
+	 *
+	 * @return		The elements of the array.
+	 *
+	 * @throws 		XMLStreamException		If the array cannot be read.
+	 */
+	private static final List<Object> readArray(final XMLStreamReader reader) throws XMLStreamException {
+		final List<Object> elements = new ArrayList<>();
+
+		while (reader.hasNext()) {
+			final int event = reader.next();
+
+			if (event == XMLStreamConstants.START_ELEMENT && ELEMENT_VALUE.equals(reader.getLocalName())) {
+				elements.add(readValue(reader));
+			} else if (event == XMLStreamConstants.END_ELEMENT && ELEMENT_ARRAY.equals(reader.getLocalName())) {
+				return elements;
+			}
+		}
+
+		throw new XMLStreamException("Unexpected end of the array.");
+	}
+
+	/**
+	 * Reads a struct, the reader is positioned on the start of the struct element and is left on its end.
+	 *
+	 * @param 		reader					The reader.
+	 *
+	 * @return		The members of the struct.
+	 *
+	 * @throws 		XMLStreamException		If the struct cannot be read.
+	 */
+	private static final Map<String, Object> readStruct(final XMLStreamReader reader) throws XMLStreamException {
+		final Map<String, Object> members = new HashMap<>();
+		String name = null;
+
+		while (reader.hasNext()) {
+			final int event = reader.next();
+
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if (ELEMENT_NAME.equals(reader.getLocalName())) {
+					name = reader.getElementText().trim();
+				} else if (ELEMENT_VALUE.equals(reader.getLocalName())) {
+					if (name == null) {
+						throw new XMLStreamException("Struct member without a name.", reader.getLocation());
+					}
+
+					members.put(name, readValue(reader));
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				if (ELEMENT_MEMBER.equals(reader.getLocalName())) {
+					name = null;
+				} else if (ELEMENT_STRUCT.equals(reader.getLocalName())) {
+					return members;
+				}
+			}
+		}
+
+		throw new XMLStreamException("Unexpected end of the struct.");
+	}
+
+	/**
+	 * Encodes a method response.
+	 *
+	 * @param 		value		The value to return.
+	 *
+	 * @return		The encoded response.
+	 */
+	static final byte[] encodeResponse(final Object value) {
+		final StringBuilder builder = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><methodResponse><params><param>");
+		writeValue(builder, value);
+
+		return builder.append("</param></params></methodResponse>").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Encodes a fault response.
+	 *
+	 * @param 		code		The fault code.
+	 * @param 		message		The fault message.
+	 *
+	 * @return		The encoded response.
+	 */
+	static final byte[] encodeFault(final int code, final String message) {
+		final Map<String, Object> fault = new HashMap<>();
+		fault.put("faultCode", code);
+		fault.put("faultString", message != null ? message : "");
+
+		final StringBuilder builder = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><methodResponse><fault>");
+		writeValue(builder, fault);
+
+		return builder.append("</fault></methodResponse>").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a value.
+	 *
+	 * @param 	builder		The builder to write to.
+	 * @param 	value		The value.
+	 */
+	private static final void writeValue(final StringBuilder builder, final Object value) {
+		builder.append("<value>");
+
+		if (value == null) {
+			builder.append("<string></string>");
+		} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			builder.append("<i4>").append(value).append("</i4>");
+		} else if (value instanceof Long) {
+			builder.append("<i8>").append(value).append("</i8>");
+		} else if (value instanceof Double || value instanceof Float) {
+			builder.append("<double>").append(value).append("</double>");
+		} else if (value instanceof Boolean) {
+			builder.append("<boolean>").append((Boolean)value ? '1' : '0').append("</boolean>");
+		} else if (value instanceof byte[]) {
+			builder.append("<base64>").append(Base64.getEncoder().encodeToString((byte[])value)).append("</base64>");
+		} else if (value instanceof List || value instanceof Object[]) {
+			builder.append("<array><data>");
+
+			for (final Object element : value instanceof List ? (List<?>)value : Arrays.asList((Object[])value)) {
+				writeValue(builder, element);
+			}
+
+			builder.append("</data></array>");
+		} else if (value instanceof Map) {
+			builder.append("<struct>");
+
+			for (final Map.Entry<?, ?> member : ((Map<?, ?>)value).entrySet()) {
+				builder.append("<member><name>");
+				escape(builder, String.valueOf(member.getKey()));
+				builder.append("</name>");
+				writeValue(builder, member.getValue());
+				builder.append("</member>");
+			}
+
+			builder.append("</struct>");
+		} else {
+			builder.append("<string>");
+			escape(builder, String.valueOf(value));
+			builder.append("</string>");
+		}
+
+		builder.append("</value>");
+	}
+
+	/**
+	 * Escapes the given text.
+	 *
+	 * @param 	builder		The builder to write to.
+	 * @param 	text		The text.
+	 */
+	private static final void escape(final StringBuilder builder, final String text) {
+		for (int i = 0; i < text.length(); i++) {
+			final char c = text.charAt(i);
+
+			switch (c) {
+				case '<':
+					builder.append("&lt;");
+					break;
+
+				case '>':
+					builder.append("&gt;");
+					break;
+
+				case '&':
+					builder.append("&amp;");
+					break;
+
+				default:
+					builder.append(c);
+					break;
+			}
+		}
+	}
+}
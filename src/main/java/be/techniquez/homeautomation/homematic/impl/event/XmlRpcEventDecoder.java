@@ -0,0 +1,764 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Decodes <code>event</code> and <code>system.multicall</code> XML-RPC requests straight into pooled
+ * {@link CCUEvent}s, without building the intermediate lists and maps : names are compared and interned from the
+ * characters of the parser and numbers are parsed without creating strings. Other requests, and multicalls
+ * containing other calls, are left to the generic {@link XmlRpcCodec}.
+ *
+ * @author alex
+ */
+final class XmlRpcEventDecoder {
+
+	/** The input factory, thread safe once configured. */
+	private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+	/** The event method. */
+	private static final String METHOD_EVENT = "event";
+
+	/** The multicall method. */
+	private static final String METHOD_MULTICALL = "system.multicall";
+
+	/** The method name member of a multicall. */
+	private static final String MEMBER_METHOD_NAME = "methodName";
+
+	/** The parameters member of a multicall. */
+	private static final String MEMBER_PARAMS = "params";
+
+	/** The method call element. */
+	private static final String ELEMENT_METHOD_CALL = "methodCall";
+
+	/** The method name element. */
+	private static final String ELEMENT_METHOD_NAME = "methodName";
+
+	/** The value element. */
+	private static final String ELEMENT_VALUE = "value";
+
+	/** The array element. */
+	private static final String ELEMENT_ARRAY = "array";
+
+	/** The struct element. */
+	private static final String ELEMENT_STRUCT = "struct";
+
+	/** The struct member element. */
+	private static final String ELEMENT_MEMBER = "member";
+
+	/** The struct member name element. */
+	private static final String ELEMENT_NAME = "name";
+
+	/** The number of parameters of an event. */
+	private static final int EVENT_PARAMETERS = 4;
+
+	/** The largest mantissa that is parsed without creating a string, so it is exactly representable as a double. */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	/** The powers of ten that are exactly representable as a double. */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+													1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * What a value is used for.
+	 *
+	 * @author alex
+	 */
+	private enum Role {
+
+		/** The value is not used. */
+		IGNORED,
+
+		/** The value is the interface ID. */
+		INTERFACE_ID,
+
+		/** The value is the address. */
+		ADDRESS,
+
+		/** The value is the attribute. */
+		ATTRIBUTE,
+
+		/** The value is the value of the event. */
+		VALUE
+	}
+
+	/** The sink receiving the events. */
+	private final EventSink sink;
+
+	/** Holds the text of the current element. */
+	private char[] text = new char[64];
+
+	/** The length of the text of the current element. */
+	private int textLength;
+
+	/** Indicates whether the last request decoded was a multicall. */
+	private boolean multicall;
+
+	/** The number of calls in the last multicall. */
+	private int calls;
+
+	/** The events of the multicall being decoded, passed on once it is known to only contain events. */
+	private final List<CCUEvent> pending = new ArrayList<>();
+
+	/** Indicates whether the multicall being decoded contains calls other than events. */
+	private boolean otherCalls;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	sink		The sink receiving the events.
+	 */
+	XmlRpcEventDecoder(final EventSink sink) {
+		this.sink = sink;
+	}
+
+	/**
+	 * Creates the input factory.
+	 *
+	 * @return	The input factory.
+	 */
+	private static final XMLInputFactory createInputFactory() {
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+		return factory;
+	}
+
+	/**
+	 * Decodes a request.
+	 *
+	 * @param 		bytes			The bytes.
+	 * @param 		offset			The offset of the request.
+	 * @param 		length			The length of the request.
+	 *
+	 * @return		<code>true</code> if the request was an event or a multicall of events, <code>false</code> if it
+	 * 				should be decoded by the generic decoder.
+	 *
+	 * @throws 		XMLStreamException		If the request is invalid.
+	 */
+	final boolean decode(final byte[] bytes, final int offset, final int length) throws XMLStreamException {
+		this.multicall = false;
+		this.calls = 0;
+
+		final XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(bytes, offset, length));
+
+		try {
+			if (!this.nextStart(reader) || !ELEMENT_METHOD_CALL.equals(reader.getLocalName()) || !this.nextStart(reader)
+					|| !ELEMENT_METHOD_NAME.equals(reader.getLocalName())) {
+				return false;
+			}
+
+			this.readText(reader);
+
+			if (this.textEquals(METHOD_EVENT)) {
+				this.readEventCall(reader);
+				this.calls = 1;
+
+				return true;
+			} else if (this.textEquals(METHOD_MULTICALL)) {
+				this.multicall = true;
+
+				if (!this.readMulticall(reader)) {
+					this.multicall = false;
+					this.calls = 0;
+
+					return false;
+				}
+
+				return true;
+			}
+
+			return false;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Indicates whether the last request decoded was a multicall.
+	 *
+	 * @return	<code>true</code> for a multicall, <code>false</code> for a single event.
+	 */
+	final boolean isMulticall() {
+		return this.multicall;
+	}
+
+	/**
+	 * Returns the number of calls in the last request decoded.
+	 *
+	 * @return	The number of calls.
+	 */
+	final int getCalls() {
+		return this.calls;
+	}
+
+	/**
+	 * Reads the parameters of an event call.
+	 *
+	 * @param 		reader					The reader, positioned after the method name.
+	 *
+	 * @throws 		XMLStreamException		If the call is invalid.
+	 */
+	private final void readEventCall(final XMLStreamReader reader) throws XMLStreamException {
+		final CCUEvent event = this.sink.acquireEvent();
+		int parameters = 0;
+
+		try {
+			while (this.nextStart(reader)) {
+				if (ELEMENT_VALUE.equals(reader.getLocalName())) {
+					this.readValue(reader, event, parameters++);
+				}
+			}
+		} catch (XMLStreamException | RuntimeException e) {
+			event.release();
+
+			throw e;
+		}
+
+		if (parameters < EVENT_PARAMETERS) {
+			event.release();
+
+			throw new XMLStreamException("Event with [" + parameters + "] parameters.");
+		}
+
+		this.passOn(event);
+	}
+
+	/**
+	 * Reads the calls of a multicall, passing on the events once it is known that there are no other calls.
+	 *
+	 * @param 		reader					The reader, positioned after the method name.
+	 *
+	 * @return		<code>true</code> if the events were passed on, <code>false</code> if the multicall contains other
+	 * 				calls and should be decoded by the generic decoder.
+	 *
+	 * @throws 		XMLStreamException		If the multicall is invalid.
+	 */
+	private final boolean readMulticall(final XMLStreamReader reader) throws XMLStreamException {
+		this.otherCalls = false;
+
+		try {
+			while (this.nextStart(reader)) {
+				if (ELEMENT_STRUCT.equals(reader.getLocalName())) {
+					this.readCall(reader);
+					this.calls++;
+				}
+			}
+		} catch (XMLStreamException | RuntimeException e) {
+			this.releasePending();
+
+			throw e;
+		}
+
+		if (this.otherCalls) {
+			this.releasePending();
+
+			return false;
+		}
+
+		for (int i = 0; i < this.pending.size(); i++) {
+			this.sink.eventReceived(this.pending.get(i));
+		}
+
+		this.pending.clear();
+
+		return true;
+	}
+
+	/**
+	 * Releases the events of the multicall being decoded.
+	 */
+	private final void releasePending() {
+		for (int i = 0; i < this.pending.size(); i++) {
+			this.pending.get(i).release();
+		}
+
+		this.pending.clear();
+	}
+
+	/**
+	 * Reads a call of a multicall. The parameters are read into an event as they come, which is queued if the
+	 * call turns out to be an event. Other calls are noted.
+	 *
+	 * @param 		reader					The reader, positioned on the start of the struct.
+	 *
+	 * @throws 		XMLStreamException		If the call is invalid.
+	 */
+	private final void readCall(final XMLStreamReader reader) throws XMLStreamException {
+		final CCUEvent event = this.sink.acquireEvent();
+
+		boolean isEvent = false;
+		int parameters = -1;
+
+		try {
+			while (this.nextTag(reader) == XMLStreamConstants.START_ELEMENT || !ELEMENT_STRUCT.equals(reader.getLocalName())) {
+				if (reader.getEventType() != XMLStreamConstants.START_ELEMENT || !ELEMENT_MEMBER.equals(reader.getLocalName())) {
+					continue;
+				}
+
+				if (this.nextTag(reader) != XMLStreamConstants.START_ELEMENT || !ELEMENT_NAME.equals(reader.getLocalName())) {
+					throw new XMLStreamException("Expected the name of a struct member.", reader.getLocation());
+				}
+
+				this.readText(reader);
+
+				final boolean methodName = this.textEquals(MEMBER_METHOD_NAME);
+				final boolean params = !methodName && this.textEquals(MEMBER_PARAMS);
+
+				if (this.nextTag(reader) != XMLStreamConstants.START_ELEMENT || !ELEMENT_VALUE.equals(reader.getLocalName())) {
+					throw new XMLStreamException("Expected the value of a struct member.", reader.getLocation());
+				}
+
+				if (methodName) {
+					this.readScalar(reader);
+					isEvent = this.textEquals(METHOD_EVENT);
+					this.otherCalls |= !isEvent;
+				} else if (params) {
+					parameters = this.readParameters(reader, event);
+				} else {
+					this.skipElement(reader);
+				}
+
+				this.skipElement(reader);
+			}
+		} catch (XMLStreamException | RuntimeException e) {
+			event.release();
+
+			throw e;
+		}
+
+		if (isEvent && parameters >= EVENT_PARAMETERS && event.getType() != null) {
+			this.pending.add(event);
+		} else {
+			event.release();
+		}
+	}
+
+	/**
+	 * Passes the event on to the sink, or releases it if its value was skipped.
+	 *
+	 * @param 	event		The event.
+	 */
+	private final void passOn(final CCUEvent event) {
+		if (event.getType() != null) {
+			this.sink.eventReceived(event);
+		} else {
+			event.release();
+		}
+	}
+
+	/**
+	 * Reads the parameters array of a multicall call.
+	 *
+	 * @param 		reader					The reader, positioned on the start of the value.
+	 * @param 		event					The event to fill in.
+	 *
+	 * @return		The number of parameters, -1 if they are not an array.
+	 *
+	 * @throws 		XMLStreamException		If the parameters are invalid.
+	 */
+	private final int readParameters(final XMLStreamReader reader, final CCUEvent event) throws XMLStreamException {
+		if (this.nextTag(reader) != XMLStreamConstants.START_ELEMENT || !ELEMENT_ARRAY.equals(reader.getLocalName())) {
+			if (reader.getEventType() == XMLStreamConstants.START_ELEMENT) {
+				this.skipElement(reader);
+				this.skipElement(reader);
+			}
+
+			return -1;
+		}
+
+		int parameters = 0;
+
+		while (this.nextTag(reader) == XMLStreamConstants.START_ELEMENT || !ELEMENT_ARRAY.equals(reader.getLocalName())) {
+			if (reader.getEventType() == XMLStreamConstants.START_ELEMENT && ELEMENT_VALUE.equals(reader.getLocalName())) {
+				this.readValue(reader, event, parameters++);
+			}
+		}
+
+		this.skipElement(reader);
+
+		return parameters;
+	}
+
+	/**
+	 * Reads an event parameter. The value is skipped if the sink is not interested in the event, leaving the event
+	 * without a value.
+	 *
+	 * @param 		reader					The reader, positioned on the start of the value.
+	 * @param 		event					The event to fill in.
+	 * @param 		index					The index of the parameter.
+	 *
+	 * @throws 		XMLStreamException		If the value is invalid.
+	 */
+	private final void readValue(final XMLStreamReader reader, final CCUEvent event, final int index) throws XMLStreamException {
+		final Role role = index == 0 ? Role.INTERFACE_ID : index == 1 ? Role.ADDRESS : index == 2 ? Role.ATTRIBUTE : index == 3 ? Role.VALUE : Role.IGNORED;
+
+		if (role == Role.IGNORED || (role == Role.VALUE && !this.sink.isInterested(event))) {
+			this.skipElement(reader);
+
+			return;
+		}
+
+		final String type = this.readScalar(reader);
+
+		switch (role) {
+			case INTERFACE_ID:
+				event.setInterfaceId(this.text, 0, this.textLength);
+				break;
+
+			case ADDRESS:
+				event.setAddress(this.text, 0, this.textLength);
+				break;
+
+			case ATTRIBUTE:
+				event.setAttribute(this.text, 0, this.textLength);
+				break;
+
+			default:
+				this.setValue(event, type);
+				break;
+		}
+	}
+
+	/**
+	 * Reads a scalar value into the text buffer. Arrays and structs are skipped, leaving the text buffer empty.
+	 *
+	 * @param 		reader					The reader, positioned on the start of the value, left on its end.
+	 *
+	 * @return		The type of the value, <code>string</code> if it was not typed.
+	 *
+	 * @throws 		XMLStreamException		If the value is invalid.
+	 */
+	private final String readScalar(final XMLStreamReader reader) throws XMLStreamException {
+		this.textLength = 0;
+
+		while (reader.hasNext()) {
+			switch (reader.next()) {
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					this.appendText(reader);
+					break;
+
+				case XMLStreamConstants.START_ELEMENT:
+					final String type = reader.getLocalName();
+
+					if (ELEMENT_ARRAY.equals(type) || ELEMENT_STRUCT.equals(type)) {
+						this.skipElement(reader);
+						this.skipElement(reader);
+						this.textLength = 0;
+
+						return type;
+					}
+
+					this.readText(reader);
+					this.skipElement(reader);
+
+					return type;
+
+				case XMLStreamConstants.END_ELEMENT:
+					return "string";
+
+				default:
+					break;
+			}
+		}
+
+		throw new XMLStreamException("Unexpected end of the value.");
+	}
+
+	/**
+	 * Sets the value in the text buffer on the event.
+	 *
+	 * @param 		event					The event.
+	 * @param 		type					The type of the value.
+	 *
+	 * @throws 		XMLStreamException		If the value is invalid.
+	 */
+	private final void setValue(final CCUEvent event, final String type) throws XMLStreamException {
+		switch (type) {
+			case "i4":
+			case "int":
+				event.setInteger(this.parseInt());
+				break;
+
+			case "boolean":
+				event.setBoolean(this.textEquals("1") || this.textEquals("true"));
+				break;
+
+			case "double":
+				event.setDouble(this.parseDouble());
+				break;
+
+			default:
+				event.setString(new String(this.text, 0, this.textLength));
+				break;
+		}
+	}
+
+	/**
+	 * Parses the text buffer as an integer.
+	 *
+	 * @return		The integer.
+	 *
+	 * @throws 		XMLStreamException		If the text is not an integer.
+	 */
+	private final int parseInt() throws XMLStreamException {
+		int start = 0;
+		int end = this.textLength;
+
+		while (start < end && Character.isWhitespace(this.text[start])) {
+			start++;
+		}
+
+		while (end > start && Character.isWhitespace(this.text[end - 1])) {
+			end--;
+		}
+
+		final boolean negative = start < end && this.text[start] == '-';
+
+		if (start < end && (this.text[start] == '-' || this.text[start] == '+')) {
+			start++;
+		}
+
+		if (start == end) {
+			throw new XMLStreamException("Invalid integer.");
+		}
+
+		long value = 0;
+
+		for (int i = start; i < end; i++) {
+			final char c = this.text[i];
+
+			if (c < '0' || c > '9' || value > Integer.MAX_VALUE + 1L) {
+				throw new XMLStreamException("Invalid integer [" + new String(this.text, 0, this.textLength) + "]");
+			}
+
+			value = value * 10 + (c - '0');
+		}
+
+		value = negative ? -value : value;
+
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new XMLStreamException("Invalid integer [" + new String(this.text, 0, this.textLength) + "]");
+		}
+
+		return (int)value;
+	}
+
+	/**
+	 * Parses the text buffer as a double. Plain decimals with up to 15 significant digits are parsed without
+	 * creating a string, with the same result as {@link Double#parseDouble(String)}.
+	 *
+	 * @return		The double.
+	 *
+	 * @throws 		XMLStreamException		If the text is not a double.
+	 */
+	private final double parseDouble() throws XMLStreamException {
+		int start = 0;
+		int end = this.textLength;
+
+		while (start < end && Character.isWhitespace(this.text[start])) {
+			start++;
+		}
+
+		while (end > start && Character.isWhitespace(this.text[end - 1])) {
+			end--;
+		}
+
+		final boolean negative = start < end && this.text[start] == '-';
+		int i = start < end && (this.text[start] == '-' || this.text[start] == '+') ? start + 1 : start;
+
+		long mantissa = 0;
+		int decimals = 0;
+		int digits = 0;
+		boolean point = false;
+		boolean exact = i < end;
+
+		for (; i < end && exact; i++) {
+			final char c = this.text[i];
+
+			if (c == '.' && !point) {
+				point = true;
+			} else if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+
+				if (point) {
+					decimals++;
+				}
+
+				exact = mantissa < MAX_EXACT_MANTISSA && decimals < POWERS_OF_TEN.length;
+			} else {
+				exact = false;
+			}
+		}
+
+		if (exact && digits > 0) {
+			final double value = mantissa / POWERS_OF_TEN[decimals];
+
+			return negative ? -value : value;
+		}
+
+		try {
+			return Double.parseDouble(new String(this.text, start, end - start));
+		} catch (NumberFormatException e) {
+			throw new XMLStreamException("Invalid double [" + new String(this.text, 0, this.textLength) + "]", e);
+		}
+	}
+
+	/**
+	 * Reads the text of the current element into the text buffer, leaving the reader on the end of the element.
+	 *
+	 * @param 		reader					The reader, positioned on the start of an element.
+	 *
+	 * @throws 		XMLStreamException		If the element contains other elements.
+	 */
+	private final void readText(final XMLStreamReader reader) throws XMLStreamException {
+		this.textLength = 0;
+
+		while (reader.hasNext()) {
+			switch (reader.next()) {
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					this.appendText(reader);
+					break;
+
+				case XMLStreamConstants.END_ELEMENT:
+					return;
+
+				case XMLStreamConstants.START_ELEMENT:
+					throw new XMLStreamException("Expected text, got element [" + reader.getLocalName() + "]", reader.getLocation());
+
+				default:
+					break;
+			}
+		}
+
+		throw new XMLStreamException("Unexpected end of the element.");
+	}
+
+	/**
+	 * Appends the current characters to the text buffer.
+	 *
+	 * @param 	reader		The reader.
+	 */
+	private final void appendText(final XMLStreamReader reader) {
+		final int length = reader.getTextLength();
+
+		if (this.textLength + length > this.text.length) {
+			final char[] grown = new char[Math.max(this.text.length * 2, this.textLength + length)];
+			System.arraycopy(this.text, 0, grown, 0, this.textLength);
+
+			this.text = grown;
+		}
+
+		System.arraycopy(reader.getTextCharacters(), reader.getTextStart(), this.text, this.textLength, length);
+		this.textLength += length;
+	}
+
+	/**
+	 * Compares the text buffer, ignoring surrounding whitespace, with the given string.
+	 *
+	 * @param 		expected		The expected string.
+	 *
+	 * @return		<code>true</code> if they are equal.
+	 */
+	private final boolean textEquals(final String expected) {
+		int start = 0;
+		int end = this.textLength;
+
+		while (start < end && Character.isWhitespace(this.text[start])) {
+			start++;
+		}
+
+		while (end > start && Character.isWhitespace(this.text[end - 1])) {
+			end--;
+		}
+
+		if (end - start != expected.length()) {
+			return false;
+		}
+
+		for (int i = 0; i < expected.length(); i++) {
+			if (this.text[start + i] != expected.charAt(i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Moves to the next start element.
+	 *
+	 * @param 		reader					The reader.
+	 *
+	 * @return		<code>false</code> if the document ended.
+	 *
+	 * @throws 		XMLStreamException		If the document is invalid.
+	 */
+	private final boolean nextStart(final XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()) {
+			if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Moves to the next start or end element.
+	 *
+	 * @param 		reader					The reader.
+	 *
+	 * @return		The event type.
+	 *
+	 * @throws 		XMLStreamException		If the document ends.
+	 */
+	private final int nextTag(final XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()) {
+			final int event = reader.next();
+
+			if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.END_ELEMENT) {
+				return event;
+			}
+		}
+
+		throw new XMLStreamException("Unexpected end of the document.");
+	}
+
+	/**
+	 * Moves to the end of the current element. When on a start element, the element is skipped. When on an end
+	 * element, the reader moves to the end of the enclosing element.
+	 *
+	 * @param 		reader					The reader.
+	 *
+	 * @throws 		XMLStreamException		If the document ends.
+	 */
+	private final void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+
+		while (reader.hasNext()) {
+			final int event = reader.next();
+
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT && --depth == 0) {
+				return;
+			}
+		}
+
+		throw new XMLStreamException("Unexpected end of the document.");
+	}
+}
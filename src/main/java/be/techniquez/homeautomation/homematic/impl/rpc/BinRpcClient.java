@@ -0,0 +1,164 @@
+package be.techniquez.homeautomation.homematic.impl.rpc;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link RpcClient} speaking BIN-RPC. The connection is kept open between calls, which are made one at a time.
+ *
+ * @author alex
+ */
+public final class BinRpcClient implements RpcClient {
+
+	/** Logger. */
+	private static final Logger logger = Logger.getLogger(BinRpcClient.class.getName());
+
+	/** The default connect timeout, in milliseconds. */
+	private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+	/** The default read timeout, in milliseconds. */
+	private static final int DEFAULT_READ_TIMEOUT = 30000;
+
+	/** The host name. */
+	private final String hostname;
+
+	/** The port. */
+	private final int port;
+
+	/** The connect timeout. */
+	private final int connectTimeout;
+
+	/** The read timeout. */
+	private final int readTimeout;
+
+	/** The connection, <code>null</code> if not connected. */
+	private Socket socket;
+
+	/** The input of the connection. */
+	private InputStream input;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	hostname		The host name.
+	 * @param 	port			The port.
+	 */
+	public BinRpcClient(final String hostname, final int port) {
+		this(hostname, port, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	hostname			The host name.
+	 * @param 	port				The port.
+	 * @param 	connectTimeout		The connect timeout, in milliseconds.
+	 * @param 	readTimeout			The read timeout, in milliseconds.
+	 */
+	public BinRpcClient(final String hostname, final int port, final int connectTimeout, final int readTimeout) {
+		this.hostname = Objects.requireNonNull(hostname);
+		this.port = port;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final synchronized Object execute(final String method, final List<?> parameters) throws IOException {
+		final byte[] request = BinRpcCodec.encodeRequest(method, parameters);
+		final boolean reused = this.socket != null;
+
+		try {
+			return this.exchange(request);
+		} catch (RpcFaultException e) {
+			throw e;
+		} catch (IOException e) {
+			this.close();
+
+			if (!reused) {
+				throw e;
+			}
+
+			if (logger.isLoggable(Level.FINE)) {
+				logger.log(Level.FINE, "BIN-RPC connection to [" + this.hostname + ":" + this.port + "] was closed, reconnecting.", e);
+			}
+
+			try {
+				return this.exchange(request);
+			} catch (RpcFaultException retryFault) {
+				throw retryFault;
+			} catch (IOException retryError) {
+				this.close();
+
+				throw retryError;
+			}
+		}
+	}
+
+	/**
+	 * Sends the request and reads the response, connecting first if needed.
+	 *
+	 * @param 		request			The request.
+	 *
+	 * @return		The response.
+	 *
+	 * @throws 		IOException		If an IO error occurs.
+	 */
+	private final Object exchange(final byte[] request) throws IOException {
+		if (this.socket == null) {
+			final Socket newSocket = new Socket();
+
+			try {
+				newSocket.connect(new InetSocketAddress(this.hostname, this.port), this.connectTimeout);
+				newSocket.setSoTimeout(this.readTimeout);
+				newSocket.setTcpNoDelay(true);
+			} catch (IOException e) {
+				newSocket.close();
+
+				throw e;
+			}
+
+			this.socket = newSocket;
+			this.input = new BufferedInputStream(newSocket.getInputStream());
+		}
+
+		this.socket.getOutputStream().write(request);
+		this.socket.getOutputStream().flush();
+
+		final BinRpcCodec.Frame frame = BinRpcCodec.readFrame(this.input);
+
+		if (frame == null) {
+			throw new IOException("BIN-RPC connection closed before the response.");
+		}
+
+		return BinRpcCodec.decodeResponse(frame);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final synchronized void close() {
+		if (this.socket != null) {
+			try {
+				this.socket.close();
+			} catch (IOException e) {
+				if (logger.isLoggable(Level.FINE)) {
+					logger.log(Level.FINE, "Error closing BIN-RPC connection : [" + e.getMessage() + "]", e);
+				}
+			}
+
+			this.socket = null;
+			this.input = null;
+		}
+	}
+}
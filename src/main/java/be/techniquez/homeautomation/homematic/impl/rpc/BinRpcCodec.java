@@ -0,0 +1,533 @@
+package be.techniquez.homeautomation.homematic.impl.rpc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes and decodes BIN-RPC frames.
+ *
+ * A frame starts with <code>Bin</code>, a type byte and the length of the rest of the frame. A request contains the
+ * method name and the parameters, a response or fault a single value. Values are prefixed with their type, all
+ * numbers are big endian and strings are ISO-8859-1.
+ *
+ * @author alex
+ */
+public final class BinRpcCodec {
+
+	/** The frame types. */
+	public static final int FRAME_REQUEST = 0x00;
+	public static final int FRAME_RESPONSE = 0x01;
+	public static final int FRAME_FAULT = 0xFF;
+
+	/** The value types. */
+	public static final int TYPE_INTEGER = 0x01;
+	public static final int TYPE_BOOLEAN = 0x02;
+	public static final int TYPE_STRING = 0x03;
+	public static final int TYPE_DOUBLE = 0x04;
+	public static final int TYPE_BASE64 = 0x11;
+	public static final int TYPE_ARRAY = 0x100;
+	public static final int TYPE_STRUCT = 0x101;
+
+	/** The magic at the start of every frame. */
+	private static final byte[] MAGIC = { 'B', 'i', 'n' };
+
+	/** The length of the frame header. */
+	private static final int HEADER_LENGTH = 8;
+
+	/** The maximum length of a frame. */
+	private static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+	/** The number of mantissa bits of a double. */
+	public static final int MANTISSA_BITS = 30;
+
+	/**
+	 * A frame.
+	 *
+	 * @author alex
+	 */
+	public static final class Frame {
+
+		/** The type. */
+		private final int type;
+
+		/** The body. */
+		private final ByteBuffer body;
+
+		/**
+		 * Create a new instance.
+		 *
+		 * @param 	type		The type.
+		 * @param 	body		The body.
+		 */
+		private Frame(final int type, final ByteBuffer body) {
+			this.type = type;
+			this.body = body;
+		}
+
+		/**
+		 * Returns the type of the frame.
+		 *
+		 * @return	The type.
+		 */
+		public final int getType() {
+			return this.type;
+		}
+
+		/**
+		 * Returns the body of the frame, following the header. The buffer is backed by an array.
+		 *
+		 * @return	The body.
+		 */
+		public final ByteBuffer getBody() {
+			return this.body.duplicate();
+		}
+	}
+
+	/**
+	 * A decoded request.
+	 *
+	 * @author alex
+	 */
+	public static final class Request {
+
+		/** The method name. */
+		private final String methodName;
+
+		/** The parameters. */
+		private final List<Object> parameters;
+
+		/**
+		 * Create a new instance.
+		 *
+		 * @param 	methodName		The method name.
+		 * @param 	parameters		The parameters.
+		 */
+		private Request(final String methodName, final List<Object> parameters) {
+			this.methodName = methodName;
+			this.parameters = Collections.unmodifiableList(parameters);
+		}
+
+		/**
+		 * Returns the method name.
+		 *
+		 * @return	The method name.
+		 */
+		public final String getMethodName() {
+			return this.methodName;
+		}
+
+		/**
+		 * Returns the parameters.
+		 *
+		 * @return	The parameters.
+		 */
+		public final List<Object> getParameters() {
+			return this.parameters;
+		}
+	}
+
+	/**
+	 * Private constructor.
+	 */
+	private BinRpcCodec() {
+	}
+
+	/**
+	 * Reads a frame.
+	 *
+	 * @param 		stream			The stream.
+	 *
+	 * @return		The frame, <code>null</code> if the stream ended before a new frame.
+	 *
+	 * @throws 		IOException		If an IO error occurs or the frame is invalid.
+	 */
+	public static final Frame readFrame(final InputStream stream) throws IOException {
+		final DataInputStream input = new DataInputStream(stream);
+		final byte[] header = new byte[HEADER_LENGTH];
+
+		final int first = input.read();
+
+		if (first < 0) {
+			return null;
+		}
+
+		header[0] = (byte)first;
+		input.readFully(header, 1, HEADER_LENGTH - 1);
+
+		if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+			throw new IOException("Not a BIN-RPC frame.");
+		}
+
+		final int type = header[3] & 0xFF;
+		final int length = ByteBuffer.wrap(header, 4, 4).getInt();
+
+		if (length < 0 || length > MAX_FRAME_LENGTH) {
+			throw new IOException("Invalid BIN-RPC frame length [" + length + "]");
+		}
+
+		final byte[] body = new byte[length];
+		input.readFully(body);
+
+		return new Frame(type, ByteBuffer.wrap(body));
+	}
+
+	/**
+	 * Decodes a request frame.
+	 *
+	 * @param 		frame			The frame.
+	 *
+	 * @return		The request.
+	 *
+	 * @throws 		IOException		If the frame is not a valid request.
+	 */
+	public static final Request decodeRequest(final Frame frame) throws IOException {
+		if (frame.type != FRAME_REQUEST) {
+			throw new IOException("Expected a BIN-RPC request, got frame type [" + frame.type + "]");
+		}
+
+		try {
+			final ByteBuffer body = frame.body.duplicate();
+			final String methodName = readString(body);
+			final int count = readCount(body);
+			final List<Object> parameters = new ArrayList<>(count);
+
+			for (int i = 0; i < count; i++) {
+				parameters.add(readValue(body));
+			}
+
+			return new Request(methodName, parameters);
+		} catch (BufferUnderflowException e) {
+			throw new EOFException("Truncated BIN-RPC request.");
+		}
+	}
+
+	/**
+	 * Decodes a response frame.
+	 *
+	 * @param 		frame				The frame.
+	 *
+	 * @return		The value, <code>null</code> if the response is empty.
+	 *
+	 * @throws 		RpcFaultException	If the frame is a fault.
+	 * @throws 		IOException			If the frame is not a valid response.
+	 */
+	public static final Object decodeResponse(final Frame frame) throws IOException {
+		try {
+			final ByteBuffer body = frame.body.duplicate();
+			final Object value = body.hasRemaining() ? readValue(body) : null;
+
+			if (frame.type == FRAME_FAULT) {
+				final Map<?, ?> fault = value instanceof Map ? (Map<?, ?>)value : Collections.emptyMap();
+				final Object code = fault.get("faultCode");
+
+				throw new RpcFaultException(code instanceof Integer ? (Integer)code : -1, String.valueOf(fault.get("faultString")));
+			} else if (frame.type != FRAME_RESPONSE) {
+				throw new IOException("Expected a BIN-RPC response, got frame type [" + frame.type + "]");
+			}
+
+			return value;
+		} catch (BufferUnderflowException e) {
+			throw new EOFException("Truncated BIN-RPC response.");
+		}
+	}
+
+	/**
+	 * Encodes a request.
+	 *
+	 * @param 		method			The method.
+	 * @param 		parameters		The parameters.
+	 *
+	 * @return		The frame.
+	 */
+	public static final byte[] encodeRequest(final String method, final List<?> parameters) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try {
+			final DataOutputStream output = startFrame(bytes, FRAME_REQUEST);
+			writeString(output, method);
+			output.writeInt(parameters.size());
+
+			for (final Object parameter : parameters) {
+				writeValue(output, parameter);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot write to memory : [" + e.getMessage() + "]", e);
+		}
+
+		return endFrame(bytes);
+	}
+
+	/**
+	 * Encodes a response.
+	 *
+	 * @param 		value		The value.
+	 *
+	 * @return		The frame.
+	 */
+	public static final byte[] encodeResponse(final Object value) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try {
+			writeValue(startFrame(bytes, FRAME_RESPONSE), value);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot write to memory : [" + e.getMessage() + "]", e);
+		}
+
+		return endFrame(bytes);
+	}
+
+	/**
+	 * Encodes a fault.
+	 *
+	 * @param 		code		The fault code.
+	 * @param 		message		The fault message.
+	 *
+	 * @return		The frame.
+	 */
+	public static final byte[] encodeFault(final int code, final String message) {
+		final Map<String, Object> fault = new HashMap<>();
+		fault.put("faultCode", code);
+		fault.put("faultString", message != null ? message : "");
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try {
+			writeValue(startFrame(bytes, FRAME_FAULT), fault);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot write to memory : [" + e.getMessage() + "]", e);
+		}
+
+		return endFrame(bytes);
+	}
+
+	/**
+	 * Writes the frame header, with a length that is filled in by {@link #endFrame(ByteArrayOutputStream)}.
+	 *
+	 * @param 		bytes			The bytes to write to.
+	 * @param 		type			The frame type.
+	 *
+	 * @return		The output to write the body to.
+	 *
+	 * @throws 		IOException		Never.
+	 */
+	private static final DataOutputStream startFrame(final ByteArrayOutputStream bytes, final int type) throws IOException {
+		final DataOutputStream output = new DataOutputStream(bytes);
+		output.write(MAGIC);
+		output.writeByte(type);
+		output.writeInt(0);
+
+		return output;
+	}
+
+	/**
+	 * Fills in the frame length.
+	 *
+	 * @param 		bytes		The frame.
+	 *
+	 * @return		The complete frame.
+	 */
+	private static final byte[] endFrame(final ByteArrayOutputStream bytes) {
+		final byte[] frame = bytes.toByteArray();
+		ByteBuffer.wrap(frame, 4, 4).putInt(frame.length - HEADER_LENGTH);
+
+		return frame;
+	}
+
+	/**
+	 * Writes a value.
+	 *
+	 * @param 		output			The output.
+	 * @param 		value			The value.
+	 *
+	 * @throws 		IOException		If an IO error occurs.
+	 */
+	private static final void writeValue(final DataOutputStream output, final Object value) throws IOException {
+		if (value == null) {
+			output.writeInt(TYPE_STRING);
+			writeString(output, "");
+		} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			output.writeInt(TYPE_INTEGER);
+			output.writeInt(((Number)value).intValue());
+		} else if (value instanceof Long) {
+			final long longValue = (Long)value;
+
+			if (longValue < Integer.MIN_VALUE || longValue > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("BIN-RPC does not support [" + longValue + "], only 32 bit integers.");
+			}
+
+			output.writeInt(TYPE_INTEGER);
+			output.writeInt((int)longValue);
+		} else if (value instanceof Boolean) {
+			output.writeInt(TYPE_BOOLEAN);
+			output.writeByte((Boolean)value ? 1 : 0);
+		} else if (value instanceof Double || value instanceof Float) {
+			output.writeInt(TYPE_DOUBLE);
+			writeDouble(output, ((Number)value).doubleValue());
+		} else if (value instanceof byte[]) {
+			output.writeInt(TYPE_BASE64);
+			writeString(output, Base64.getEncoder().encodeToString((byte[])value));
+		} else if (value instanceof List || value instanceof Object[]) {
+			final List<?> elements = value instanceof List ? (List<?>)value : Arrays.asList((Object[])value);
+
+			output.writeInt(TYPE_ARRAY);
+			output.writeInt(elements.size());
+
+			for (final Object element : elements) {
+				writeValue(output, element);
+			}
+		} else if (value instanceof Map) {
+			final Map<?, ?> members = (Map<?, ?>)value;
+
+			output.writeInt(TYPE_STRUCT);
+			output.writeInt(members.size());
+
+			for (final Map.Entry<?, ?> member : members.entrySet()) {
+				writeString(output, String.valueOf(member.getKey()));
+				writeValue(output, member.getValue());
+			}
+		} else {
+			output.writeInt(TYPE_STRING);
+			writeString(output, String.valueOf(value));
+		}
+	}
+
+	/**
+	 * Writes a string, without type.
+	 *
+	 * @param 		output			The output.
+	 * @param 		value			The string.
+	 *
+	 * @throws 		IOException		If an IO error occurs.
+	 */
+	private static final void writeString(final DataOutputStream output, final String value) throws IOException {
+		final byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	/**
+	 * Writes a double as a 30 bit mantissa and an exponent, without type.
+	 *
+	 * @param 		output			The output.
+	 * @param 		value			The value.
+	 *
+	 * @throws 		IOException		If an IO error occurs.
+	 */
+	private static final void writeDouble(final DataOutputStream output, final double value) throws IOException {
+		final int exponent = value == 0 ? 0 : Math.getExponent(value) + 1;
+		final int mantissa = (int)Math.scalb(value, MANTISSA_BITS - exponent);
+
+		output.writeInt(mantissa);
+		output.writeInt(exponent);
+	}
+
+	/**
+	 * Reads a value.
+	 *
+	 * @param 		body			The body.
+	 *
+	 * @return		The value.
+	 *
+	 * @throws 		IOException		If the value is invalid.
+	 */
+	private static final Object readValue(final ByteBuffer body) throws IOException {
+		final int type = body.getInt();
+
+		switch (type) {
+			case TYPE_INTEGER:
+				return body.getInt();
+
+			case TYPE_BOOLEAN:
+				return body.get() != 0;
+
+			case TYPE_STRING:
+				return readString(body);
+
+			case TYPE_DOUBLE:
+				final int mantissa = body.getInt();
+				final int exponent = body.getInt();
+
+				return Math.scalb((double)mantissa, exponent - MANTISSA_BITS);
+
+			case TYPE_BASE64:
+				return Base64.getMimeDecoder().decode(readString(body));
+
+			case TYPE_ARRAY:
+				final int size = readCount(body);
+				final List<Object> elements = new ArrayList<>(size);
+
+				for (int i = 0; i < size; i++) {
+					elements.add(readValue(body));
+				}
+
+				return elements;
+
+			case TYPE_STRUCT:
+				final int count = readCount(body);
+				final Map<String, Object> members = new HashMap<>();
+
+				for (int i = 0; i < count; i++) {
+					final String name = readString(body);
+
+					members.put(name, readValue(body));
+				}
+
+				return members;
+
+			default:
+				throw new IOException("Unsupported BIN-RPC type [" + type + "]");
+		}
+	}
+
+	/**
+	 * Reads a string, without type.
+	 *
+	 * @param 		body			The body.
+	 *
+	 * @return		The string.
+	 *
+	 * @throws 		IOException		If the length is invalid.
+	 */
+	private static final String readString(final ByteBuffer body) throws IOException {
+		final int length = readCount(body);
+		final String value = new String(body.array(), body.arrayOffset() + body.position(), length, StandardCharsets.ISO_8859_1);
+
+		body.position(body.position() + length);
+
+		return value;
+	}
+
+	/**
+	 * Reads a length or number of elements, which cannot exceed what is left in the body.
+	 *
+	 * @param 		body			The body.
+	 *
+	 * @return		The count.
+	 *
+	 * @throws 		IOException		If the count is invalid.
+	 */
+	private static final int readCount(final ByteBuffer body) throws IOException {
+		final int count = body.getInt();
+
+		if (count < 0 || count > body.remaining()) {
+			throw new IOException("Invalid BIN-RPC length [" + count + "]");
+		}
+
+		return count;
+	}
+}
@@ -0,0 +1,270 @@
+package be.techniquez.homeautomation.homematic.impl.rpc;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Server accepting BIN-RPC calls. Every connection is served by its own thread, the CCU only opens one per
+ * interface process.
+ *
+ * @author alex
+ */
+public final class BinRpcServer {
+
+	/** Logger. */
+	private static final Logger logger = Logger.getLogger(BinRpcServer.class.getName());
+
+	/** The fault code used when a call fails. */
+	private static final int FAULT_CODE = -1;
+
+	/** How long a stop waits for the threads of the server, in milliseconds. */
+	private static final long STOP_TIMEOUT = 1000;
+
+	/** The address to listen on, <code>null</code> for all addresses. */
+	private final InetAddress bindAddress;
+
+	/** The port. */
+	private final int port;
+
+	/** The server socket. */
+	private ServerSocket serverSocket;
+
+	/** Runs the accept loop and the connections. */
+	private ExecutorService executor;
+
+	/** The open connections. */
+	private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Handles request frames before they are decoded, so frequent calls can be decoded by a specialized decoder.
+	 *
+	 * @author alex
+	 */
+	@FunctionalInterface
+	public interface FrameHandler {
+
+		/**
+		 * Called when a request frame was received.
+		 *
+		 * @param 		frame			The frame.
+		 *
+		 * @return		The encoded response, <code>null</code> to have the frame decoded and passed to the
+		 * 				{@link RpcHandler}.
+		 *
+		 * @throws 		IOException		If the frame is invalid, reported to the caller as a fault.
+		 */
+		byte[] handle(final BinRpcCodec.Frame frame) throws IOException;
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	port		The port to listen on, 0 to use any free port.
+	 */
+	public BinRpcServer(final int port) {
+		this(null, port);
+	}
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	bindAddress		The address to listen on, <code>null</code> for all addresses.
+	 * @param 	port			The port to listen on, 0 to use any free port.
+	 */
+	public BinRpcServer(final InetAddress bindAddress, final int port) {
+		this.bindAddress = bindAddress;
+		this.port = port;
+	}
+
+	/**
+	 * Starts the server.
+	 *
+	 * @param 		handler			The handler of the calls.
+	 *
+	 * @throws 		IOException		If the server cannot be started.
+	 */
+	public final void start(final RpcHandler handler) throws IOException {
+		this.start(handler, frame -> null);
+	}
+
+	/**
+	 * Starts the server.
+	 *
+	 * @param 		handler				The handler of the calls.
+	 * @param 		frameHandler		Gets the request frames first, before they are passed to the handler.
+	 *
+	 * @throws 		IOException		If the server cannot be started.
+	 */
+	public final synchronized void start(final RpcHandler handler, final FrameHandler frameHandler) throws IOException {
+		Objects.requireNonNull(handler);
+		Objects.requireNonNull(frameHandler);
+
+		if (this.serverSocket != null) {
+			throw new IllegalStateException("BIN-RPC server is already running.");
+		}
+
+		final ServerSocket socket = new ServerSocket();
+		socket.setReuseAddress(true);
+		socket.bind(new InetSocketAddress(this.bindAddress, this.port));
+
+		final AtomicInteger threadNumber = new AtomicInteger();
+
+		this.serverSocket = socket;
+		this.executor = Executors.newCachedThreadPool(runnable -> {
+			final Thread thread = new Thread(runnable, "ccu-binrpc-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		this.executor.execute(() -> this.accept(socket, handler, frameHandler));
+
+		if (logger.isLoggable(Level.INFO)) {
+			logger.log(Level.INFO, "BIN-RPC server : listening on port [" + socket.getLocalPort() + "]");
+		}
+	}
+
+	/**
+	 * Stops the server and closes the open connections. Waits for the threads of the server, as the port is only
+	 * released once the accept loop has returned.
+	 */
+	public final synchronized void stop() {
+		if (this.serverSocket != null) {
+			closeQuietly(this.serverSocket);
+
+			this.connections.forEach(BinRpcServer::closeQuietly);
+			this.connections.clear();
+
+			this.executor.shutdownNow();
+
+			try {
+				if (!this.executor.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS) && logger.isLoggable(Level.WARNING)) {
+					logger.log(Level.WARNING, "BIN-RPC server : threads did not stop within [" + STOP_TIMEOUT + "] ms.");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			this.serverSocket = null;
+			this.executor = null;
+		}
+	}
+
+	/**
+	 * Returns the port the server is listening on.
+	 *
+	 * @return	The port.
+	 */
+	public final synchronized int getPort() {
+		return this.serverSocket != null ? this.serverSocket.getLocalPort() : this.port;
+	}
+
+	/**
+	 * The accept loop.
+	 *
+	 * @param 	socket				The server socket.
+	 * @param 	handler				The handler.
+	 * @param 	frameHandler		The frame handler.
+	 */
+	private final void accept(final ServerSocket socket, final RpcHandler handler, final FrameHandler frameHandler) {
+		while (!socket.isClosed()) {
+			try {
+				final Socket connection = socket.accept();
+				connection.setTcpNoDelay(true);
+
+				this.connections.add(connection);
+				this.executor.execute(() -> this.serve(connection, handler, frameHandler));
+			} catch (IOException e) {
+				if (!socket.isClosed() && logger.isLoggable(Level.WARNING)) {
+					logger.log(Level.WARNING, "BIN-RPC server : error accepting connection : [" + e.getMessage() + "]", e);
+				}
+			} catch (RuntimeException e) {
+				if (!socket.isClosed() && logger.isLoggable(Level.WARNING)) {
+					logger.log(Level.WARNING, "BIN-RPC server : cannot serve connection : [" + e.getMessage() + "]", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Serves the calls on a connection until it is closed.
+	 *
+	 * @param 	connection			The connection.
+	 * @param 	handler				The handler.
+	 * @param 	frameHandler		The frame handler.
+	 */
+	private final void serve(final Socket connection, final RpcHandler handler, final FrameHandler frameHandler) {
+		try {
+			final InputStream input = new BufferedInputStream(connection.getInputStream());
+			final OutputStream output = connection.getOutputStream();
+
+			BinRpcCodec.Frame frame;
+
+			while ((frame = BinRpcCodec.readFrame(input)) != null) {
+				byte[] response;
+
+				try {
+					response = frameHandler.handle(frame);
+
+					if (response == null) {
+						final BinRpcCodec.Request request = BinRpcCodec.decodeRequest(frame);
+
+						response = BinRpcCodec.encodeResponse(handler.call(request.getMethodName(), request.getParameters()));
+					}
+				} catch (Exception e) {
+					if (logger.isLoggable(Level.WARNING)) {
+						logger.log(Level.WARNING, "BIN-RPC server : error handling call : [" + e.getMessage() + "]", e);
+					}
+
+					response = BinRpcCodec.encodeFault(FAULT_CODE, e.getMessage());
+				}
+
+				output.write(response);
+				output.flush();
+			}
+		} catch (SocketException e) {
+			if (logger.isLoggable(Level.FINE)) {
+				logger.log(Level.FINE, "BIN-RPC server : connection closed : [" + e.getMessage() + "]", e);
+			}
+		} catch (IOException e) {
+			if (logger.isLoggable(Level.WARNING)) {
+				logger.log(Level.WARNING, "BIN-RPC server : error reading from connection : [" + e.getMessage() + "]", e);
+			}
+		} finally {
+			this.connections.remove(connection);
+
+			closeQuietly(connection);
+		}
+	}
+
+	/**
+	 * Closes the given socket, ignoring errors.
+	 *
+	 * @param 	socket		The socket.
+	 */
+	private static final void closeQuietly(final AutoCloseable socket) {
+		try {
+			socket.close();
+		} catch (Exception e) {
+			if (logger.isLoggable(Level.FINE)) {
+				logger.log(Level.FINE, "BIN-RPC server : error closing socket : [" + e.getMessage() + "]", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package be.techniquez.homeautomation.homematic.impl.rpc;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Client calling methods on the interface processes of the CCU.
+ *
+ * @author alex
+ */
+public interface RpcClient {
+
+	/**
+	 * Calls the given method.
+	 *
+	 * @param 		method				The method.
+	 * @param 		parameters			The parameters.
+	 *
+	 * @return		The value returned by the method.
+	 *
+	 * @throws 		RpcFaultException	If the CCU returns a fault.
+	 * @throws 		IOException			If an IO error occurs.
+	 */
+	Object execute(final String method, final List<?> parameters) throws IOException;
+
+	/**
+	 * Closes the connections held by the client.
+	 */
+	void close();
+}
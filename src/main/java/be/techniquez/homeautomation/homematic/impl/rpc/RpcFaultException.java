@@ -0,0 +1,38 @@
+package be.techniquez.homeautomation.homematic.impl.rpc;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the CCU answers a call with a fault.
+ *
+ * @author alex
+ */
+public final class RpcFaultException extends IOException {
+
+	/** Serial version UID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The fault code. */
+	private final int faultCode;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	faultCode		The fault code.
+	 * @param 	faultString		The fault string.
+	 */
+	public RpcFaultException(final int faultCode, final String faultString) {
+		super("Fault [" + faultCode + "] : [" + faultString + "]");
+
+		this.faultCode = faultCode;
+	}
+
+	/**
+	 * Returns the fault code.
+	 *
+	 * @return	The fault code.
+	 */
+	public final int getFaultCode() {
+		return this.faultCode;
+	}
+}
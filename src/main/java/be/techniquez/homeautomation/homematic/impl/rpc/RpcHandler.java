@@ -0,0 +1,24 @@
+package be.techniquez.homeautomation.homematic.impl.rpc;
+
+import java.util.List;
+
+/**
+ * Handles the calls received by an RPC server.
+ *
+ * @author alex
+ */
+@FunctionalInterface
+public interface RpcHandler {
+
+	/**
+	 * Called when a method call was received.
+	 *
+	 * @param 		method			The name of the method.
+	 * @param 		parameters		The parameters.
+	 *
+	 * @return		The value to return to the caller.
+	 *
+	 * @throws 		Exception		If the call fails, reported to the caller as a fault.
+	 */
+	Object call(final String method, final List<?> parameters) throws Exception;
+}
@@ -0,0 +1,55 @@
+package be.techniquez.homeautomation.homematic.impl.rpc;
+
+/**
+ * The protocols spoken by the interface processes of the CCU.
+ *
+ * @author alex
+ */
+public enum RpcProtocol {
+
+	/** XML-RPC over HTTP. */
+	XMLRPC {
+		@Override
+		public final RpcClient createClient(final String hostname, final int port) {
+			return new XmlRpcClientAdapter("http://" + hostname + ":" + port + "/");
+		}
+
+		@Override
+		public final String getCallbackURL(final String hostname, final int port) {
+			return "http://" + hostname + ":" + port;
+		}
+	},
+
+	/** The binary BIN-RPC protocol. */
+	BINRPC {
+		@Override
+		public final RpcClient createClient(final String hostname, final int port) {
+			return new BinRpcClient(hostname, port);
+		}
+
+		@Override
+		public final String getCallbackURL(final String hostname, final int port) {
+			return "xmlrpc_bin://" + hostname + ":" + port;
+		}
+	};
+
+	/**
+	 * Creates a client for the interface process at the given host and port.
+	 *
+	 * @param 		hostname		The host name.
+	 * @param 		port			The port.
+	 *
+	 * @return		The client.
+	 */
+	public abstract RpcClient createClient(final String hostname, final int port);
+
+	/**
+	 * Returns the URL passed to <code>init</code>, telling the CCU where to send the events.
+	 *
+	 * @param 		hostname		The host name of the callback server.
+	 * @param 		port			The port of the callback server.
+	 *
+	 * @return		The URL.
+	 */
+	public abstract String getCallbackURL(final String hostname, final int port);
+}
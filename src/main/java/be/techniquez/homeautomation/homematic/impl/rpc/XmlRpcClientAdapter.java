@@ -0,0 +1,53 @@
+package be.techniquez.homeautomation.homematic.impl.rpc;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.List;
+import java.util.Vector;
+
+import org.apache.xmlrpc.XmlRpcClient;
+import org.apache.xmlrpc.XmlRpcException;
+
+/**
+ * {@link RpcClient} using the Apache XML-RPC client.
+ *
+ * @author alex
+ */
+final class XmlRpcClientAdapter implements RpcClient {
+
+	/** The client. */
+	private final XmlRpcClient client;
+
+	/**
+	 * Create a new instance.
+	 *
+	 * @param 	url		The URL of the interface process.
+	 */
+	XmlRpcClientAdapter(final String url) {
+		try {
+			this.client = new XmlRpcClient(url);
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException("Invalid URL [" + url + "]", e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final Object execute(final String method, final List<?> parameters) throws IOException {
+		try {
+			return this.client.execute(method, new Vector<>(parameters));
+		} catch (XmlRpcException e) {
+			throw new RpcFaultException(e.code, e.getMessage());
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final void close() {
+		// The Apache client does not keep connections open.
+	}
+}
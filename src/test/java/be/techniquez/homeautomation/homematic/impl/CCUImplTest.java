@@ -2,26 +2,57 @@ package be.techniquez.homeautomation.homematic.impl;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import be.techniquez.homeautomation.homematic.api.Device;
 import be.techniquez.homeautomation.homematic.api.Dimmer;
+import be.techniquez.homeautomation.homematic.api.Scene;
+import be.techniquez.homeautomation.homematic.api.SceneException;
 import be.techniquez.homeautomation.homematic.api.Switch;
+import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUChannelValueHandler;
+import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUDeviceHandler;
+import be.techniquez.homeautomation.homematic.impl.device.DeviceType;
+import be.techniquez.homeautomation.homematic.impl.device.DimmerImpl;
+import be.techniquez.homeautomation.homematic.impl.device.SwitchImpl;
+import be.techniquez.homeautomation.homematic.impl.event.CallbackServerType;
+import be.techniquez.homeautomation.homematic.impl.event.SharedCallbackServer;
+import be.techniquez.homeautomation.homematic.impl.rpc.BinRpcCodec;
+import be.techniquez.homeautomation.homematic.xmlapi.state.Channel;
+import be.techniquez.homeautomation.homematic.xmlapi.state.Datapoint;
+import be.techniquez.homeautomation.homematic.xmlapi.state.State;
 
 /**
  * Tests for the {@link CCUImpl}.
@@ -136,6 +167,669 @@ public final class CCUImplTest {
 		verify(this.channel, times(1)).disconnect();
 	}
 	
+	/**
+	 * Tests that the states are loaded using a single request, falling back to separate requests for the
+	 * devices that are not covered by it.
+	 * 
+	 * @throws	Exception	If something goes wrong.
+	 */
+	@Test
+	public final void testConnectLoadsStates() throws Exception {
+		final DimmerImpl dimmer = new DimmerImpl(this.channel, "D1", "DM1", 11);
+		final DimmerImpl otherDimmer = new DimmerImpl(this.channel, "D2", "DM2", 21);
+		
+		when(this.channel.getDevices()).thenReturn(Arrays.asList(dimmer, otherDimmer));
+		when(this.channel.getAllStates()).thenReturn(Collections.singletonMap("BidCos-Wired.DM1:3.LEVEL", "0.5"));
+		when(this.channel.getState(21)).thenReturn(state(21, "BidCos-Wired.DM2:3.LEVEL", "0.25"));
+		
+		final CCUImpl ccu = new CCUImpl(this.channel);
+		ccu.connect();
+		
+		verify(this.channel, times(1)).getAllStates();
+		verify(this.channel, never()).getState(11);
+		verify(this.channel, times(1)).getState(21);
+		verify(this.channel, times(1)).statesRefreshed();
+		
+		final InOrder order = inOrder(this.channel);
+		order.verify(this.channel).getDevices();
+		order.verify(this.channel).restoreStates();
+		order.verify(this.channel).connect();
+		order.verify(this.channel).getAllStates();
+		
+		assertThat(dimmer.getDimmerValue()).isEqualTo(50);
+		assertThat(otherDimmer.getDimmerValue()).isEqualTo(25);
+		
+		ccu.refreshStates();
+		
+		verify(this.channel, times(2)).statesRefreshed();
+	}
+	
+	/**
+	 * Tests that a failed connect disposes of its devices and stops the eventing, so a retry does not pile up handlers.
+	 * 
+	 * @throws	Exception	If something goes wrong.
+	 */
+	@Test
+	public final void testConnectFailure() throws Exception {
+		final DimmerImpl dimmer = new DimmerImpl(this.channel, "D1", "DM1", 11);
+		
+		when(this.channel.getDevices()).thenReturn(Arrays.asList(dimmer));
+		when(this.channel.getAllStates()).thenThrow(new IOException("statelist.cgi"));
+		when(this.channel.getState(11)).thenThrow(new IOException("state.cgi"));
+		when(this.channel.isConnected()).thenReturn(true);
+		
+		final CCUImpl ccu = new CCUImpl(this.channel);
+		
+		try {
+			ccu.connect();
+			
+			fail("Connect should have failed.");
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage()).contains("state.cgi");
+		}
+		
+		assertThat(ccu.isConnected()).isFalse();
+		assertThat(ccu.getDimmers()).isEmpty();
+		assertThat(ccu.getDimmer("D1")).isNull();
+		
+		verify(this.channel, times(1)).removeEventHandler(eq("DM1:3"), eq("LEVEL"), any(CCUChannelValueHandler.class));
+		verify(this.channel, times(1)).disconnect();
+		
+		final DimmerImpl retried = new DimmerImpl(this.channel, "D1", "DM1", 11);
+		
+		when(this.channel.getDevices()).thenReturn(Arrays.asList(retried));
+		doReturn(Collections.singletonMap("BidCos-Wired.DM1:3.LEVEL", "0.5")).when(this.channel).getAllStates();
+		
+		ccu.connect();
+		
+		assertThat(ccu.getDimmers()).containsExactly(retried);
+		assertThat(retried.getDimmerValue()).isEqualTo(50);
+	}
+	
+	/**
+	 * Tests that the channel is disconnected when the eventing failed to start, so what it set up is released.
+	 * 
+	 * @throws	Exception	If something goes wrong.
+	 */
+	@Test
+	public final void testEventingStartFailure() throws Exception {
+		final DimmerImpl dimmer = new DimmerImpl(this.channel, "D1", "DM1", 11);
+		
+		when(this.channel.getDevices()).thenReturn(Arrays.asList(dimmer));
+		when(this.channel.isConnected()).thenReturn(false);
+		doThrow(new IOException("init")).when(this.channel).connect();
+		
+		final CCUImpl ccu = new CCUImpl(this.channel);
+		
+		try {
+			ccu.connect();
+			
+			fail("Connect should have failed.");
+		} catch (IOException e) {
+			assertThat(e.getMessage()).isEqualTo("init");
+		}
+		
+		assertThat(ccu.isConnected()).isFalse();
+		
+		verify(this.channel, never()).getAllStates();
+		verify(this.channel, times(1)).disconnect();
+	}
+	
+	/**
+	 * Tests that the channels of the same physical device share a single state request.
+	 * 
+	 * @throws	Exception	If something goes wrong.
+	 */
+	@Test
+	public final void testSiblingsShareStateRequest() throws Exception {
+		final be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device xmlDevice = new be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device();
+		xmlDevice.setAddress("SW1");
+		xmlDevice.getChannel().add(xmlChannel("O_SWITCH_1", 31));
+		xmlDevice.getChannel().add(xmlChannel("O_SWITCH_2", 32));
+		
+		final List<Device> switches = SwitchImpl.create(this.channel, xmlDevice);
+		
+		final State state = state(31, "BidCos-Wired.SW1:1.STATE", "true");
+		state.getDevice().getChannel().get(0).getDatapoint().add(datapoint("BidCos-Wired.SW1:2.STATE", "false"));
+		
+		when(this.channel.getDevices()).thenReturn(switches);
+		when(this.channel.getState(31)).thenReturn(state);
+		
+		final CCUImpl ccu = new CCUImpl(this.channel);
+		ccu.connect();
+		
+		verify(this.channel, times(1)).getState(31);
+		verify(this.channel, never()).getState(32);
+		
+		assertThat(ccu.getSwitch("O_SWITCH_1").isOn()).isTrue();
+		assertThat(ccu.getSwitch("O_SWITCH_2").isOn()).isFalse();
+	}
+	
+	/**
+	 * Tests that the datapoint names of the devices are derived from their interface.
+	 * 
+	 * @throws	Exception	If something goes wrong.
+	 */
+	@Test
+	public final void testInterfaceDatapoints() throws Exception {
+		final be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device xmlDevice = new be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device();
+		xmlDevice.setAddress("SW1");
+		xmlDevice.setInterface("BidCos-RF");
+		xmlDevice.getChannel().add(xmlChannel("O_SWITCH_1", 31));
+		
+		final Map<String, String> datapointValues = new LinkedHashMap<>();
+		datapointValues.put("BidCos-Wired.SW1:1.STATE", "false");
+		datapointValues.put("BidCos-RF.SW1:1.STATE", "true");
+		
+		final List<Device> switches = SwitchImpl.create(this.channel, xmlDevice);
+		
+		when(this.channel.getDevices()).thenReturn(switches);
+		when(this.channel.getAllStates()).thenReturn(datapointValues);
+		
+		final CCUImpl ccu = new CCUImpl(this.channel);
+		ccu.connect();
+		
+		verify(this.channel).addEventHandler(eq("SW1:1"), eq("STATE"), any(CCUChannelValueHandler.class));
+		
+		assertThat(ccu.getSwitch("O_SWITCH_1").isOn()).isTrue();
+	}
+	
+	/**
+	 * Tests that the RF and HmIP dimmers and switches are created on their first receiving channel, and reach the CCU.
+	 * 
+	 * @throws	Exception	If something goes wrong.
+	 */
+	@Test
+	public final void testRadioDeviceTypes() throws Exception {
+		final be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device rfDimmer = new be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device();
+		rfDimmer.setName("DIMMER_RF");
+		rfDimmer.setAddress("LEQ1234567");
+		rfDimmer.setInterface("BidCos-RF");
+		rfDimmer.setDeviceType("HM-LC-Dim1T-Pl-3");
+		rfDimmer.getChannel().add(xmlChannel("LEQ1234567:1", 41, "RECEIVER", 1));
+		rfDimmer.getChannel().add(xmlChannel("LEQ1234567:2", 42, "RECEIVER", 2));
+		
+		final be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device ipSwitch = new be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device();
+		ipSwitch.setName("SWITCH_IP");
+		ipSwitch.setAddress("00085A49A1B2C3");
+		ipSwitch.setInterface("HmIP-RF");
+		ipSwitch.setDeviceType("HmIP-BSM");
+		ipSwitch.getChannel().add(xmlChannel("00085A49A1B2C3:1", 51, "SENDER", 1));
+		ipSwitch.getChannel().add(xmlChannel("00085A49A1B2C3:3", 53, "SENDER", 3));
+		ipSwitch.getChannel().add(xmlChannel("00085A49A1B2C3:4", 54, "RECEIVER", 4));
+		
+		assertThat(DeviceType.forName("HM-LC-Dim1T-Pl-3")).isEqualTo(DeviceType.RF_DIMMER);
+		assertThat(DeviceType.forName("HmIP-BSM")).isEqualTo(DeviceType.HMIP_SWITCH);
+		assertThat(DeviceType.forName("HmIP-BDT")).isEqualTo(DeviceType.HMIP_DIMMER);
+		assertThat(DeviceType.forName("HM-LC-Sw1-Pl-2")).isEqualTo(DeviceType.RF_SWITCH);
+		
+		final List<Device> devices = new ArrayList<>();
+		devices.addAll(DeviceType.forName(rfDimmer.getDeviceType()).parse(rfDimmer, this.channel));
+		devices.addAll(DeviceType.forName(ipSwitch.getDeviceType()).parse(ipSwitch, this.channel));
+		
+		final Map<String, String> datapointValues = new LinkedHashMap<>();
+		datapointValues.put("BidCos-RF.LEQ1234567:1.LEVEL", "0.3");
+		datapointValues.put("HmIP-RF.00085A49A1B2C3:4.STATE", "true");
+		
+		when(this.channel.getDevices()).thenReturn(devices);
+		when(this.channel.getAllStates()).thenReturn(datapointValues);
+		
+		final CCUImpl ccu = new CCUImpl(this.channel);
+		ccu.connect();
+		
+		verify(this.channel).addEventHandler(eq("LEQ1234567:1"), eq("LEVEL"), any(CCUChannelValueHandler.class));
+		verify(this.channel).addEventHandler(eq("00085A49A1B2C3:4"), eq("STATE"), any(CCUChannelValueHandler.class));
+		
+		assertThat(ccu.getDimmer("DIMMER_RF").getDimmerValue()).isEqualTo(30);
+		assertThat(ccu.getSwitch("SWITCH_IP").isOn()).isTrue();
+	}
+	
+	/**
+	 * Tests that the devices announced and removed by the CCU are added and removed without touching the others.
+	 * 
+	 * @throws	Exception	If something goes wrong.
+	 */
+	@Test
+	public final void testDeviceChanges() throws Exception {
+		final DimmerImpl dimmer = new DimmerImpl(this.channel, "D1", "DM1", 11);
+		
+		when(this.channel.getDevices()).thenReturn(Arrays.asList(dimmer));
+		when(this.channel.getAllStates()).thenReturn(Collections.singletonMap("BidCos-Wired.DM1:3.LEVEL", "0.5"));
+		
+		final CCUImpl ccu = new CCUImpl(this.channel);
+		
+		final ArgumentCaptor<CCUDeviceHandler> handler = ArgumentCaptor.forClass(CCUDeviceHandler.class);
+		verify(this.channel).setDeviceHandler(handler.capture());
+		
+		ccu.connect();
+		
+		assertThat(handler.getValue().listDevices(null)).containsExactly("DM1", "DM1:3");
+		
+		final DimmerImpl reloaded = new DimmerImpl(this.channel, "D1", "DM1", 11);
+		final DimmerImpl added = new DimmerImpl(this.channel, "D2", "DM2", 21);
+		
+		when(this.channel.getDevices()).thenReturn(Arrays.asList(reloaded, added));
+		when(this.channel.getAllStates()).thenReturn(Collections.singletonMap("BidCos-Wired.DM2:3.LEVEL", "0.25"));
+		
+		handler.getValue().newDevices(null, Arrays.asList("DM1", "DM2", "DM2:3"));
+		handler.getValue().newDevices(null, Arrays.asList("DM2:3"));
+		handler.getValue().deleteDevices(null, Arrays.asList("DM1"));
+		
+		verify(this.channel, timeout(5000).times(2)).removeEventHandler(eq("DM1:3"), eq("LEVEL"), any(CCUChannelValueHandler.class));
+		verify(this.channel, times(2)).getDevices();
+		verify(this.channel, times(2)).getAllStates();
+		verify(this.channel, never()).removeEventHandler(eq("DM2:3"), eq("LEVEL"), any(CCUChannelValueHandler.class));
+		
+		assertThat(ccu.getDimmers()).containsExactly(added);
+		assertThat(added.getDimmerValue()).isEqualTo(25);
+		assertThat(dimmer.getDimmerValue()).isEqualTo(50);
+		assertThat(handler.getValue().listDevices(null)).containsExactly("DM2", "DM2:3");
+	}
+	
+	/**
+	 * Tests looking the devices up by name, serial number, address and ISE ID.
+	 * 
+	 * @throws	Exception	If something goes wrong.
+	 */
+	@Test
+	public final void testDeviceIndexes() throws Exception {
+		final DimmerImpl dimmer = new DimmerImpl(this.channel, "D1", "DM1", 11);
+		final DimmerImpl otherDimmer = new DimmerImpl(this.channel, "D2", "DM2", 21);
+		
+		final Map<String, String> states = new LinkedHashMap<>();
+		states.put("BidCos-Wired.DM1:3.LEVEL", "0.5");
+		states.put("BidCos-Wired.DM2:3.LEVEL", "0.25");
+		
+		when(this.channel.getDevices()).thenReturn(Arrays.asList(dimmer, otherDimmer, this.switch1));
+		when(this.channel.getAllStates()).thenReturn(states);
+		
+		final CCUImpl ccu = new CCUImpl(this.channel);
+		
+		assertThat(ccu.getDimmer("D1")).isNull();
+		
+		ccu.connect();
+		
+		assertThat(ccu.getDimmer("D2")).isSameAs(otherDimmer);
+		assertThat(ccu.getSwitch("S1")).isSameAs(this.switch1);
+		assertThat(ccu.getSwitch("D1")).isNull();
+		assertThat(ccu.getDeviceByAddress("DM1:3")).isSameAs(dimmer);
+		assertThat(ccu.getDeviceByAddress("DM1:1")).isNull();
+		assertThat(ccu.getDevicesBySerial("DM2")).containsExactly(otherDimmer);
+		assertThat(ccu.getDevicesBySerial("SW1")).containsExactly(this.switch1);
+		assertThat(ccu.getDeviceByIseId(11)).isSameAs(dimmer);
+		assertThat(ccu.getDeviceByIseId(12)).isNull();
+		
+		ccu.disconnect();
+		
+		assertThat(ccu.getDimmer("D2")).isNull();
+		assertThat(ccu.getDeviceByIseId(11)).isNull();
+		assertThat(ccu.getDevicesBySerial("DM2")).isEmpty();
+	}
+	
+	/**
+	 * Tests that the dimmer reports the percentage of a level sent over BIN-RPC, which arrives slightly below its 
+	 * decimal value.
+	 * 
+	 * @throws	Exception	If something goes wrong.
+	 */
+	@Test
+	public final void testDimmerLevelRounding() throws Exception {
+		final DimmerImpl dimmer = new DimmerImpl(this.channel, "D1", "DM1", 11);
+		
+		final ArgumentCaptor<CCUChannelValueHandler> handler = ArgumentCaptor.forClass(CCUChannelValueHandler.class);
+		verify(this.channel).addEventHandler(eq("DM1:3"), eq("LEVEL"), handler.capture());
+		
+		for (int percentage = 0; percentage <= 100; percentage++) {
+			final byte[] request = BinRpcCodec.encodeRequest("event", Arrays.asList("BidCos-Wired", "DM1:3", "LEVEL", percentage / 100.0d));
+			final double level = (Double)BinRpcCodec.decodeRequest(BinRpcCodec.readFrame(new ByteArrayInputStream(request))).getParameters().get(3);
+			
+			handler.getValue().onDouble("DM1:3", "LEVEL", level);
+			
+			assertThat(dimmer.getDimmerValue()).as("Level [" + level + "]").isEqualTo(percentage);
+		}
+		
+		handler.getValue().onString("DM1:3", "LEVEL", "0.07");
+		assertThat(dimmer.getDimmerValue()).isEqualTo(7);
+	}
+	
+	/**
+	 * Tests that the states loaded while connecting do not overwrite the events received while they were requested, both
+	 * from the single request and from the requests per device.
+	 * 
+	 * @throws	Exception	If something goes wrong.
+	 */
+	@Test
+	public final void testConnectKeepsNewerEvents() throws Exception {
+		final DimmerImpl dimmer = new DimmerImpl(this.channel, "D1", "DM1", 11);
+		final DimmerImpl otherDimmer = new DimmerImpl(this.channel, "D2", "DM2", 21);
+		
+		final ArgumentCaptor<CCUChannelValueHandler> handler = ArgumentCaptor.forClass(CCUChannelValueHandler.class);
+		verify(this.channel).addEventHandler(eq("DM1:3"), eq("LEVEL"), handler.capture());
+		
+		final ArgumentCaptor<CCUChannelValueHandler> otherHandler = ArgumentCaptor.forClass(CCUChannelValueHandler.class);
+		verify(this.channel).addEventHandler(eq("DM2:3"), eq("LEVEL"), otherHandler.capture());
+		
+		when(this.channel.getDevices()).thenReturn(Arrays.asList(dimmer, otherDimmer));
+		
+		doAnswer(invocation -> {
+			handler.getValue().onDouble("DM1:3", "LEVEL", 0.8d);
+			
+			return Collections.singletonMap("BidCos-Wired.DM1:3.LEVEL", "0.2");
+		}).when(this.channel).getAllStates();
+		
+		final State otherState = state(21, "BidCos-Wired.DM2:3.LEVEL", "0.1");
+		
+		doAnswer(invocation -> {
+			otherHandler.getValue().onDouble("DM2:3", "LEVEL", 0.6d);
+			
+			return otherState;
+		}).when(this.channel).getState(21);
+		
+		final CCUImpl ccu = new CCUImpl(this.channel);
+		ccu.connect();
+		
+		verify(this.channel).getState(21);
+		
+		assertThat(dimmer.getDimmerValue()).isEqualTo(80);
+		assertThat(otherDimmer.getDimmerValue()).isEqualTo(60);
+	}
+	
+	/**
+	 * Tests that refreshing the states does not overwrite an event received while they were requested, as the event is newer.
+	 * 
+	 * @throws	Exception	If something goes wrong.
+	 */
+	@Test
+	public final void testRefreshStatesKeepsNewerEvents() throws Exception {
+		final DimmerImpl dimmer = new DimmerImpl(this.channel, "D1", "DM1", 11);
+		
+		final ArgumentCaptor<CCUChannelValueHandler> handler = ArgumentCaptor.forClass(CCUChannelValueHandler.class);
+		verify(this.channel).addEventHandler(eq("DM1:3"), eq("LEVEL"), handler.capture());
+		
+		when(this.channel.getDevices()).thenReturn(Arrays.asList(dimmer));
+		when(this.channel.getAllStates()).thenReturn(Collections.singletonMap("BidCos-Wired.DM1:3.LEVEL", "0.5"));
+		
+		final CCUImpl ccu = new CCUImpl(this.channel);
+		ccu.connect();
+		
+		assertThat(dimmer.getDimmerValue()).isEqualTo(50);
+		
+		doAnswer(invocation -> {
+			handler.getValue().onDouble("DM1:3", "LEVEL", 0.8d);
+			
+			return Collections.singletonMap("BidCos-Wired.DM1:3.LEVEL", "0.2");
+		}).when(this.channel).getAllStates();
+		
+		ccu.refreshStates();
+		
+		assertThat(dimmer.getDimmerValue()).isEqualTo(80);
+		
+		doReturn(Collections.singletonMap("BidCos-Wired.DM1:3.LEVEL", "0.3")).when(this.channel).getAllStates();
+		
+		ccu.refreshStates();
+		
+		assertThat(dimmer.getDimmerValue()).isEqualTo(30);
+	}
+	
+	/**
+	 * Tests that refreshing the devices keeps the known ones, renames them, and only creates and retires the others.
+	 * 
+	 * @throws	Exception	If something goes wrong.
+	 */
+	@Test
+	public final void testRefresh() throws Exception {
+		final DimmerImpl dimmer = new DimmerImpl(this.channel, "D1", "DM1", 11);
+		final DimmerImpl otherDimmer = new DimmerImpl(this.channel, "D2", "DM2", 21);
+		final DimmerImpl removedDimmer = new DimmerImpl(this.channel, "D3", "DM3", 31);
+		
+		final Map<String, String> states = new LinkedHashMap<>();
+		states.put("BidCos-Wired.DM1:3.LEVEL", "0.5");
+		states.put("BidCos-Wired.DM2:3.LEVEL", "0.25");
+		states.put("BidCos-Wired.DM3:3.LEVEL", "0.0");
+		
+		when(this.channel.getDevices()).thenReturn(Arrays.asList(dimmer, otherDimmer, removedDimmer));
+		when(this.channel.getAllStates()).thenReturn(states);
+		
+		final CCUImpl ccu = new CCUImpl(this.channel);
+		ccu.connect();
+		
+		final DimmerImpl renamedDimmer = new DimmerImpl(this.channel, "Kitchen", "DM1", 11);
+		final DimmerImpl sameDimmer = new DimmerImpl(this.channel, "D2", "DM2", 21);
+		final DimmerImpl addedDimmer = new DimmerImpl(this.channel, "D4", "DM4", 41);
+		
+		when(this.channel.getDevices()).thenReturn(Arrays.asList(renamedDimmer, sameDimmer, addedDimmer));
+		when(this.channel.getAllStates()).thenReturn(Collections.singletonMap("BidCos-Wired.DM4:3.LEVEL", "0.75"));
+		
+		ccu.refresh();
+		
+		assertThat(ccu.getDimmers()).containsExactly(dimmer, otherDimmer, addedDimmer);
+		assertThat(ccu.getDimmer("Kitchen")).isSameAs(dimmer);
+		assertThat(ccu.getDimmer("D1")).isNull();
+		assertThat(ccu.getDimmer("D3")).isNull();
+		assertThat(dimmer.getName()).isEqualTo("Kitchen");
+		assertThat(dimmer.getDimmerValue()).isEqualTo(50);
+		assertThat(addedDimmer.getDimmerValue()).isEqualTo(75);
+		
+		verify(this.channel, times(1)).removeEventHandler(eq("DM3:3"), eq("LEVEL"), any(CCUChannelValueHandler.class));
+		verify(this.channel, never()).removeEventHandler(eq("DM4:3"), eq("LEVEL"), any(CCUChannelValueHandler.class));
+		verify(this.channel, times(2)).getAllStates();
+	}
+	
+	/**
+	 * Tests applying a scene.
+	 * 
+	 * @throws	Exception	If something goes wrong.
+	 */
+	@Test
+	public final void testApplyScene() throws Exception {
+		final be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device xmlDevice = new be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device();
+		xmlDevice.setAddress("SW1");
+		xmlDevice.getChannel().add(xmlChannel("O_SWITCH_1", 31));
+		xmlDevice.getChannel().add(xmlChannel("O_SWITCH_2", 32));
+		
+		final List<Device> switches = SwitchImpl.create(this.channel, xmlDevice);
+		final DimmerImpl dimmer = new DimmerImpl(this.channel, "D1", "DM1", 11);
+		
+		final Map<Integer, String> expectedValues = new LinkedHashMap<>();
+		expectedValues.put(11, "0.4");
+		expectedValues.put(31, "true");
+		expectedValues.put(32, "false");
+		
+		final Map<Integer, Boolean> changed = new LinkedHashMap<>();
+		changed.put(11, true);
+		changed.put(31, true);
+		changed.put(32, false);
+		
+		when(this.channel.setStates(expectedValues)).thenReturn(changed);
+		
+		final CCUImpl ccu = new CCUImpl(this.channel);
+		final Map<Device, Boolean> results = ccu.applyScene(Scene.builder()
+																 .dimmer(dimmer, 40)
+																 .switchState((Switch)switches.get(0), true)
+																 .switchState((Switch)switches.get(1), false)
+																 .build());
+		
+		verify(this.channel, times(1)).setStates(expectedValues);
+		
+		assertThat(results).hasSize(3)
+						   .containsEntry(dimmer, true)
+						   .containsEntry(switches.get(0), true)
+						   .containsEntry(switches.get(1), false);
+		
+		when(this.channel.setStates(Collections.singletonMap(11, "1.0"))).thenReturn(Collections.singletonMap(11, true));
+		
+		assertThat(ccu.createGroup(Arrays.asList(dimmer)).setOn(true)).containsEntry(dimmer, true);
+	}
+	
+	/**
+	 * Tests that a federation connects its CCUs in parallel, looks their devices up as one, and splits the scenes per CCU.
+	 * 
+	 * @throws	Exception	If something goes wrong.
+	 */
+	@Test
+	public final void testFederation() throws Exception {
+		final CCUChannel otherChannel = mock(CCUChannel.class);
+		final CyclicBarrier connects = new CyclicBarrier(2);
+		
+		final DimmerImpl dimmer = new DimmerImpl(this.channel, "D1", "DM1", 11);
+		final DimmerImpl otherDimmer = new DimmerImpl(otherChannel, "D1", "DM4", 41);
+		final DimmerImpl thirdDimmer = new DimmerImpl(otherChannel, "D2", "DM5", 42);
+		
+		final Map<String, String> otherStates = new LinkedHashMap<>();
+		otherStates.put("BidCos-Wired.DM4:3.LEVEL", "0.0");
+		otherStates.put("BidCos-Wired.DM5:3.LEVEL", "1.0");
+		
+		for (final CCUChannel ccuChannel : Arrays.asList(this.channel, otherChannel)) {
+			doAnswer(invocation -> connects.await(5, TimeUnit.SECONDS)).when(ccuChannel).connect();
+		}
+		
+		when(this.channel.getDevices()).thenReturn(Arrays.asList(dimmer));
+		when(this.channel.getAllStates()).thenReturn(Collections.singletonMap("BidCos-Wired.DM1:3.LEVEL", "0.5"));
+		when(this.channel.setStates(Collections.singletonMap(11, "0.4"))).thenReturn(Collections.singletonMap(11, true));
+		when(otherChannel.getDevices()).thenReturn(Arrays.asList(otherDimmer, thirdDimmer));
+		when(otherChannel.getAllStates()).thenReturn(otherStates);
+		when(otherChannel.setStates(Collections.singletonMap(41, "1.0"))).thenReturn(Collections.singletonMap(41, true));
+		
+		final CCUFederation federation = new CCUFederation(new SharedCallbackServer("127.0.0.1", 0, null, CallbackServerType.NIO));
+		federation.add("home", new CCUImpl(this.channel));
+		federation.add("office", new CCUImpl(otherChannel));
+		federation.connect();
+		
+		assertThat(federation.isConnected()).isTrue();
+		assertThat(federation.getServer().isStarted()).isTrue();
+		assertThat(federation.getDimmers()).containsExactly(dimmer, otherDimmer, thirdDimmer);
+		assertThat(federation.getDimmer("D1")).isSameAs(dimmer);
+		assertThat(federation.getDimmer("office/D1")).isSameAs(otherDimmer);
+		assertThat(federation.getDimmer("D2")).isSameAs(thirdDimmer);
+		assertThat(federation.getDimmer("home/D2")).isNull();
+		assertThat(federation.getSwitch("D1")).isNull();
+		
+		assertThat(federation.applyScene(Scene.builder().dimmer(dimmer, 40).dimmer(otherDimmer, 100).build())).containsEntry(dimmer, true)
+																											  .containsEntry(otherDimmer, true);
+		
+		verify(this.channel).setStates(Collections.singletonMap(11, "0.4"));
+		verify(otherChannel).setStates(Collections.singletonMap(41, "1.0"));
+		
+		federation.disconnect();
+		
+		assertThat(federation.isConnected()).isFalse();
+		assertThat(federation.getServer().isStarted()).isFalse();
+	}
+	
+	/**
+	 * Tests that a federation finds the CCU of a device by identity, even when devices of both CCUs share an address, and
+	 * still applies the scene on the other CCUs when one fails.
+	 * 
+	 * @throws	Exception	If something goes wrong.
+	 */
+	@Test
+	public final void testFederationSceneFailure() throws Exception {
+		final CCUChannel otherChannel = mock(CCUChannel.class);
+		
+		final DimmerImpl dimmer = new DimmerImpl(this.channel, "D1", "DM1", 11);
+		final DimmerImpl otherDimmer = new DimmerImpl(otherChannel, "D2", "DM1", 41);
+		
+		when(this.channel.getDevices()).thenReturn(Arrays.asList(dimmer));
+		when(this.channel.getAllStates()).thenReturn(Collections.singletonMap("BidCos-Wired.DM1:3.LEVEL", "0.5"));
+		when(this.channel.setStates(Collections.singletonMap(11, "0.4"))).thenThrow(new IOException("Unreachable."));
+		when(otherChannel.getDevices()).thenReturn(Arrays.asList(otherDimmer));
+		when(otherChannel.getAllStates()).thenReturn(Collections.singletonMap("BidCos-Wired.DM1:3.LEVEL", "0.0"));
+		when(otherChannel.setStates(Collections.singletonMap(41, "1.0"))).thenReturn(Collections.singletonMap(41, true));
+		
+		final CCUFederation federation = new CCUFederation(new SharedCallbackServer("127.0.0.1", 0, null, CallbackServerType.NIO));
+		federation.add("home", new CCUImpl(this.channel));
+		federation.add("office", new CCUImpl(otherChannel));
+		federation.connect();
+		
+		try {
+			federation.applyScene(Scene.builder().dimmer(dimmer, 40).dimmer(otherDimmer, 100).build());
+			
+			fail("The scene should not be applied on all CCUs.");
+		} catch (SceneException e) {
+			assertThat(e.getCause()).hasMessage("Unreachable.");
+			assertThat(e.getResults()).containsEntry(dimmer, false)
+									  .containsEntry(otherDimmer, true);
+		} finally {
+			federation.disconnect();
+		}
+		
+		verify(this.channel).setStates(Collections.singletonMap(11, "0.4"));
+		verify(otherChannel).setStates(Collections.singletonMap(41, "1.0"));
+	}
+	
+	/**
+	 * Creates a device list channel.
+	 * 
+	 * @param 		name		The name of the channel.
+	 * @param 		iseId		The ISE ID of the channel.
+	 * 
+	 * @return		The channel.
+	 */
+	private static final be.techniquez.homeautomation.homematic.xmlapi.devicelist.Channel xmlChannel(final String name, final int iseId) {
+		final be.techniquez.homeautomation.homematic.xmlapi.devicelist.Channel channel = new be.techniquez.homeautomation.homematic.xmlapi.devicelist.Channel();
+		channel.setName(name);
+		channel.setIseId(BigInteger.valueOf(iseId));
+		
+		return channel;
+	}
+	
+	/**
+	 * Creates a device list channel with its direction and index.
+	 * 
+	 * @param 		name			The name of the channel.
+	 * @param 		iseId			The ISE ID of the channel.
+	 * @param 		direction		The direction, <code>SENDER</code> or <code>RECEIVER</code>.
+	 * @param 		index			The index of the channel in its device.
+	 * 
+	 * @return		The channel.
+	 */
+	private static final be.techniquez.homeautomation.homematic.xmlapi.devicelist.Channel xmlChannel(final String name, final int iseId, final String direction, final int index) {
+		final be.techniquez.homeautomation.homematic.xmlapi.devicelist.Channel channel = xmlChannel(name, iseId);
+		channel.setDirection(direction);
+		channel.setIndex(BigInteger.valueOf(index));
+		
+		return channel;
+	}
+	
+	/**
+	 * Creates a datapoint.
+	 * 
+	 * @param 		name		The name of the datapoint.
+	 * @param 		value		The value of the datapoint.
+	 * 
+	 * @return		The datapoint.
+	 */
+	private static final Datapoint datapoint(final String name, final String value) {
+		final Datapoint datapoint = new Datapoint();
+		datapoint.setName(name);
+		datapoint.setValue(value);
+		
+		return datapoint;
+	}
+	
+	/**
+	 * Creates a state containing a single datapoint.
+	 * 
+	 * @param 		channelId		The ID of the channel.
+	 * @param 		datapointName	The name of the datapoint.
+	 * @param 		value			The value of the datapoint.
+	 * 
+	 * @return		The state.
+	 */
+	private static final State state(final int channelId, final String datapointName, final String value) {
+		final Channel channel = new Channel();
+		channel.setIseId(BigInteger.valueOf(channelId));
+		channel.getDatapoint().add(datapoint(datapointName, value));
+		
+		final be.techniquez.homeautomation.homematic.xmlapi.state.Device device = new be.techniquez.homeautomation.homematic.xmlapi.state.Device();
+		device.getChannel().add(channel);
+		
+		final State state = new State();
+		state.setDevice(device);
+		
+		return state;
+	}
+	
 	/**
 	 * Check that the connect and disconnect are thread safe. Just in case.
 	 */
@@ -1,11 +1,381 @@
 package be.techniquez.homeautomation.homematic.impl.channel;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import be.techniquez.homeautomation.homematic.impl.CCUEventLoop;
+import be.techniquez.homeautomation.homematic.impl.rpc.BinRpcServer;
+import be.techniquez.homeautomation.homematic.impl.rpc.RpcClient;
+import be.techniquez.homeautomation.homematic.impl.rpc.RpcProtocol;
+import be.techniquez.homeautomation.homematic.xmlapi.state.State;
+
 /**
  * Tests for the {@link CCUChannelImpl}.
- * 
+ *
  * @author alex
  */
 public final class CCUChannelImplTest {
 
-	
+	/** The XML API context. */
+	private static final String CONTEXT = "/addons/xmlapi/";
+
+	/** The stub server. */
+	private HttpServer server;
+
+	/** The executor used by the stub server. */
+	private ExecutorService serverExecutor;
+
+	/** The responses, per CGI. */
+	private final Map<String, byte[]> responses = new ConcurrentHashMap<>();
+
+	/** The queries received. */
+	private final List<String> queries = new CopyOnWriteArrayList<>();
+
+	/** The remote ports the requests came from. */
+	private final Set<Integer> remotePorts = ConcurrentHashMap.newKeySet();
+
+	/** The number of requests in flight. */
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	/** The maximum number of requests in flight. */
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+
+	/** The time the stub server takes to answer. */
+	private volatile long responseDelay;
+
+	/**
+	 * Starts the stub server.
+	 */
+	@Before
+	public final void beforeTest() throws Exception {
+		this.responses.put("state.cgi", resource("/state-dimmer.xml"));
+		this.responses.put("statechange.cgi", resource("/result-state-change.xml"));
+		this.responses.put("statelist.cgi", resource("/statelist.xml"));
+
+		this.serverExecutor = Executors.newCachedThreadPool();
+
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.createContext(CONTEXT, this::handle);
+		this.server.setExecutor(this.serverExecutor);
+		this.server.start();
+	}
+
+	/**
+	 * Stops the stub server.
+	 */
+	@After
+	public final void afterTest() throws Exception {
+		this.server.stop(0);
+		this.serverExecutor.shutdownNow();
+	}
+
+	/**
+	 * Tests getting the state.
+	 */
+	@Test
+	public final void testGetState() throws Exception {
+		final State state = this.createChannel(new HttpTransport()).getState(1487);
+
+		assertThat(state.getDevice().getName()).isEqualTo("DIMMER_BUREAU");
+		assertThat(this.queries).containsExactly("channel_id=1487");
+	}
+
+	/**
+	 * Tests getting all the states, using both parsers.
+	 */
+	@Test
+	public final void testGetAllStates() throws Exception {
+		for (final ParserType parserType : ParserType.values()) {
+			final CCUChannelImpl channel = new CCUChannelImpl("127.0.0.1", this.server.getAddress().getPort(), 2000, parserType, new HttpTransport());
+			final Map<String, String> states = channel.getAllStates();
+
+			assertThat(states).hasSize(5)
+							  .containsEntry("BidCos-Wired.JEQ0545914:3.LEVEL", "0.700000")
+							  .containsEntry("BidCos-Wired.JEQ0270307:14.STATE", "true")
+							  .containsEntry("BidCos-Wired.JEQ0270307:15.STATE", "false");
+		}
+
+		assertThat(this.queries).hasSize(2);
+	}
+
+	/**
+	 * Tests setting the state.
+	 */
+	@Test
+	public final void testSetState() throws Exception {
+		this.createChannel(new HttpTransport()).setState(1682, "false");
+
+		assertThat(this.queries).containsExactly("ise_id=1682&new_value=false");
+	}
+
+	/**
+	 * Tests that the connections are bounded and reused.
+	 */
+	@Test
+	public final void testConnectionsBoundedAndReused() throws Exception {
+		this.responseDelay = 20;
+
+		final CCUChannelImpl channel = this.createChannel(new HttpTransport(2, 1000, 5000));
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		try {
+			final List<Future<State>> results = new ArrayList<>();
+
+			for (int i = 0; i < 40; i++) {
+				results.add(executor.submit(() -> channel.getState(1487)));
+			}
+
+			for (final Future<State> result : results) {
+				assertThat(result.get().getDevice().getIseId().intValue()).isEqualTo(1465);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(this.queries).hasSize(40);
+		assertThat(this.maxInFlight.get()).isLessThanOrEqualTo(2);
+		assertThat(this.remotePorts.size()).isLessThanOrEqualTo(2);
+	}
+
+	/**
+	 * Tests setting multiple states in a single request.
+	 */
+	@Test
+	public final void testSetStates() throws Exception {
+		this.responses.put("statechange.cgi", resource("/result-state-change-multiple.xml"));
+
+		final Map<Integer, String> newValues = new LinkedHashMap<>();
+		newValues.put(1487, "0.4");
+		newValues.put(1560, "true");
+		newValues.put(9999, "false");
+
+		final Map<Integer, Boolean> changed = this.createChannel(new HttpTransport()).setStates(newValues);
+
+		assertThat(this.queries).containsExactly("ise_id=1487,1560,9999&new_value=0.4,true,false");
+		assertThat(changed).hasSize(3)
+						   .containsEntry(1487, true)
+						   .containsEntry(1560, true)
+						   .containsEntry(9999, false);
+	}
+
+	/**
+	 * Tests the asynchronous requests.
+	 */
+	@Test
+	public final void testAsyncRequests() throws Exception {
+		this.responseDelay = 50;
+
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+		try {
+			final CCUChannelImpl channel = new CCUChannelImpl("127.0.0.1", this.server.getAddress().getPort(), 2000, ParserType.JAXB, new HttpTransport(), executor);
+
+			final CompletableFuture<Void> setState = channel.setStateAsync(1682, "false");
+			final CompletableFuture<State> getState = channel.getStateAsync(1487);
+
+			assertThat(setState.isDone()).isFalse();
+			assertThat(getState.isDone()).isFalse();
+
+			CompletableFuture.allOf(setState, getState).get(5, TimeUnit.SECONDS);
+
+			assertThat(getState.get().getDevice().getName()).isEqualTo("DIMMER_BUREAU");
+			assertThat(this.queries).containsOnly("ise_id=1682&new_value=false", "channel_id=1487");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Tests that a failing asynchronous request completes exceptionally.
+	 */
+	@Test
+	public final void testAsyncRequestFailure() throws Exception {
+		this.responses.remove("state.cgi");
+
+		final CompletableFuture<State> state = this.createChannel(new HttpTransport()).getStateAsync(1487);
+
+		try {
+			state.get(5, TimeUnit.SECONDS);
+
+			fail("Expected the request to fail.");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+		}
+	}
+
+	/**
+	 * Tests that state changes within the coalescing window are coalesced.
+	 */
+	@Test
+	public final void testCoalescing() throws Exception {
+		final CCUChannelImpl channel = this.createChannel(new HttpTransport());
+		channel.setCoalescingWindow(200, TimeUnit.MILLISECONDS);
+
+		final List<CompletableFuture<Void>> results = new ArrayList<>();
+
+		for (int i = 0; i <= 10; i++) {
+			results.add(channel.setStateAsync(1682, String.valueOf(i / 10.0)));
+		}
+
+		results.add(channel.setStateAsync(1683, "true"));
+
+		assertThat(results.get(0).isDone()).isTrue();
+		assertThat(results.get(10).isDone()).isFalse();
+
+		CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[results.size()])).get(5, TimeUnit.SECONDS);
+
+		assertThat(this.queries).containsOnly("ise_id=1682&new_value=1.0", "ise_id=1683&new_value=true");
+		assertThat(channel.getCoalescedCommands()).isEqualTo(10);
+		assertThat(channel.getSentCommands()).isEqualTo(2);
+
+		channel.setState(1682, "0.5");
+
+		assertThat(this.queries).hasSize(3).contains("ise_id=1682&new_value=0.5");
+	}
+
+	/**
+	 * Tests the read timeout.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public final void testReadTimeout() throws Exception {
+		this.responseDelay = 1000;
+
+		this.createChannel(new HttpTransport(1, 1000, 100)).getState(1487);
+	}
+
+	/**
+	 * Tests an HTTP error.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public final void testHttpError() throws Exception {
+		this.responses.remove("state.cgi");
+
+		this.createChannel(new HttpTransport()).getState(1487);
+	}
+
+	/**
+	 * Tests setting and reading values over BIN-RPC, against an in-process stand-in for the interface process.
+	 */
+	@Test
+	public final void testValuesOverBinRpc() throws Exception {
+		final Map<String, Object> values = new ConcurrentHashMap<>();
+		final BinRpcServer interfaceProcess = new BinRpcServer(0);
+
+		interfaceProcess.start((method, parameters) -> {
+			final String key = parameters.get(0) + "/" + parameters.get(1);
+
+			if (method.equals("setValue")) {
+				values.put(key, parameters.get(2));
+
+				return "";
+			}
+
+			return values.get(key);
+		});
+
+		try {
+			final RpcClient client = RpcProtocol.BINRPC.createClient("127.0.0.1", interfaceProcess.getPort());
+			final CCUChannelImpl channel = new CCUChannelImpl("127.0.0.1", this.server.getAddress().getPort(), mock(CCUEventLoop.class), client, ParserType.JAXB, new HttpTransport(), Runnable::run);
+
+			channel.setValue("ABC0000001:3", "LEVEL", 0.5d);
+			channel.setValue("ABC0000001:4", "STATE", true);
+
+			assertThat(channel.getValue("ABC0000001:3", "LEVEL")).isEqualTo(0.5d);
+			assertThat(channel.getValue("ABC0000001:4", "STATE")).isEqualTo(true);
+			assertThat(channel.getSentValues()).isEqualTo(2);
+			assertThat(channel.getSentCommands()).isEqualTo(0);
+
+			channel.disconnect();
+		} finally {
+			interfaceProcess.stop();
+		}
+	}
+
+	/**
+	 * Creates a channel towards the stub server.
+	 *
+	 * @param 		transport		The transport to use.
+	 *
+	 * @return		The channel.
+	 */
+	private final CCUChannelImpl createChannel(final HttpTransport transport) {
+		return new CCUChannelImpl("127.0.0.1", this.server.getAddress().getPort(), 2000, ParserType.JAXB, transport);
+	}
+
+	/**
+	 * Handles a request on the stub server.
+	 *
+	 * @param 	exchange		The exchange.
+	 */
+	private final void handle(final HttpExchange exchange) throws IOException {
+		final int current = this.inFlight.incrementAndGet();
+		this.maxInFlight.accumulateAndGet(current, Math::max);
+
+		try {
+			this.queries.add(exchange.getRequestURI().getQuery());
+			this.remotePorts.add(exchange.getRemoteAddress().getPort());
+
+			if (this.responseDelay > 0) {
+				Thread.sleep(this.responseDelay);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			this.inFlight.decrementAndGet();
+		}
+
+		final String cgi = exchange.getRequestURI().getPath().substring(CONTEXT.length());
+		final byte[] response = this.responses.get(cgi);
+
+		if (response == null) {
+			exchange.sendResponseHeaders(404, -1);
+		} else {
+			exchange.sendResponseHeaders(200, response.length);
+
+			try (final OutputStream stream = exchange.getResponseBody()) {
+				stream.write(response);
+			}
+		}
+
+		exchange.close();
+	}
+
+	/**
+	 * Reads a test resource.
+	 *
+	 * @param 		name		The name of the resource.
+	 *
+	 * @return		The contents of the resource.
+	 */
+	private static final byte[] resource(final String name) throws Exception {
+		return Files.readAllBytes(Paths.get(CCUChannelImplTest.class.getResource(name).toURI()));
+	}
 }
@@ -0,0 +1,109 @@
+package be.techniquez.homeautomation.homematic.impl.channel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import be.techniquez.homeautomation.homematic.xmlapi.devicelist.DeviceList;
+import be.techniquez.homeautomation.homematic.xmlapi.state.Channel;
+import be.techniquez.homeautomation.homematic.xmlapi.state.Datapoint;
+import be.techniquez.homeautomation.homematic.xmlapi.state.Result;
+import be.techniquez.homeautomation.homematic.xmlapi.state.State;
+
+/**
+ * Tests for the {@link StAXResponseParser}.
+ *
+ * @author alex
+ */
+public final class StAXResponseParserTest {
+
+	/**
+	 * Tests that the device list only contains the supported devices.
+	 */
+	@Test
+	public final void testParseDeviceList() throws Exception {
+		final DeviceList all = parse(ParserType.JAXB.createParser(), "/devicelist.xml", DeviceList.class);
+		final DeviceList supported = parse(ParserType.STAX.createParser(), "/devicelist.xml", DeviceList.class);
+
+		assertThat(supported.getDevice()).isNotEmpty();
+		assertThat(supported.getDevice().size()).isLessThan(all.getDevice().size());
+		assertThat(supported.getDevice().stream().map(device -> device.getDeviceType()).collect(Collectors.toSet()))
+				.containsOnly("HMW-LC-Dim1L-DR", "HMW-IO-12-Sw7-DR", "HM-LC-Dim1T-Pl-3", "HmIP-BSM");
+
+		final be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device expected = findDevice(all, "DIMMER_BUREAU");
+		final be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device actual = findDevice(supported, "DIMMER_BUREAU");
+
+		assertThat(actual.getAddress()).isEqualTo(expected.getAddress());
+		assertThat(actual.getIseId()).isEqualTo(expected.getIseId());
+		assertThat(actual.getChannel()).hasSameSizeAs(expected.getChannel());
+
+		for (int i = 0; i < expected.getChannel().size(); i++) {
+			assertThat(actual.getChannel().get(i).getName()).isEqualTo(expected.getChannel().get(i).getName());
+			assertThat(actual.getChannel().get(i).getIseId()).isEqualTo(expected.getChannel().get(i).getIseId());
+			assertThat(actual.getChannel().get(i).getDirection()).isEqualTo(expected.getChannel().get(i).getDirection());
+		}
+	}
+
+	/**
+	 * Tests parsing a state.
+	 */
+	@Test
+	public final void testParseState() throws Exception {
+		final State state = parse(ParserType.STAX.createParser(), "/state-dimmer.xml", State.class);
+
+		assertThat(state.getDevice().getIseId().intValue()).isEqualTo(1465);
+		assertThat(state.getDevice().getChannel()).hasSize(4);
+
+		final Channel channel = state.getDevice().getChannel().get(3);
+		final Datapoint datapoint = channel.getDatapoint().get(0);
+
+		assertThat(channel.getIseId().intValue()).isEqualTo(1487);
+		assertThat(datapoint.getName()).isEqualTo("BidCos-Wired.JEQ0545914:3.LEVEL");
+		assertThat(datapoint.getValue()).isEqualTo("0.700000");
+	}
+
+	/**
+	 * Tests parsing a result.
+	 */
+	@Test
+	public final void testParseResult() throws Exception {
+		final Result result = parse(ParserType.STAX.createParser(), "/result-state-change.xml", Result.class);
+
+		assertThat(result.getChanged()).hasSize(1);
+		assertThat(result.getChanged().get(0).getId().intValue()).isEqualTo(1682);
+		assertThat(result.getChanged().get(0).getNewValue()).isEqualTo("false");
+	}
+
+	/**
+	 * Finds the device with the given name.
+	 *
+	 * @param 		deviceList		The device list.
+	 * @param 		name			The name of the device.
+	 *
+	 * @return		The device.
+	 */
+	private static final be.techniquez.homeautomation.homematic.xmlapi.devicelist.Device findDevice(final DeviceList deviceList, final String name) {
+		return deviceList.getDevice().stream()
+									 .filter(device -> device.getName().equals(name))
+									 .findFirst()
+									 .get();
+	}
+
+	/**
+	 * Parses the given resource.
+	 *
+	 * @param 		parser			The parser.
+	 * @param 		resource		The resource.
+	 * @param 		responseType	The type of the response.
+	 *
+	 * @return		The parsed response.
+	 */
+	private static final <T> T parse(final ResponseParser parser, final String resource, final Class<T> responseType) throws Exception {
+		try (final InputStream stream = StAXResponseParserTest.class.getResourceAsStream(resource)) {
+			return parser.parse(stream, responseType);
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package be.techniquez.homeautomation.homematic.impl.channel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import be.techniquez.homeautomation.homematic.xmlapi.devicelist.DeviceList;
+import be.techniquez.homeautomation.homematic.xmlapi.state.Result;
+import be.techniquez.homeautomation.homematic.xmlapi.state.State;
+
+/**
+ * Tests for the {@link UnmarshallerPool}.
+ *
+ * @author alex
+ */
+public final class UnmarshallerPoolTest {
+
+	/**
+	 * Tests that the context is only created once per package.
+	 */
+	@Test
+	public final void testContextIsShared() throws Exception {
+		assertThat(UnmarshallerPool.getContext(State.class.getPackage().getName()))
+				.isSameAs(UnmarshallerPool.getContext(Result.class.getPackage().getName()));
+
+		assertThat(UnmarshallerPool.getContext(State.class.getPackage().getName()))
+				.isNotSameAs(UnmarshallerPool.getContext(DeviceList.class.getPackage().getName()));
+	}
+
+	/**
+	 * Tests unmarshalling the different response types.
+	 */
+	@Test
+	public final void testUnmarshal() throws Exception {
+		final UnmarshallerPool pool = new UnmarshallerPool();
+
+		try (final InputStream stream = UnmarshallerPoolTest.class.getResourceAsStream("/state-dimmer.xml")) {
+			final State state = pool.unmarshal(stream, State.class);
+
+			assertThat(state.getDevice().getName()).isEqualTo("DIMMER_BUREAU");
+			assertThat(state.getDevice().getChannel()).hasSize(4);
+		}
+
+		try (final InputStream stream = UnmarshallerPoolTest.class.getResourceAsStream("/result-state-change.xml")) {
+			assertThat(pool.unmarshal(stream, Result.class).getChanged().get(0).getId().intValue()).isEqualTo(1682);
+		}
+
+		try (final InputStream stream = UnmarshallerPoolTest.class.getResourceAsStream("/devicelist.xml")) {
+			assertThat(pool.unmarshal(stream, DeviceList.class).getDevice()).isNotEmpty();
+		}
+	}
+
+	/**
+	 * Tests concurrent use of the pool.
+	 */
+	@Test
+	public final void testConcurrentUnmarshal() throws Exception {
+		final UnmarshallerPool pool = new UnmarshallerPool();
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try {
+			final List<Future<State>> results = new ArrayList<>();
+
+			for (int i = 0; i < 100; i++) {
+				results.add(executor.submit((Callable<State>)() -> {
+					try (final InputStream stream = UnmarshallerPoolTest.class.getResourceAsStream("/state-dimmer.xml")) {
+						return pool.unmarshal(stream, State.class);
+					}
+				}));
+			}
+
+			for (final Future<State> result : results) {
+				assertThat(result.get().getDevice().getIseId().intValue()).isEqualTo(1465);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -1,9 +1,552 @@
 package be.techniquez.homeautomation.homematic.impl.event;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUChannelEventHandler;
+import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUDeviceHandler;
+import be.techniquez.homeautomation.homematic.impl.CCUInterface;
+import be.techniquez.homeautomation.homematic.impl.rpc.RpcClient;
+import be.techniquez.homeautomation.homematic.impl.rpc.RpcProtocol;
+
 /**
  * Tests for {@link CCUEventingImpl}.
- * 
+ *
  * @author alex
  */
 public final class CCUEventingImplTest {
+
+	/** Stands in for the interface process of the CCU. */
+	private NioCallbackServer ccu;
+
+	/** The eventing. */
+	private CCUEventingImpl eventing;
+
+	/** The callback URL the stand-in knows, <code>null</code> if it lost it. */
+	private final AtomicReference<String> registered = new AtomicReference<>();
+
+	/** The number of calls to <code>init</code>. */
+	private final AtomicInteger inits = new AtomicInteger();
+
+	/** The number of calls to <code>init</code> that still have to fail. */
+	private final AtomicInteger failingInits = new AtomicInteger();
+
+	/** The pooled events of the stand-in. */
+	private final EventPool pool = new EventPool(new EventHandlerRegistry());
+
+	/** Drops the events sent to the stand-in. */
+	private final EventSink standInSink = new EventSink() {
+		@Override
+		public final CCUEvent acquireEvent() {
+			return pool.acquire();
+		}
+
+		@Override
+		public final boolean isInterested(final CCUEvent event) {
+			return false;
+		}
+
+		@Override
+		public final void eventReceived(final CCUEvent event) {
+			event.release();
+		}
+	};
+
+	/**
+	 * Starts the stand-in.
+	 */
+	@Before
+	public final void startCCU() throws Exception {
+		this.ccu = new NioCallbackServer(0);
+		this.ccu.start(this::call, this.standInSink);
+	}
+
+	/**
+	 * Stops the eventing and the stand-in.
+	 */
+	@After
+	public final void stopCCU() throws Exception {
+		if (this.eventing != null && this.eventing.isStarted()) {
+			this.eventing.stop();
+		}
+
+		this.ccu.stop();
+	}
+
+	/**
+	 * Tests that the callback is registered again when the CCU restarted, and the states resynchronized.
+	 */
+	@Test
+	public final void testWatchdog() throws Exception {
+		final CountDownLatch resynced = new CountDownLatch(1);
+
+		this.eventing = new CCUEventingImpl("127.0.0.1", this.ccu.getPort(), 1, CallbackServerType.NIO);
+		this.eventing.setWatchdog(50, 300, TimeUnit.MILLISECONDS);
+		this.eventing.setResyncHandler(resynced::countDown);
+		this.eventing.start();
+
+		Thread.sleep(500);
+
+		assertThat(this.inits.get()).isEqualTo(1);
+		assertThat(this.eventing.getReinits()).isEqualTo(0);
+
+		this.failingInits.set(2);
+		this.registered.set(null);
+
+		assertThat(resynced.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(this.inits.get()).isEqualTo(4);
+		assertThat(this.eventing.getReinits()).isEqualTo(1);
+		assertThat(this.registered.get()).isNotNull();
+	}
+
+	/**
+	 * Tests that a failed start releases the callback server and the client, so starting again registers again.
+	 */
+	@Test
+	public final void testStartFailure() throws Exception {
+		this.eventing = new CCUEventingImpl("127.0.0.1", this.ccu.getPort(), 1, CallbackServerType.NIO);
+		this.failingInits.set(1);
+
+		try {
+			this.eventing.start();
+
+			fail("Start should have failed.");
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage()).contains("Restarting.");
+		}
+
+		assertThat(this.eventing.isStarted()).isFalse();
+		assertThat(this.registered.get()).isNull();
+
+		this.eventing.start();
+
+		assertThat(this.eventing.isStarted()).isTrue();
+		assertThat(this.inits.get()).isEqualTo(2);
+		assertThat(this.registered.get()).isNotNull();
+	}
+
+	/**
+	 * Tests that the journaled states are only replayed before the eventing is started.
+	 */
+	@Test
+	public final void testRestoreStates() throws Exception {
+		final Path file = Files.createTempFile("journal", ".hmj");
+
+		try {
+			final EventJournal journal = new EventJournal(file, 4096);
+			final CCUEvent event = this.pool.acquire();
+			event.setAddress("ABC0000001:1");
+			event.setAttribute("LEVEL");
+			event.setDouble(0.5d);
+			journal.append(event);
+			journal.close();
+
+			final List<String> received = new CopyOnWriteArrayList<>();
+
+			this.eventing = new CCUEventingImpl("127.0.0.1", this.ccu.getPort(), 1, CallbackServerType.NIO);
+			this.eventing.setJournal(file);
+			this.eventing.addEventHandler("ABC0000001:1", (CCUChannelEventHandler)(address, attribute, value) -> received.add(attribute + " " + value));
+
+			assertThat(this.eventing.restoreStates()).isEqualTo(1);
+			assertThat(received).containsExactly("LEVEL 0.5");
+
+			this.eventing.start();
+
+			assertThat(this.eventing.restoreStates()).isEqualTo(0);
+			assertThat(received).containsExactly("LEVEL 0.5");
+
+			this.eventing.stop();
+			this.eventing.setJournal(null);
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".1"));
+		}
+	}
+
+	/**
+	 * Tests that the devices added and removed by the CCU are passed on, and listed back to it.
+	 */
+	@Test
+	public final void testDeviceCallbacks() throws Exception {
+		final List<String> known = new ArrayList<>(Arrays.asList("ABC0000001", "ABC0000001:1"));
+		final List<String> deleted = new ArrayList<>();
+
+		this.eventing = new CCUEventingImpl("127.0.0.1", this.ccu.getPort(), 1, CallbackServerType.NIO);
+		this.eventing.setDeviceHandler(new CCUDeviceHandler() {
+			@Override
+			public final List<String> listDevices(final String interfaceName) {
+				return known;
+			}
+
+			@Override
+			public final void newDevices(final String interfaceName, final List<String> addresses) {
+				known.addAll(addresses);
+			}
+
+			@Override
+			public final void deleteDevices(final String interfaceName, final List<String> addresses) {
+				deleted.addAll(addresses);
+			}
+		});
+		this.eventing.start();
+
+		final RpcClient client = RpcProtocol.XMLRPC.createClient("127.0.0.1", 20001);
+
+		try {
+			client.execute("newDevices", Arrays.asList("HomeMaticDriver", new Vector<>(Arrays.asList(description("ABC0000002", 7), description("ABC0000002:1", 7)))));
+
+			assertThat(known).containsExactly("ABC0000001", "ABC0000001:1", "ABC0000002", "ABC0000002:1");
+
+			@SuppressWarnings("unchecked")
+			final List<Map<Object, Object>> descriptions = (List<Map<Object, Object>>)client.execute("listDevices", Arrays.asList("HomeMaticDriver"));
+
+			assertThat(descriptions).hasSize(4);
+			assertThat(descriptions.get(0)).containsOnlyKeys("ADDRESS").containsEntry("ADDRESS", "ABC0000001");
+			assertThat(descriptions.get(2)).containsEntry("ADDRESS", "ABC0000002").containsEntry("VERSION", 7);
+
+			client.execute("deleteDevices", Arrays.asList("HomeMaticDriver", new Vector<>(Arrays.asList("ABC0000001"))));
+
+			assertThat(deleted).containsExactly("ABC0000001");
+		} finally {
+			client.close();
+		}
+	}
+
+	/**
+	 * Tests that several interface processes are registered with in parallel, each with its own interface ID, and
+	 * that their callbacks are told apart.
+	 */
+	@Test
+	public final void testMultipleInterfaces() throws Exception {
+		final CyclicBarrier registrations = new CyclicBarrier(2);
+		final Set<String> interfaceIds = ConcurrentHashMap.newKeySet();
+		final AtomicInteger deinits = new AtomicInteger();
+		final List<String> listingInterfaces = new CopyOnWriteArrayList<>();
+		final CountDownLatch received = new CountDownLatch(1);
+
+		final NioCallbackServer wired = new NioCallbackServer(0);
+		final NioCallbackServer rf = new NioCallbackServer(0);
+
+		wired.start((method, parameters) -> register(method, parameters, registrations, interfaceIds, deinits), this.standInSink);
+		rf.start((method, parameters) -> register(method, parameters, registrations, interfaceIds, deinits), this.standInSink);
+
+		try {
+			final Map<CCUInterface, Integer> ports = new EnumMap<>(CCUInterface.class);
+			ports.put(CCUInterface.BIDCOS_WIRED, wired.getPort());
+			ports.put(CCUInterface.BIDCOS_RF, rf.getPort());
+
+			this.eventing = new CCUEventingImpl("127.0.0.1", ports, 1, CallbackServerType.NIO);
+			this.eventing.addEventHandler("ABC0000003:1", (CCUChannelEventHandler)(address, attribute, value) -> received.countDown());
+			this.eventing.setDeviceHandler(new CCUDeviceHandler() {
+				@Override
+				public final List<String> listDevices(final String interfaceName) {
+					listingInterfaces.add(interfaceName);
+
+					return new ArrayList<>();
+				}
+
+				@Override
+				public final void newDevices(final String interfaceName, final List<String> addresses) {
+				}
+
+				@Override
+				public final void deleteDevices(final String interfaceName, final List<String> addresses) {
+				}
+			});
+			this.eventing.start();
+
+			assertThat(interfaceIds).containsOnly("HomeMaticDriver-BidCos-Wired", "HomeMaticDriver-BidCos-RF");
+
+			final RpcClient client = RpcProtocol.XMLRPC.createClient("127.0.0.1", 20001);
+
+			try {
+				client.execute("listDevices", Arrays.asList("HomeMaticDriver-BidCos-RF"));
+				client.execute("listDevices", Arrays.asList("Unknown"));
+				client.execute("event", Arrays.asList("HomeMaticDriver-BidCos-RF", "ABC0000003:1", "STATE", true));
+			} finally {
+				client.close();
+			}
+
+			assertThat(listingInterfaces).containsExactly("BidCos-RF");
+			assertThat(received.await(5, TimeUnit.SECONDS)).isTrue();
+
+			this.eventing.stop();
+
+			assertThat(deinits.get()).isEqualTo(2);
+		} finally {
+			wired.stop();
+			rf.stop();
+		}
+	}
+
+	/**
+	 * Tests that when one interface process cannot be registered with, the others are unregistered from again and the
+	 * next start registers with all of them.
+	 */
+	@Test
+	public final void testMultipleInterfacesFailure() throws Exception {
+		final Set<String> interfaceIds = ConcurrentHashMap.newKeySet();
+		final AtomicInteger wiredDeinits = new AtomicInteger();
+		final AtomicInteger failingRfInits = new AtomicInteger(1);
+
+		final NioCallbackServer wired = new NioCallbackServer(0);
+		final NioCallbackServer rf = new NioCallbackServer(0);
+
+		wired.start((method, parameters) -> {
+			if ("init".equals(method)) {
+				if (parameters.get(1).toString().isEmpty()) {
+					wiredDeinits.incrementAndGet();
+				} else {
+					interfaceIds.add(parameters.get(1).toString());
+				}
+			}
+
+			return "";
+		}, this.standInSink);
+		rf.start((method, parameters) -> {
+			if ("init".equals(method) && !parameters.get(1).toString().isEmpty()) {
+				if (failingRfInits.getAndDecrement() > 0) {
+					throw new IllegalStateException("Restarting.");
+				}
+
+				interfaceIds.add(parameters.get(1).toString());
+			}
+
+			return "";
+		}, this.standInSink);
+
+		try {
+			final Map<CCUInterface, Integer> ports = new EnumMap<>(CCUInterface.class);
+			ports.put(CCUInterface.BIDCOS_WIRED, wired.getPort());
+			ports.put(CCUInterface.BIDCOS_RF, rf.getPort());
+
+			this.eventing = new CCUEventingImpl("127.0.0.1", ports, 1, CallbackServerType.NIO);
+
+			try {
+				this.eventing.start();
+
+				fail("Start should have failed.");
+			} catch (IllegalStateException e) {
+				assertThat(e.getMessage()).contains("Restarting.");
+			}
+
+			assertThat(this.eventing.isStarted()).isFalse();
+			assertThat(interfaceIds).containsOnly("HomeMaticDriver-BidCos-Wired");
+			assertThat(wiredDeinits.get()).isEqualTo(1);
+
+			interfaceIds.clear();
+
+			this.eventing.start();
+
+			assertThat(this.eventing.isStarted()).isTrue();
+			assertThat(interfaceIds).containsOnly("HomeMaticDriver-BidCos-Wired", "HomeMaticDriver-BidCos-RF");
+
+			this.eventing.stop();
+
+			assertThat(wiredDeinits.get()).isEqualTo(2);
+		} finally {
+			wired.stop();
+			rf.stop();
+		}
+	}
+
+	/**
+	 * Tests that the eventing of two CCUs share one callback server, which routes the callbacks using their interface IDs.
+	 */
+	@Test
+	public final void testSharedServer() throws Exception {
+		final Map<String, String> callbackURLs = new ConcurrentHashMap<>();
+		final AtomicInteger homeEvents = new AtomicInteger();
+		final CountDownLatch officeEvent = new CountDownLatch(1);
+		final List<String> listings = new CopyOnWriteArrayList<>();
+		
+		final NioCallbackServer office = new NioCallbackServer(0);
+		office.start(this::registerURL, this.standInSink);
+		
+		this.ccu.stop();
+		this.ccu = new NioCallbackServer(0);
+		this.ccu.start((method, parameters) -> "init".equals(method) ? callbackURLs.put(parameters.get(1).toString(), parameters.get(0).toString()) : "", this.standInSink);
+		
+		final SharedCallbackServer server = new SharedCallbackServer("127.0.0.1", 0, "127.0.0.1", CallbackServerType.NIO);
+		final CCUEventingImpl home = new CCUEventingImpl("127.0.0.1", "home", Collections.singletonMap(CCUInterface.BIDCOS_RF, this.ccu.getPort()), 1, server);
+		final CCUEventingImpl other = new CCUEventingImpl("127.0.0.1", "office", Collections.singletonMap(CCUInterface.BIDCOS_RF, office.getPort()), 1, server);
+		
+		try {
+			home.addEventHandler("ABC0000003:1", (CCUChannelEventHandler)(address, attribute, value) -> homeEvents.incrementAndGet());
+			home.setDeviceHandler(new CCUDeviceHandler() {
+				@Override
+				public final List<String> listDevices(final String interfaceName) {
+					listings.add(interfaceName);
+					
+					return new ArrayList<>();
+				}
+				
+				@Override
+				public final void newDevices(final String interfaceName, final List<String> addresses) {
+				}
+				
+				@Override
+				public final void deleteDevices(final String interfaceName, final List<String> addresses) {
+				}
+			});
+			other.addEventHandler("ABC0000003:1", (CCUChannelEventHandler)(address, attribute, value) -> officeEvent.countDown());
+			
+			home.start();
+			other.start();
+			
+			assertThat(server.isStarted()).isTrue();
+			assertThat(callbackURLs).containsOnlyKeys("HomeMaticDriver-home-BidCos-RF")
+									.containsValue("http://127.0.0.1:" + server.getPort());
+			
+			final RpcClient client = RpcProtocol.XMLRPC.createClient("127.0.0.1", server.getPort());
+			
+			try {
+				client.execute("event", Arrays.asList("HomeMaticDriver-office-BidCos-RF", "ABC0000003:1", "STATE", true));
+				client.execute("listDevices", Arrays.asList("HomeMaticDriver-home-BidCos-RF"));
+				client.execute("listDevices", Arrays.asList("HomeMaticDriver-office-BidCos-RF"));
+			} finally {
+				client.close();
+			}
+			
+			assertThat(officeEvent.await(5, TimeUnit.SECONDS)).isTrue();
+			assertThat(homeEvents.get()).isEqualTo(0);
+			assertThat(listings).containsExactly("BidCos-RF");
+			
+			home.stop();
+			
+			assertThat(server.isStarted()).isTrue();
+		} finally {
+			if (other.isStarted()) {
+				other.stop();
+			}
+			
+			server.stop();
+			office.stop();
+		}
+	}
+	
+	/**
+	 * Handles a call to a stand-in interface process that only accepts registrations.
+	 *
+	 * @param 		method			The method.
+	 * @param 		parameters		The parameters.
+	 *
+	 * @return		The result.
+	 */
+	private final Object registerURL(final String method, final List<?> parameters) {
+		if ("init".equals(method)) {
+			this.registered.set(parameters.get(0).toString());
+		}
+		
+		return "";
+	}
+	
+	/**
+	 * Handles a call to a stand-in interface process. A registration waits for the other one, so it only succeeds if
+	 * both are registered with in parallel.
+	 *
+	 * @param 		method				The method.
+	 * @param 		parameters			The parameters.
+	 * @param 		registrations		Awaited by the registrations.
+	 * @param 		interfaceIds		The interface IDs registered.
+	 * @param 		deinits				The number of registrations removed.
+	 *
+	 * @return		The result.
+	 */
+	private static final Object register(final String method, final List<?> parameters, final CyclicBarrier registrations, final Set<String> interfaceIds, final AtomicInteger deinits) throws Exception {
+		if ("init".equals(method)) {
+			final String interfaceId = parameters.get(1).toString();
+
+			if (interfaceId.isEmpty()) {
+				deinits.incrementAndGet();
+			} else {
+				registrations.await(5, TimeUnit.SECONDS);
+				interfaceIds.add(interfaceId);
+			}
+		}
+
+		return "";
+	}
+
+	/**
+	 * Returns a device description, as a {@link Hashtable} for the XML-RPC client.
+	 * 
+	 * @param 		address		The address.
+	 * @param 		version		The version.
+	 * 
+	 * @return		The description.
+	 */
+	private static final Hashtable<String, Object> description(final String address, final int version) {
+		final Hashtable<String, Object> description = new Hashtable<>();
+		description.put("ADDRESS", address);
+		description.put("VERSION", version);
+
+		return description;
+	}
+
+	/**
+	 * Handles a call to the stand-in.
+	 *
+	 * @param 		method			The method.
+	 * @param 		parameters		The parameters.
+	 *
+	 * @return		The result.
+	 */
+	private final Object call(final String method, final List<?> parameters) throws Exception {
+		switch (method) {
+			case "init":
+				this.inits.incrementAndGet();
+
+				if (this.failingInits.getAndDecrement() > 0) {
+					throw new IllegalStateException("Restarting.");
+				}
+
+				this.registered.set(parameters.get(1).toString().isEmpty() ? null : parameters.get(0).toString());
+
+				return "";
+
+			case "ping":
+				final String url = this.registered.get();
+
+				if (url != null) {
+					final URI uri = URI.create(url);
+					final RpcClient client = RpcProtocol.XMLRPC.createClient(uri.getHost(), uri.getPort());
+
+					try {
+						client.execute("event", Arrays.asList(parameters.get(0), "CENTRAL", "PONG", parameters.get(0)));
+					} finally {
+						client.close();
+					}
+				}
+
+				return true;
+
+			default:
+				return "";
+		}
+	}
 }
@@ -0,0 +1,140 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUChannelEventHandler;
+
+/**
+ * Tests for the {@link ChangeFilter}.
+ *
+ * @author alex
+ */
+public final class ChangeFilterTest {
+
+	/** The registry. */
+	private final EventHandlerRegistry registry = new EventHandlerRegistry();
+
+	/** The pooled events. */
+	private final EventPool pool = new EventPool(this.registry);
+
+	/**
+	 * Tests that repeated values are dropped, per datapoint.
+	 */
+	@Test
+	public final void testDuplicates() {
+		final ChangeFilter filter = new ChangeFilter(0);
+		final List<String> received = this.receive(filter);
+
+		this.send("ABC0000001:1", "STATE", true);
+		this.send("ABC0000001:1", "STATE", true);
+		this.send("ABC0000001:1", "WORKING", true);
+		this.send("ABC0000001:2", "STATE", true);
+		this.send("ABC0000001:1", "STATE", false);
+		this.send("ABC0000001:1", "WORKING", true);
+
+		assertThat(received).containsExactly("ABC0000001:1 STATE true", "ABC0000001:1 WORKING true", "ABC0000001:2 STATE true", "ABC0000001:1 STATE false");
+		assertThat(filter.getSuppressedEvents()).isEqualTo(2);
+	}
+
+	/**
+	 * Tests the minimum delta of levels, bounds are always passed on.
+	 */
+	@Test
+	public final void testLevelDelta() {
+		final ChangeFilter filter = new ChangeFilter(0.05d);
+		final List<String> received = this.receive(filter);
+
+		this.send("ABC0000001:3", "LEVEL", 0.5d);
+		this.send("ABC0000001:3", "LEVEL", 0.52d);
+		this.send("ABC0000001:3", "LEVEL", 0.56d);
+		this.send("ABC0000001:3", "LEVEL", 0.98d);
+		this.send("ABC0000001:3", "LEVEL", 1.0d);
+		this.send("ABC0000001:3", "LEVEL", 1.0d);
+
+		assertThat(received).containsExactly("ABC0000001:3 LEVEL 0.5", "ABC0000001:3 LEVEL 0.56", "ABC0000001:3 LEVEL 0.98", "ABC0000001:3 LEVEL 1.0");
+		assertThat(filter.getSuppressedEvents()).isEqualTo(2);
+	}
+
+	/**
+	 * Tests that the last level dropped during a ramp is passed on when the ramp ends, and that the minimum delta
+	 * only applies while ramping.
+	 */
+	@Test
+	public final void testTrailingLevel() {
+		final ChangeFilter filter = new ChangeFilter(0.05d);
+		final List<String> received = this.receive(filter);
+
+		assertThat(filter.isInterested("ABC0000001:3", "WORKING")).isFalse();
+
+		this.send("ABC0000001:3", "LEVEL", 0.5d);
+
+		assertThat(filter.isInterested("ABC0000001:3", "WORKING")).isTrue();
+		assertThat(filter.isInterested("ABC0000001:3", "STATE")).isFalse();
+		assertThat(filter.isInterested("ABC0000001:4", "WORKING")).isFalse();
+
+		this.send("ABC0000001:3", "WORKING", true);
+		this.send("ABC0000001:3", "LEVEL", 0.52d);
+		this.send("ABC0000001:3", "LEVEL", 0.53d);
+		this.send("ABC0000001:3", "WORKING", false);
+		this.send("ABC0000001:3", "LEVEL", 0.53d);
+		this.send("ABC0000001:3", "LEVEL", 0.54d);
+
+		assertThat(received).containsExactly("ABC0000001:3 LEVEL 0.5", "ABC0000001:3 WORKING true", "ABC0000001:3 WORKING false",
+											 "ABC0000001:3 LEVEL 0.53", "ABC0000001:3 LEVEL 0.54");
+	}
+
+	/**
+	 * Tests that a cleared filter passes on the values it passed on before, as the states were set in another way.
+	 */
+	@Test
+	public final void testClear() {
+		final ChangeFilter filter = new ChangeFilter(0.05d);
+		final List<String> received = this.receive(filter);
+
+		this.send("ABC0000001:3", "LEVEL", 1.0d);
+		this.send("ABC0000001:3", "LEVEL", 1.0d);
+
+		filter.clear();
+
+		this.send("ABC0000001:3", "LEVEL", 1.0d);
+
+		assertThat(received).containsExactly("ABC0000001:3 LEVEL 1.0", "ABC0000001:3 LEVEL 1.0");
+		assertThat(filter.getSuppressedEvents()).isEqualTo(1);
+	}
+
+	/**
+	 * Registers the filter and a handler collecting the events.
+	 *
+	 * @param 		filter		The filter.
+	 *
+	 * @return		The events received by the handler.
+	 */
+	private final List<String> receive(final ChangeFilter filter) {
+		final List<String> received = new ArrayList<>();
+
+		this.registry.setChangeFilter(filter);
+		this.registry.add((CCUChannelEventHandler)(address, attribute, value) -> received.add(address + " " + attribute + " " + value));
+
+		return received;
+	}
+
+	/**
+	 * Sends an event.
+	 *
+	 * @param 	address			The address.
+	 * @param 	attribute		The attribute.
+	 * @param 	value			The value.
+	 */
+	private final void send(final String address, final String attribute, final Object value) {
+		final CCUEvent event = this.pool.acquire();
+		event.setAddress(address);
+		event.setAttribute(attribute);
+		event.setValue(value);
+		event.run();
+	}
+}
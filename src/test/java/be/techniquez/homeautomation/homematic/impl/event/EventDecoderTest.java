@@ -0,0 +1,267 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import be.techniquez.homeautomation.homematic.impl.rpc.BinRpcCodec;
+
+/**
+ * Tests for the {@link XmlRpcEventDecoder} and the {@link BinRpcEventDecoder}.
+ *
+ * @author alex
+ */
+public final class EventDecoderTest {
+
+	/** The pooled events. */
+	private final EventPool pool = new EventPool(new EventHandlerRegistry());
+
+	/** The events received. */
+	private final List<CCUEvent> events = new ArrayList<>();
+
+	/** The attribute nobody is interested in, <code>null</code> if none. */
+	private String ignoredAttribute;
+
+	/** The sink collecting the events. */
+	private final EventSink sink = new EventSink() {
+		@Override
+		public final CCUEvent acquireEvent() {
+			return pool.acquire();
+		}
+
+		@Override
+		public final boolean isInterested(final CCUEvent event) {
+			return !event.getAttribute().equals(ignoredAttribute);
+		}
+
+		@Override
+		public final void eventReceived(final CCUEvent event) {
+			events.add(event);
+		}
+	};
+
+	/**
+	 * Tests decoding an XML-RPC multicall.
+	 */
+	@Test
+	public final void testXmlRpcMulticall() throws Exception {
+		final byte[] bytes = xmlMulticall();
+		final XmlRpcEventDecoder decoder = new XmlRpcEventDecoder(this.sink);
+
+		assertThat(decoder.decode(bytes, 0, bytes.length)).isTrue();
+		assertThat(decoder.isMulticall()).isTrue();
+		assertThat(decoder.getCalls()).isEqualTo(5);
+
+		this.assertEvents();
+	}
+
+	/**
+	 * Tests that the XML-RPC decoder leaves other calls to the generic decoder.
+	 */
+	@Test
+	public final void testXmlRpcOtherCall() throws Exception {
+		final byte[] bytes = "<methodCall><methodName>listDevices</methodName><params/></methodCall>".getBytes(StandardCharsets.UTF_8);
+
+		assertThat(new XmlRpcEventDecoder(this.sink).decode(bytes, 0, bytes.length)).isFalse();
+		assertThat(this.events).isEmpty();
+	}
+
+	/**
+	 * Tests decoding a BIN-RPC multicall.
+	 */
+	@Test
+	public final void testBinRpcMulticall() throws Exception {
+		final BinRpcEventDecoder decoder = new BinRpcEventDecoder(this.sink);
+
+		assertThat(decoder.decode(binMulticall())).isTrue();
+		assertThat(decoder.isMulticall()).isTrue();
+		assertThat(decoder.getCalls()).isEqualTo(5);
+
+		this.assertEvents();
+	}
+
+	/**
+	 * Tests that BIN-RPC levels decode close to their decimal value, as their 30 bit mantissa cannot hold them exactly.
+	 */
+	@Test
+	public final void testBinRpcDoublePrecision() throws Exception {
+		final List<Object> calls = Arrays.asList(binCall("event", Arrays.asList("BidCos-RF", "ABC0000001:1", "LEVEL", 0.3d)),
+												 binCall("event", Arrays.asList("BidCos-RF", "ABC0000002:1", "LEVEL", 0.07d)));
+		final byte[] request = BinRpcCodec.encodeRequest("system.multicall", Arrays.asList(calls));
+
+		assertThat(new BinRpcEventDecoder(this.sink).decode(BinRpcCodec.readFrame(new ByteArrayInputStream(request)).getBody())).isTrue();
+		assertThat(this.events).hasSize(2);
+
+		assertThat(this.events.get(0).getDouble()).isCloseTo(0.3d, within(1e-8d)).isLessThan(0.3d);
+		assertThat(this.events.get(1).getDouble()).isCloseTo(0.07d, within(1e-8d)).isLessThan(0.07d);
+	}
+
+	/**
+	 * Tests that the BIN-RPC decoder leaves other calls to the generic decoder.
+	 */
+	@Test
+	public final void testBinRpcOtherCall() throws Exception {
+		final byte[] request = BinRpcCodec.encodeRequest("listDevices", Arrays.asList("BidCos-RF"));
+
+		assertThat(new BinRpcEventDecoder(this.sink).decode(BinRpcCodec.readFrame(new ByteArrayInputStream(request)).getBody())).isFalse();
+		assertThat(this.events).isEmpty();
+	}
+
+	/**
+	 * Tests that multicalls containing other calls are left to the generic decoder, without passing on their events.
+	 */
+	@Test
+	public final void testMulticallWithOtherCalls() throws Exception {
+		final byte[] bytes = ("<?xml version=\"1.0\"?><methodCall><methodName>system.multicall</methodName><params><param><value><array><data>"
+				+ xmlCall("event", "<value>BidCos-RF</value><value>ABC0000001:1</value><value>LEVEL</value><value><double>0.25</double></value>")
+				+ xmlCall("newDevices", "<value>BidCos-RF</value><value><array><data/></array></value>")
+				+ "</data></array></value></param></params></methodCall>").getBytes(StandardCharsets.UTF_8);
+		
+		final List<Object> calls = Arrays.asList(binCall("event", Arrays.asList("BidCos-RF", "ABC0000001:1", "LEVEL", 0.25d)),
+												 binCall("newDevices", Arrays.asList("BidCos-RF", new ArrayList<>())));
+		final ByteBuffer body = BinRpcCodec.readFrame(new ByteArrayInputStream(BinRpcCodec.encodeRequest("system.multicall", Arrays.asList(calls)))).getBody();
+		
+		final XmlRpcEventDecoder xmlDecoder = new XmlRpcEventDecoder(this.sink);
+		final BinRpcEventDecoder binDecoder = new BinRpcEventDecoder(this.sink);
+		
+		assertThat(xmlDecoder.decode(bytes, 0, bytes.length)).isFalse();
+		assertThat(xmlDecoder.isMulticall()).isFalse();
+		assertThat(binDecoder.decode(body)).isFalse();
+		assertThat(binDecoder.isMulticall()).isFalse();
+		
+		assertThat(this.events).isEmpty();
+		assertThat(this.pool.getFreeEvents()).isEqualTo(2);
+	}
+
+	/**
+	 * Tests that events nobody is interested in are not passed on, and go back to the pool.
+	 */
+	@Test
+	public final void testUninterestingEvents() throws Exception {
+		this.ignoredAttribute = "NAME";
+
+		final byte[] bytes = xmlMulticall();
+
+		assertThat(new XmlRpcEventDecoder(this.sink).decode(bytes, 0, bytes.length)).isTrue();
+		assertThat(new BinRpcEventDecoder(this.sink).decode(binMulticall())).isTrue();
+
+		assertThat(this.events).extracting(CCUEvent::getAttribute).containsExactly("LEVEL", "STATE", "ERROR", "LEVEL", "STATE", "ERROR");
+		assertThat(this.pool.getFreeEvents()).isEqualTo(1);
+	}
+
+	/**
+	 * Tests that released events are reused.
+	 */
+	@Test
+	public final void testPool() {
+		final CCUEvent event = this.pool.acquire();
+		event.setInterfaceId("BidCos-RF");
+		event.setAddress("ABC0000001:1");
+		event.setInteger(1);
+		event.release();
+
+		assertThat(this.pool.getFreeEvents()).isEqualTo(1);
+		assertThat(this.pool.acquire()).isSameAs(event);
+		assertThat(event.getInterfaceId()).isNull();
+		assertThat(event.getAddress()).isNull();
+		assertThat(event.getType()).isNull();
+	}
+
+	/**
+	 * Checks the events decoded from the multicalls of the tests.
+	 */
+	private final void assertEvents() {
+		assertThat(this.events).hasSize(4);
+
+		assertThat(this.events.get(0).getInterfaceId()).isEqualTo("BidCos-RF");
+		assertThat(this.events.get(0).getAddress()).isEqualTo("ABC0000001:1");
+		assertThat(this.events.get(0).getAttribute()).isEqualTo("LEVEL");
+		assertThat(this.events.get(0).getType()).isEqualTo(CCUEvent.ValueType.DOUBLE);
+		assertThat(this.events.get(0).getDouble()).isEqualTo(0.25d);
+		assertThat(this.events.get(0).getValueAsString()).isEqualTo("0.25");
+
+		assertThat(this.events.get(1).getInterfaceId()).isSameAs(this.events.get(0).getInterfaceId());
+		assertThat(this.events.get(1).getAddress()).isSameAs(this.events.get(0).getAddress());
+		assertThat(this.events.get(1).getType()).isEqualTo(CCUEvent.ValueType.BOOLEAN);
+		assertThat(this.events.get(1).getValueAsString()).isEqualTo("true");
+
+		assertThat(this.events.get(2).getAddress()).isEqualTo("ABC0000002:1");
+		assertThat(this.events.get(2).getType()).isEqualTo(CCUEvent.ValueType.INTEGER);
+		assertThat(this.events.get(2).getInteger()).isEqualTo(-3);
+
+		assertThat(this.events.get(3).getType()).isEqualTo(CCUEvent.ValueType.STRING);
+		assertThat(this.events.get(3).getValueAsString()).isEqualTo("a & b");
+	}
+
+	/**
+	 * Returns the XML-RPC multicall decoded in the tests.
+	 *
+	 * @return		The multicall.
+	 */
+	private static final byte[] xmlMulticall() {
+		return ("<?xml version=\"1.0\"?><methodCall><methodName>system.multicall</methodName><params><param><value><array><data>"
+				+ xmlCall("event", "<value>BidCos-RF</value><value>ABC0000001:1</value><value>LEVEL</value><value><double>0.25</double></value>")
+				+ xmlCall("event", "<value>BidCos-RF</value><value>ABC0000001:1</value><value><string>STATE</string></value><value><boolean>1</boolean></value>")
+				+ xmlCall("event", "<value>BidCos-RF</value><value>ABC0000001:1</value>")
+				+ "<value><struct><member><name>params</name><value><array><data><value>BidCos-RF</value><value>ABC0000002:1</value>"
+				+ "<value>ERROR</value><value><i4>-3</i4></value></data></array></value></member>"
+				+ "<member><name>methodName</name><value>event</value></member></struct></value>"
+				+ xmlCall("event", "<value>BidCos-RF</value><value>ABC0000002:1</value><value>NAME</value><value>a &amp; b</value>")
+				+ "</data></array></value></param></params></methodCall>").getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the body of the BIN-RPC multicall decoded in the tests.
+	 *
+	 * @return		The body of the multicall.
+	 */
+	private static final ByteBuffer binMulticall() throws IOException {
+		final List<Object> calls = Arrays.asList(binCall("event", Arrays.asList("BidCos-RF", "ABC0000001:1", "LEVEL", 0.25d)),
+												 binCall("event", Arrays.asList("BidCos-RF", "ABC0000001:1", "STATE", true)),
+												 binCall("event", Arrays.asList("BidCos-RF", "ABC0000001:1")),
+												 binCall("event", Arrays.asList("BidCos-RF", "ABC0000002:1", "ERROR", -3)),
+												 binCall("event", Arrays.asList("BidCos-RF", "ABC0000002:1", "NAME", "a & b")));
+
+		return BinRpcCodec.readFrame(new ByteArrayInputStream(BinRpcCodec.encodeRequest("system.multicall", Arrays.asList(calls)))).getBody();
+	}
+
+	/**
+	 * Returns an XML-RPC multicall call.
+	 *
+	 * @param 		method			The method.
+	 * @param 		parameters		The encoded parameters.
+	 *
+	 * @return		The call.
+	 */
+	private static final String xmlCall(final String method, final String parameters) {
+		return "<value><struct><member><name>methodName</name><value>" + method + "</value></member>"
+				+ "<member><name>params</name><value><array><data>" + parameters + "</data></array></value></member></struct></value>";
+	}
+
+	/**
+	 * Returns a BIN-RPC multicall call.
+	 *
+	 * @param 		method			The method.
+	 * @param 		parameters		The parameters.
+	 *
+	 * @return		The call.
+	 */
+	private static final Map<String, Object> binCall(final String method, final List<?> parameters) {
+		final Map<String, Object> call = new HashMap<>();
+		call.put("methodName", method);
+		call.put("params", parameters);
+
+		return call;
+	}
+}
@@ -0,0 +1,258 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUChannelEventHandler;
+import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUChannelValueHandler;
+
+/**
+ * Tests for the {@link EventHandlerRegistry}.
+ *
+ * @author alex
+ */
+public final class EventHandlerRegistryTest {
+
+	/** The number of events dispatched per round when measuring the dispatch cost. */
+	private static final int EVENTS_PER_ROUND = 200_000;
+
+	/** The number of rounds when measuring the dispatch cost, the fastest one is kept. */
+	private static final int ROUNDS = 7;
+
+	/** The number of devices sending events when measuring the dispatch cost. */
+	private static final int ACTIVE_DEVICES = 10;
+
+	/** The registry. */
+	private final EventHandlerRegistry registry = new EventHandlerRegistry();
+
+	/** The pooled events. */
+	private final EventPool pool = new EventPool(this.registry);
+
+	/**
+	 * Tests that events only reach the handlers of their address, and all global handlers.
+	 */
+	@Test
+	public final void testDispatchByAddress() {
+		final List<String> first = new ArrayList<>();
+		final List<String> second = new ArrayList<>();
+		final List<String> global = new ArrayList<>();
+
+		this.registry.add("ABC0000001:1", (CCUChannelEventHandler)(address, attribute, value) -> first.add(value));
+		this.registry.add("ABC0000001:2", (CCUChannelEventHandler)(address, attribute, value) -> second.add(value));
+		this.registry.add((CCUChannelEventHandler)(address, attribute, value) -> global.add(address));
+
+		this.dispatch("ABC0000001:1", "LEVEL", 0.5d);
+		this.dispatch("ABC0000001:3", "LEVEL", 1.0d);
+
+		assertThat(first).containsExactly("0.5");
+		assertThat(second).isEmpty();
+		assertThat(global).containsExactly("ABC0000001:1", "ABC0000001:3");
+		assertThat(this.pool.getFreeEvents()).isEqualTo(1);
+	}
+
+	/**
+	 * Tests that the change filter of the registry drops the events before they reach any handler.
+	 */
+	@Test
+	public final void testDispatchFiltered() {
+		final List<String> received = new ArrayList<>();
+
+		this.registry.setChangeFilter(new ChangeFilter(0));
+		this.registry.add("ABC0000001:1", (CCUChannelEventHandler)(address, attribute, value) -> received.add(attribute + " " + value));
+
+		this.dispatch("ABC0000001:1", "STATE", true);
+		this.dispatch("ABC0000001:1", "STATE", true);
+		this.dispatch("ABC0000001:1", "STATE", false);
+
+		assertThat(received).containsExactly("STATE true", "STATE false");
+		assertThat(this.registry.getChangeFilter().getSuppressedEvents()).isEqualTo(1);
+	}
+
+	/**
+	 * Tests handlers registered for an attribute of an address pattern, and the interest they express.
+	 */
+	@Test
+	public final void testPatterns() {
+		final List<String> received = new ArrayList<>();
+		final CCUChannelEventHandler handler = (address, attribute, value) -> received.add(address + " " + value);
+
+		this.registry.add("ABC0000001:*", "STATE", handler);
+
+		assertThat(this.registry.isInterested("ABC0000001:1", "STATE")).isTrue();
+		assertThat(this.registry.isInterested("ABC0000001:1", "WORKING")).isFalse();
+		assertThat(this.registry.isInterested("ABC0000002:1", "STATE")).isFalse();
+
+		this.dispatch("ABC0000001:1", "STATE", true);
+		this.dispatch("ABC0000001:2", "WORKING", false);
+		this.dispatch("ABC0000002:1", "STATE", false);
+
+		this.registry.add("ABC0000002:1", "STATE", handler);
+		this.dispatch("ABC0000002:1", "STATE", true);
+
+		this.registry.remove("ABC0000001:*", "STATE", handler);
+
+		assertThat(this.registry.isInterested("ABC0000001:1", "STATE")).isFalse();
+		assertThat(received).containsExactly("ABC0000001:1 true", "ABC0000002:1 true");
+		assertThat(this.registry.size()).isEqualTo(1);
+	}
+
+	/**
+	 * Tests removing handlers.
+	 */
+	@Test
+	public final void testRemove() {
+		final List<String> received = new ArrayList<>();
+		final CCUChannelEventHandler handler = (address, attribute, value) -> received.add(value);
+
+		this.registry.add("ABC0000001:1", handler);
+		this.registry.add(handler);
+
+		assertThat(this.registry.size()).isEqualTo(2);
+
+		this.registry.remove("ABC0000001:1", handler);
+		this.registry.remove(handler);
+
+		this.dispatch("ABC0000001:1", "LEVEL", 0.5d);
+
+		assertThat(received).isEmpty();
+		assertThat(this.registry.size()).isEqualTo(0);
+	}
+
+	/**
+	 * Tests that pooled events reach typed handlers with the type of their value, and string handlers formatted.
+	 */
+	@Test
+	public final void testTypedDispatch() {
+		final List<String> typed = new ArrayList<>();
+		final List<String> strings = new ArrayList<>();
+
+		this.registry.add("ABC0000001:1", new CCUChannelValueHandler() {
+			@Override
+			public final void onBoolean(final String address, final String attribute, final boolean value) {
+				typed.add("boolean " + value);
+			}
+
+			@Override
+			public final void onInt(final String address, final String attribute, final int value) {
+				typed.add("int " + value);
+			}
+
+			@Override
+			public final void onDouble(final String address, final String attribute, final double value) {
+				typed.add("double " + value);
+			}
+
+			@Override
+			public final void onString(final String address, final String attribute, final String value) {
+				typed.add("string " + value);
+			}
+		});
+
+		this.registry.add((CCUChannelEventHandler)(address, attribute, value) -> strings.add(value));
+
+		this.dispatch("ABC0000001:1", "LEVEL", 0.5d);
+		this.dispatch("ABC0000001:1", "STATE", true);
+		this.dispatch("ABC0000001:1", "ERROR", 3);
+		this.dispatch("ABC0000001:1", "NAME", "a & b");
+
+		assertThat(typed).containsExactly("double 0.5", "boolean true", "int 3", "string a & b");
+		assertThat(strings).containsExactly("0.5", "true", "3", "a & b");
+	}
+
+	/**
+	 * Measures the cost of dispatching an event with 10 and with 10,000 devices registered, the way the CCU
+	 * registers them : a handler per address, with the change filter enabled. The events come from the same number of
+	 * devices in both cases, so only the number of handlers differs. As handlers are looked up by address, the cost
+	 * should stay flat. Both are measured twice, so the first one does not pay for the warm up alone. The bound is
+	 * loose, so a busy machine does not fail the test.
+	 */
+	@Test
+	public final void testDispatchCostIsFlat() {
+		double small = Double.MAX_VALUE;
+		double large = Double.MAX_VALUE;
+
+		for (int i = 0; i < 2; i++) {
+			small = Math.min(small, measureDispatch(10));
+			large = Math.min(large, measureDispatch(10_000));
+		}
+
+		assertThat(large).as("Dispatch cost : [" + small + "] ns with 10 devices, [" + large + "] ns with 10,000 devices.")
+						 .isLessThan(small * 5);
+	}
+
+	/**
+	 * Measures the cost of dispatching an event with the given number of devices, each having a handler. The events
+	 * come from {@link #ACTIVE_DEVICES} of them, spread over all devices.
+	 *
+	 * @param 		devices		The number of devices.
+	 *
+	 * @return		The cost of a dispatch, in nanoseconds, in the fastest round.
+	 */
+	private static final double measureDispatch(final int devices) {
+		final EventHandlerRegistry registry = new EventHandlerRegistry();
+		final EventPool pool = new EventPool(registry);
+		final String[] addresses = new String[ACTIVE_DEVICES];
+		final long[] received = new long[1];
+
+		registry.setChangeFilter(new ChangeFilter(0));
+
+		for (int i = 0; i < devices; i++) {
+			final String address = String.format("ABC%07d:1", i);
+
+			if (i % (devices / ACTIVE_DEVICES) == 0) {
+				addresses[i / (devices / ACTIVE_DEVICES)] = address;
+			}
+
+			registry.add(address, "LEVEL", new CCUChannelEventHandler() {
+				@Override
+				public final void eventReceived(final String address, final String attribute, final String value) {
+					received[0]++;
+				}
+
+				@Override
+				public final void onDouble(final String address, final String attribute, final double value) {
+					received[0]++;
+				}
+			});
+		}
+
+		long fastest = Long.MAX_VALUE;
+
+		for (int round = 0; round < ROUNDS; round++) {
+			final long start = System.nanoTime();
+
+			for (int i = 0; i < EVENTS_PER_ROUND; i++) {
+				final CCUEvent event = pool.acquire();
+				event.setAddress(addresses[i % ACTIVE_DEVICES]);
+				event.setAttribute("LEVEL");
+				event.setDouble((i / ACTIVE_DEVICES) % 2);
+				event.run();
+			}
+
+			fastest = Math.min(fastest, System.nanoTime() - start);
+		}
+
+		assertThat(received[0]).isEqualTo((long)ROUNDS * EVENTS_PER_ROUND);
+
+		return (double)fastest / EVENTS_PER_ROUND;
+	}
+
+	/**
+	 * Dispatches an event the way the dispatch lanes do, through a pooled event.
+	 *
+	 * @param 	address			The address.
+	 * @param 	attribute		The attribute.
+	 * @param 	value			The value.
+	 */
+	private final void dispatch(final String address, final String attribute, final Object value) {
+		final CCUEvent event = this.pool.acquire();
+		event.setAddress(address);
+		event.setAttribute(attribute);
+		event.setValue(value);
+		event.run();
+	}
+}
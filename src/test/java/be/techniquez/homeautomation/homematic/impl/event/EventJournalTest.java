@@ -0,0 +1,305 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link EventJournal}.
+ *
+ * @author alex
+ */
+public final class EventJournalTest {
+
+	/** The pooled events. */
+	private final EventPool pool = new EventPool(new EventHandlerRegistry());
+
+	/** The journal file. */
+	private Path file;
+
+	/**
+	 * Creates the journal file.
+	 */
+	@Before
+	public final void createFile() throws Exception {
+		this.file = Files.createTempFile("journal", ".hmj");
+	}
+
+	/**
+	 * Deletes the journal file.
+	 */
+	@After
+	public final void deleteFile() throws Exception {
+		Files.deleteIfExists(this.file);
+		Files.deleteIfExists(this.segment(1));
+		Files.deleteIfExists(this.segment(2));
+		Files.deleteIfExists(this.compacted());
+	}
+
+	/**
+	 * Tests that the last values survive closing and reopening the journal.
+	 */
+	@Test
+	public final void testReopen() throws Exception {
+		final EventJournal journal = new EventJournal(this.file, 4096);
+		this.append(journal, "ABC0000001:1", "LEVEL", 0.25d);
+		this.append(journal, "ABC0000001:1", "LEVEL", 0.5d);
+		this.append(journal, "ABC0000001:2", "STATE", true);
+		this.append(journal, "ABC0000002:1", "ERROR", 3);
+		journal.close();
+
+		final EventJournal reopened = new EventJournal(this.file, 4096);
+		this.append(reopened, "ABC0000002:1", "NAME", "a & b");
+
+		final Map<String, Map<String, Object>> values = reopened.readLastValues();
+		reopened.close();
+
+		assertThat(values).containsOnlyKeys("ABC0000001:1", "ABC0000001:2", "ABC0000002:1");
+		assertThat(values.get("ABC0000001:1")).containsEntry("LEVEL", 0.5d);
+		assertThat(values.get("ABC0000001:2")).containsEntry("STATE", true);
+		assertThat(values.get("ABC0000002:1")).containsEntry("ERROR", 3).containsEntry("NAME", "a & b");
+	}
+
+	/**
+	 * Tests that a full segment is compacted to the last values.
+	 */
+	@Test
+	public final void testCompaction() throws Exception {
+		final EventJournal journal = new EventJournal(this.file, 256);
+
+		for (int i = 0; i < 100; i++) {
+			this.append(journal, "ABC0000001:1", "LEVEL", i / 100d);
+			journal.awaitCompaction();
+			this.append(journal, "ABC0000001:2", "STATE", i % 2 == 0);
+			journal.awaitCompaction();
+		}
+
+		assertThat(journal.getCompactions()).isGreaterThan(0);
+		assertThat(journal.getAppendedEvents()).isEqualTo(200);
+		assertThat(journal.readLastValues().get("ABC0000001:1")).containsEntry("LEVEL", 0.99d);
+		assertThat(journal.readLastValues().get("ABC0000001:2")).containsEntry("STATE", false);
+		assertThat(Files.exists(this.compacted())).isFalse();
+
+		journal.close();
+
+		final EventJournal reopened = new EventJournal(this.file, 256);
+
+		assertThat(reopened.readLastValues().get("ABC0000001:1")).containsEntry("LEVEL", 0.99d);
+		assertThat(reopened.readLastValues().get("ABC0000001:2")).containsEntry("STATE", false);
+
+		reopened.close();
+	}
+
+	/**
+	 * Tests that a compaction left unfinished by a process that died does not touch the journal, and is redone.
+	 */
+	@Test
+	public final void testUnfinishedCompaction() throws Exception {
+		final EventJournal journal = new EventJournal(this.file, 256);
+		this.append(journal, "ABC0000001:1", "LEVEL", 0.25d);
+		journal.close();
+
+		Files.write(this.compacted(), new byte[] { 1, 2, 3 });
+
+		final EventJournal reopened = new EventJournal(this.file, 256);
+
+		assertThat(reopened.readLastValues().get("ABC0000001:1")).containsEntry("LEVEL", 0.25d);
+
+		for (int i = 0; i < 50; i++) {
+			this.append(reopened, "ABC0000001:2", "STATE", i % 2 == 0);
+			reopened.awaitCompaction();
+		}
+
+		assertThat(reopened.getCompactions()).isGreaterThan(0);
+		assertThat(reopened.readLastValues().get("ABC0000001:1")).containsEntry("LEVEL", 0.25d);
+		assertThat(Files.exists(this.compacted())).isFalse();
+
+		reopened.close();
+	}
+
+	/**
+	 * Tests that appending does not wait for the compactions : events that find no room while compacting are counted as
+	 * dropped, and the journal is complete again once the compaction is done.
+	 */
+	@Test
+	public final void testAppendWhileCompacting() throws Exception {
+		final EventJournal journal = new EventJournal(this.file, 256);
+
+		for (int i = 0; i < 10_000; i++) {
+			this.append(journal, "ABC0000001:1", "LEVEL", i / 10_000d);
+		}
+
+		assertThat(journal.getAppendedEvents() + journal.getDroppedEvents()).isEqualTo(10_000);
+
+		journal.awaitCompaction();
+
+		this.append(journal, "ABC0000001:2", "STATE", true);
+		journal.awaitCompaction();
+		this.append(journal, "ABC0000001:1", "LEVEL", 1d);
+
+		assertThat(journal.getCompactions()).isGreaterThan(0);
+		assertThat(journal.readLastValues().get("ABC0000001:1")).containsEntry("LEVEL", 1d);
+
+		journal.close();
+
+		final EventJournal reopened = new EventJournal(this.file, 256);
+		final Map<String, Map<String, Object>> values = reopened.readLastValues();
+		reopened.close();
+
+		assertThat(values.get("ABC0000001:1")).containsEntry("LEVEL", 1d);
+		assertThat(values.get("ABC0000001:2")).containsEntry("STATE", true);
+		assertThat(Files.exists(this.compacted())).isFalse();
+	}
+
+	/**
+	 * Tests that the full segments left by a process that died before compacting them are read in the order of their
+	 * generation, whatever their file names, and compacted once the journal is reopened.
+	 */
+	@Test
+	public final void testReopenFullSegments() throws Exception {
+		final Path other = Files.createTempFile("journal", ".hmj");
+
+		try {
+			final EventJournal older = new EventJournal(other, 256);
+			this.append(older, "ABC0000001:1", "LEVEL", 0.1d);
+			this.append(older, "ABC0000001:2", "STATE", true);
+			older.close();
+
+			final EventJournal newer = new EventJournal(this.file, 256);
+			this.append(newer, "ABC0000001:1", "LEVEL", 0.2d);
+			newer.close();
+
+			// The journal file becomes the second generation, the first one is moved next to it.
+			try (final RandomAccessFile raf = new RandomAccessFile(this.file.toFile(), "rw")) {
+				raf.seek(4);
+				raf.writeInt(2);
+			}
+
+			Files.move(other, this.segment(1), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(other);
+			Files.deleteIfExists(other.resolveSibling(other.getFileName() + ".1"));
+		}
+
+		final EventJournal reopened = new EventJournal(this.file, 256);
+		reopened.awaitCompaction();
+
+		assertThat(reopened.getCompactions()).isEqualTo(1);
+		assertThat(reopened.readLastValues().get("ABC0000001:1")).containsEntry("LEVEL", 0.2d);
+		assertThat(reopened.readLastValues().get("ABC0000001:2")).containsEntry("STATE", true);
+
+		reopened.close();
+	}
+
+	/**
+	 * Tests that a damaged record ends the journal, and is overwritten by the next event.
+	 */
+	@Test
+	public final void testDamagedRecord() throws Exception {
+		final EventJournal journal = new EventJournal(this.file, 4096);
+		this.append(journal, "ABC0000001:1", "LEVEL", 0.25d);
+
+		final int end = journal.getSize();
+		journal.close();
+
+		try (final RandomAccessFile raf = new RandomAccessFile(this.file.toFile(), "rw")) {
+			raf.seek(end);
+			raf.writeShort(3);
+			raf.writeByte(42);
+		}
+
+		final EventJournal reopened = new EventJournal(this.file, 4096);
+
+		assertThat(reopened.getSize()).isEqualTo(end);
+
+		this.append(reopened, "ABC0000001:1", "LEVEL", 0.75d);
+
+		assertThat(reopened.readLastValues().get("ABC0000001:1")).containsEntry("LEVEL", 0.75d);
+
+		reopened.close();
+	}
+
+	/**
+	 * Tests that the bytes a torn record left behind are not read as a record once a shorter record is written over it.
+	 */
+	@Test
+	public final void testTornRecordLeftovers() throws Exception {
+		final EventJournal journal = new EventJournal(this.file, 4096);
+		this.append(journal, "ABC0000001:1", "LEVEL", 0.25d);
+
+		final int end = journal.getSize();
+		journal.close();
+
+		// The record of the next LEVEL event is 28 bytes long, a complete record is left right after it.
+		try (final RandomAccessFile raf = new RandomAccessFile(this.file.toFile(), "rw")) {
+			raf.seek(end + 2 + 28);
+			raf.writeShort(21);
+			raf.writeByte(CCUEvent.ValueType.BOOLEAN.ordinal());
+			raf.writeByte(12);
+			raf.writeBytes("ABC0000009:1");
+			raf.writeByte(5);
+			raf.writeBytes("STATE");
+			raf.writeByte(1);
+		}
+
+		final EventJournal reopened = new EventJournal(this.file, 4096);
+		this.append(reopened, "ABC0000001:1", "LEVEL", 0.75d);
+
+		assertThat(reopened.getSize()).isEqualTo(end + 2 + 28);
+
+		reopened.close();
+
+		final EventJournal restarted = new EventJournal(this.file, 4096);
+		final Map<String, Map<String, Object>> values = restarted.readLastValues();
+		restarted.close();
+
+		assertThat(values).containsOnlyKeys("ABC0000001:1");
+		assertThat(values.get("ABC0000001:1")).containsEntry("LEVEL", 0.75d);
+	}
+
+	/**
+	 * Returns a segment file of the journal.
+	 *
+	 * @param 		number		The number of the segment, after the journal file itself.
+	 *
+	 * @return		The file.
+	 */
+	private final Path segment(final int number) {
+		return this.file.resolveSibling(this.file.getFileName() + "." + number);
+	}
+
+	/**
+	 * Returns the segment file the journal is compacted into.
+	 *
+	 * @return	The file.
+	 */
+	private final Path compacted() {
+		return this.file.resolveSibling(this.file.getFileName() + ".compacted");
+	}
+
+	/**
+	 * Appends an event.
+	 *
+	 * @param 	journal			The journal.
+	 * @param 	address			The address.
+	 * @param 	attribute		The attribute.
+	 * @param 	value			The value.
+	 */
+	private final void append(final EventJournal journal, final String address, final String attribute, final Object value) {
+		final CCUEvent event = this.pool.acquire();
+		event.setAddress(address);
+		event.setAttribute(attribute);
+		event.setValue(value);
+
+		journal.append(event);
+		event.release();
+	}
+}
@@ -0,0 +1,330 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.xmlrpc.XmlRpcClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link NioCallbackServer}.
+ *
+ * @author alex
+ */
+public final class NioCallbackServerTest {
+
+	/** The number of events per multicall in the load test. */
+	private static final int EVENTS_PER_MULTICALL = 50;
+
+	/** The number of multicalls per client in the load test. */
+	private static final int MULTICALLS_PER_CLIENT = 200;
+
+	/** The server. */
+	private NioCallbackServer server;
+
+	/** The number of events received. */
+	private final AtomicInteger events = new AtomicInteger();
+
+	/** The last event received, formatted as address, attribute and value. */
+	private final AtomicReference<String> lastEvent = new AtomicReference<>();
+
+	/** The pooled events. */
+	private final EventPool pool = new EventPool(new EventHandlerRegistry());
+
+	/**
+	 * Starts the server, counting the events of all calls and multicalls.
+	 */
+	@Before
+	public final void startServer() throws Exception {
+		this.server = new NioCallbackServer(0);
+		this.server.start(this::handle, new EventSink() {
+			@Override
+			public final CCUEvent acquireEvent() {
+				return pool.acquire();
+			}
+
+			@Override
+			public final boolean isInterested(final CCUEvent event) {
+				return true;
+			}
+
+			@Override
+			public final void eventReceived(final CCUEvent event) {
+				lastEvent.set(event.getAddress() + " " + event.getAttribute() + " " + event.getValueAsString());
+				events.incrementAndGet();
+
+				event.release();
+			}
+		});
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	@After
+	public final void stopServer() {
+		this.server.stop();
+	}
+
+	/**
+	 * Tests a call made using the Apache XML-RPC client.
+	 */
+	@Test
+	public final void testXmlRpcClient() throws Exception {
+		final XmlRpcClient client = new XmlRpcClient("http://localhost:" + this.server.getPort() + "/");
+
+		final Vector<Object> parameters = new Vector<>();
+		parameters.add("HomeMaticDriver");
+		parameters.add("ABC0000001:1");
+		parameters.add("LEVEL");
+		parameters.add(0.5d);
+
+		assertThat(client.execute("event", parameters)).isEqualTo("");
+		assertThat(client.execute("listDevices", new Vector<>())).isEqualTo(new Vector<>());
+		assertThat(this.events.get()).isEqualTo(1);
+		assertThat(this.lastEvent.get()).isEqualTo("ABC0000001:1 LEVEL 0.5");
+	}
+
+	/**
+	 * Tests that a failing call is returned as a fault.
+	 */
+	@Test
+	public final void testFault() throws Exception {
+		try (final Socket socket = new Socket("localhost", this.server.getPort())) {
+			send(socket.getOutputStream(), "<methodCall><methodName>fail</methodName><params/></methodCall>", true);
+
+			assertThat(readResponse(socket.getInputStream())).contains("<fault>").contains("Failing on purpose.");
+		}
+	}
+
+	/**
+	 * Tests that the connection is closed when the client asks for it.
+	 */
+	@Test
+	public final void testConnectionClose() throws Exception {
+		try (final Socket socket = new Socket("localhost", this.server.getPort())) {
+			send(socket.getOutputStream(), event("ABC0000001:1"), false);
+
+			assertThat(readResponse(socket.getInputStream())).contains("<methodResponse>");
+			assertThat(socket.getInputStream().read()).isEqualTo(-1);
+		}
+	}
+
+	/**
+	 * Tests that requests that are not complete yet are not handled.
+	 */
+	@Test
+	public final void testPartialRequest() throws Exception {
+		try (final Socket socket = new Socket("localhost", this.server.getPort())) {
+			final byte[] request = request(event("ABC0000001:1"), true);
+			final OutputStream output = socket.getOutputStream();
+
+			for (final byte b : request) {
+				output.write(b);
+				output.flush();
+			}
+
+			assertThat(readResponse(socket.getInputStream())).contains("<methodResponse>");
+			assertThat(this.events.get()).isEqualTo(1);
+		}
+	}
+
+	/**
+	 * Load test : several clients send multicalls over kept alive connections.
+	 */
+	@Test
+	public final void testMulticallLoad() throws Exception {
+		final int clients = 4;
+		final ExecutorService executor = Executors.newFixedThreadPool(clients);
+
+		try {
+			final String multicall = multicall(EVENTS_PER_MULTICALL);
+			final List<Future<Integer>> results = new ArrayList<>();
+
+			for (int i = 0; i < clients; i++) {
+				results.add(executor.submit((Callable<Integer>)() -> {
+					int responses = 0;
+
+					try (final Socket socket = new Socket("localhost", this.server.getPort())) {
+						for (int j = 0; j < MULTICALLS_PER_CLIENT; j++) {
+							send(socket.getOutputStream(), multicall, true);
+
+							if (readResponse(socket.getInputStream()).contains("<methodResponse><params>")) {
+								responses++;
+							}
+						}
+					}
+
+					return responses;
+				}));
+			}
+
+			for (final Future<Integer> result : results) {
+				assertThat(result.get()).isEqualTo(MULTICALLS_PER_CLIENT);
+			}
+
+			assertThat(this.events.get()).isEqualTo(clients * MULTICALLS_PER_CLIENT * EVENTS_PER_MULTICALL);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Handles the calls made in the tests.
+	 *
+	 * @param 		method			The method.
+	 * @param 		parameters		The parameters.
+	 *
+	 * @return		The result.
+	 */
+	private final Object handle(final String method, final List<?> parameters) {
+		switch (method) {
+			case "event":
+				this.events.incrementAndGet();
+
+				return "";
+
+			case "system.multicall":
+				final List<Object> results = new ArrayList<>();
+
+				for (final Object call : (List<?>)parameters.get(0)) {
+					results.add(this.handle((String)((Map<?, ?>)call).get("methodName"), (List<?>)((Map<?, ?>)call).get("params")));
+				}
+
+				return results;
+
+			case "listDevices":
+				return new ArrayList<>();
+
+			default:
+				throw new IllegalArgumentException("Failing on purpose.");
+		}
+	}
+
+	/**
+	 * Returns an event call.
+	 *
+	 * @param 		address		The address.
+	 *
+	 * @return		The call.
+	 */
+	private static final String event(final String address) {
+		return "<?xml version=\"1.0\"?><methodCall><methodName>event</methodName><params><param><value>HomeMaticDriver</value></param>"
+				+ "<param><value>" + address + "</value></param><param><value>LEVEL</value></param>"
+				+ "<param><value><double>0.5</double></value></param></params></methodCall>";
+	}
+
+	/**
+	 * Returns a multicall containing the given number of events.
+	 *
+	 * @param 		numberOfEvents		The number of events.
+	 *
+	 * @return		The call.
+	 */
+	private static final String multicall(final int numberOfEvents) {
+		final StringBuilder builder = new StringBuilder("<?xml version=\"1.0\"?><methodCall><methodName>system.multicall</methodName><params><param><value><array><data>");
+
+		for (int i = 0; i < numberOfEvents; i++) {
+			builder.append("<value><struct><member><name>methodName</name><value>event</value></member>")
+				   .append("<member><name>params</name><value><array><data><value>HomeMaticDriver</value>")
+				   .append("<value>ABC00000").append(i % 100).append(":1</value><value>LEVEL</value>")
+				   .append("<value><double>0.").append(i % 10).append("</double></value></data></array></value></member></struct></value>");
+		}
+
+		return builder.append("</data></array></value></param></params></methodCall>").toString();
+	}
+
+	/**
+	 * Returns the HTTP request for the given body.
+	 *
+	 * @param 		body			The body.
+	 * @param 		keepAlive		Keep the connection open.
+	 *
+	 * @return		The request.
+	 */
+	private static final byte[] request(final String body, final boolean keepAlive) {
+		final byte[] content = body.getBytes(StandardCharsets.UTF_8);
+		final byte[] head = ("POST /RPC2 " + (keepAlive ? "HTTP/1.1" : "HTTP/1.0") + "\r\nHost: localhost\r\nContent-Type: text/xml\r\nContent-Length: "
+				+ content.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+		final byte[] request = new byte[head.length + content.length];
+		System.arraycopy(head, 0, request, 0, head.length);
+		System.arraycopy(content, 0, request, head.length, content.length);
+
+		return request;
+	}
+
+	/**
+	 * Sends the given body.
+	 *
+	 * @param 	output			The output.
+	 * @param 	body			The body.
+	 * @param 	keepAlive		Keep the connection open.
+	 */
+	private static final void send(final OutputStream output, final String body, final boolean keepAlive) throws IOException {
+		output.write(request(body, keepAlive));
+		output.flush();
+	}
+
+	/**
+	 * Reads a response.
+	 *
+	 * @param 		input		The input.
+	 *
+	 * @return		The body of the response.
+	 */
+	private static final String readResponse(final InputStream input) throws IOException {
+		final ByteArrayOutputStream head = new ByteArrayOutputStream();
+
+		while (!head.toString("US-ASCII").endsWith("\r\n\r\n")) {
+			final int b = input.read();
+
+			if (b < 0) {
+				throw new IOException("Connection closed before the end of the response.");
+			}
+
+			head.write(b);
+		}
+
+		int contentLength = 0;
+
+		for (final String line : head.toString("US-ASCII").split("\r\n")) {
+			if (line.toLowerCase().startsWith("content-length:")) {
+				contentLength = Integer.parseInt(line.substring(line.indexOf(':') + 1).trim());
+			}
+		}
+
+		final byte[] body = new byte[contentLength];
+		int read = 0;
+
+		while (read < contentLength) {
+			final int n = input.read(body, read, contentLength - read);
+
+			if (n < 0) {
+				throw new IOException("Connection closed before the end of the response.");
+			}
+
+			read += n;
+		}
+
+		return new String(body, StandardCharsets.UTF_8);
+	}
+}
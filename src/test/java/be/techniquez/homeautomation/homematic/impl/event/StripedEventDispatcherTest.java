@@ -0,0 +1,238 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import be.techniquez.homeautomation.homematic.impl.CCUChannel.CCUChannelEventHandler;
+
+/**
+ * Tests for the {@link StripedEventDispatcher}.
+ *
+ * @author alex
+ */
+public final class StripedEventDispatcherTest {
+
+	/**
+	 * Tests that the events of one address are handled in order.
+	 */
+	@Test
+	public final void testOrderPerAddress() throws Exception {
+		final StripedEventDispatcher dispatcher = new StripedEventDispatcher(4);
+		final List<Integer> handled = new CopyOnWriteArrayList<>();
+		final CountDownLatch done = new CountDownLatch(1000);
+
+		try {
+			for (int i = 0; i < 1000; i++) {
+				final int sequence = i;
+
+				dispatcher.dispatch("ABC0000001:1", () -> {
+					handled.add(sequence);
+					done.countDown();
+				});
+			}
+
+			assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+
+			for (int i = 0; i < 1000; i++) {
+				assertThat(handled.get(i)).isEqualTo(i);
+			}
+		} finally {
+			dispatcher.shutdown();
+		}
+	}
+
+	/**
+	 * Tests that a slow handler does not hold up the events of an address on another lane, nor the caller.
+	 */
+	@Test
+	public final void testSlowHandlerDoesNotBlockOtherLanes() throws Exception {
+		final StripedEventDispatcher dispatcher = new StripedEventDispatcher(2);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch otherHandled = new CountDownLatch(1);
+
+		// "a" and "b" hash to different lanes when there are two.
+		assertThat(("a".hashCode() & Integer.MAX_VALUE) % 2).isNotEqualTo(("b".hashCode() & Integer.MAX_VALUE) % 2);
+
+		try {
+			dispatcher.dispatch("a", () -> {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+
+			dispatcher.dispatch("b", otherHandled::countDown);
+
+			assertThat(otherHandled.await(5, TimeUnit.SECONDS)).isTrue();
+		} finally {
+			release.countDown();
+			dispatcher.shutdown();
+		}
+	}
+
+	/**
+	 * Tests that a failing handler does not stop the lane.
+	 */
+	@Test
+	public final void testFailingHandler() throws Exception {
+		final StripedEventDispatcher dispatcher = new StripedEventDispatcher(1);
+		final CountDownLatch handled = new CountDownLatch(1);
+
+		try {
+			dispatcher.dispatch("a", () -> {
+				throw new IllegalStateException("Failing on purpose.");
+			});
+
+			dispatcher.dispatch("a", handled::countDown);
+
+			assertThat(handled.await(5, TimeUnit.SECONDS)).isTrue();
+		} finally {
+			dispatcher.shutdown();
+		}
+	}
+
+	/**
+	 * Tests the coalescing overflow policy : a full lane replaces queued values of the same datapoint, and drops the
+	 * oldest event if there is none.
+	 */
+	@Test
+	public final void testCoalesceWhenFull() throws Exception {
+		final StripedEventDispatcher dispatcher = new StripedEventDispatcher(1, 3, OverflowPolicy.COALESCE);
+		final EventHandlerRegistry registry = new EventHandlerRegistry();
+		final EventPool pool = new EventPool(registry);
+		final List<String> handled = new CopyOnWriteArrayList<>();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(3);
+
+		registry.add((CCUChannelEventHandler)(address, attribute, value) -> {
+			handled.add(address + " " + attribute + " " + value);
+			done.countDown();
+		});
+
+		try {
+			dispatcher.dispatch("a", () -> {
+				started.countDown();
+
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+
+			assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+			dispatcher.dispatch("a", event(pool, "a", "LEVEL", 0.1d));
+			dispatcher.dispatch("a", event(pool, "a", "STATE", true));
+			dispatcher.dispatch("b", event(pool, "b", "LEVEL", 0.2d));
+			dispatcher.dispatch("a", event(pool, "a", "LEVEL", 0.3d));
+			dispatcher.dispatch("c", event(pool, "c", "LEVEL", 0.4d));
+
+			release.countDown();
+
+			assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+			assertThat(handled).containsExactly("b LEVEL 0.2", "a LEVEL 0.3", "c LEVEL 0.4");
+			assertThat(dispatcher.getCoalescedEvents()).isEqualTo(1);
+			assertThat(dispatcher.getDroppedEvents()).isEqualTo(1);
+			assertThat(dispatcher.getHighWaterMark()).isEqualTo(3);
+		} finally {
+			release.countDown();
+			dispatcher.shutdown();
+		}
+	}
+
+	/**
+	 * Tests that concurrent producers overflowing a small lane never have a recycled event removed in place of theirs :
+	 * each event is either handled once, coalesced or dropped, and the values of a datapoint are handled in order.
+	 */
+	@Test
+	public final void testConcurrentOverflow() throws Exception {
+		final int producers = 4;
+		final int events = 20_000;
+		final StripedEventDispatcher dispatcher = new StripedEventDispatcher(1, 4, OverflowPolicy.COALESCE);
+		final EventHandlerRegistry registry = new EventHandlerRegistry();
+		final EventPool pool = new EventPool(16, EventPool.DEFAULT_STRINGS, registry);
+		final double[] last = new double[producers];
+		final AtomicLong handled = new AtomicLong();
+		final List<String> errors = new CopyOnWriteArrayList<>();
+		final Thread[] threads = new Thread[producers];
+
+		Arrays.fill(last, -1);
+
+		registry.add(new CCUChannelEventHandler() {
+			@Override
+			public final void eventReceived(final String address, final String attribute, final String value) {
+			}
+
+			@Override
+			public final void onDouble(final String address, final String attribute, final double value) {
+				final int producer = Integer.parseInt(address);
+
+				if (value <= last[producer]) {
+					errors.add("Value [" + value + "] of [" + address + "] handled after [" + last[producer] + "]");
+				}
+
+				last[producer] = value;
+				handled.incrementAndGet();
+			}
+		});
+
+		try {
+			for (int i = 0; i < producers; i++) {
+				final String address = String.valueOf(i);
+
+				threads[i] = new Thread(() -> {
+					for (int j = 0; j < events; j++) {
+						dispatcher.dispatch(address, event(pool, address, "LEVEL", (double)j));
+					}
+				});
+
+				threads[i].start();
+			}
+
+			for (final Thread thread : threads) {
+				thread.join();
+			}
+
+			final long deadline = System.currentTimeMillis() + 5000;
+
+			while (handled.get() + dispatcher.getCoalescedEvents() + dispatcher.getDroppedEvents() < producers * events && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+
+			assertThat(errors).isEmpty();
+			assertThat(handled.get() + dispatcher.getCoalescedEvents() + dispatcher.getDroppedEvents()).isEqualTo(producers * events);
+		} finally {
+			dispatcher.shutdown();
+		}
+	}
+
+	/**
+	 * Returns a pooled event.
+	 *
+	 * @param 		pool			The pool.
+	 * @param 		address			The address.
+	 * @param 		attribute		The attribute.
+	 * @param 		value			The value.
+	 *
+	 * @return		The event.
+	 */
+	private static final CCUEvent event(final EventPool pool, final String address, final String attribute, final Object value) {
+		final CCUEvent event = pool.acquire();
+		event.setAddress(address);
+		event.setAttribute(attribute);
+		event.setValue(value);
+
+		return event;
+	}
+}
@@ -0,0 +1,98 @@
+package be.techniquez.homeautomation.homematic.impl.event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import be.techniquez.homeautomation.homematic.impl.event.XmlRpcCodec.MethodCall;
+
+/**
+ * Tests for the {@link XmlRpcCodec}.
+ *
+ * @author alex
+ */
+public final class XmlRpcCodecTest {
+
+	/**
+	 * Tests decoding an event.
+	 */
+	@Test
+	public final void testDecodeEvent() throws Exception {
+		final MethodCall call = decode("<?xml version=\"1.0\"?><methodCall><methodName>event</methodName><params>"
+				+ "<param><value>HomeMaticDriver</value></param>"
+				+ "<param><value><string>ABC0000001:1</string></value></param>"
+				+ "<param><value><string>LEVEL</string></value></param>"
+				+ "<param><value><double>0.500000</double></value></param>"
+				+ "</params></methodCall>");
+
+		assertThat(call.getMethodName()).isEqualTo("event");
+		assertThat(call.getParameters()).containsExactly("HomeMaticDriver", "ABC0000001:1", "LEVEL", 0.5d);
+	}
+
+	/**
+	 * Tests decoding a multicall, with nested arrays and structs.
+	 */
+	@Test
+	public final void testDecodeMulticall() throws Exception {
+		final MethodCall call = decode("<methodCall><methodName>system.multicall</methodName><params><param><value><array><data>"
+				+ "<value><struct><member><name>methodName</name><value>event</value></member>"
+				+ "<member><name>params</name><value><array><data><value>HomeMaticDriver</value><value>ABC0000001:3</value>"
+				+ "<value>STATE</value><value><boolean>1</boolean></value></data></array></value></member></struct></value>"
+				+ "<value><struct><member><name>methodName</name><value>event</value></member>"
+				+ "<member><name>params</name><value><array><data><value>HomeMaticDriver</value><value>ABC0000001:4</value>"
+				+ "<value>WORKING</value><value><i4>0</i4></value></data></array></value></member></struct></value>"
+				+ "</data></array></value></param></params></methodCall>");
+
+		assertThat(call.getMethodName()).isEqualTo("system.multicall");
+
+		final List<?> calls = (List<?>)call.getParameters().get(0);
+		assertThat(calls).hasSize(2);
+
+		final Map<?, ?> first = (Map<?, ?>)calls.get(0);
+		assertThat(first.get("methodName")).isEqualTo("event");
+		assertThat((List<?>)first.get("params")).containsExactly("HomeMaticDriver", "ABC0000001:3", "STATE", true);
+
+		assertThat((List<?>)((Map<?, ?>)calls.get(1)).get("params")).containsExactly("HomeMaticDriver", "ABC0000001:4", "WORKING", 0);
+	}
+
+	/**
+	 * Tests that an invalid value is reported.
+	 */
+	@Test(expected = XMLStreamException.class)
+	public final void testDecodeInvalidValue() throws Exception {
+		decode("<methodCall><methodName>event</methodName><params><param><value><i4>abc</i4></value></param></params></methodCall>");
+	}
+
+	/**
+	 * Tests encoding responses.
+	 */
+	@Test
+	public final void testEncode() throws Exception {
+		assertThat(new String(XmlRpcCodec.encodeResponse(Arrays.asList("a<b", 1, true)), StandardCharsets.UTF_8))
+				.endsWith("<methodResponse><params><param><value><array><data><value><string>a&lt;b</string></value>"
+						+ "<value><i4>1</i4></value><value><boolean>1</boolean></value></data></array></value></param></params></methodResponse>");
+
+		assertThat(new String(XmlRpcCodec.encodeFault(-1, "Failed"), StandardCharsets.UTF_8))
+				.contains("<fault>")
+				.contains("<member><name>faultString</name><value><string>Failed</string></value></member>");
+	}
+
+	/**
+	 * Decodes the given call.
+	 *
+	 * @param 		xml			The call.
+	 *
+	 * @return		The decoded call.
+	 */
+	private static final MethodCall decode(final String xml) throws XMLStreamException {
+		return XmlRpcCodec.decodeCall(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+	}
+}
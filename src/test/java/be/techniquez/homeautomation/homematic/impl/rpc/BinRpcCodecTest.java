@@ -0,0 +1,92 @@
+package be.techniquez.homeautomation.homematic.impl.rpc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for the {@link BinRpcCodec}.
+ *
+ * @author alex
+ */
+public final class BinRpcCodecTest {
+
+	/**
+	 * Tests the encoding of a request against the bytes the CCU expects.
+	 */
+	@Test
+	public final void testEncodeRequest() throws Exception {
+		final byte[] frame = BinRpcCodec.encodeRequest("getValue", Arrays.asList("A:1", 0.5d));
+
+		assertThat(frame).isEqualTo(new byte[] {
+				'B', 'i', 'n', 0x00, 0, 0, 0, 39,
+				0, 0, 0, 8, 'g', 'e', 't', 'V', 'a', 'l', 'u', 'e',
+				0, 0, 0, 2,
+				0, 0, 0, 3, 0, 0, 0, 3, 'A', ':', '1',
+				0, 0, 0, 4, 0x20, 0, 0, 0, 0, 0, 0, 0 });
+	}
+
+	/**
+	 * Tests a request round trip, with nested values.
+	 */
+	@Test
+	public final void testRequestRoundTrip() throws Exception {
+		final Map<String, Object> call = new HashMap<>();
+		call.put("methodName", "event");
+		call.put("params", Arrays.asList("HomeMaticDriver", "ABC0000001:1", "LEVEL", 0.75d));
+
+		final List<Object> parameters = Arrays.asList(Collections.singletonList(call), 42, true, -12.125d, 0d, "é");
+		final BinRpcCodec.Request request = BinRpcCodec.decodeRequest(read(BinRpcCodec.encodeRequest("system.multicall", parameters)));
+
+		assertThat(request.getMethodName()).isEqualTo("system.multicall");
+		assertThat(request.getParameters()).isEqualTo(parameters);
+	}
+
+	/**
+	 * Tests decoding responses and faults.
+	 */
+	@Test
+	public final void testResponses() throws Exception {
+		assertThat(BinRpcCodec.decodeResponse(read(BinRpcCodec.encodeResponse("")))).isEqualTo("");
+
+		try {
+			BinRpcCodec.decodeResponse(read(BinRpcCodec.encodeFault(-5, "Unknown parameter")));
+
+			fail("Expected a fault.");
+		} catch (RpcFaultException e) {
+			assertThat(e.getFaultCode()).isEqualTo(-5);
+			assertThat(e.getMessage()).contains("Unknown parameter");
+		}
+	}
+
+	/**
+	 * Tests that a frame with a bad length is rejected.
+	 */
+	@Test(expected = IOException.class)
+	public final void testInvalidLength() throws Exception {
+		final byte[] frame = BinRpcCodec.encodeRequest("getValue", Arrays.asList("A:1", "LEVEL"));
+		frame[11] = 0x7F;
+
+		BinRpcCodec.decodeRequest(read(frame));
+	}
+
+	/**
+	 * Reads the given frame.
+	 *
+	 * @param 		bytes		The bytes.
+	 *
+	 * @return		The frame.
+	 */
+	private static final BinRpcCodec.Frame read(final byte[] bytes) throws IOException {
+		return BinRpcCodec.readFrame(new ByteArrayInputStream(bytes));
+	}
+}
@@ -0,0 +1,108 @@
+package be.techniquez.homeautomation.homematic.impl.rpc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link BinRpcServer} and the {@link BinRpcClient} against each other.
+ *
+ * @author alex
+ */
+public final class BinRpcServerTest {
+
+	/** The server. */
+	private BinRpcServer server;
+
+	/** The calls received. */
+	private final List<String> calls = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Starts the server.
+	 */
+	@Before
+	public final void startServer() throws Exception {
+		this.server = new BinRpcServer(0);
+		this.server.start((method, parameters) -> {
+			this.calls.add(method + parameters);
+
+			if (method.equals("fail")) {
+				throw new IllegalArgumentException("Failing on purpose.");
+			}
+
+			return parameters.isEmpty() ? "" : parameters.get(0);
+		});
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	@After
+	public final void stopServer() {
+		this.server.stop();
+	}
+
+	/**
+	 * Tests calls over a single connection.
+	 */
+	@Test
+	public final void testCalls() throws Exception {
+		final BinRpcClient client = new BinRpcClient("127.0.0.1", this.server.getPort());
+
+		try {
+			assertThat(client.execute("echo", Arrays.asList(0.5d))).isEqualTo(0.5d);
+			assertThat(client.execute("echo", Arrays.asList(Arrays.asList(1, "a")))).isEqualTo(Arrays.asList(1, "a"));
+			assertThat(client.execute("init", Collections.emptyList())).isEqualTo("");
+
+			assertThat(this.calls).containsExactly("echo[0.5]", "echo[[1, a]]", "init[]");
+		} finally {
+			client.close();
+		}
+	}
+
+	/**
+	 * Tests that a failing call is returned as a fault and leaves the connection usable.
+	 */
+	@Test
+	public final void testFault() throws Exception {
+		final BinRpcClient client = new BinRpcClient("127.0.0.1", this.server.getPort());
+
+		try {
+			client.execute("fail", Collections.emptyList());
+		} catch (RpcFaultException e) {
+			assertThat(e.getMessage()).contains("Failing on purpose.");
+		} finally {
+			assertThat(client.execute("echo", Arrays.asList(true))).isEqualTo(true);
+
+			client.close();
+		}
+	}
+
+	/**
+	 * Tests that the client reconnects when the server closed the connection.
+	 */
+	@Test
+	public final void testReconnect() throws Exception {
+		final BinRpcClient client = new BinRpcClient("127.0.0.1", this.server.getPort());
+
+		try {
+			assertThat(client.execute("echo", Arrays.asList(1))).isEqualTo(1);
+
+			final int port = this.server.getPort();
+			this.server.stop();
+			this.server = new BinRpcServer(port);
+			this.server.start((method, parameters) -> parameters.get(0));
+
+			assertThat(client.execute("echo", Arrays.asList(2))).isEqualTo(2);
+		} finally {
+			client.close();
+		}
+	}
+}